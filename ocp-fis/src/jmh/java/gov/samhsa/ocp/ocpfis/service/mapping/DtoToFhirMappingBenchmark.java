@@ -0,0 +1,115 @@
+package gov.samhsa.ocp.ocpfis.service.mapping;
+
+import gov.samhsa.ocp.ocpfis.service.dto.HealthcareServiceDto;
+import gov.samhsa.ocp.ocpfis.service.dto.LocationDto;
+import gov.samhsa.ocp.ocpfis.service.dto.OrganizationDto;
+import gov.samhsa.ocp.ocpfis.service.dto.PatientDto;
+import gov.samhsa.ocp.ocpfis.service.dto.PractitionerDto;
+import gov.samhsa.ocp.ocpfis.service.dto.RelatedPersonDto;
+import gov.samhsa.ocp.ocpfis.service.dto.TaskDto;
+import gov.samhsa.ocp.ocpfis.service.mapping.dtotofhirmodel.RelatedPersonDtoToRelatedPersonConverter;
+import gov.samhsa.ocp.ocpfis.service.mapping.dtotofhirmodel.TaskDtoToTaskMap;
+import org.hl7.fhir.dstu3.model.HealthcareService;
+import org.hl7.fhir.dstu3.model.Location;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.RelatedPerson;
+import org.hl7.fhir.dstu3.model.Task;
+import org.hl7.fhir.exceptions.FHIRException;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping one DTO back to its FHIR resource, as done on every create and update.
+ * The DTO fixtures are produced from the generated resources with the FHIR to DTO converters.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DtoToFhirMappingBenchmark {
+
+    private static final int FIXTURE_MASK = MappingBenchmarkFixtures.FIXTURE_COUNT - 1;
+
+    private ModelMapper modelMapper;
+
+    private PatientDto[] patientDtos;
+    private PractitionerDto[] practitionerDtos;
+    private OrganizationDto[] organizationDtos;
+    private LocationDto[] locationDtos;
+    private HealthcareServiceDto[] healthcareServiceDtos;
+    private RelatedPersonDto[] relatedPersonDtos;
+    private TaskDto[] taskDtos;
+
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        modelMapper = MappingBenchmarkFixtures.createModelMapper();
+
+        MappingBenchmarkFixtures fixtures = new MappingBenchmarkFixtures();
+        patientDtos = Arrays.stream(fixtures.patients()).map(patient -> modelMapper.map(patient, PatientDto.class)).toArray(PatientDto[]::new);
+        practitionerDtos = Arrays.stream(fixtures.practitioners()).map(practitioner -> modelMapper.map(practitioner, PractitionerDto.class)).toArray(PractitionerDto[]::new);
+        organizationDtos = Arrays.stream(fixtures.organizations()).map(organization -> modelMapper.map(organization, OrganizationDto.class)).toArray(OrganizationDto[]::new);
+        locationDtos = Arrays.stream(fixtures.locations()).map(location -> modelMapper.map(location, LocationDto.class)).toArray(LocationDto[]::new);
+        healthcareServiceDtos = Arrays.stream(fixtures.healthcareServices()).map(healthcareService -> modelMapper.map(healthcareService, HealthcareServiceDto.class)).toArray(HealthcareServiceDto[]::new);
+        relatedPersonDtos = Arrays.stream(fixtures.relatedPersons()).map(RelatedPersonToRelatedPersonDtoConverter::map).toArray(RelatedPersonDto[]::new);
+        taskDtos = Arrays.stream(fixtures.tasks()).map(task -> TaskToTaskDtoMap.map(task, MappingBenchmarkFixtures.taskPerformerTypes())).toArray(TaskDto[]::new);
+    }
+
+    @Benchmark
+    public Patient patientDtoToPatient() {
+        return modelMapper.map(patientDtos[next()], Patient.class);
+    }
+
+    @Benchmark
+    public Practitioner practitionerDtoToPractitioner() {
+        return modelMapper.map(practitionerDtos[next()], Practitioner.class);
+    }
+
+    @Benchmark
+    public Organization organizationDtoToOrganization() {
+        return modelMapper.map(organizationDtos[next()], Organization.class);
+    }
+
+    @Benchmark
+    public Location locationDtoToLocation() {
+        return modelMapper.map(locationDtos[next()], Location.class);
+    }
+
+    @Benchmark
+    public HealthcareService healthcareServiceDtoToHealthcareService() {
+        return modelMapper.map(healthcareServiceDtos[next()], HealthcareService.class);
+    }
+
+    @Benchmark
+    public RelatedPerson relatedPersonDtoToRelatedPerson() throws ParseException {
+        return RelatedPersonDtoToRelatedPersonConverter.map(relatedPersonDtos[next()]);
+    }
+
+    @Benchmark
+    public Task taskDtoToTask() throws FHIRException {
+        return TaskDtoToTaskMap.map(taskDtos[next()]);
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & FIXTURE_MASK;
+        return cursor;
+    }
+}
@@ -0,0 +1,140 @@
+package gov.samhsa.ocp.ocpfis.service.mapping;
+
+import gov.samhsa.ocp.ocpfis.service.dto.CommunicationDto;
+import gov.samhsa.ocp.ocpfis.service.dto.CoverageDto;
+import gov.samhsa.ocp.ocpfis.service.dto.HealthcareServiceDto;
+import gov.samhsa.ocp.ocpfis.service.dto.LocationDto;
+import gov.samhsa.ocp.ocpfis.service.dto.OrganizationDto;
+import gov.samhsa.ocp.ocpfis.service.dto.PatientDto;
+import gov.samhsa.ocp.ocpfis.service.dto.PractitionerDto;
+import gov.samhsa.ocp.ocpfis.service.dto.PractitionerRoleDto;
+import gov.samhsa.ocp.ocpfis.service.dto.RelatedPersonDto;
+import gov.samhsa.ocp.ocpfis.service.dto.TaskDto;
+import gov.samhsa.ocp.ocpfis.service.dto.ValueSetDto;
+import org.hl7.fhir.dstu3.model.Communication;
+import org.hl7.fhir.dstu3.model.Coverage;
+import org.hl7.fhir.dstu3.model.HealthcareService;
+import org.hl7.fhir.dstu3.model.Location;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.PractitionerRole;
+import org.hl7.fhir.dstu3.model.RelatedPerson;
+import org.hl7.fhir.dstu3.model.Task;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping one FHIR resource to its DTO, as done for every row of the list endpoints.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FhirToDtoMappingBenchmark {
+
+    private static final int FIXTURE_MASK = MappingBenchmarkFixtures.FIXTURE_COUNT - 1;
+
+    private ModelMapper modelMapper;
+    private List<ValueSetDto> taskPerformerTypes;
+
+    private Patient[] patients;
+    private Practitioner[] practitioners;
+    private PractitionerRole[] practitionerRoles;
+    private Organization[] organizations;
+    private Location[] locations;
+    private HealthcareService[] healthcareServices;
+    private RelatedPerson[] relatedPersons;
+    private Task[] tasks;
+    private Coverage[] coverages;
+    private Communication[] communications;
+
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        modelMapper = MappingBenchmarkFixtures.createModelMapper();
+        taskPerformerTypes = MappingBenchmarkFixtures.taskPerformerTypes();
+
+        MappingBenchmarkFixtures fixtures = new MappingBenchmarkFixtures();
+        patients = fixtures.patients();
+        practitioners = fixtures.practitioners();
+        practitionerRoles = fixtures.practitionerRoles();
+        organizations = fixtures.organizations();
+        locations = fixtures.locations();
+        healthcareServices = fixtures.healthcareServices();
+        relatedPersons = fixtures.relatedPersons();
+        tasks = fixtures.tasks();
+        coverages = fixtures.coverages();
+        communications = fixtures.communications();
+    }
+
+    @Benchmark
+    public PatientDto patientToPatientDto() {
+        return modelMapper.map(patients[next()], PatientDto.class);
+    }
+
+    @Benchmark
+    public PractitionerDto practitionerToPractitionerDto() {
+        return modelMapper.map(practitioners[next()], PractitionerDto.class);
+    }
+
+    @Benchmark
+    public PractitionerRoleDto practitionerRoleToPractitionerRoleDto() {
+        return modelMapper.map(practitionerRoles[next()], PractitionerRoleDto.class);
+    }
+
+    @Benchmark
+    public OrganizationDto organizationToOrganizationDto() {
+        return modelMapper.map(organizations[next()], OrganizationDto.class);
+    }
+
+    @Benchmark
+    public LocationDto locationToLocationDto() {
+        return modelMapper.map(locations[next()], LocationDto.class);
+    }
+
+    @Benchmark
+    public HealthcareServiceDto healthcareServiceToHealthcareServiceDto() {
+        return modelMapper.map(healthcareServices[next()], HealthcareServiceDto.class);
+    }
+
+    @Benchmark
+    public RelatedPersonDto relatedPersonToRelatedPersonDto() {
+        return RelatedPersonToRelatedPersonDtoConverter.map(relatedPersons[next()]);
+    }
+
+    @Benchmark
+    public TaskDto taskToTaskDto() {
+        return TaskToTaskDtoMap.map(tasks[next()], taskPerformerTypes);
+    }
+
+    @Benchmark
+    public CoverageDto coverageToCoverageDto() {
+        return CoverageToCoverageDtoMap.map(coverages[next()]);
+    }
+
+    @Benchmark
+    public CommunicationDto communicationToCommunicationDto() {
+        return CommunicationToCommunicationDtoMap.map(communications[next()]);
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & FIXTURE_MASK;
+        return cursor;
+    }
+}
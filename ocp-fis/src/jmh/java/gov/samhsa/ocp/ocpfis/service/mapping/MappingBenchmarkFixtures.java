@@ -0,0 +1,337 @@
+package gov.samhsa.ocp.ocpfis.service.mapping;
+
+import com.github.javafaker.Faker;
+import gov.samhsa.ocp.ocpfis.config.ModelMapperConfig;
+import gov.samhsa.ocp.ocpfis.service.dto.ValueSetDto;
+import org.hl7.fhir.dstu3.model.Address;
+import org.hl7.fhir.dstu3.model.Annotation;
+import org.hl7.fhir.dstu3.model.CodeableConcept;
+import org.hl7.fhir.dstu3.model.Communication;
+import org.hl7.fhir.dstu3.model.ContactPoint;
+import org.hl7.fhir.dstu3.model.Coverage;
+import org.hl7.fhir.dstu3.model.Enumerations;
+import org.hl7.fhir.dstu3.model.HealthcareService;
+import org.hl7.fhir.dstu3.model.HumanName;
+import org.hl7.fhir.dstu3.model.Identifier;
+import org.hl7.fhir.dstu3.model.Location;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Period;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.PractitionerRole;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.RelatedPerson;
+import org.hl7.fhir.dstu3.model.StringType;
+import org.hl7.fhir.dstu3.model.Task;
+import org.modelmapper.ModelMapper;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Generates DSTU3 resources for the mapping benchmarks. A fixed seed keeps the data identical between runs.
+ */
+public class MappingBenchmarkFixtures {
+
+    // Power of two so benchmarks can cycle through fixtures with a mask
+    public static final int FIXTURE_COUNT = 256;
+
+    private static final long SEED = 20180601L;
+
+    // Dates are generated around a fixed instant (2018-06-01) instead of the current time
+    private static final long REFERENCE_TIME_IN_MS = 1527811200000L;
+
+    private static final long DAY_IN_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static final List<ValueSetDto> TASK_PERFORMER_TYPES = Arrays.asList(
+            ValueSetDto.builder().code("requester").display("Requester").build(),
+            ValueSetDto.builder().code("dispatcher").display("Dispatcher").build(),
+            ValueSetDto.builder().code("performer").display("Performer").build());
+
+    private final Random random = new Random(SEED);
+
+    private final Faker faker = new Faker(random);
+
+    public static ModelMapper createModelMapper() {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(MappingConfig.class)) {
+            return context.getBean(ModelMapper.class);
+        }
+    }
+
+    public static List<ValueSetDto> taskPerformerTypes() {
+        return TASK_PERFORMER_TYPES;
+    }
+
+    public Patient[] patients() {
+        return generate(this::patient).toArray(new Patient[0]);
+    }
+
+    public Practitioner[] practitioners() {
+        return generate(this::practitioner).toArray(new Practitioner[0]);
+    }
+
+    public PractitionerRole[] practitionerRoles() {
+        return generate(this::practitionerRole).toArray(new PractitionerRole[0]);
+    }
+
+    public Organization[] organizations() {
+        return generate(this::organization).toArray(new Organization[0]);
+    }
+
+    public Location[] locations() {
+        return generate(this::location).toArray(new Location[0]);
+    }
+
+    public HealthcareService[] healthcareServices() {
+        return generate(this::healthcareService).toArray(new HealthcareService[0]);
+    }
+
+    public RelatedPerson[] relatedPersons() {
+        return generate(this::relatedPerson).toArray(new RelatedPerson[0]);
+    }
+
+    public Task[] tasks() {
+        return generate(this::task).toArray(new Task[0]);
+    }
+
+    public Coverage[] coverages() {
+        return generate(this::coverage).toArray(new Coverage[0]);
+    }
+
+    public Communication[] communications() {
+        return generate(this::communication).toArray(new Communication[0]);
+    }
+
+    private <T> List<T> generate(Supplier<T> generator) {
+        List<T> fixtures = new ArrayList<>(FIXTURE_COUNT);
+        for (int i = 0; i < FIXTURE_COUNT; i++) {
+            fixtures.add(generator.get());
+        }
+        return fixtures;
+    }
+
+    private Patient patient() {
+        Patient patient = new Patient();
+        patient.setId(id());
+        patient.setActive(true);
+        patient.setName(Arrays.asList(humanName(), humanName()));
+        patient.setGender(random.nextBoolean() ? Enumerations.AdministrativeGender.FEMALE : Enumerations.AdministrativeGender.MALE);
+        patient.setBirthDate(pastDate(80 * 365));
+        patient.setIdentifier(identifiers());
+        patient.setTelecom(telecoms());
+        patient.setAddress(Arrays.asList(address(), address()));
+        patient.setManagingOrganization(reference("Organization", faker.company().name()));
+        return patient;
+    }
+
+    private Practitioner practitioner() {
+        Practitioner practitioner = new Practitioner();
+        practitioner.setId(id());
+        practitioner.setActive(true);
+        practitioner.setName(Arrays.asList(humanName()));
+        practitioner.setIdentifier(identifiers());
+        practitioner.setTelecom(telecoms());
+        practitioner.setAddress(Arrays.asList(address()));
+        return practitioner;
+    }
+
+    private PractitionerRole practitionerRole() {
+        PractitionerRole practitionerRole = new PractitionerRole();
+        practitionerRole.setId(id());
+        practitionerRole.setActive(true);
+        practitionerRole.setPractitioner(reference("Practitioner", faker.name().fullName()));
+        practitionerRole.setOrganization(reference("Organization", faker.company().name()));
+        practitionerRole.setCode(Arrays.asList(codeableConcept("http://hl7.org/fhir/practitioner-role", "doctor", "Doctor")));
+        practitionerRole.setSpecialty(Arrays.asList(codeableConcept("http://snomed.info/sct", "394814009", "General practice")));
+        practitionerRole.setLocation(Arrays.asList(reference("Location", faker.address().cityName())));
+        return practitionerRole;
+    }
+
+    private Organization organization() {
+        Organization organization = new Organization();
+        organization.setId(id());
+        organization.setActive(true);
+        organization.setName(faker.company().name());
+        organization.setIdentifier(identifiers());
+        organization.setTelecom(telecoms());
+        organization.setAddress(Arrays.asList(address()));
+        Organization.OrganizationContactComponent contact = organization.addContact();
+        contact.setName(humanName());
+        contact.setTelecom(telecoms());
+        contact.setAddress(address());
+        contact.setPurpose(codeableConcept("http://hl7.org/fhir/contactentity-type", "ADMIN", "Administrative"));
+        return organization;
+    }
+
+    private Location location() {
+        Location location = new Location();
+        location.setId(id());
+        location.setName(faker.address().cityName() + " Clinic");
+        location.setStatus(Location.LocationStatus.ACTIVE);
+        location.setIdentifier(identifiers());
+        location.setTelecom(telecoms());
+        location.setAddress(address());
+        location.setPhysicalType(codeableConcept("http://hl7.org/fhir/location-physical-type", "bu", "Building"));
+        location.setManagingOrganization(reference("Organization", faker.company().name()));
+        return location;
+    }
+
+    private HealthcareService healthcareService() {
+        HealthcareService healthcareService = new HealthcareService();
+        healthcareService.setId(id());
+        healthcareService.setActive(true);
+        healthcareService.setName(faker.company().catchPhrase());
+        healthcareService.setProvidedBy(reference("Organization", faker.company().name()));
+        healthcareService.setProgramName(Arrays.asList(new StringType(faker.company().buzzword()), new StringType(faker.company().buzzword())));
+        healthcareService.setTelecom(telecoms());
+        healthcareService.setIdentifier(identifiers());
+        healthcareService.setCategory(codeableConcept("http://hl7.org/fhir/service-category", "8", "Counselling"));
+        healthcareService.setType(Arrays.asList(codeableConcept("http://hl7.org/fhir/service-type", "124", "General Practice")));
+        healthcareService.setSpecialty(Arrays.asList(codeableConcept("http://snomed.info/sct", "394814009", "General practice")));
+        healthcareService.setReferralMethod(Arrays.asList(codeableConcept("http://hl7.org/fhir/service-referral-method", "phone", "Phone")));
+        healthcareService.setLocation(Arrays.asList(reference("Location", faker.address().cityName()), reference("Location", faker.address().cityName())));
+        return healthcareService;
+    }
+
+    private RelatedPerson relatedPerson() {
+        RelatedPerson relatedPerson = new RelatedPerson();
+        relatedPerson.setId(id());
+        relatedPerson.setActive(true);
+        relatedPerson.setIdentifier(identifiers());
+        relatedPerson.setPatient(reference("Patient", faker.name().fullName()));
+        relatedPerson.setRelationship(codeableConcept("http://hl7.org/fhir/v3/RoleCode", "FTH", "father"));
+        relatedPerson.setName(Arrays.asList(humanName()));
+        relatedPerson.setTelecom(telecoms());
+        relatedPerson.setAddress(Arrays.asList(address()));
+        relatedPerson.setGender(random.nextBoolean() ? Enumerations.AdministrativeGender.FEMALE : Enumerations.AdministrativeGender.MALE);
+        relatedPerson.setBirthDate(pastDate(80 * 365));
+        relatedPerson.setPeriod(new Period().setStart(pastDate(365)).setEnd(futureDate(365)));
+        return relatedPerson;
+    }
+
+    private Task task() {
+        Task task = new Task();
+        task.setId(id());
+        task.setStatus(Task.TaskStatus.values()[random.nextInt(Task.TaskStatus.NULL.ordinal())]);
+        task.setIntent(Task.TaskIntent.PLAN);
+        task.setPriority(random.nextBoolean() ? Task.TaskPriority.ROUTINE : Task.TaskPriority.URGENT);
+        task.setDescription(faker.lorem().sentence());
+        task.setNote(Arrays.asList(new Annotation().setText(faker.lorem().sentence())));
+        task.setPerformerType(Arrays.asList(codeableConcept("http://hl7.org/fhir/task-performer-type", "performer", "Performer")));
+        task.setPartOf(Arrays.asList(reference("Task", faker.lorem().word())));
+        task.setFor(reference("Patient", faker.name().fullName()));
+        task.getRequester().setAgent(reference("Practitioner", faker.name().fullName()));
+        task.getRequester().setOnBehalfOf(reference("Organization", faker.company().name()));
+        task.setOwner(reference("Practitioner", faker.name().fullName()));
+        task.setDefinition(reference("ActivityDefinition", faker.lorem().word()));
+        task.setContext(reference("EpisodeOfCare", faker.lorem().word()));
+        task.setLastModified(pastDate(30));
+        task.setAuthoredOn(pastDate(60));
+        task.setExecutionPeriod(new Period().setStart(pastDate(30)).setEnd(futureDate(30)));
+        return task;
+    }
+
+    private Coverage coverage() {
+        Coverage coverage = new Coverage();
+        coverage.setId(id());
+        coverage.setStatus(Coverage.CoverageStatus.ACTIVE);
+        coverage.setType(codeableConcept("http://hl7.org/fhir/v3/ActCode", "EHCPOL", "extended healthcare"));
+        coverage.setSubscriber(reference("Patient", faker.name().fullName()));
+        coverage.setSubscriberId(faker.number().digits(10));
+        coverage.setBeneficiary(reference("Patient", faker.name().fullName()));
+        coverage.setRelationship(codeableConcept("http://hl7.org/fhir/policyholder-relationship", "self", "Self"));
+        coverage.getGrouping().setPlanDisplay(faker.company().name() + " Plan");
+        coverage.setPeriod(new Period().setStart(pastDate(365)).setEnd(futureDate(365)));
+        coverage.setNetwork(faker.company().name());
+        return coverage;
+    }
+
+    private Communication communication() {
+        Communication communication = new Communication();
+        communication.setId(id());
+        communication.getMeta().setLastUpdated(pastDate(10));
+        communication.setNotDone(false);
+        communication.setStatus(Communication.CommunicationStatus.COMPLETED);
+        communication.setCategory(Arrays.asList(codeableConcept("http://hl7.org/fhir/communication-category", "notification", "Notification")));
+        communication.setMedium(Arrays.asList(codeableConcept("http://hl7.org/fhir/v3/ParticipationMode", "PHONE", "telephone")));
+        communication.setRecipient(Arrays.asList(reference("Practitioner", faker.name().fullName()), reference("RelatedPerson", faker.name().fullName())));
+        communication.setSender(reference("Practitioner", faker.name().fullName()));
+        communication.setSubject(reference("Patient", faker.name().fullName()));
+        communication.setTopic(Arrays.asList(reference("Task", faker.lorem().word())));
+        communication.setDefinition(Arrays.asList(reference("ActivityDefinition", faker.lorem().word())));
+        communication.setContext(reference("EpisodeOfCare", faker.lorem().word()));
+        communication.setNote(Arrays.asList(
+                new Annotation().setAuthor(new StringType("note")).setText(faker.lorem().sentence()),
+                new Annotation().setAuthor(new StringType("duration")).setText("30")));
+        communication.addPayload().setContent(new StringType(faker.lorem().paragraph()));
+        communication.setSent(pastDate(10));
+        communication.setReceived(pastDate(9));
+        return communication;
+    }
+
+    private String id() {
+        return String.valueOf(100000 + random.nextInt(900000));
+    }
+
+    private HumanName humanName() {
+        return new HumanName().addGiven(faker.name().firstName()).setFamily(faker.name().lastName());
+    }
+
+    private Address address() {
+        return new Address()
+                .addLine(faker.address().streetAddress())
+                .addLine(faker.address().secondaryAddress())
+                .setCity(faker.address().cityName())
+                .setState(faker.address().stateAbbr())
+                .setPostalCode(faker.address().zipCode())
+                .setCountry("US")
+                .setUse(Address.AddressUse.HOME);
+    }
+
+    private List<ContactPoint> telecoms() {
+        return Arrays.asList(
+                new ContactPoint().setSystem(ContactPoint.ContactPointSystem.PHONE).setValue(faker.number().digits(10)).setUse(ContactPoint.ContactPointUse.HOME),
+                new ContactPoint().setSystem(ContactPoint.ContactPointSystem.EMAIL).setValue(faker.internet().emailAddress()).setUse(ContactPoint.ContactPointUse.WORK));
+    }
+
+    private List<Identifier> identifiers() {
+        return Arrays.asList(
+                new Identifier().setSystem("http://hl7.org/fhir/sid/us-ssn").setValue(faker.number().digits(9)),
+                new Identifier().setSystem("urn:oid:2.16.840.1.113883.4.3.24").setValue(faker.number().digits(8)));
+    }
+
+    private Reference reference(String resourceType, String display) {
+        return new Reference(resourceType + "/" + id()).setDisplay(display);
+    }
+
+    private CodeableConcept codeableConcept(String system, String code, String display) {
+        CodeableConcept codeableConcept = new CodeableConcept();
+        codeableConcept.addCoding().setSystem(system).setCode(code).setDisplay(display);
+        return codeableConcept;
+    }
+
+    private Date pastDate(int maxDays) {
+        return new Date(REFERENCE_TIME_IN_MS - (1 + random.nextInt(maxDays)) * DAY_IN_MS);
+    }
+
+    private Date futureDate(int maxDays) {
+        return new Date(REFERENCE_TIME_IN_MS + (1 + random.nextInt(maxDays)) * DAY_IN_MS);
+    }
+
+    @Configuration
+    @Import(ModelMapperConfig.class)
+    @ComponentScan(basePackages = "gov.samhsa.ocp.ocpfis.service.mapping",
+            excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = AppointmentToAppointmentDtoConverter.class))
+    static class MappingConfig {
+    }
+}
@@ -0,0 +1,28 @@
+package gov.samhsa.ocp.ocpfis.config;
+
+import gov.samhsa.ocp.ocpfis.util.FhirCallTracker;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+
+/**
+ * Names the service class making the FHIR calls for {@link FhirClientCallMetrics}, when a service is entered rather
+ * than by walking the stack of every call. Calls between services are named after the innermost one.
+ * <p>
+ * Only the *ServiceImpl classes are advised. They are injected by their class too, so they are proxied by class, see
+ * {@link FhirServiceConfig}.
+ */
+@Aspect
+public class FhirCallingServiceAspect {
+
+    @Around("within(gov.samhsa.ocp.ocpfis.service.*ServiceImpl) && execution(public * *(..))")
+    public Object trackCallingService(ProceedingJoinPoint joinPoint) throws Throwable {
+        String previousCaller = FhirCallTracker.enterCaller(AopUtils.getTargetClass(joinPoint.getTarget()).getSimpleName());
+        try {
+            return joinPoint.proceed();
+        } finally {
+            FhirCallTracker.restoreCaller(previousCaller);
+        }
+    }
+}
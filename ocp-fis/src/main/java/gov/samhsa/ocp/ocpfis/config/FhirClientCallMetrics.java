@@ -0,0 +1,264 @@
+package gov.samhsa.ocp.ocpfis.config;
+
+import ca.uhn.fhir.rest.api.Constants;
+import gov.samhsa.ocp.ocpfis.util.FhirCallTracker;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.execchain.ClientExecChain;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Times every call the FHIR client sends to the FHIR server and exposes the calls on the actuator metrics endpoint,
+ * named fhir.client.calls.[calling service class].[resource type].[interaction].*
+ * <p>
+ * Runs in the HTTP client, after the FHIR client interceptors, so waiting for an access token is not counted. A call is
+ * timed from taking a connection until its response headers arrive. Calls failing to connect or timing out are counted
+ * too, and the response bytes are counted as they are read off the connection, before they are decompressed.
+ */
+public class FhirClientCallMetrics implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "fhir.client.calls.";
+
+    // Calls made outside of the services, see FhirCallingServiceAspect
+    private static final String UNKNOWN_CALLER = "unknown";
+
+    private static final long[] LATENCY_BUCKETS_IN_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final String serverUrl;
+
+    // The HTTP client sends the path only, unless it goes through a proxy
+    private final String serverPath;
+
+    private final Map<String, CallStats> callStatsByKey = new ConcurrentHashMap<>();
+
+    public FhirClientCallMetrics(String serverUrl) {
+        this.serverUrl = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+        this.serverPath = URI.create(this.serverUrl).getRawPath();
+    }
+
+    /**
+     * @param mainExec the HTTP client step that connects to the server and exchanges one request and response
+     * @return the step, timing each exchange and counting the response bytes
+     */
+    public ClientExecChain wrap(ClientExecChain mainExec) {
+        return (route, request, context, execAware) -> {
+            String key = FhirCallTracker.currentCaller().orElse(UNKNOWN_CALLER) + "."
+                    + getResourceTypeAndInteraction(request.getRequestLine().getMethod(), request.getRequestLine().getUri());
+            CallStats callStats = callStatsByKey.computeIfAbsent(key, newKey -> new CallStats());
+            long startedAtInNanos = System.nanoTime();
+            CloseableHttpResponse response;
+            try {
+                response = mainExec.execute(route, request, context, execAware);
+            } catch (IOException | HttpException | RuntimeException e) {
+                long elapsedInMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtInNanos);
+                callStats.recordFailure(elapsedInMs);
+                FhirCallTracker.recordCall(elapsedInMs);
+                throw e;
+            }
+            long elapsedInMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtInNanos);
+            callStats.record(elapsedInMs, response.getStatusLine().getStatusCode());
+            FhirCallTracker.recordCall(elapsedInMs);
+            if (response.getEntity() != null) {
+                response.setEntity(new ByteCountingEntity(response.getEntity(), callStats));
+            }
+            return response;
+        };
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        callStatsByKey.forEach((key, callStats) -> callStats.addTo(metrics, METRIC_PREFIX + key + "."));
+        return metrics;
+    }
+
+    private String getResourceTypeAndInteraction(String httpVerb, String uri) {
+        String relativeUri = uri;
+        if (uri.startsWith(serverUrl)) {
+            relativeUri = uri.substring(serverUrl.length());
+        } else if (uri.startsWith(serverPath)) {
+            relativeUri = uri.substring(serverPath.length());
+        }
+        int queryStart = relativeUri.indexOf('?');
+        String path = queryStart < 0 ? relativeUri : relativeUri.substring(0, queryStart);
+        String query = queryStart < 0 ? "" : relativeUri.substring(queryStart + 1);
+
+        if (query.startsWith(Constants.PARAM_PAGINGACTION + "=") || query.contains("&" + Constants.PARAM_PAGINGACTION + "=")) {
+            return "searchset.page";
+        }
+
+        List<String> segments = Arrays.stream(path.split("/")).filter(segment -> !segment.isEmpty()).collect(toList());
+        String resourceType = segments.isEmpty() || segments.get(0).startsWith("$") ? "system" : segments.get(0);
+        if (segments.stream().anyMatch(segment -> segment.startsWith("$"))) {
+            return resourceType + ".operation";
+        }
+
+        switch (httpVerb) {
+            case "GET":
+                if (segments.size() == 4 && segments.get(2).equals(Constants.PARAM_HISTORY)) {
+                    return resourceType + ".vread";
+                }
+                if (segments.contains(Constants.PARAM_HISTORY)) {
+                    return resourceType + ".history";
+                }
+                return resourceType + (segments.size() == 2 ? ".read" : ".search");
+            case "POST":
+                if (segments.isEmpty()) {
+                    return resourceType + ".transaction";
+                }
+                return resourceType + (segments.contains(Constants.PARAM_SEARCH) ? ".search" : ".create");
+            case "PUT":
+                return resourceType + ".update";
+            case "DELETE":
+                return resourceType + ".delete";
+            default:
+                return resourceType + "." + httpVerb.toLowerCase();
+        }
+    }
+
+    /**
+     * Counts the bytes of the response body as the caller reads them, on the thread that made the call.
+     */
+    private static class ByteCountingEntity extends HttpEntityWrapper {
+        private final CallStats callStats;
+
+        ByteCountingEntity(HttpEntity wrappedEntity, CallStats callStats) {
+            super(wrappedEntity);
+            this.callStats = callStats;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            InputStream content = super.getContent();
+            if (content == null) {
+                return null;
+            }
+            return new FilterInputStream(content) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        count(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int bytesRead = super.read(b, off, len);
+                    if (bytesRead > 0) {
+                        count(bytesRead);
+                    }
+                    return bytesRead;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long bytesSkipped = super.skip(n);
+                    if (bytesSkipped > 0) {
+                        count(bytesSkipped);
+                    }
+                    return bytesSkipped;
+                }
+            };
+        }
+
+        // The wrapped entity would write its content without it being counted
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            try (InputStream content = getContent()) {
+                if (content == null) {
+                    return;
+                }
+                byte[] buffer = new byte[4096];
+                int bytesRead;
+                while ((bytesRead = content.read(buffer)) != -1) {
+                    outStream.write(buffer, 0, bytesRead);
+                }
+            }
+        }
+
+        private void count(long bytes) {
+            callStats.recordResponseBytes(bytes);
+            FhirCallTracker.recordBytes(bytes);
+        }
+    }
+
+    private static class CallStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failedCount = new LongAdder();
+        private final LongAdder totalTimeInMs = new LongAdder();
+        private final LongAccumulator maxTimeInMs = new LongAccumulator(Math::max, 0);
+        private final LongAdder responseBytes = new LongAdder();
+        private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS_IN_MS.length];
+        private final Map<Integer, LongAdder> countByStatus = new ConcurrentHashMap<>();
+
+        CallStats() {
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                latencyBuckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long elapsedInMs, int status) {
+            recordTime(elapsedInMs);
+            countByStatus.computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+
+        // Connection failures and timeouts, the call has no status
+        void recordFailure(long elapsedInMs) {
+            recordTime(elapsedInMs);
+            failedCount.increment();
+        }
+
+        void recordResponseBytes(long bytes) {
+            responseBytes.add(bytes);
+        }
+
+        private void recordTime(long elapsedInMs) {
+            count.increment();
+            totalTimeInMs.add(elapsedInMs);
+            maxTimeInMs.accumulate(elapsedInMs);
+            for (int i = 0; i < LATENCY_BUCKETS_IN_MS.length; i++) {
+                if (elapsedInMs <= LATENCY_BUCKETS_IN_MS[i]) {
+                    latencyBuckets[i].increment();
+                    break;
+                }
+            }
+        }
+
+        void addTo(List<Metric<?>> metrics, String prefix) {
+            metrics.add(new Metric<>(prefix + "count", count.sum()));
+            metrics.add(new Metric<>(prefix + "failed", failedCount.sum()));
+            metrics.add(new Metric<>(prefix + "totalTimeInMs", totalTimeInMs.sum()));
+            metrics.add(new Metric<>(prefix + "maxTimeInMs", maxTimeInMs.get()));
+            metrics.add(new Metric<>(prefix + "responseBytes", responseBytes.sum()));
+            // Cumulative, each bucket counts the calls that took at most its bound
+            long callsInBuckets = 0;
+            for (int i = 0; i < LATENCY_BUCKETS_IN_MS.length; i++) {
+                callsInBuckets += latencyBuckets[i].sum();
+                metrics.add(new Metric<>(prefix + "latency.le." + LATENCY_BUCKETS_IN_MS[i], callsInBuckets));
+            }
+            countByStatus.forEach((status, statusCount) -> metrics.add(new Metric<>(prefix + "status." + status, statusCount.sum())));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package gov.samhsa.ocp.ocpfis.config;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class FhirClientPoolMetrics implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "fhir.client.pool.";
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    public FhirClientPoolMetrics(PoolingHttpClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        PoolStats totalStats = connectionManager.getTotalStats();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "leased", totalStats.getLeased()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "available", totalStats.getAvailable()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "pending", totalStats.getPending()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "max", totalStats.getMax()));
+        return metrics;
+    }
+}
@@ -3,48 +3,111 @@
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.apache.GZipContentInterceptor;
 import ca.uhn.fhir.validation.FhirValidator;
 import gov.samhsa.ocp.ocpfis.service.ClientCredentialsBearerTokenAuthInterceptor;
+import gov.samhsa.ocp.ocpfis.service.OAuth2AccessTokenHolder;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.execchain.ClientExecChain;
 import org.hl7.fhir.dstu3.hapi.validation.DefaultProfileValidationSupport;
 import org.hl7.fhir.dstu3.hapi.validation.FhirInstanceValidator;
 import org.hl7.fhir.dstu3.hapi.validation.ValidationSupportChain;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.oauth2.client.OAuth2RestTemplate;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.Optional;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
+//The advised services are also injected by their class, e.g. PractitionerServiceImpl into CareTeamServiceImpl
+@EnableAspectJAutoProxy(proxyTargetClass = true)
 @Slf4j
 public class FhirServiceConfig {
 
     private final FisProperties fisProperties;
 
-    private Optional<OAuth2RestTemplate> oAuth2RestTemplate;
+    private Optional<OAuth2AccessTokenHolder> oAuth2AccessTokenHolder;
 
 
     @Autowired
-    public FhirServiceConfig(FisProperties fisProperties, Optional<OAuth2RestTemplate> oAuth2RestTemplate) {
+    public FhirServiceConfig(FisProperties fisProperties, Optional<OAuth2AccessTokenHolder> oAuth2AccessTokenHolder) {
         this.fisProperties = fisProperties;
-        this.oAuth2RestTemplate = oAuth2RestTemplate;
+        this.oAuth2AccessTokenHolder = oAuth2AccessTokenHolder;
+    }
+
+    @Bean
+    public PoolingHttpClientConnectionManager fhirClientConnectionManager() {
+        FisProperties.Fhir.Transport transport = fisProperties.getFhir().getTransport();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(transport.getConnectionTtlInMs(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(transport.getMaxTotalConnections());
+        connectionManager.setDefaultMaxPerRoute(transport.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity(transport.getValidateAfterInactivityInMs());
+        return connectionManager;
+    }
+
+    @Bean
+    public FhirClientPoolMetrics fhirClientPoolMetrics() {
+        return new FhirClientPoolMetrics(fhirClientConnectionManager());
+    }
+
+    @Bean
+    public FhirClientCallMetrics fhirClientCallMetrics() {
+        return new FhirClientCallMetrics(fisProperties.getFhir().getServerUrl());
+    }
+
+    @Bean
+    public FhirCallingServiceAspect fhirCallingServiceAspect() {
+        return new FhirCallingServiceAspect();
+    }
+
+    /**
+     * Bounded pool for the concurrent FHIR page fetches and queries of all requests, shut down with the application.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor fhirQueryExecutor() {
+        FisProperties.Fhir.QueryExecutor queryExecutor = fisProperties.getFhir().getQueryExecutor();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(queryExecutor.getPoolSize());
+        executor.setMaxPoolSize(queryExecutor.getPoolSize());
+        executor.setQueueCapacity(queryExecutor.getQueueCapacity());
+        executor.setThreadNamePrefix("fhir-query-");
+        //When the pool is saturated the requesting thread runs the query itself instead of failing it
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        //On shutdown let the queries in flight finish, no query outlives the client socket timeout
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds((int) TimeUnit.MILLISECONDS.toSeconds(Long.parseLong(fisProperties.getFhir().getClientSocketTimeoutInMs())));
+        return executor;
     }
 
     @Bean
     public FhirContext fhirContext() {
         FhirContext fhirContext = FhirContext.forDstu3();
         fhirContext.getRestfulClientFactory().setSocketTimeout(Integer.parseInt(fisProperties.getFhir().getClientSocketTimeoutInMs()));
+        fhirContext.getRestfulClientFactory().setConnectTimeout(fisProperties.getFhir().getTransport().getConnectTimeoutInMs());
+        fhirContext.getRestfulClientFactory().setConnectionRequestTimeout(fisProperties.getFhir().getTransport().getConnectionRequestTimeoutInMs());
+        fhirContext.getRestfulClientFactory().setHttpClient(fhirHttpClient());
         return fhirContext;
     }
 
     @Bean
     public IGenericClient fhirClient() {
         IGenericClient fhirClient = fhirContext().newRestfulGenericClient(fisProperties.getFhir().getServerUrl());
-        if (fisProperties.getFhir().isServerSecurityEnabled() && oAuth2RestTemplate.isPresent()) {
-            ClientCredentialsBearerTokenAuthInterceptor authInterceptor = new ClientCredentialsBearerTokenAuthInterceptor(oAuth2RestTemplate.get());
+        if (fisProperties.getFhir().isServerSecurityEnabled() && oAuth2AccessTokenHolder.isPresent()) {
+            ClientCredentialsBearerTokenAuthInterceptor authInterceptor = new ClientCredentialsBearerTokenAuthInterceptor(oAuth2AccessTokenHolder.get());
             fhirClient.registerInterceptor(authInterceptor);
         }
+        if (fisProperties.getFhir().getTransport().isRequestCompressionEnabled()) {
+            fhirClient.registerInterceptor(new GZipContentInterceptor());
+        }
         return fhirClient;
     }
 
@@ -53,6 +116,38 @@ public IParser fhirJsonParser() {
         return fhirContext().newJsonParser();
     }
 
+    private CloseableHttpClient fhirHttpClient() {
+        FisProperties.Fhir.Transport transport = fisProperties.getFhir().getTransport();
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setSocketTimeout(Integer.parseInt(fisProperties.getFhir().getClientSocketTimeoutInMs()))
+                .setConnectTimeout(transport.getConnectTimeoutInMs())
+                .setConnectionRequestTimeout(transport.getConnectionRequestTimeoutInMs())
+                .build();
+
+        FhirClientCallMetrics callMetrics = fhirClientCallMetrics();
+        HttpClientBuilder httpClientBuilder = new HttpClientBuilder() {
+            //Times the calls on the wire, after the FHIR client interceptors have added the access token
+            @Override
+            protected ClientExecChain decorateMainExec(ClientExecChain mainExec) {
+                return callMetrics.wrap(mainExec);
+            }
+        };
+        httpClientBuilder.setConnectionManager(fhirClientConnectionManager())
+                .setDefaultRequestConfig(requestConfig)
+                //Honor the server Keep-Alive header, but never keep a connection longer than configured
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? Math.min(keepAlive, transport.getKeepAliveInMs()) : transport.getKeepAliveInMs();
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(transport.getMaxIdleTimeInMs(), TimeUnit.MILLISECONDS);
+
+        if (!transport.isResponseCompressionEnabled()) {
+            httpClientBuilder.disableContentCompression();
+        }
+        return httpClientBuilder.build();
+    }
+
     @Bean
     public FhirValidator fhirValidator() {
         FhirValidator validator = fhirContext().newValidator();
@@ -10,6 +10,8 @@
 import org.springframework.context.annotation.Configuration;
 
 import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
@@ -88,6 +90,15 @@ public class FisProperties {
     @NotNull
     private boolean provenanceEnabled;
 
+    @Valid
+    private Cache cache = new Cache();
+
+    @Valid
+    private Task task = new Task();
+
+    @Valid
+    private Export export = new Export();
+
     @Data
     public static class Fhir {
 
@@ -101,7 +112,186 @@ public static class Fhir {
         private EncodingEnum encoding = EncodingEnum.JSON;
         @NotNull
         private int defaultResourceBundlePageSize;
+        // Pages of one search fetched at the same time
+        @Min(1)
+        @Max(32)
+        private int pageFetchParallelism = 4;
+        // Page cursors are used for this long before the search is run again, keep it below the search cache expiry of the FHIR server
+        @Min(1)
+        private int searchCursorTtlInSeconds = 600;
+        // How often the search parameters supported by the FHIR server are read again
+        @Min(1)
+        private long searchParameterRefreshIntervalInMs = 3600000;
+        // Ids per _id or reference search, longer lists are searched in chunks to keep the URL short
+        @Min(1)
+        private int maxIdsPerSearch = 50;
+        // Included resources the FHIR server returns per search page at most, a page with that many is treated as truncated
+        @Min(1)
+        private int maxIncludesPerPage = 1000;
+        @Valid
+        private Transport transport = new Transport();
+        @Valid
+        private AccessToken accessToken = new AccessToken();
+        @Valid
+        private CallBudget callBudget = new CallBudget();
+        @Valid
+        private QueryExecutor queryExecutor = new QueryExecutor();
+
+        @Data
+        public static class Transport {
+            @Min(1)
+            private int maxTotalConnections = 100;
+            @Min(1)
+            private int maxConnectionsPerRoute = 50;
+            @Min(0)
+            private int connectTimeoutInMs = 10000;
+            // Time to wait for a free pooled connection
+            @Min(0)
+            private int connectionRequestTimeoutInMs = 10000;
+            // Connections are never reused after this, 0 keeps them indefinitely
+            @Min(0)
+            private long connectionTtlInMs = 300000;
+            @Min(1)
+            private long keepAliveInMs = 60000;
+            @Min(1)
+            private long maxIdleTimeInMs = 30000;
+            @Min(1)
+            private int validateAfterInactivityInMs = 2000;
+            private boolean responseCompressionEnabled = true;
+            private boolean requestCompressionEnabled = false;
+        }
+
+        @Data
+        public static class AccessToken {
+            // Refresh once this fraction of the token lifetime has passed
+            @DecimalMin("0.1")
+            @DecimalMax("0.95")
+            private double refreshAtLifetimeFraction = 0.75;
+            @Min(100)
+            private long retryIntervalInMs = 10000;
+        }
+
+        @Data
+        public static class CallBudget {
+            // Inbound requests making more FHIR calls or waiting longer on FHIR than this are logged
+            @Min(1)
+            private int maxCalls = 20;
+            @Min(1)
+            private long maxTimeInMs = 3000;
+            // Fails the request instead of only logging it
+            private boolean failWhenExceeded = false;
+        }
+
+        @Data
+        public static class QueryExecutor {
+            // Threads shared by all requests for concurrent page fetches and queries
+            @Min(1)
+            private int poolSize = 16;
+            // Queued queries beyond this are run by the requesting thread itself
+            @Min(0)
+            private int queueCapacity = 100;
+        }
+    }
+
+    @Data
+    public static class Task {
+        // Upcoming tasks are searched among tasks whose execution period ends at most this many days ago
+        @Min(0)
+        private int upcomingLookbackInDays = 365;
+    }
+
+    @Data
+    public static class Export {
+        // Streamed NDJSON exports are cut off after this long, other async requests keep the default timeout
+        @Min(1)
+        private long requestTimeoutInMs = 3600000;
+    }
+
+    @Data
+    public static class Cache {
+
+        @Valid
+        private Lookup lookup = new Lookup();
+
+        @Valid
+        private Profile profile = new Profile();
 
+        @Valid
+        private Identifier identifier = new Identifier();
+
+        @Valid
+        private Reference reference = new Reference();
+
+        @Valid
+        private Consent consent = new Consent();
+
+        @Valid
+        private Membership membership = new Membership();
+
+        @Valid
+        private CareTeam careTeam = new CareTeam();
+
+        @Data
+        public static class Lookup {
+            @Min(1)
+            private long maximumSize = 200;
+            @Min(1)
+            private long ttlInSeconds = 86400;
+            // Entries read after this are reloaded in the background while the cached value is still served
+            @Min(1)
+            private long refreshAfterInSeconds = 3600;
+        }
+
+        @Data
+        public static class Profile {
+            @Min(1)
+            private long refreshIntervalInMs = 3600000;
+        }
+
+        @Data
+        public static class Identifier {
+            @Min(1)
+            private long pollIntervalInMs = 30000;
+            // Each delta also returns the resources updated this long before the previous one, for writes committed late
+            @Min(0)
+            private long watermarkOverlapInMs = 5000;
+        }
+
+        @Data
+        public static class Reference {
+            @Min(1)
+            private long maximumSize = 5000;
+            @Min(1)
+            private long ttlInSeconds = 60;
+        }
+
+        @Data
+        public static class Consent {
+            @Min(1)
+            private long maximumSize = 10000;
+            @Min(1)
+            private long ttlInSeconds = 30;
+        }
+
+        @Data
+        public static class Membership {
+            @Min(1)
+            private long pollIntervalInMs = 30000;
+            // Each delta also returns the resources updated this long before the previous one, for writes committed late
+            @Min(0)
+            private long watermarkOverlapInMs = 5000;
+            // Deletes made by other clients are dropped from the index at this interval
+            @Min(1)
+            private long reconcileIntervalInMs = 3600000;
+        }
+
+        @Data
+        public static class CareTeam {
+            @Min(1)
+            private long maximumSize = 5000;
+            @Min(1)
+            private long ttlInSeconds = 300;
+        }
     }
 
     @Data
@@ -1,5 +1,6 @@
 package gov.samhsa.ocp.ocpfis.config;
 
+import gov.samhsa.ocp.ocpfis.service.OAuth2AccessTokenHolder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.security.oauth2.OAuth2ClientProperties;
@@ -37,4 +38,9 @@ public OAuth2ClientContext oAuth2ClientContext() {
     public OAuth2RestTemplate createRestTemplate(OAuth2ClientContext oAuth2ClientContext, ClientCredentialsResourceDetails resource) {
         return new OAuth2RestTemplate(resource, oAuth2ClientContext);
     }
+
+    @Bean(destroyMethod = "shutdown")
+    public OAuth2AccessTokenHolder oAuth2AccessTokenHolder(OAuth2RestTemplate oAuth2RestTemplate, FisProperties fisProperties) {
+        return new OAuth2AccessTokenHolder(oAuth2RestTemplate, fisProperties);
+    }
 }
@@ -0,0 +1,31 @@
+package gov.samhsa.ocp.ocpfis.config;
+
+import gov.samhsa.ocp.ocpfis.web.FhirCallBudgetInterceptor;
+import gov.samhsa.ocp.ocpfis.web.NdjsonExportTimeoutInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+@Configuration
+public class WebMvcConfig extends WebMvcConfigurerAdapter {
+
+    private final FhirCallBudgetInterceptor fhirCallBudgetInterceptor;
+
+    private final FisProperties fisProperties;
+
+    public WebMvcConfig(FhirCallBudgetInterceptor fhirCallBudgetInterceptor, FisProperties fisProperties) {
+        this.fhirCallBudgetInterceptor = fhirCallBudgetInterceptor;
+        this.fisProperties = fisProperties;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(fhirCallBudgetInterceptor);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new NdjsonExportTimeoutInterceptor(fisProperties.getExport().getRequestTimeoutInMs()));
+    }
+}
@@ -52,7 +52,11 @@ public enum LookupPathUrls {
     FM_STATUS("financial resource status code", Constants.FM_STATUS_PATH),
     COVERAGE_TYPE("coverage type", Constants.COVERAGE_TYPE_PATH),
     EOC_STATUS("episode of care status", Constants.EOC_STATUS_PATH),
-    EOC_TYPE("episode of care type", Constants.EOC_TYPE_PATH);
+    EOC_TYPE("episode of care type", Constants.EOC_TYPE_PATH),
+    US_CORE_RACE("omb-race-category", Constants.US_CORE_RACE_PATH),
+    US_CORE_RACE_VALUE_SET("omb-race-category", Constants.US_CORE_RACE_VALUE_SET_PATH),
+    US_CORE_ETHNICITY("omb-ethnicity-category", Constants.US_CORE_ETHNICITY_PATH),
+    US_CORE_ETHNICITY_VALUE_SET("omb-ethnicity-category", Constants.US_CORE_ETHNICITY_VALUE_SET_PATH);
 
     private final String type;
     private final String urlPath;
@@ -123,5 +127,9 @@ private static class Constants {
         static final String COVERAGE_TYPE_PATH = "/ValueSet/$expand?url=http://hl7.org/fhir/ValueSet/coverage-type";
         static final String EOC_STATUS_PATH = "/ValueSet/$expand?url=http://hl7.org/fhir/ValueSet/episode-of-care-status";
         static final String EOC_TYPE_PATH = "/ValueSet/$expand?url=http://hl7.org/fhir/ValueSet/episodeofcare-type";
+        static final String US_CORE_RACE_PATH = "/ValueSet/$expand?url=http://hl7.org/fhir/us/core/ValueSet/omb-race-category";
+        static final String US_CORE_RACE_VALUE_SET_PATH = "/ValueSet/omb-race-category";
+        static final String US_CORE_ETHNICITY_PATH = "/ValueSet/$expand?url=http://hl7.org/fhir/us/core/ValueSet/omb-ethnicity-category";
+        static final String US_CORE_ETHNICITY_VALUE_SET_PATH = "/ValueSet/omb-ethnicity-category";
     }
 }
@@ -23,6 +23,7 @@
 import gov.samhsa.ocp.ocpfis.util.DateUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirDtoUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
@@ -61,8 +62,10 @@ public class ActivityDefinitionServiceImpl implements ActivityDefinitionService
 
     private final ProvenanceUtil provenanceUtil;
 
+    private final FhirProfileRegistry fhirProfileRegistry;
+
     @Autowired
-    public ActivityDefinitionServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, FhirValidator fhirValidator, LookUpService lookUpService, FisProperties fisProperties, OrganizationService organizationService, ProvenanceUtil provenanceUtil) {
+    public ActivityDefinitionServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, FhirValidator fhirValidator, LookUpService lookUpService, FisProperties fisProperties, OrganizationService organizationService, ProvenanceUtil provenanceUtil, FhirProfileRegistry fhirProfileRegistry) {
         this.modelMapper = modelMapper;
         this.fhirClient = fhirClient;
         this.fhirValidator = fhirValidator;
@@ -70,6 +73,7 @@ public ActivityDefinitionServiceImpl(ModelMapper modelMapper, IGenericClient fhi
         this.fisProperties = fisProperties;
         this.organizationService = organizationService;
         this.provenanceUtil = provenanceUtil;
+        this.fhirProfileRegistry = fhirProfileRegistry;
     }
 
     @Override
@@ -164,7 +168,7 @@ public void createActivityDefinition(ActivityDefinitionDto activityDefinitionDto
             ActivityDefinition activityDefinition = ActivityDefinitionDtoToActivityDefinitionConverter.map(activityDefinitionDto, organizationId, version);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setActivityDefinitionProfileMetaData(fhirClient, activityDefinition);
+            FhirProfileUtil.setActivityDefinitionProfileMetaData(fhirProfileRegistry, activityDefinition);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, activityDefinition, Optional.empty(), ResourceType.ActivityDefinition.name(), "Create ActivityDefinition");
@@ -193,7 +197,7 @@ public void updateActivityDefinition(ActivityDefinitionDto activityDefinitionDto
         activityDefinition.setId(activityDefinitionId);
 
         //Set Profile Meta Data
-        FhirProfileUtil.setActivityDefinitionProfileMetaData(fhirClient, activityDefinition);
+        FhirProfileUtil.setActivityDefinitionProfileMetaData(fhirProfileRegistry, activityDefinition);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, activityDefinition, Optional.of(activityDefinitionId), ResourceType.ActivityDefinition.name(), "Update ActivityDefinition");
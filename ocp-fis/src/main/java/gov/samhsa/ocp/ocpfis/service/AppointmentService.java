@@ -8,8 +8,11 @@
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface AppointmentService {
+    Stream<AppointmentDto> exportAppointments(Optional<List<String>> statusList, Optional<String> patientId, Optional<String> practitionerId);
+
     PageDto<AppointmentDto> getAppointments(Optional<List<String>> statusList, Optional<String> requesterReference, Optional<String> patientId, Optional<String> practitionerId, Optional<String> searchKey, Optional<String> searchValue, Optional<Boolean> showPastAppointments, Optional<String> filterDateOption, Optional<Boolean> sortByStartTimeAsc, Optional<Integer> pageNumber, Optional<Integer> pageSize);
 
     List<AppointmentDto> getNonDeclinedAppointmentsWithNoPagination(Optional<List<String>> statusList, Optional<String> patientId, Optional<String> practitionerId, Optional<String> searchKey, Optional<String> searchValue, Optional<Boolean> showPastAppointments, Optional<Boolean> sortByStartTimeAsc);
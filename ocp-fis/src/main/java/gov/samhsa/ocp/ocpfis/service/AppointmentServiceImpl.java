@@ -24,11 +24,11 @@
 import gov.samhsa.ocp.ocpfis.service.exception.PreconditionFailedException;
 import gov.samhsa.ocp.ocpfis.service.exception.ResourceNotFoundException;
 import gov.samhsa.ocp.ocpfis.service.mapping.AppointmentToAppointmentDtoConverter;
-import gov.samhsa.ocp.ocpfis.service.mapping.CareTeamToCareTeamDtoConverter;
 import gov.samhsa.ocp.ocpfis.service.mapping.dtotofhirmodel.AppointmentDtoToAppointmentConverter;
 import gov.samhsa.ocp.ocpfis.util.DateUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirDtoUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
@@ -37,7 +37,6 @@
 import org.hl7.fhir.dstu3.model.Appointment;
 import org.hl7.fhir.dstu3.model.AppointmentResponse;
 import org.hl7.fhir.dstu3.model.Bundle;
-import org.hl7.fhir.dstu3.model.CareTeam;
 import org.hl7.fhir.dstu3.model.HealthcareService;
 import org.hl7.fhir.dstu3.model.Location;
 import org.hl7.fhir.dstu3.model.Patient;
@@ -49,15 +48,18 @@
 import org.hl7.fhir.dstu3.model.StringType;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static ca.uhn.fhir.rest.api.Constants.PARAM_LASTUPDATED;
 import static java.util.stream.Collectors.toList;
@@ -81,8 +83,16 @@ public class AppointmentServiceImpl implements AppointmentService {
 
     private final ParticipantService participantService;
 
+    private final ReferenceResolver referenceResolver;
+
+    private final CareTeamGraph careTeamGraph;
+
+    private final FhirProfileRegistry fhirProfileRegistry;
+
+    private final AsyncTaskExecutor fhirQueryExecutor;
+
     @Autowired
-    public AppointmentServiceImpl(AppointmentToAppointmentDtoConverter appointmentToAppointmentDtoConverter, IGenericClient fhirClient, FhirValidator fhirValidator, FisProperties fisProperties, PatientService patientService, ProvenanceUtil provenanceUtil, CareTeamServiceImpl careTeamService, ParticipantService participantService) {
+    public AppointmentServiceImpl(AppointmentToAppointmentDtoConverter appointmentToAppointmentDtoConverter, IGenericClient fhirClient, FhirValidator fhirValidator, FisProperties fisProperties, PatientService patientService, ProvenanceUtil provenanceUtil, CareTeamServiceImpl careTeamService, ParticipantService participantService, ReferenceResolver referenceResolver, CareTeamGraph careTeamGraph, FhirProfileRegistry fhirProfileRegistry, AsyncTaskExecutor fhirQueryExecutor) {
         this.appointmentToAppointmentDtoConverter = appointmentToAppointmentDtoConverter;
         this.fhirClient = fhirClient;
         this.fhirValidator = fhirValidator;
@@ -91,6 +101,10 @@ public AppointmentServiceImpl(AppointmentToAppointmentDtoConverter appointmentTo
         this.provenanceUtil = provenanceUtil;
         this.careTeamService = careTeamService;
         this.participantService = participantService;
+        this.referenceResolver = referenceResolver;
+        this.careTeamGraph = careTeamGraph;
+        this.fhirProfileRegistry = fhirProfileRegistry;
+        this.fhirQueryExecutor = fhirQueryExecutor;
     }
 
     @Override
@@ -107,7 +121,7 @@ public void createAppointment(AppointmentDto appointmentDto, Optional<String> lo
         //Set created Date
         appointment.setCreated(new Date());
         //Set Profile Meta Data
-        FhirProfileUtil.setAppointmentProfileMetaData(fhirClient, appointment);
+        FhirProfileUtil.setAppointmentProfileMetaData(fhirProfileRegistry, appointment);
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, appointment, Optional.empty(), ResourceType.Appointment.name(), "Create Appointment");
         //Create
@@ -136,7 +150,7 @@ public void updateAppointment(String appointmentId, AppointmentDto appointmentDt
         }
 
         //Set Profile Meta Data
-        FhirProfileUtil.setAppointmentProfileMetaData(fhirClient, appointment);
+        FhirProfileUtil.setAppointmentProfileMetaData(fhirProfileRegistry, appointment);
 
         // Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, appointment, Optional.of(appointmentId), ResourceType.Appointment.name(), "Update Appointment");
@@ -152,26 +166,11 @@ public void updateAppointment(String appointmentId, AppointmentDto appointmentDt
 
     @Override
     public List<ParticipantReferenceDto> getAppointmentParticipants(String patientId, Optional<List<String>> roles, Optional<String> appointmentId) {
-        List<ReferenceDto> participantsByRoles = new ArrayList<>();
         List<ParticipantReferenceDto> participantsSelected = new ArrayList<>();
 
-        Bundle careTeamBundle = (Bundle) FhirOperationUtil.searchNoCache(fhirClient, CareTeam.class, Optional.empty())
-                .where(new ReferenceClientParam("patient").hasId(patientId.trim()))
-                .include(CareTeam.INCLUDE_PARTICIPANT)
-                .returnBundle(Bundle.class).execute();
-
-        if (careTeamBundle != null) {
-            List<Bundle.BundleEntryComponent> retrievedCareTeams = careTeamBundle.getEntry();
-
-            if (retrievedCareTeams != null) {
-                List<CareTeam> careTeams = retrievedCareTeams.stream()
-                        .filter(bundle -> bundle.getResource().getResourceType().equals(ResourceType.CareTeam))
-                        .map(careTeamMember -> (CareTeam) careTeamMember.getResource()).collect(toList());
-
-                participantsByRoles = careTeams.stream()
-                        .flatMap(it -> CareTeamToCareTeamDtoConverter.mapToParticipants(it, roles, fhirClient).stream()).collect(toList());
-            }
-        }
+        List<ReferenceDto> participantsByRoles = careTeamGraph.getMembersOfPatient(patientId.trim(), roles).stream()
+                .map(CareTeamGraph.Member::toReferenceDto)
+                .collect(toList());
 
         //retrieve recipients by Id
         List<String> recipients = new ArrayList<>();
@@ -281,6 +280,25 @@ public PageDto<AppointmentDto> getAppointments(Optional<List<String>> statusList
         return new PageDto<>(appointmentDtos, numberOfAppointmentsPerPage, totalPages, currentPage, appointmentDtos.size(), otherPageAppointmentBundle.getTotal());
     }
 
+    @Override
+    public Stream<AppointmentDto> exportAppointments(Optional<List<String>> statusList, Optional<String> patientId, Optional<String> practitionerId) {
+        IQuery iQuery = FhirOperationUtil.searchNoCache(fhirClient, Appointment.class, Optional.empty());
+
+        patientId.ifPresent(patient -> iQuery.where(new ReferenceClientParam("patient").hasId(patient.trim())));
+        practitionerId.ifPresent(practitioner -> iQuery.where(new ReferenceClientParam("practitioner").hasId(practitioner.trim())));
+
+        Bundle firstPageAppointmentBundle = (Bundle) addStatusSearchConditions(iQuery, statusList)
+                .sort().ascending(PARAM_LASTUPDATED)
+                .count(fisProperties.getResourceSinglePageLimit())
+                .returnBundle(Bundle.class)
+                .execute();
+
+        return FhirOperationUtil.streamAllBundlePages(firstPageAppointmentBundle, Optional.of(fisProperties.getResourceSinglePageLimit()), fhirClient, fisProperties, fhirQueryExecutor)
+                .flatMap(appointmentBundle -> appointmentBundle.getEntry().stream())
+                .filter(entry -> entry.getResource().getResourceType().equals(ResourceType.Appointment))
+                .map(entry -> appointmentToAppointmentDtoConverter.map((Appointment) entry.getResource(), Optional.empty(), Optional.of(true)));
+    }
+
     @Override
     public List<AppointmentDto> getNonDeclinedAppointmentsWithNoPagination(Optional<List<String>> statusList, Optional<String> patientId, Optional<String> practitionerId, Optional<String> searchKey, Optional<String> searchValue, Optional<Boolean> showPastAppointments, Optional<Boolean> sortByStartTimeAsc) {
         IQuery iQuery = FhirOperationUtil.searchNoCache(fhirClient, Appointment.class, Optional.empty());
@@ -312,7 +330,7 @@ public List<AppointmentDto> getNonDeclinedAppointmentsWithNoPagination(Optional<
 
         Bundle bundle = (Bundle) iQuery.returnBundle(Bundle.class).execute();
 
-        List<Bundle.BundleEntryComponent> retrievedAppointments = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties);
+        List<Bundle.BundleEntryComponent> retrievedAppointments = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor);
 
         List<AppointmentDto> allCalendarAppointments = retrievedAppointments.stream()
                 .filter(retrievedBundle -> retrievedBundle.getResource().getResourceType().equals(ResourceType.Appointment)).map(retrievedAppointment ->
@@ -412,7 +430,7 @@ public void cancelAppointment(String appointmentId) {
         appointment.setStatus(Appointment.AppointmentStatus.CANCELLED);
 
         //Set Profile Meta Data
-        FhirProfileUtil.setAppointmentProfileMetaData(fhirClient, appointment);
+        FhirProfileUtil.setAppointmentProfileMetaData(fhirProfileRegistry, appointment);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, appointment, Optional.of(appointmentId), ResourceType.Appointment.name(), "Cancel Appointment");
@@ -429,7 +447,7 @@ public void acceptAppointment(String appointmentId, String actorReference) {
         appointment = setAppointmentStatusBasedOnParticipantActions(appointment);
 
         //Set Profile Meta Data
-        FhirProfileUtil.setAppointmentProfileMetaData(fhirClient, appointment);
+        FhirProfileUtil.setAppointmentProfileMetaData(fhirProfileRegistry, appointment);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, appointment, Optional.of(appointmentId), ResourceType.Appointment.name(), "Accept Appointment");
@@ -446,7 +464,7 @@ public void declineAppointment(String appointmentId, String actorReference) {
         appointment = setAppointmentStatusBasedOnParticipantActions(appointment);
 
         //Set Profile Meta Data
-        FhirProfileUtil.setAppointmentProfileMetaData(fhirClient, appointment);
+        FhirProfileUtil.setAppointmentProfileMetaData(fhirProfileRegistry, appointment);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, appointment, Optional.of(appointmentId), ResourceType.Appointment.name(), "Decline Appointment");
@@ -463,7 +481,7 @@ public void tentativelyAcceptAppointment(String appointmentId, String actorRefer
         appointment = setAppointmentStatusBasedOnParticipantActions(appointment);
 
         //Set Profile Meta Data
-        FhirProfileUtil.setAppointmentProfileMetaData(fhirClient, appointment);
+        FhirProfileUtil.setAppointmentProfileMetaData(fhirProfileRegistry, appointment);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, appointment, Optional.of(appointmentId), ResourceType.Appointment.name(), "Tentatively Accept Appointment");
@@ -483,7 +501,7 @@ public List<AppointmentParticipantReferenceDto> getAllHealthcareServicesReferenc
         }
         Bundle bundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(iQuery).returnBundle(Bundle.class).execute();
 
-        return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties).stream().map(entry -> {
+        return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor).stream().map(entry -> {
             HealthcareService hs = (HealthcareService) entry.getResource();
             AppointmentParticipantReferenceDto referenceDto = new AppointmentParticipantReferenceDto();
             referenceDto.setDisplay(hs.getName());
@@ -500,21 +518,24 @@ public List<AppointmentParticipantReferenceDto> getAllLocationReferences(String
         List<AppointmentParticipantReferenceDto> locationsRef = new ArrayList<>();
         if (SearchKeyEnum.LocationAppointmentParticipantSearchKey.HEALTHCARESERVICE.name().equalsIgnoreCase(resourceType)) {
             HealthcareService hcs = fhirClient.read().resource(HealthcareService.class).withId(resourceValue).execute();
-            locationsRef = hcs.getLocation().stream().map(l -> convertLocationRefToAppointmentParticipantReferenceDto(l))
+            Map<String, Location> locations = resolveLocations(hcs.getLocation());
+            locationsRef = hcs.getLocation().stream().map(l -> convertLocationRefToAppointmentParticipantReferenceDto(l, locations))
                     .collect(toList());
         } else if (SearchKeyEnum.LocationAppointmentParticipantSearchKey.PRACTITIONER.name().equalsIgnoreCase(resourceType)) {
             Bundle prRoleBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(PractitionerRole.class).where(new ReferenceClientParam("practitioner").hasId(resourceValue)))
                     .returnBundle(Bundle.class).execute();
-            locationsRef = FhirOperationUtil.getAllBundleComponentsAsList(prRoleBundle, Optional.empty(), fhirClient, fisProperties).stream()
-                    .flatMap(pr -> {
-                        PractitionerRole p = (PractitionerRole) pr.getResource();
-                        return p.getLocation().stream().map(l -> convertLocationRefToAppointmentParticipantReferenceDto(l));
-                    }).collect(toList());
+            List<PractitionerRole> practitionerRoles = FhirOperationUtil.getAllBundleComponentsAsList(prRoleBundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor).stream()
+                    .map(pr -> (PractitionerRole) pr.getResource())
+                    .collect(toList());
+            Map<String, Location> locations = resolveLocations(practitionerRoles.stream().flatMap(p -> p.getLocation().stream()).collect(toList()));
+            locationsRef = practitionerRoles.stream()
+                    .flatMap(p -> p.getLocation().stream().map(l -> convertLocationRefToAppointmentParticipantReferenceDto(l, locations)))
+                    .collect(toList());
         } else if (SearchKeyEnum.LocationAppointmentParticipantSearchKey.ORGANIZATION.name().equalsIgnoreCase(resourceType)) {
             IQuery iQuery = fhirClient.search().forResource(Location.class)
                     .where(new ReferenceClientParam("organization").hasId(resourceValue));
             Bundle bundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(iQuery).returnBundle(Bundle.class).execute();
-            locationsRef = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties).stream().map(entry -> {
+            locationsRef = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor).stream().map(entry -> {
                 Location location = (Location) entry.getResource();
                 AppointmentParticipantReferenceDto referenceDto = new AppointmentParticipantReferenceDto();
                 referenceDto.setDisplay(location.getName());
@@ -543,7 +564,7 @@ public List<AppointmentParticipantReferenceDto> getPractitionersReferences(Strin
                     .sort().descending(PARAM_LASTUPDATED).returnBundle(Bundle.class).execute();
 
             if (bundle != null && !bundle.getEntry().isEmpty()) {
-                practitionerReferences = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties)
+                practitionerReferences = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor)
                         .stream().filter(it -> it.getResource().getResourceType().equals(ResourceType.Practitioner))
                         .map(it -> {
                             Practitioner pr = (Practitioner) it.getResource();
@@ -583,7 +604,7 @@ private List<AppointmentParticipantReferenceDto> getAllPractitionersInOrganizati
                 .include(new Include("PractitionerRole:practitioner"))
                 .returnBundle(Bundle.class)
                 .execute();
-        List<Bundle.BundleEntryComponent> practitionerEntry = FhirOperationUtil.getAllBundleComponentsAsList(practitionerBundle, Optional.empty(), fhirClient, fisProperties);
+        List<Bundle.BundleEntryComponent> practitionerEntry = FhirOperationUtil.getAllBundleComponentsAsList(practitionerBundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor);
         //Get the practitioners belonging to the organization
         List<String> practitionerIds = practitionerEntry.stream()
                 .filter(retrievedPractitionerAndPractitionerRoles -> retrievedPractitionerAndPractitionerRoles.getResource().getResourceType().equals(ResourceType.Practitioner))
@@ -598,7 +619,7 @@ private List<AppointmentParticipantReferenceDto> getAllPractitionersInOrganizati
                 .returnBundle(Bundle.class)
                 .execute();
 
-        return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.of(numberOfPractitionersPerPage), fhirClient, fisProperties).stream()
+        return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.of(numberOfPractitionersPerPage), fhirClient, fisProperties, fhirQueryExecutor).stream()
                 .filter(retrievedPractitionerAndPractitionerRoles -> retrievedPractitionerAndPractitionerRoles.getResource().getResourceType().equals(ResourceType.Practitioner))
                 .map(entry -> {
                     Practitioner practitioner = (Practitioner) entry.getResource();
@@ -861,11 +882,17 @@ private void setParticipantStatusAsNeedsAction(AppointmentParticipantReferenceDt
         referenceDto.setParticipantStatusSystem(Optional.of(AppointmentResponse.ParticipantStatus.NEEDSACTION.getSystem()));
     }
 
-    private AppointmentParticipantReferenceDto convertLocationRefToAppointmentParticipantReferenceDto(Reference location) {
+    private Map<String, Location> resolveLocations(List<Reference> locationReferences) {
+        return referenceResolver.resolve(Location.class, locationReferences.stream()
+                .map(location -> location.getReference().split("/")[1])
+                .collect(Collectors.toSet()));
+    }
+
+    private AppointmentParticipantReferenceDto convertLocationRefToAppointmentParticipantReferenceDto(Reference location, Map<String, Location> locations) {
         AppointmentParticipantReferenceDto referenceDto = new AppointmentParticipantReferenceDto();
         referenceDto.setReference(location.getReference());
-        Location l = fhirClient.read().resource(Location.class).withId(location.getReference().split("/")[1]).execute();
-        referenceDto.setDisplay(l.getName());
+        Location l = locations.get(location.getReference().split("/")[1]);
+        referenceDto.setDisplay(l != null ? l.getName() : null);
         setParticipantTypeAsAttender(referenceDto);
         setParticipantRequiredAsInformationOnly(referenceDto);
         setParticipantStatusAsAccepted(referenceDto);
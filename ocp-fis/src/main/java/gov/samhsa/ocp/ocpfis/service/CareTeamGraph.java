@@ -0,0 +1,355 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.ReferenceClientParam;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.domain.ParticipantTypeEnum;
+import gov.samhsa.ocp.ocpfis.service.dto.ReferenceDto;
+import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.CareTeam;
+import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.DomainResource;
+import org.hl7.fhir.dstu3.model.HumanName;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.RelatedPerson;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Patient to care team to member graph. Care teams are cached by id together with their version and their members'
+ * names, roles and periods, so actor lookups for appointments, communications and care team views do not read every
+ * member from the FHIR server. Care team writes made through this service refresh the affected care team right away,
+ * the care teams of a patient are searched again once the membership index saw any other care team change.
+ */
+@Service
+@Slf4j
+public class CareTeamGraph implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "cache.careteam.";
+
+    private final IGenericClient fhirClient;
+
+    private final FisProperties fisProperties;
+
+    private final ReferenceResolver referenceResolver;
+
+    private final OrganizationMembershipService organizationMembershipService;
+
+    private final Cache<String, CareTeamNode> careTeams;
+
+    private final Cache<String, PatientCareTeams> careTeamIdsByPatient;
+
+    public CareTeamGraph(IGenericClient fhirClient, FisProperties fisProperties, ReferenceResolver referenceResolver, OrganizationMembershipService organizationMembershipService) {
+        this.fhirClient = fhirClient;
+        this.fisProperties = fisProperties;
+        this.referenceResolver = referenceResolver;
+        this.organizationMembershipService = organizationMembershipService;
+        FisProperties.Cache.CareTeam careTeamCache = fisProperties.getCache().getCareTeam();
+        this.careTeams = Caffeine.newBuilder()
+                .maximumSize(careTeamCache.getMaximumSize())
+                .expireAfterWrite(careTeamCache.getTtlInSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.careTeamIdsByPatient = Caffeine.newBuilder()
+                .maximumSize(careTeamCache.getMaximumSize())
+                .expireAfterWrite(careTeamCache.getTtlInSeconds(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    public List<CareTeamNode> getCareTeamsOfPatient(String patientId) {
+        //Care teams written on other paths, e.g. with a new patient or by other clients, change the generation
+        long membershipGeneration = organizationMembershipService.getGeneration();
+        PatientCareTeams patientCareTeams = careTeamIdsByPatient.getIfPresent(patientId);
+        if (patientCareTeams != null && patientCareTeams.getMembershipGeneration() == membershipGeneration) {
+            return getCareTeams(patientCareTeams.getCareTeamIds());
+        }
+
+        IQuery careTeamQuery = fhirClient.search().forResource(CareTeam.class)
+                .where(new ReferenceClientParam("patient").hasId(patientId));
+        Bundle careTeamBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(careTeamQuery).returnBundle(Bundle.class).execute();
+        List<CareTeamNode> nodes = put(FhirOperationUtil.getAllBundleComponentsAsList(careTeamBundle, Optional.empty(), fhirClient, fisProperties).stream()
+                .map(entry -> (CareTeam) entry.getResource())
+                .collect(toList()));
+
+        careTeamIdsByPatient.put(patientId, new PatientCareTeams(membershipGeneration, Collections.unmodifiableSet(nodes.stream().map(CareTeamNode::getId).collect(toSet()))));
+        return nodes;
+    }
+
+    /**
+     * @return the found care teams, ids that do not exist on the FHIR server are left out
+     */
+    public List<CareTeamNode> getCareTeams(Collection<String> careTeamIds) {
+        Map<String, CareTeamNode> found = new HashMap<>(careTeams.getAllPresent(careTeamIds));
+        List<String> idsToSearch = careTeamIds.stream().filter(id -> !found.containsKey(id)).distinct().collect(toList());
+
+        int maxIdsPerSearch = fisProperties.getFhir().getMaxIdsPerSearch();
+        for (int fromIndex = 0; fromIndex < idsToSearch.size(); fromIndex += maxIdsPerSearch) {
+            List<String> idChunk = idsToSearch.subList(fromIndex, Math.min(fromIndex + maxIdsPerSearch, idsToSearch.size()));
+            IQuery careTeamQuery = fhirClient.search().forResource(CareTeam.class)
+                    .where(new TokenClientParam("_id").exactly().codes(idChunk))
+                    .count(idChunk.size());
+            Bundle careTeamBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(careTeamQuery).returnBundle(Bundle.class).execute();
+            put(careTeamBundle.getEntry().stream()
+                    .map(entry -> (CareTeam) entry.getResource())
+                    .collect(toList()))
+                    .forEach(node -> found.put(node.getId(), node));
+        }
+
+        return careTeamIds.stream()
+                .distinct()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(toList());
+    }
+
+    /**
+     * @return the care teams the member (practitioner, organization, related person or patient) participates in
+     */
+    public List<CareTeamNode> getCareTeamsOfMember(String memberId) {
+        return getCareTeams(organizationMembershipService.getCareTeamIds(Collections.singletonList(memberId)));
+    }
+
+    /**
+     * @return members of the patient's care teams whose member reference contains one of the roles, all members without roles
+     */
+    public List<Member> getMembersOfPatient(String patientId, Optional<List<String>> roles) {
+        return getCareTeamsOfPatient(patientId).stream()
+                .flatMap(careTeam -> careTeam.getMembers().stream())
+                .filter(member -> !roles.isPresent() || roles.get().stream().anyMatch(role -> member.getReference().toUpperCase().contains(role.toUpperCase())))
+                .collect(toList());
+    }
+
+    /**
+     * Reads the care team again after it was created or updated.
+     */
+    public void refresh(String careTeamId) {
+        CareTeamNode previous = careTeams.getIfPresent(careTeamId);
+        try {
+            CareTeam careTeam = fhirClient.read().resource(CareTeam.class).withId(careTeamId).execute();
+            CareTeamNode node = put(Collections.singletonList(careTeam)).get(0);
+            if (previous != null && previous.getPatientId() != null && !previous.getPatientId().equals(node.getPatientId())) {
+                careTeamIdsByPatient.invalidate(previous.getPatientId());
+            }
+            if (node.getPatientId() != null) {
+                careTeamIdsByPatient.invalidate(node.getPatientId());
+            }
+        } catch (Exception e) {
+            //The write itself succeeded, drop what we know so the care team is read again on next use
+            log.error("Unable to refresh care team " + careTeamId + ": " + e.getMessage());
+            careTeams.invalidate(careTeamId);
+            careTeamIdsByPatient.invalidateAll();
+        }
+    }
+
+    @EventListener
+    public void onResourceDeleted(ResourceDeletedEvent event) {
+        if (event.isOf(ResourceType.CareTeam)) {
+            CareTeamNode previous = careTeams.getIfPresent(event.getId());
+            careTeams.invalidate(event.getId());
+            if (previous != null && previous.getPatientId() != null) {
+                careTeamIdsByPatient.invalidate(previous.getPatientId());
+            } else {
+                careTeamIdsByPatient.invalidateAll();
+            }
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = careTeams.stats();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "size", careTeams.estimatedSize()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit", stats.hitCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "miss", stats.missCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit.ratio", stats.hitRate()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "patients", careTeamIdsByPatient.estimatedSize()));
+        return metrics;
+    }
+
+    private List<CareTeamNode> put(List<CareTeam> fetchedCareTeams) {
+        List<CareTeamNode> nodes = new ArrayList<>();
+        List<CareTeam> careTeamsToMap = new ArrayList<>();
+        fetchedCareTeams.forEach(careTeam -> {
+            //Same version as the cached one, its members are already resolved
+            CareTeamNode cached = careTeams.getIfPresent(careTeam.getIdElement().getIdPart());
+            if (cached != null && cached.getVersionId() != null && cached.getVersionId().equals(careTeam.getIdElement().getVersionIdPart())) {
+                nodes.add(cached);
+            } else {
+                careTeamsToMap.add(careTeam);
+            }
+        });
+
+        Map<String, DomainResource> membersByReference = resolveMembers(careTeamsToMap);
+        careTeamsToMap.forEach(careTeam -> {
+            CareTeamNode node = toNode(careTeam, membersByReference);
+            careTeams.put(node.getId(), node);
+            nodes.add(node);
+        });
+        return nodes;
+    }
+
+    private Map<String, DomainResource> resolveMembers(List<CareTeam> careTeamsToMap) {
+        Map<String, List<String>> memberIdsByType = careTeamsToMap.stream()
+                .flatMap(careTeam -> careTeam.getParticipant().stream())
+                .map(participant -> participant.getMember().getReference())
+                .filter(FhirOperationUtil::isStringNotNullAndNotEmpty)
+                .filter(reference -> reference.contains("/"))
+                .distinct()
+                .collect(groupingBy(reference -> reference.split("/")[0], toList()));
+
+        Map<String, DomainResource> membersByReference = new HashMap<>();
+        memberIdsByType.forEach((type, references) -> {
+            Class<? extends DomainResource> memberClass = memberClass(type);
+            if (memberClass != null) {
+                List<String> ids = references.stream().map(reference -> reference.split("/")[1]).collect(toList());
+                referenceResolver.resolve(memberClass, ids).forEach((id, resource) -> membersByReference.put(type + "/" + id, resource));
+            }
+        });
+        return membersByReference;
+    }
+
+    private Class<? extends DomainResource> memberClass(String type) {
+        if (ParticipantTypeEnum.organization.getName().equalsIgnoreCase(type)) {
+            return Organization.class;
+        } else if (ParticipantTypeEnum.patient.getName().equalsIgnoreCase(type)) {
+            return Patient.class;
+        } else if (ParticipantTypeEnum.practitioner.getName().equalsIgnoreCase(type)) {
+            return Practitioner.class;
+        } else if (ParticipantTypeEnum.relatedPerson.getName().equalsIgnoreCase(type)) {
+            return RelatedPerson.class;
+        }
+        return null;
+    }
+
+    private CareTeamNode toNode(CareTeam careTeam, Map<String, DomainResource> membersByReference) {
+        String subjectReference = careTeam.getSubject().getReference();
+        List<Member> members = careTeam.getParticipant().stream()
+                .filter(participant -> FhirOperationUtil.isStringNotNullAndNotEmpty(participant.getMember().getReference()))
+                .map(participant -> {
+                    String reference = participant.getMember().getReference();
+                    String[] referenceParts = reference.split("/");
+                    Optional<Coding> roleCoding = participant.getRole().getCoding().stream().findFirst();
+                    Member.MemberBuilder member = Member.builder()
+                            .reference(reference)
+                            .memberType(referenceParts[0])
+                            .memberId(referenceParts.length > 1 ? referenceParts[1] : null)
+                            .roleCode(roleCoding.map(Coding::getCode).orElse(null))
+                            .roleDisplay(roleCoding.map(Coding::getDisplay).orElse(null))
+                            .roleSystem(roleCoding.map(Coding::getSystem).orElse(null))
+                            .startDate(participant.getPeriod().getStart())
+                            .endDate(participant.getPeriod().getEnd());
+
+                    DomainResource memberResource = membersByReference.get(reference);
+                    if (memberResource instanceof Organization) {
+                        member.name(((Organization) memberResource).getName());
+                    } else if (memberResource != null) {
+                        firstName(memberResource).ifPresent(humanName -> member
+                                .firstName(humanName.getGiven().stream().findFirst().map(Object::toString).orElse(null))
+                                .lastName(humanName.getFamily()));
+                    }
+                    return member.build();
+                })
+                .collect(toList());
+
+        return CareTeamNode.builder()
+                .id(careTeam.getIdElement().getIdPart())
+                .versionId(careTeam.getIdElement().getVersionIdPart())
+                .patientId(subjectReference != null && subjectReference.startsWith(ParticipantTypeEnum.patient.getName() + "/") ? subjectReference.split("/")[1] : null)
+                .statusCode(careTeam.hasStatus() ? careTeam.getStatus().toCode() : null)
+                .members(Collections.unmodifiableList(members))
+                .build();
+    }
+
+    private Optional<HumanName> firstName(DomainResource resource) {
+        List<HumanName> names = Collections.emptyList();
+        if (resource instanceof Patient) {
+            names = ((Patient) resource).getName();
+        } else if (resource instanceof Practitioner) {
+            names = ((Practitioner) resource).getName();
+        } else if (resource instanceof RelatedPerson) {
+            names = ((RelatedPerson) resource).getName();
+        }
+        return names.stream().findFirst();
+    }
+
+    @Value
+    private static class PatientCareTeams {
+        long membershipGeneration;
+        Set<String> careTeamIds;
+    }
+
+    @Value
+    @Builder
+    public static class CareTeamNode {
+        String id;
+        String versionId;
+        String patientId;
+        String statusCode;
+        List<Member> members;
+    }
+
+    @Value
+    @Builder
+    public static class Member {
+        String reference;
+        String memberType;
+        String memberId;
+        String firstName;
+        String lastName;
+        //Organization name
+        String name;
+        String roleCode;
+        String roleDisplay;
+        String roleSystem;
+        Date startDate;
+        Date endDate;
+
+        public boolean isOrganization() {
+            return ParticipantTypeEnum.organization.getName().equalsIgnoreCase(memberType);
+        }
+
+        public String getDisplay() {
+            if (isOrganization()) {
+                return name != null ? name : "";
+            }
+            return (firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "");
+        }
+
+        public ReferenceDto toReferenceDto() {
+            ReferenceDto referenceDto = new ReferenceDto();
+            referenceDto.setReference(reference);
+            referenceDto.setDisplay(getDisplay());
+            return referenceDto;
+        }
+    }
+}
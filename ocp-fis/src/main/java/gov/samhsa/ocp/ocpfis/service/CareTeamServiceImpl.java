@@ -24,8 +24,8 @@
 import gov.samhsa.ocp.ocpfis.util.DateUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirDtoUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
-import gov.samhsa.ocp.ocpfis.util.FhirResourceUtil;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
 import gov.samhsa.ocp.ocpfis.util.RichStringClientParam;
@@ -34,6 +34,7 @@
 import org.hl7.fhir.dstu3.model.CareTeam;
 import org.hl7.fhir.dstu3.model.CodeableConcept;
 import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.IdType;
 import org.hl7.fhir.dstu3.model.Organization;
 import org.hl7.fhir.dstu3.model.Patient;
 import org.hl7.fhir.dstu3.model.Period;
@@ -44,16 +45,23 @@
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 
 @Service
 @Slf4j
@@ -66,9 +74,15 @@ public class CareTeamServiceImpl implements CareTeamService {
     private final CommunicationService communicationService;
     private final ProvenanceUtil provenanceUtil;
     private final PractitionerServiceImpl practitionerService;
+    private final ReferenceResolver referenceResolver;
+    private final OrganizationMembershipService organizationMembershipService;
+    private final CareTeamGraph careTeamGraph;
+    private final FhirProfileRegistry fhirProfileRegistry;
+
+    private final AsyncTaskExecutor fhirQueryExecutor;
 
     @Autowired
-    public CareTeamServiceImpl(IGenericClient fhirClient, FhirValidator fhirValidator, LookUpService lookUpService, FisProperties fisProperties, CommunicationService communicationService, ProvenanceUtil provenanceUtil, PractitionerServiceImpl practitionerService) {
+    public CareTeamServiceImpl(IGenericClient fhirClient, FhirValidator fhirValidator, LookUpService lookUpService, FisProperties fisProperties, CommunicationService communicationService, ProvenanceUtil provenanceUtil, PractitionerServiceImpl practitionerService, ReferenceResolver referenceResolver, OrganizationMembershipService organizationMembershipService, CareTeamGraph careTeamGraph, FhirProfileRegistry fhirProfileRegistry, AsyncTaskExecutor fhirQueryExecutor) {
         this.fhirClient = fhirClient;
         this.fhirValidator = fhirValidator;
         this.lookUpService = lookUpService;
@@ -76,6 +90,11 @@ public CareTeamServiceImpl(IGenericClient fhirClient, FhirValidator fhirValidato
         this.communicationService = communicationService;
         this.provenanceUtil = provenanceUtil;
         this.practitionerService = practitionerService;
+        this.referenceResolver = referenceResolver;
+        this.organizationMembershipService = organizationMembershipService;
+        this.careTeamGraph = careTeamGraph;
+        this.fhirProfileRegistry = fhirProfileRegistry;
+        this.fhirQueryExecutor = fhirQueryExecutor;
     }
 
     @Override
@@ -86,7 +105,7 @@ public void createCareTeam(CareTeamDto careTeamDto, Optional<String> loggedInUse
             final CareTeam careTeam = CareTeamDtoToCareTeamConverter.map(careTeamDto);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setCareTeamProfileMetaData(fhirClient, careTeam);
+            FhirProfileUtil.setCareTeamProfileMetaData(fhirProfileRegistry, careTeam);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, careTeam, Optional.empty(), ResourceType.CareTeam.name(), "Create CareTeam");
@@ -94,6 +113,8 @@ public void createCareTeam(CareTeamDto careTeamDto, Optional<String> loggedInUse
             //Create
             MethodOutcome methodOutcome = FhirOperationUtil.createFhirResource(fhirClient, careTeam, ResourceType.CareTeam.name());
             idList.add(ResourceType.CareTeam.name() + "/" + FhirOperationUtil.getFhirId(methodOutcome));
+            organizationMembershipService.index(FhirOperationUtil.getFhirId(methodOutcome), careTeam);
+            careTeamGraph.refresh(FhirOperationUtil.getFhirId(methodOutcome));
 
             if (fisProperties.isProvenanceEnabled()) {
                 provenanceUtil.createProvenance(idList, ProvenanceActivityEnum.CREATE, loggedInUser);
@@ -111,7 +132,7 @@ public void updateCareTeam(String careTeamId, CareTeamDto careTeamDto, Optional<
             final CareTeam careTeam = CareTeamDtoToCareTeamConverter.map(careTeamDto);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setCareTeamProfileMetaData(fhirClient, careTeam);
+            FhirProfileUtil.setCareTeamProfileMetaData(fhirProfileRegistry, careTeam);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, careTeam, Optional.of(careTeamId), ResourceType.CareTeam.name(), "Update CareTeam");
@@ -119,6 +140,8 @@ public void updateCareTeam(String careTeamId, CareTeamDto careTeamDto, Optional<
             //Update
             MethodOutcome methodOutcome = FhirOperationUtil.updateFhirResource(fhirClient, careTeam, ResourceType.CareTeam.name());
             idList.add(ResourceType.CareTeam.name() + "/" + FhirOperationUtil.getFhirId(methodOutcome));
+            organizationMembershipService.index(FhirOperationUtil.getFhirId(methodOutcome), careTeam);
+            careTeamGraph.refresh(FhirOperationUtil.getFhirId(methodOutcome));
 
             if (fisProperties.isProvenanceEnabled()) {
                 provenanceUtil.createProvenance(idList, ProvenanceActivityEnum.UPDATE, loggedInUser);
@@ -178,6 +201,19 @@ public PageDto<CareTeamDto> getCareTeams(Optional<List<String>> statusList, Stri
                 .map(retrievedCareTeamMember -> (CareTeam) retrievedCareTeamMember.getResource())
                 .collect(toList());
 
+        //Look up all onBehalfOf organizations with one search instead of one per participant
+        Map<String, Organization> onBehalfOfOrganizations = referenceResolver.resolve(Organization.class, careTeams.stream()
+                .flatMap(careTeam -> careTeam.getParticipant().stream())
+                .filter(participant -> participant.getOnBehalfOf() != null && participant.getOnBehalfOf().getReference() != null)
+                .map(participant -> participant.getOnBehalfOf().getReference().split("/")[1])
+                .collect(toSet()));
+
+        //Included subjects and members by ResourceType/id, so each participant is resolved with one lookup
+        Map<String, Resource> careTeamMembersByReference = retrievedCareTeamMembers.stream()
+                .map(Bundle.BundleEntryComponent::getResource)
+                .filter(resource -> !resource.getResourceType().equals(ResourceType.CareTeam))
+                .collect(toMap(resource -> resource.getIdElement().toUnqualifiedVersionless().getValue(), Function.identity(), (first, duplicate) -> first));
+
         List<CareTeamDto> careTeamDtos = careTeams.stream().map(careTeam -> {
 
             CareTeamDto careTeamDto = new CareTeamDto();
@@ -196,11 +232,10 @@ public PageDto<CareTeamDto> getCareTeams(Optional<List<String>> statusList, Stri
             String subjectReference = careTeam.getSubject().getReference();
             String patientId = subjectReference.substring(subjectReference.lastIndexOf("/") + 1);
 
-            Optional<Bundle.BundleEntryComponent> patientBundleEntryComponent = retrievedCareTeamMembers.stream().filter(careTeamWithItsSubjectAndParticipant -> careTeamWithItsSubjectAndParticipant.getResource().getResourceType().equals(ResourceType.Patient)).filter(patientSubject -> patientSubject.getResource().getIdElement().getIdPart().equalsIgnoreCase(patientId)
-            ).findFirst();
+            Optional<Resource> patientResource = Optional.ofNullable(careTeamMembersByReference.get(ResourceType.Patient.name() + "/" + patientId));
 
-            patientBundleEntryComponent.ifPresent(patient -> {
-                Patient subjectPatient = (Patient) patient.getResource();
+            patientResource.ifPresent(patient -> {
+                Patient subjectPatient = (Patient) patient;
 
                 subjectPatient.getName().stream().findFirst().ifPresent(name -> {
                     careTeamDto.setSubjectLastName((name.getFamily() != null && !name.getFamily().isEmpty()) ? (name.getFamily()) : null);
@@ -239,70 +274,57 @@ public PageDto<CareTeamDto> getCareTeams(Optional<List<String>> statusList, Stri
                 if (participant.getMember() != null && !participant.getMember().isEmpty()) {
                     String participantMemberReference = participant.getMember().getReference();
                     String participantId = participantMemberReference.split("/")[1];
-                    String participantType = participantMemberReference.split("/")[0];
 
                     //Getting the member
-                    retrievedCareTeamMembers.forEach(careTeamWithItsSubjectAndPartipant -> {
-                        Resource resource = careTeamWithItsSubjectAndPartipant.getResource();
-                        if (resource.getResourceType().toString().trim().replaceAll(" ", "").equalsIgnoreCase(participantType.trim().replaceAll(" ", ""))) {
-
-                            if (resource.getIdElement().getIdPart().equalsIgnoreCase(participantId)) {
-                                switch (resource.getResourceType()) {
-                                    case Patient:
-                                        Patient patient = (Patient) resource;
-                                        patient.getName().stream().findFirst().ifPresent(name -> {
-                                            name.getGiven().stream().findFirst().ifPresent(firstName -> participantDto.setMemberFirstName(Optional.ofNullable(firstName.toString())));
-                                            participantDto.setMemberLastName(Optional.ofNullable(name.getFamily()));
-                                        });
-                                        participantDto.setMemberId(participantId);
-                                        participantDto.setMemberType(patient.fhirType());
-                                        break;
-
-                                    case Practitioner:
-                                        Practitioner practitioner = (Practitioner) resource;
-                                        practitioner.getName().stream().findFirst().ifPresent(name -> {
-                                            name.getGiven().stream().findFirst().ifPresent(firstName -> participantDto.setMemberFirstName(Optional.ofNullable(firstName.toString())));
-                                            participantDto.setMemberLastName(Optional.ofNullable(name.getFamily()));
-                                        });
-                                        participantDto.setMemberId(participantId);
-                                        participantDto.setMemberType(practitioner.fhirType());
-
-                                        if (participant.getOnBehalfOf() != null && !participant.getOnBehalfOf().isEmpty()) {
-                                            String organizationId = participant.getOnBehalfOf().getReference().split("/")[1];
-
-                                            Bundle organizationBundle = (Bundle) fhirClient.search().forResource(Organization.class)
-                                                    .where(new TokenClientParam("_id").exactly().code(organizationId))
-                                                    .prettyPrint()
-                                                    .execute();
-                                            Optional<Resource> organizationResource = organizationBundle.getEntry().stream().map(Bundle.BundleEntryComponent::getResource).findFirst();
-                                            Organization organization = (Organization) organizationResource.get();
-
-                                            participantDto.setOnBehalfOfId(organizationId);
-                                            participantDto.setOnBehalfOfName(organization.getName());
-                                        }
-                                        break;
-
-                                    case Organization:
-                                        Organization organization = (Organization) resource;
-                                        participantDto.setMemberName(Optional.ofNullable(organization.getName()));
-                                        participantDto.setMemberId(participantId);
-                                        participantDto.setMemberType(organization.fhirType());
-                                        break;
-
-                                    case RelatedPerson:
-                                        RelatedPerson relatedPerson = (RelatedPerson) resource;
-                                        relatedPerson.getName().stream().findFirst().ifPresent(name -> {
-                                            name.getGiven().stream().findFirst().ifPresent(firstName -> participantDto.setMemberFirstName(Optional.ofNullable(firstName.toString())));
-                                            participantDto.setMemberLastName(Optional.ofNullable(name.getFamily()));
-                                        });
-                                        participantDto.setMemberId(participantId);
-                                        participantDto.setMemberType(relatedPerson.fhirType());
-                                        break;
+                    Resource resource = careTeamMembersByReference.get(new IdType(participantMemberReference).toUnqualifiedVersionless().getValue());
+                    if (resource != null) {
+                        switch (resource.getResourceType()) {
+                            case Patient:
+                                Patient patient = (Patient) resource;
+                                patient.getName().stream().findFirst().ifPresent(name -> {
+                                    name.getGiven().stream().findFirst().ifPresent(firstName -> participantDto.setMemberFirstName(Optional.ofNullable(firstName.toString())));
+                                    participantDto.setMemberLastName(Optional.ofNullable(name.getFamily()));
+                                });
+                                participantDto.setMemberId(participantId);
+                                participantDto.setMemberType(patient.fhirType());
+                                break;
+
+                            case Practitioner:
+                                Practitioner practitioner = (Practitioner) resource;
+                                practitioner.getName().stream().findFirst().ifPresent(name -> {
+                                    name.getGiven().stream().findFirst().ifPresent(firstName -> participantDto.setMemberFirstName(Optional.ofNullable(firstName.toString())));
+                                    participantDto.setMemberLastName(Optional.ofNullable(name.getFamily()));
+                                });
+                                participantDto.setMemberId(participantId);
+                                participantDto.setMemberType(practitioner.fhirType());
+
+                                if (participant.getOnBehalfOf() != null && !participant.getOnBehalfOf().isEmpty()) {
+                                    String organizationId = participant.getOnBehalfOf().getReference().split("/")[1];
+                                    Organization organization = onBehalfOfOrganizations.get(organizationId);
+
+                                    participantDto.setOnBehalfOfId(organizationId);
+                                    participantDto.setOnBehalfOfName(organization != null ? organization.getName() : null);
                                 }
-                            }
+                                break;
+
+                            case Organization:
+                                Organization organization = (Organization) resource;
+                                participantDto.setMemberName(Optional.ofNullable(organization.getName()));
+                                participantDto.setMemberId(participantId);
+                                participantDto.setMemberType(organization.fhirType());
+                                break;
+
+                            case RelatedPerson:
+                                RelatedPerson relatedPerson = (RelatedPerson) resource;
+                                relatedPerson.getName().stream().findFirst().ifPresent(name -> {
+                                    name.getGiven().stream().findFirst().ifPresent(firstName -> participantDto.setMemberFirstName(Optional.ofNullable(firstName.toString())));
+                                    participantDto.setMemberLastName(Optional.ofNullable(name.getFamily()));
+                                });
+                                participantDto.setMemberId(participantId);
+                                participantDto.setMemberType(relatedPerson.fhirType());
+                                break;
                         }
-
-                    });
+                    }
 
                 }
 
@@ -333,28 +355,12 @@ public PageDto<CareTeamDto> getCareTeams(Optional<List<String>> statusList, Stri
 
     @Override
     public List<ParticipantReferenceDto> getCareTeamParticipants(String patient, Optional<List<String>> roles, Optional<String> name, Optional<String> communication) {
-        List<ReferenceDto> participantsByRoles = new ArrayList<>();
         List<ParticipantReferenceDto> participantsSelected = new ArrayList<>();
 
-        Bundle careTeamBundle = fhirClient.search().forResource(CareTeam.class)
-                .where(new ReferenceClientParam("patient").hasId("Patient/" + patient))
-                .include(CareTeam.INCLUDE_PARTICIPANT)
-                .returnBundle(Bundle.class).execute();
-
-        if (careTeamBundle != null) {
-            List<Bundle.BundleEntryComponent> retrievedCareTeams = careTeamBundle.getEntry();
-
-            if (retrievedCareTeams != null) {
-                List<CareTeam> careTeams = retrievedCareTeams.stream()
-                        .filter(bundle -> bundle.getResource().getResourceType().equals(ResourceType.CareTeam))
-                        .map(careTeamMember -> (CareTeam) careTeamMember.getResource()).collect(toList());
-
-
-                participantsByRoles = careTeams.stream()
-                        .flatMap(it -> CareTeamToCareTeamDtoConverter.mapToParticipants(it, roles, name, fhirClient).stream()).collect(toList());
-
-            }
-        }
+        List<ReferenceDto> participantsByRoles = careTeamGraph.getMembersOfPatient(patient, roles).stream()
+                .map(CareTeamGraph.Member::toReferenceDto)
+                .filter(participant -> !name.isPresent() || participant.getDisplay().toLowerCase().contains(name.get().toLowerCase()))
+                .collect(toList());
 
         //retrieve recipients by Id
         List<String> recipients = new ArrayList<>();
@@ -399,29 +405,19 @@ public CareTeamDto getCareTeamById(String careTeamById) {
 
     @Override
     public List<ReferenceDto> getPatientsInCareTeamsByPractitioner(String practitioner) {
-        List<ReferenceDto> patients = new ArrayList<>();
-
-        Bundle bundle = fhirClient.search().forResource(CareTeam.class)
-                .where(new ReferenceClientParam("participant").hasId(practitioner))
-                .include(CareTeam.INCLUDE_PATIENT)
-                .include(CareTeam.INCLUDE_PARTICIPANT)
-                .returnBundle(Bundle.class)
-                .execute();
-
-        if (bundle != null) {
-            List<Bundle.BundleEntryComponent> components = bundle.getEntry();
-            if (components != null) {
-                patients = components.stream()
-                        .filter(it -> it.getResource().getResourceType().equals(ResourceType.CareTeam))
-                        .map(it -> (CareTeam) it.getResource())
-                        .filter(it -> checkIfParticipantIsCareManager(it.getParticipant()))
-                        .map(it -> (Patient) it.getSubject().getResource())
-                        .map(FhirDtoUtil::mapPatientToReferenceDto)
-                        .collect(toList());
-            }
-        }
+        List<String> patientIds = organizationMembershipService.getCareTeamIds(Collections.singletonList(practitioner)).stream()
+                .filter(organizationMembershipService::hasCareManager)
+                .map(organizationMembershipService::getCareTeamPatientId)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(toList());
 
-        return patients;
+        Map<String, Patient> patients = referenceResolver.resolve(Patient.class, patientIds);
+        return patientIds.stream()
+                .map(patients::get)
+                .filter(Objects::nonNull)
+                .map(FhirDtoUtil::mapPatientToReferenceDto)
+                .collect(toList());
     }
 
     public PageDto<CareTeamDto> getCareTeamsByPatientAndOrganization(String patient, Optional<String> organization, Optional<List<String>> status, Optional<Integer> pageNumber, Optional<Integer> pageSize) {
@@ -439,7 +435,7 @@ public PageDto<CareTeamDto> getCareTeamsByPatientAndOrganization(String patient,
 
         Bundle bundle = (Bundle) iQuery.returnBundle(Bundle.class).execute();
 
-        List<Bundle.BundleEntryComponent> components = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties);
+        List<Bundle.BundleEntryComponent> components = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor);
 
         List<CareTeam> careTeams = components.stream()
                 .filter(it -> it.getResource().getResourceType().equals(ResourceType.CareTeam))
@@ -472,13 +468,15 @@ public void addRelatedPerson(String careTeamId, ParticipantDto participantDto) {
         careTeam.setParticipant(components);
 
         //Set Profile Meta Data
-        FhirProfileUtil.setCareTeamProfileMetaData(fhirClient, careTeam);
+        FhirProfileUtil.setCareTeamProfileMetaData(fhirProfileRegistry, careTeam);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, careTeam, Optional.of(careTeamId), ResourceType.CareTeam.name(), "Update CareTeam(Add Related Person)");
 
         //Update
         FhirOperationUtil.updateFhirResource(fhirClient, careTeam, ResourceType.CareTeam.name());
+        organizationMembershipService.index(careTeamId, careTeam);
+        careTeamGraph.refresh(careTeamId);
     }
 
     @Override
@@ -490,13 +488,15 @@ public void removeRelatedPerson(String careTeamId, ParticipantDto participantDto
         careTeam.setParticipant(components);
 
         //Set Profile Meta Data
-        FhirProfileUtil.setCareTeamProfileMetaData(fhirClient, careTeam);
+        FhirProfileUtil.setCareTeamProfileMetaData(fhirProfileRegistry, careTeam);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, careTeam, Optional.of(careTeamId), ResourceType.CareTeam.name(), "Update CareTeam(Remove Related Person)");
 
         //Update
         FhirOperationUtil.updateFhirResource(fhirClient, careTeam, ResourceType.CareTeam.name());
+        organizationMembershipService.index(careTeamId, careTeam);
+        careTeamGraph.refresh(careTeamId);
     }
 
     @Override
@@ -514,7 +514,7 @@ public PageDto<ParticipantDto> getRelatedPersonsByIdForEdit(String careTeamId, O
         Bundle relatedPersonForPatientBundle = (Bundle) iQuery.returnBundle(Bundle.class).execute();
 
 
-        List<ParticipantDto> participantDtoFromRelatedPersons = FhirOperationUtil.getAllBundleComponentsAsList(relatedPersonForPatientBundle, Optional.empty(), fhirClient, fisProperties)
+        List<ParticipantDto> participantDtoFromRelatedPersons = FhirOperationUtil.getAllBundleComponentsAsList(relatedPersonForPatientBundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor)
                 .stream().map(rp -> (RelatedPerson) rp.getResource())
                 .map(rp -> {
                     ParticipantDto participantDto = new ParticipantDto();
@@ -548,23 +548,9 @@ public PageDto<ParticipantDto> getRelatedPersonsByIdForEdit(String careTeamId, O
 
     @Override
     public List<ReferenceDto> getParticipantMemberFromCareTeam(String patient) {
-        Bundle careTeamBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(CareTeam.class).where(new ReferenceClientParam("patient").hasId(patient)))
-                .returnBundle(Bundle.class).execute();
-
-        List<ReferenceDto> careTeamMembers = FhirOperationUtil.getAllBundleComponentsAsList(careTeamBundle, Optional.empty(), fhirClient, fisProperties)
-                .stream().map(bEntry -> {
-                    CareTeam careTeam = (CareTeam) bEntry.getResource();
-                    return convertCareTeamToCareTeamDto(careTeam);
-                }).flatMap(ct -> ct.getParticipants().stream().map(part -> {
-                    ReferenceDto participantReference = new ReferenceDto();
-                    participantReference.setReference(part.getMemberType().substring(0, 1).toUpperCase() + part.getMemberType().substring(1) + "/" + part.getMemberId());
-                    if(!part.getMemberType().equalsIgnoreCase(ResourceType.Organization.toString())) {
-                        participantReference.setDisplay(part.getMemberFirstName().get() + " " + part.getMemberLastName().get());
-                    }else{
-                        participantReference.setDisplay(part.getMemberName().get());
-                    }
-                    return participantReference;
-                })).collect(toList());
+        List<ReferenceDto> careTeamMembers = careTeamGraph.getMembersOfPatient(patient, Optional.empty()).stream()
+                .map(CareTeamGraph.Member::toReferenceDto)
+                .collect(toList());
 
         List<ReferenceDto> careTeammembersOtherThanOrganization = careTeamMembers.stream()
                 .filter(ct -> !ct.getReference().split("/")[0].equalsIgnoreCase(ResourceType.Organization.toString()))
@@ -573,7 +559,7 @@ public List<ReferenceDto> getParticipantMemberFromCareTeam(String patient) {
         List<ReferenceDto> careTeammebersInTheOrganization = careTeamMembers.stream()
                 .filter(ct -> ct.getReference().split("/")[0].equalsIgnoreCase(ResourceType.Organization.toString()))
                 .flatMap(ct -> practitionerService.searchPractitioners(Optional.empty(), Optional.empty(), Optional.of(ct.getReference().split("/")[1]), Optional.empty(), Optional.empty(),
-                        Optional.empty(), Optional.of(true)).getElements().stream().map(pr -> {
+                        Optional.empty(), Optional.of(true), Optional.empty()).getElements().stream().map(pr -> {
                             ReferenceDto referenceDto = new ReferenceDto();
                             referenceDto.setReference(ResourceType.Practitioner.toString() + "/" + pr.getLogicalId());
                             pr.getName().stream().findAny().ifPresent(name -> referenceDto.setDisplay(name.getFirstName() + " " + name.getLastName()));
@@ -609,20 +595,6 @@ private CareTeamDto convertCareTeamToCareTeamDto(CareTeam careTeam) {
         return careTeamDto;
     }
 
-    private boolean checkIfParticipantIsCareManager(List<CareTeam.CareTeamParticipantComponent> components) {
-        //write logic to check if each participant, if of type Practitioner, is a CareManager or not
-        return components.stream()
-                .map(component -> {
-                    Reference member = component.getMember();
-                    String role = "";
-                    if (member.getReference().contains(ResourceType.Practitioner.toString())) {
-                        role = FhirResourceUtil.getRoleFromCodeableConcept(component.getRole());
-                    }
-                    return role;
-                })
-                .anyMatch(t -> t.contains(CareTeamConstants.CAREMANAGER_ROLE));
-    }
-
     private void checkForDuplicates(CareTeamDto careTeamDto) {
         Bundle careTeamBundle = fhirClient.search().forResource(CareTeam.class)
                 .where(new TokenClientParam(CareTeamFieldEnum.STATUS.getCode()).exactly().code(CareTeamConstants.STATUS_ACTIVE))
@@ -7,26 +7,25 @@
 import ca.uhn.fhir.util.CoverageIgnore;
 import lombok.Data;
 import org.apache.commons.lang3.Validate;
-import org.springframework.security.oauth2.client.OAuth2RestTemplate;
 
 @Data
 public class ClientCredentialsBearerTokenAuthInterceptor implements IClientInterceptor {
 
-    private OAuth2RestTemplate oAuth2RestTemplate;
+    private OAuth2AccessTokenHolder oAuth2AccessTokenHolder;
 
     @CoverageIgnore
     public ClientCredentialsBearerTokenAuthInterceptor() {
         // nothing
     }
 
-    public ClientCredentialsBearerTokenAuthInterceptor(OAuth2RestTemplate myOAuth2RestTemplate) {
-        Validate.notNull(myOAuth2RestTemplate);
-        oAuth2RestTemplate = myOAuth2RestTemplate;
+    public ClientCredentialsBearerTokenAuthInterceptor(OAuth2AccessTokenHolder myOAuth2AccessTokenHolder) {
+        Validate.notNull(myOAuth2AccessTokenHolder);
+        oAuth2AccessTokenHolder = myOAuth2AccessTokenHolder;
     }
 
     @Override
     public void interceptRequest(IHttpRequest iHttpRequest) {
-        iHttpRequest.addHeader(Constants.HEADER_AUTHORIZATION, (Constants.HEADER_AUTHORIZATION_VALPREFIX_BEARER + oAuth2RestTemplate.getAccessToken().getValue()));
+        iHttpRequest.addHeader(Constants.HEADER_AUTHORIZATION, (Constants.HEADER_AUTHORIZATION_VALPREFIX_BEARER + oAuth2AccessTokenHolder.getAccessTokenValue()));
     }
 
     @Override
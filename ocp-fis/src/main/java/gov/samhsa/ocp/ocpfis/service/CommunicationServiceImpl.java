@@ -5,19 +5,21 @@
 import ca.uhn.fhir.rest.gclient.IQuery;
 import ca.uhn.fhir.rest.gclient.ReferenceClientParam;
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.validation.FhirValidator;
 import gov.samhsa.ocp.ocpfis.config.FisProperties;
 import gov.samhsa.ocp.ocpfis.domain.ProvenanceActivityEnum;
 import gov.samhsa.ocp.ocpfis.service.dto.CommunicationDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
-import gov.samhsa.ocp.ocpfis.service.dto.ReferenceDto;
 import gov.samhsa.ocp.ocpfis.service.exception.FHIRClientException;
 import gov.samhsa.ocp.ocpfis.service.exception.ResourceNotFoundException;
 import gov.samhsa.ocp.ocpfis.service.mapping.CommunicationDtoToCommunicationMap;
 import gov.samhsa.ocp.ocpfis.service.mapping.CommunicationToCommunicationDtoMap;
 import gov.samhsa.ocp.ocpfis.util.DateUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirSearchParameterSupport;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
 import lombok.extern.slf4j.Slf4j;
@@ -30,16 +32,21 @@
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.text.ParseException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 
 @Service
 @Slf4j
@@ -55,86 +62,42 @@ public class CommunicationServiceImpl implements CommunicationService {
 
     private final ProvenanceUtil provenanceUtil;
 
+    private final FhirProfileRegistry fhirProfileRegistry;
+
+    private final FhirSearchParameterSupport fhirSearchParameterSupport;
+
+    private final AsyncTaskExecutor fhirQueryExecutor;
+
     @Autowired
-    public CommunicationServiceImpl(IGenericClient fhirClient, FhirValidator fhirValidator, LookUpService lookUpService, FisProperties fisProperties, ProvenanceUtil provenanceUtil) {
+    public CommunicationServiceImpl(IGenericClient fhirClient, FhirValidator fhirValidator, LookUpService lookUpService, FisProperties fisProperties, ProvenanceUtil provenanceUtil, FhirProfileRegistry fhirProfileRegistry, FhirSearchParameterSupport fhirSearchParameterSupport, AsyncTaskExecutor fhirQueryExecutor) {
         this.fhirClient = fhirClient;
         this.fhirValidator = fhirValidator;
         this.lookUpService = lookUpService;
         this.fisProperties = fisProperties;
         this.provenanceUtil = provenanceUtil;
+        this.fhirProfileRegistry = fhirProfileRegistry;
+        this.fhirSearchParameterSupport = fhirSearchParameterSupport;
+        this.fhirQueryExecutor = fhirQueryExecutor;
     }
 
     public PageDto<CommunicationDto> getCommunications(Optional<List<String>> statusList, String searchKey, String searchValue, Optional<String> organization, Optional<String> topic, Optional<String> resourceType, Optional<Integer> pageNumber, Optional<Integer> pageSize) {
         int numberOfCommunicationsPerPage = PaginationUtil.getValidPageSize(fisProperties, pageSize, ResourceType.Communication.name());
-        IQuery iQuery = fhirClient.search().forResource(Communication.class);
-
-        //Set Sort order
-        iQuery = FhirOperationUtil.setLastUpdatedTimeSortOrder(iQuery, true);
-
-        //Check for Patient
-        iQuery.where(new ReferenceClientParam("patient").hasId(searchValue));
-
-        //Check for Communication
-        if (searchKey.equalsIgnoreCase("communicationId"))
-            iQuery.where(new TokenClientParam("_id").exactly().code(searchValue));
-
-        //Check for Status
-        if (statusList.isPresent() && !statusList.get().isEmpty()) {
-            iQuery.where(new TokenClientParam("status").exactly().codes(statusList.get()));
-        }
-
-        //Topic
-        if(topic.isPresent() && resourceType.isPresent()) {
-            //iQuery.where(new RichStringClientParam("topic").contains().value(topic.get()));
-            iQuery.include(Communication.INCLUDE_ALL);
-        }
-
-        Bundle firstPageCommunicationBundle;
-        Bundle otherPageCommunicationBundle;
-        boolean firstPage = true;
-
-        firstPageCommunicationBundle = (Bundle) iQuery
-                .count(numberOfCommunicationsPerPage)
-                .returnBundle(Bundle.class)
-                .execute();
-
-        if (firstPageCommunicationBundle == null || firstPageCommunicationBundle.getEntry().isEmpty()) {
-            throw new ResourceNotFoundException("No Communications were found in the FHIR server.");
-        }
-
-        otherPageCommunicationBundle = firstPageCommunicationBundle;
-
-        if (pageNumber.isPresent() && pageNumber.get() > 1 && otherPageCommunicationBundle.getLink(Bundle.LINK_NEXT) != null) {
-            firstPage = false;
-            otherPageCommunicationBundle = PaginationUtil.getSearchBundleAfterFirstPage(fhirClient, fisProperties, firstPageCommunicationBundle, pageNumber.get(), numberOfCommunicationsPerPage);
-        }
-
-        List<Bundle.BundleEntryComponent> retrievedCommunications = otherPageCommunicationBundle.getEntry();
-
-        List<CommunicationDto> communicationDtos = retrievedCommunications.stream().filter(retrivedBundle -> retrivedBundle.getResource().getResourceType().equals(ResourceType.Communication)).map(retrievedCommunication -> {
-            Communication communication = (Communication) retrievedCommunication.getResource();
-            return CommunicationToCommunicationDtoMap.map(communication);
-
-        }).collect(toList());
 
         if (topic.isPresent() && resourceType.isPresent()) {
-            communicationDtos = communicationDtos.stream().filter(dto -> {
-                boolean result = false;
-                ReferenceDto refDto = dto.getTopic();
-
-                if (refDto != null && refDto.getReference() != null) {
-                    result = refDto.getReference().equals(resourceType.get() + "/" + topic.get());
+            String topicReference = resourceType.get() + "/" + topic.get();
+            if (fhirSearchParameterSupport.isSupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC)) {
+                //Topic is filtered by the FHIR server, so the bundle total and paging stay correct
+                IQuery iQuery = getCommunicationsQuery(statusList, searchKey, searchValue)
+                        .where(new ReferenceClientParam(FhirSearchParameterSupport.COMMUNICATION_TOPIC).hasId(topicReference));
+                try {
+                    return getCommunicationsPage(iQuery, pageNumber, numberOfCommunicationsPerPage);
+                } catch (InvalidRequestException e) {
+                    fhirSearchParameterSupport.markUnsupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC);
                 }
-
-                return result;
-            }).collect(toList());
-            otherPageCommunicationBundle.setTotal(communicationDtos.size());
+            }
+            return getCommunicationsPageFilteredByTopic(getCommunicationsQuery(statusList, searchKey, searchValue), topicReference, pageNumber, numberOfCommunicationsPerPage);
         }
-
-        double totalPages = Math.ceil((double) otherPageCommunicationBundle.getTotal() / numberOfCommunicationsPerPage);
-        int currentPage = firstPage ? 1 : pageNumber.get();
-
-        return new PageDto<>(communicationDtos, numberOfCommunicationsPerPage, totalPages, currentPage, communicationDtos.size(), otherPageCommunicationBundle.getTotal());
+        return getCommunicationsPage(getCommunicationsQuery(statusList, searchKey, searchValue), pageNumber, numberOfCommunicationsPerPage);
     }
 
     public List<String> getRecipientsByCommunicationId(String patient, String communicationId) {
@@ -162,7 +125,7 @@ public void createCommunication(CommunicationDto communicationDto, Optional<Stri
             final Communication communication = CommunicationDtoToCommunicationMap.map(communicationDto, lookUpService);
             communication.setSent(DateUtil.convertLocalDateTimeToUTCDate(LocalDateTime.now()));
             //Set Profile Meta Data
-            FhirProfileUtil.setCommunicationProfileMetaData(fhirClient, communication);
+            FhirProfileUtil.setCommunicationProfileMetaData(fhirProfileRegistry, communication);
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, communication, Optional.empty(), ResourceType.Communication.name(), "Create Communication");
             //Create
@@ -187,7 +150,7 @@ public void updateCommunication(String communicationId, CommunicationDto communi
             Communication communication = CommunicationDtoToCommunicationMap.map(communicationDto, lookUpService);
             communication.setId(communicationId);
             //Set Profile Meta Data
-            FhirProfileUtil.setCommunicationProfileMetaData(fhirClient, communication);
+            FhirProfileUtil.setCommunicationProfileMetaData(fhirProfileRegistry, communication);
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, communication, Optional.of(communicationId), ResourceType.Communication.name(), "Update Communication");
             //Update
@@ -203,5 +166,121 @@ public void updateCommunication(String communicationId, CommunicationDto communi
         }
     }
 
+    private IQuery getCommunicationsQuery(Optional<List<String>> statusList, String searchKey, String searchValue) {
+        IQuery iQuery = fhirClient.search().forResource(Communication.class);
+
+        //Set Sort order
+        iQuery = FhirOperationUtil.setLastUpdatedTimeSortOrder(iQuery, true);
+
+        //Check for Patient
+        iQuery.where(new ReferenceClientParam("patient").hasId(searchValue));
+
+        //Check for Communication
+        if (searchKey.equalsIgnoreCase("communicationId"))
+            iQuery.where(new TokenClientParam("_id").exactly().code(searchValue));
+
+        //Check for Status
+        if (statusList.isPresent() && !statusList.get().isEmpty()) {
+            iQuery.where(new TokenClientParam("status").exactly().codes(statusList.get()));
+        }
+        return iQuery;
+    }
+
+    private PageDto<CommunicationDto> getCommunicationsPage(IQuery iQuery, Optional<Integer> pageNumber, int numberOfCommunicationsPerPage) {
+        Bundle firstPageCommunicationBundle;
+        Bundle otherPageCommunicationBundle;
+        boolean firstPage = true;
+
+        firstPageCommunicationBundle = (Bundle) iQuery
+                .count(numberOfCommunicationsPerPage)
+                .returnBundle(Bundle.class)
+                .execute();
+
+        if (firstPageCommunicationBundle == null || firstPageCommunicationBundle.getEntry().isEmpty()) {
+            throw new ResourceNotFoundException("No Communications were found in the FHIR server.");
+        }
+
+        otherPageCommunicationBundle = firstPageCommunicationBundle;
+
+        if (pageNumber.isPresent() && pageNumber.get() > 1 && otherPageCommunicationBundle.getLink(Bundle.LINK_NEXT) != null) {
+            firstPage = false;
+            otherPageCommunicationBundle = PaginationUtil.getSearchBundleAfterFirstPage(fhirClient, fisProperties, firstPageCommunicationBundle, pageNumber.get(), numberOfCommunicationsPerPage);
+        }
+
+        List<CommunicationDto> communicationDtos = toCommunicationDtos(otherPageCommunicationBundle.getEntry());
+
+        double totalPages = Math.ceil((double) otherPageCommunicationBundle.getTotal() / numberOfCommunicationsPerPage);
+        int currentPage = firstPage ? 1 : pageNumber.get();
+
+        return new PageDto<>(communicationDtos, numberOfCommunicationsPerPage, totalPages, currentPage, communicationDtos.size(), otherPageCommunicationBundle.getTotal());
+    }
+
+    /**
+     * Used when the FHIR server has no topic search parameter. The ids and topics of the communications matching the
+     * other criteria are scanned page by page until one more than the requested page is found, then only the
+     * communications of the requested page are read. The total counts the communications about the topic found so
+     * far, so it is exact on the last page and otherwise announces the next page.
+     */
+    private PageDto<CommunicationDto> getCommunicationsPageFilteredByTopic(IQuery iQuery, String topicReference, Optional<Integer> pageNumber, int numberOfCommunicationsPerPage) {
+        int fetchPageSize = fisProperties.getResourceSinglePageLimit();
+        int currentPage = pageNumber.filter(page -> page > 1).orElse(1);
+        Bundle firstPageCommunicationBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(iQuery)
+                .count(fetchPageSize)
+                .returnBundle(Bundle.class)
+                .elementsSubset("id", "topic")
+                .execute();
+
+        List<String> topicCommunicationIds;
+        //Closing the pages stops reading ahead once enough communications about the topic are found
+        try (Stream<Bundle> pages = FhirOperationUtil.streamAllBundlePages(firstPageCommunicationBundle, Optional.of(fetchPageSize), fhirClient, fisProperties, fhirQueryExecutor)) {
+            topicCommunicationIds = pages
+                    .flatMap(page -> page.getEntry().stream())
+                    .filter(entry -> entry.getResource().getResourceType().equals(ResourceType.Communication))
+                    .filter(entry -> {
+                        Communication communication = (Communication) entry.getResource();
+                        return communication.getTopic().stream().anyMatch(topic -> topicReference.equals(topic.getReferenceElement().toUnqualifiedVersionless().getValue()));
+                    })
+                    .map(entry -> entry.getResource().getIdElement().getIdPart())
+                    .limit(currentPage * numberOfCommunicationsPerPage + 1)
+                    .collect(toList());
+        }
+
+        if (topicCommunicationIds.isEmpty()) {
+            throw new ResourceNotFoundException("No Communications were found in the FHIR server.");
+        }
+
+        int fromIndex = Math.min((currentPage - 1) * numberOfCommunicationsPerPage, topicCommunicationIds.size());
+        List<String> pageCommunicationIds = topicCommunicationIds.subList(fromIndex, Math.min(fromIndex + numberOfCommunicationsPerPage, topicCommunicationIds.size()));
+        List<CommunicationDto> communicationDtos = toCommunicationDtos(getCommunicationsById(pageCommunicationIds));
+        double totalPages = Math.ceil((double) topicCommunicationIds.size() / numberOfCommunicationsPerPage);
+
+        return new PageDto<>(communicationDtos, numberOfCommunicationsPerPage, totalPages, currentPage, communicationDtos.size(), topicCommunicationIds.size());
+    }
+
+    //In the order of the given ids
+    private List<Bundle.BundleEntryComponent> getCommunicationsById(List<String> communicationIds) {
+        if (communicationIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Bundle communicationBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(Communication.class)
+                .where(new TokenClientParam("_id").exactly().codes(communicationIds)))
+                .count(communicationIds.size())
+                .returnBundle(Bundle.class)
+                .execute();
+        Map<String, Bundle.BundleEntryComponent> communicationsById = communicationBundle.getEntry().stream()
+                .filter(entry -> entry.getResource().getResourceType().equals(ResourceType.Communication))
+                .collect(toMap(entry -> entry.getResource().getIdElement().getIdPart(), Function.identity()));
+        return communicationIds.stream()
+                .filter(communicationsById::containsKey)
+                .map(communicationsById::get)
+                .collect(toList());
+    }
 
+    private List<CommunicationDto> toCommunicationDtos(List<Bundle.BundleEntryComponent> retrievedCommunications) {
+        return retrievedCommunications.stream().filter(retrivedBundle -> retrivedBundle.getResource().getResourceType().equals(ResourceType.Communication)).map(retrievedCommunication -> {
+            Communication communication = (Communication) retrievedCommunication.getResource();
+            return CommunicationToCommunicationDtoMap.map(communication);
+
+        }).collect(toList());
+    }
 }
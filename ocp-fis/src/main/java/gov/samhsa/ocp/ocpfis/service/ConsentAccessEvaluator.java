@@ -0,0 +1,273 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.ReferenceClientParam;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirResourceUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.CareTeam;
+import org.hl7.fhir.dstu3.model.Consent;
+import org.hl7.fhir.dstu3.model.Period;
+import org.hl7.fhir.dstu3.model.PractitionerRole;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.hl7.fhir.dstu3.model.codesystems.V3ParticipationType;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Decides whether a practitioner may view the details of patients, based on the active consents of the patients that
+ * name the practitioner, one of the practitioner's organizations or one of the practitioner's care teams as recipient.
+ * The consents of all given patients are fetched together. Organizations and care teams are searched on the FHIR
+ * server rather than taken from the membership index, which may trail it. Decisions are cached per consent version
+ * and membership generation for a short time.
+ */
+@Service
+@Slf4j
+public class ConsentAccessEvaluator implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "cache.consent.";
+
+    private final IGenericClient fhirClient;
+
+    private final FisProperties fisProperties;
+
+    private final OrganizationMembershipService organizationMembershipService;
+
+    private final Cache<String, Boolean> decisions;
+
+    public ConsentAccessEvaluator(IGenericClient fhirClient, FisProperties fisProperties, OrganizationMembershipService organizationMembershipService) {
+        this.fhirClient = fhirClient;
+        this.fisProperties = fisProperties;
+        this.organizationMembershipService = organizationMembershipService;
+        FisProperties.Cache.Consent consentCache = fisProperties.getCache().getConsent();
+        this.decisions = Caffeine.newBuilder()
+                .maximumSize(consentCache.getMaximumSize())
+                .expireAfterWrite(consentCache.getTtlInSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return whether the practitioner can view each of the given patients, by patient id
+     */
+    public Map<String, Boolean> canViewPatients(String practitionerId, Collection<String> patientIds) {
+        Map<String, List<Consent>> consentsByPatient = activeConsentsByPatient(patientIds);
+        //Decisions made before a care team or organization membership changed are not used again
+        long membershipGeneration = organizationMembershipService.getGeneration();
+        Map<String, Boolean> canView = new HashMap<>();
+        Map<String, String> undecidedKeysByPatient = new LinkedHashMap<>();
+
+        for (String patientId : new LinkedHashSet<>(patientIds)) {
+            List<Consent> consents = consentsByPatient.getOrDefault(patientId, Collections.emptyList());
+            String decisionKey = practitionerId + "|" + patientId + "|" + consentVersions(consents) + "|" + membershipGeneration;
+            Boolean decision = decisions.getIfPresent(decisionKey);
+            if (decision != null) {
+                canView.put(patientId, decision);
+            } else {
+                undecidedKeysByPatient.put(patientId, decisionKey);
+            }
+        }
+
+        if (!undecidedKeysByPatient.isEmpty()) {
+            final Date now = new Date();
+            Map<String, List<String>> recipientsByPatient = new HashMap<>();
+            undecidedKeysByPatient.keySet().forEach(patientId -> recipientsByPatient.put(patientId,
+                    recipientReferences(consentsByPatient.getOrDefault(patientId, Collections.emptyList()), now)));
+            //Only looked up when at least one patient is not in the cache and names a recipient
+            PractitionerContext practitionerContext = practitionerContext(practitionerId, recipientsByPatient.values().stream()
+                    .flatMap(List::stream)
+                    .collect(toSet()), now);
+            undecidedKeysByPatient.forEach((patientId, decisionKey) -> {
+                boolean decision = recipientsByPatient.get(patientId).stream().anyMatch(practitionerContext::isRecipient);
+                decisions.put(decisionKey, decision);
+                canView.put(patientId, decision);
+            });
+        }
+        return canView;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = decisions.stats();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "size", decisions.estimatedSize()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit", stats.hitCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "miss", stats.missCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit.ratio", stats.hitRate()));
+        return metrics;
+    }
+
+    private Map<String, List<Consent>> activeConsentsByPatient(Collection<String> patientIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(patientIds));
+        List<Consent> consents = new ArrayList<>();
+
+        int maxIdsPerSearch = fisProperties.getFhir().getMaxIdsPerSearch();
+        for (int fromIndex = 0; fromIndex < ids.size(); fromIndex += maxIdsPerSearch) {
+            List<String> idChunk = ids.subList(fromIndex, Math.min(fromIndex + maxIdsPerSearch, ids.size()));
+            IQuery consentQuery = fhirClient.search().forResource(Consent.class)
+                    .where(new ReferenceClientParam("patient").hasAnyOfIds(idChunk))
+                    .where(new TokenClientParam("status").exactly().code("active"));
+            Bundle consentBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(consentQuery).returnBundle(Bundle.class).execute();
+
+            FhirOperationUtil.getAllBundleComponentsAsList(consentBundle, Optional.empty(), fhirClient, fisProperties).stream()
+                    .map(Bundle.BundleEntryComponent::getResource)
+                    .filter(resource -> resource.getResourceType().equals(ResourceType.Consent))
+                    .map(resource -> (Consent) resource)
+                    .forEach(consents::add);
+        }
+
+        return consents.stream()
+                .filter(consent -> consent.getPatient().getReference() != null)
+                .collect(groupingBy(consent -> consent.getPatient().getReference().split("/")[1]));
+    }
+
+    private String consentVersions(List<Consent> consents) {
+        return consents.stream()
+                .map(consent -> consent.getIdElement().getIdPart() + "/" + consent.getIdElement().getVersionIdPart())
+                .sorted()
+                .collect(joining(","));
+    }
+
+    /**
+     * @return references to the recipients of the consents that are in effect
+     */
+    private List<String> recipientReferences(List<Consent> consents, Date now) {
+        return consents.stream()
+                .filter(consent -> isInEffect(consent.getPeriod(), now))
+                .flatMap(consent -> consent.getActor().stream())
+                .filter(actor -> actor.getRole().getCoding().stream().findAny().map(coding -> V3ParticipationType.IRCP.toCode().equalsIgnoreCase(coding.getCode())).orElse(false))
+                .map(actor -> actor.getReference().getReference())
+                .filter(FhirOperationUtil::isStringNotNullAndNotEmpty)
+                .collect(toList());
+    }
+
+    private boolean isInEffect(Period period, Date now) {
+        return period.hasStart() && period.hasEnd() && period.getStart().before(now) && period.getEnd().after(now);
+    }
+
+    private PractitionerContext practitionerContext(String practitionerId, Set<String> recipientReferences, Date now) {
+        Set<String> recipientOrganizationIds = idsOf(recipientReferences, ResourceType.Organization);
+        Set<String> recipientCareTeamIds = idsOf(recipientReferences, ResourceType.CareTeam);
+        if (recipientOrganizationIds.isEmpty() && recipientCareTeamIds.isEmpty()) {
+            return new PractitionerContext(practitionerId, Collections.emptySet(), Collections.emptySet());
+        }
+
+        Set<String> organizationIds = organizationIds(practitionerId);
+        Set<String> participantReferences = new HashSet<>();
+        participantReferences.add(ResourceType.Practitioner + "/" + practitionerId);
+        organizationIds.forEach(organizationId -> participantReferences.add(ResourceType.Organization + "/" + organizationId));
+        return new PractitionerContext(practitionerId, organizationIds, participatingCareTeamIds(recipientCareTeamIds, participantReferences, now));
+    }
+
+    private Set<String> organizationIds(String practitionerId) {
+        IQuery practitionerRoleQuery = fhirClient.search().forResource(PractitionerRole.class)
+                .where(new ReferenceClientParam("practitioner").hasId(practitionerId));
+        Bundle practitionerRoleBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(practitionerRoleQuery)
+                .returnBundle(Bundle.class)
+                .elementsSubset("organization", "active")
+                .execute();
+
+        return FhirOperationUtil.getAllBundleComponentsAsList(practitionerRoleBundle, Optional.empty(), fhirClient, fisProperties).stream()
+                .map(Bundle.BundleEntryComponent::getResource)
+                .filter(resource -> resource.getResourceType().equals(ResourceType.PractitionerRole))
+                .map(resource -> (PractitionerRole) resource)
+                .filter(practitionerRole -> !practitionerRole.hasActive() || practitionerRole.getActive())
+                .filter(practitionerRole -> practitionerRole.getOrganization().hasReference())
+                .map(practitionerRole -> practitionerRole.getOrganization().getReferenceElement().getIdPart())
+                .collect(toSet());
+    }
+
+    /**
+     * @return ids of the given care teams in which any of the participants currently takes part
+     */
+    private Set<String> participatingCareTeamIds(Set<String> careTeamIds, Set<String> participantReferences, Date now) {
+        List<String> ids = new ArrayList<>(careTeamIds);
+        Set<String> participatingCareTeamIds = new HashSet<>();
+
+        int maxIdsPerSearch = fisProperties.getFhir().getMaxIdsPerSearch();
+        for (int fromIndex = 0; fromIndex < ids.size(); fromIndex += maxIdsPerSearch) {
+            List<String> idChunk = ids.subList(fromIndex, Math.min(fromIndex + maxIdsPerSearch, ids.size()));
+            IQuery careTeamQuery = fhirClient.search().forResource(CareTeam.class)
+                    .where(new TokenClientParam("_id").exactly().codes(idChunk));
+            Bundle careTeamBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(careTeamQuery)
+                    .returnBundle(Bundle.class)
+                    .elementsSubset("participant")
+                    .execute();
+
+            FhirOperationUtil.getAllBundleComponentsAsList(careTeamBundle, Optional.empty(), fhirClient, fisProperties).stream()
+                    .map(Bundle.BundleEntryComponent::getResource)
+                    .filter(resource -> resource.getResourceType().equals(ResourceType.CareTeam))
+                    .map(resource -> (CareTeam) resource)
+                    .filter(careTeam -> careTeam.getParticipant().stream()
+                            .filter(participant -> participant.getMember().hasReference())
+                            .filter(participant -> FhirResourceUtil.isInPeriod(participant.hasPeriod() ? participant.getPeriod() : null, now))
+                            .anyMatch(participant -> participantReferences.contains(participant.getMember().getReferenceElement().toUnqualifiedVersionless().getValue())))
+                    .forEach(careTeam -> participatingCareTeamIds.add(careTeam.getIdElement().getIdPart()));
+        }
+        return participatingCareTeamIds;
+    }
+
+    private static Set<String> idsOf(Set<String> references, ResourceType resourceType) {
+        return references.stream()
+                .map(reference -> reference.split("/"))
+                .filter(referenceParts -> referenceParts.length >= 2 && resourceType.toString().equalsIgnoreCase(referenceParts[0]))
+                .map(referenceParts -> referenceParts[1])
+                .collect(toSet());
+    }
+
+    private static class PractitionerContext {
+        private final String practitionerId;
+        private final Set<String> organizationIds;
+        private final Set<String> careTeamIds;
+
+        PractitionerContext(String practitionerId, Set<String> organizationIds, Set<String> careTeamIds) {
+            this.practitionerId = practitionerId;
+            this.organizationIds = organizationIds;
+            this.careTeamIds = careTeamIds;
+        }
+
+        boolean isRecipient(String reference) {
+            String[] referenceParts = reference.split("/");
+            if (referenceParts.length < 2) {
+                return false;
+            }
+            String resourceType = referenceParts[0];
+            String id = referenceParts[1];
+            if (ResourceType.Practitioner.toString().equalsIgnoreCase(resourceType)) {
+                return practitionerId.equals(id);
+            } else if (ResourceType.Organization.toString().equalsIgnoreCase(resourceType)) {
+                return organizationIds.contains(id);
+            } else if (ResourceType.CareTeam.toString().equalsIgnoreCase(resourceType)) {
+                return careTeamIds.contains(id);
+            }
+            return false;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 import gov.samhsa.ocp.ocpfis.service.mapping.CoverageToCoverageDtoMap;
 import gov.samhsa.ocp.ocpfis.service.mapping.dtotofhirmodel.CoverageDtoToCoverageMap;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
@@ -51,8 +52,10 @@ public class CoverageServiceImpl implements CoverageService {
 
     private final ProvenanceUtil provenanceUtil;
 
+    private final FhirProfileRegistry fhirProfileRegistry;
+
     @Autowired
-    public CoverageServiceImpl(IGenericClient fhirClient, FhirValidator fhirValidator, LookUpService lookUpService, FisProperties fisProperties, ModelMapper modelMapper, RelatedPersonService relatedPersonService, ProvenanceUtil provenanceUtil) {
+    public CoverageServiceImpl(IGenericClient fhirClient, FhirValidator fhirValidator, LookUpService lookUpService, FisProperties fisProperties, ModelMapper modelMapper, RelatedPersonService relatedPersonService, ProvenanceUtil provenanceUtil, FhirProfileRegistry fhirProfileRegistry) {
         this.fhirClient = fhirClient;
         this.fhirValidator = fhirValidator;
         this.lookUpService = lookUpService;
@@ -60,6 +63,7 @@ public CoverageServiceImpl(IGenericClient fhirClient, FhirValidator fhirValidato
         this.modelMapper = modelMapper;
         this.relatedPersonService = relatedPersonService;
         this.provenanceUtil = provenanceUtil;
+        this.fhirProfileRegistry = fhirProfileRegistry;
     }
 
     @Override
@@ -70,7 +74,7 @@ public void createCoverage(CoverageDto coverageDto, Optional<String> loggedInUse
             Coverage coverage = CoverageDtoToCoverageMap.map(coverageDto, lookUpService);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setCoverageProfileMetaData(fhirClient, coverage);
+            FhirProfileUtil.setCoverageProfileMetaData(fhirProfileRegistry, coverage);
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, coverage, Optional.empty(), ResourceType.Coverage.name(), "Create Coverage");
             //Create
@@ -92,7 +96,7 @@ public void updateCoverage(String id, CoverageDto coverageDto, Optional<String>
         Coverage coverage = CoverageDtoToCoverageMap.map(coverageDto, lookUpService);
         coverage.setId(id);
         //Set Profile Meta Data
-        FhirProfileUtil.setCoverageProfileMetaData(fhirClient, coverage);
+        FhirProfileUtil.setCoverageProfileMetaData(fhirProfileRegistry, coverage);
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, coverage, Optional.empty(), ResourceType.Coverage.name(), "Update Coverage");
         //Update
@@ -115,7 +119,7 @@ public List<ReferenceDto> getSubscriberOptions(String patientId) {
         patientReference.setDisplay(modelMapper.map(patient, PatientDto.class).getName().stream().findAny().get().getFirstName() + " " + modelMapper.map(patient, PatientDto.class).getName().stream().findAny().get().getLastName());
         referenceDtoList.add(patientReference);
 
-        referenceDtoList.addAll(relatedPersonService.searchRelatedPersons(patientId, Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(true)).getElements().stream()
+        referenceDtoList.addAll(relatedPersonService.searchRelatedPersons(patientId, Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(true), Optional.empty()).getElements().stream()
                 .map(relPer -> {
                     ReferenceDto relatedPersonReference = new ReferenceDto();
                     relatedPersonReference.setDisplay(relPer.getFirstName() + " " + relPer.getLastName());
@@ -6,6 +6,7 @@
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import gov.samhsa.ocp.ocpfis.service.dto.EpisodeOfCareDto;
 import gov.samhsa.ocp.ocpfis.service.dto.ReferenceDto;
+import gov.samhsa.ocp.ocpfis.service.exception.ResourceNotFoundException;
 import gov.samhsa.ocp.ocpfis.service.mapping.EpisodeOfCareToEpisodeOfCareDtoMapper;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
 import lombok.extern.slf4j.Slf4j;
@@ -28,11 +29,13 @@ public class EpisodeOfCareServiceImpl implements EpisodeOfCareService {
 
     private final IGenericClient fhirClient;
     private final LookUpService lookUpService;
+    private final ReferenceResolver referenceResolver;
 
     @Autowired
-    public EpisodeOfCareServiceImpl(IGenericClient fhirClient, LookUpService lookUpService) {
+    public EpisodeOfCareServiceImpl(IGenericClient fhirClient, LookUpService lookUpService, ReferenceResolver referenceResolver) {
         this.fhirClient = fhirClient;
         this.lookUpService = lookUpService;
+        this.referenceResolver = referenceResolver;
     }
 
     @Override
@@ -88,14 +91,17 @@ public List<ReferenceDto> getEpisodeOfCaresForReference(String patient, Optional
         if (bundle != null) {
             List<Bundle.BundleEntryComponent> eocComponents = bundle.getEntry();
 
-            if (eocComponents != null) {
+            if (eocComponents != null && !eocComponents.isEmpty()) {
+                //All episodes of care belong to the same patient, so its name is only looked up once
+                Patient p = referenceResolver.resolve(Patient.class, patient)
+                        .orElseThrow(() -> new ResourceNotFoundException("No patient was found for the given patient ID:" + patient));
+                String name = p.getName().stream().findAny().get().getGiven().stream().findAny().get() + " " + p.getName().stream().findAny().get().getFamily();
+
                 referenceDtos = eocComponents.stream()
                         .map(it -> (EpisodeOfCare) it.getResource())
                         .map(it -> {
                             ReferenceDto referenceDto = new ReferenceDto();
                             referenceDto.setReference("EpisodeOfCare/" + it.getIdElement().getIdPart());
-                            Patient p = fhirClient.read().resource(Patient.class).withId(patient).execute();
-                            String name = p.getName().stream().findAny().get().getGiven().stream().findAny().get() + " " + p.getName().stream().findAny().get().getFamily();
 
                             String type = "";
                             Optional<CodeableConcept> tempType = it.getType().stream().findAny();
@@ -19,6 +19,7 @@
 import gov.samhsa.ocp.ocpfis.service.exception.DuplicateResourceFoundException;
 import gov.samhsa.ocp.ocpfis.service.exception.ResourceNotFoundException;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
@@ -33,6 +34,7 @@
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -55,14 +57,21 @@ public class HealthcareServiceServiceImpl implements HealthcareServiceService {
     private final FhirValidator fhirValidator;
     private final FisProperties fisProperties;
     private final ProvenanceUtil provenanceUtil;
+    private final ReferenceResolver referenceResolver;
+    private final FhirProfileRegistry fhirProfileRegistry;
+
+    private final AsyncTaskExecutor fhirQueryExecutor;
 
     @Autowired
-    public HealthcareServiceServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, FhirValidator fhirValidator, FisProperties fisProperties, ProvenanceUtil provenanceUtil) {
+    public HealthcareServiceServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, FhirValidator fhirValidator, FisProperties fisProperties, ProvenanceUtil provenanceUtil, ReferenceResolver referenceResolver, FhirProfileRegistry fhirProfileRegistry, AsyncTaskExecutor fhirQueryExecutor) {
         this.modelMapper = modelMapper;
         this.fhirClient = fhirClient;
         this.fhirValidator = fhirValidator;
         this.fisProperties = fisProperties;
         this.provenanceUtil = provenanceUtil;
+        this.referenceResolver = referenceResolver;
+        this.fhirProfileRegistry = fhirProfileRegistry;
+        this.fhirQueryExecutor = fhirQueryExecutor;
     }
 
     @Override
@@ -116,6 +125,8 @@ public PageDto<HealthcareServiceDto> getAllHealthcareServices(Optional<List<Stri
         }
         List<Bundle.BundleEntryComponent> retrievedHealthcareServices = otherPageHealthcareServiceSearchBundle.getEntry();
 
+        resolveLocationNames(retrievedHealthcareServices, locationNameMap);
+
         //Arrange Page related info
         List<HealthcareServiceDto> healthcareServicesList = retrievedHealthcareServices.stream().map(hcs -> convertHealthcareServiceBundleEntryToHealthcareServiceDto(hcs, locationNameMap, Optional.empty())).collect(toList());
         double totalPages = Math.ceil((double) otherPageHealthcareServiceSearchBundle.getTotal() / numberOfHealthcareServicesPerPage);
@@ -178,6 +189,8 @@ public PageDto<HealthcareServiceDto> getAllHealthcareServicesByOrganization(Stri
 
         List<Bundle.BundleEntryComponent> retrievedHealthcareServices = otherPageHealthcareServiceSearchBundle.getEntry();
 
+        resolveLocationNames(retrievedHealthcareServices, locationNameMap);
+
         //Arrange Page related info
         List<HealthcareServiceDto> healthcareServicesList = retrievedHealthcareServices.stream().map(hcs -> convertHealthcareServiceBundleEntryToHealthcareServiceDto(hcs, locationNameMap, assignedToLocationId)).collect(toList());
         double totalPages = Math.ceil((double) otherPageHealthcareServiceSearchBundle.getTotal() / numberOfHealthcareServicesPerPage);
@@ -322,7 +335,7 @@ public void createHealthcareService(String organizationId, HealthcareServiceDto
         fhirHealthcareService.setProvidedBy(new Reference("Organization/" + organizationId.trim()));
 
         //Set Profile Meta Data
-        FhirProfileUtil.setHealthCareServiceProfileMetaData(fhirClient, fhirHealthcareService);
+        FhirProfileUtil.setHealthCareServiceProfileMetaData(fhirProfileRegistry, fhirHealthcareService);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, fhirHealthcareService, Optional.empty(), ResourceType.HealthcareService.name(), "Create Healthcare Service");
@@ -366,7 +379,7 @@ public void updateHealthcareService(String organizationId, String healthcareServ
         }
 
         //Set Profile Meta Data
-        FhirProfileUtil.setHealthCareServiceProfileMetaData(fhirClient, existingHealthcareService);
+        FhirProfileUtil.setHealthCareServiceProfileMetaData(fhirProfileRegistry, existingHealthcareService);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, existingHealthcareService, Optional.of(healthcareServiceId), ResourceType.HealthcareService.name(), "Update Healthcare Service");
@@ -390,7 +403,7 @@ public void inactivateHealthcareService(String healthcareServiceId) {
         existingHealthcareService.setLocation(null);
 
         //Set Profile Meta Data
-        FhirProfileUtil.setHealthCareServiceProfileMetaData(fhirClient, existingHealthcareService);
+        FhirProfileUtil.setHealthCareServiceProfileMetaData(fhirProfileRegistry, existingHealthcareService);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, existingHealthcareService, Optional.of(healthcareServiceId), ResourceType.HealthcareService.name(), "Update Healthcare Service");
@@ -434,7 +447,7 @@ public void assignLocationsToHealthcareService(String healthcareServiceId, Strin
                 locationIdList.forEach(locationId -> assignedLocations.add(new Reference("Location/" + locationId)));
 
                 //Set Profile Meta Data
-                FhirProfileUtil.setHealthCareServiceProfileMetaData(fhirClient, existingHealthcareService);
+                FhirProfileUtil.setHealthCareServiceProfileMetaData(fhirProfileRegistry, existingHealthcareService);
 
                 //Validate
                 FhirOperationUtil.validateFhirResource(fhirValidator, existingHealthcareService, Optional.of(healthcareServiceId), ResourceType.HealthcareService.name(), "Assign location to a Healthcare Service");
@@ -454,7 +467,7 @@ public void unassignLocationsFromHealthcareService(String healthcareServiceId, S
         assignedLocations.removeIf(locRef -> locationIdList.contains(locRef.getReference().substring(9).trim()));
 
         //Set Profile Meta Data
-        FhirProfileUtil.setHealthCareServiceProfileMetaData(fhirClient, existingHealthcareService);
+        FhirProfileUtil.setHealthCareServiceProfileMetaData(fhirProfileRegistry, existingHealthcareService);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, existingHealthcareService, Optional.of(healthcareServiceId), ResourceType.HealthcareService.name(), "Unassign location to a Healthcare Service");
@@ -485,6 +498,23 @@ private Bundle getLocationBundle(String organizationResourceId) {
                 .execute();
     }
 
+    private void resolveLocationNames(List<Bundle.BundleEntryComponent> healthcareServices, Map<String, String> locationNameMap) {
+        //Look up the names of all locations without a display with one search instead of reading them one by one
+        Set<String> locationIds = healthcareServices.stream()
+                .filter(entry -> entry.getResource().getResourceType().equals(ResourceType.HealthcareService))
+                .flatMap(entry -> ((HealthcareService) entry.getResource()).getLocation().stream())
+                .filter(locRef -> locRef.getReference() != null && locRef.getDisplay() == null)
+                .map(locRef -> locRef.getReference().substring(9).trim())
+                .filter(locLogicalId -> !locationNameMap.containsKey(locLogicalId))
+                .collect(Collectors.toSet());
+
+        referenceResolver.resolve(Location.class, locationIds).forEach((locLogicalId, location) -> {
+            if (location.getName() != null) {
+                locationNameMap.put(locLogicalId, location.getName().trim());
+            }
+        });
+    }
+
     private HealthcareServiceDto convertHealthcareServiceBundleEntryToHealthcareServiceDto(Bundle.BundleEntryComponent fhirHealthcareServiceModel, Map<String, String> locationNameMap, Optional<String> assignedToLocationId) {
         HealthcareServiceDto tempHealthcareServiceDto = modelMapper.map(fhirHealthcareServiceModel.getResource(), HealthcareServiceDto.class);
         tempHealthcareServiceDto.setLogicalId(fhirHealthcareServiceModel.getResource().getIdElement().getIdPart());
@@ -506,13 +536,12 @@ private HealthcareServiceDto convertHealthcareServiceBundleEntryToHealthcareServ
                         locName = locRef.getDisplay().trim();
                     } else {
                         //If not(last option), read from FHIR server
-                        try {
-                            Location locationFromServer = fhirClient.read().resource(Location.class).withId(locLogicalId.trim()).execute();
-                            locName = locationFromServer.getName().trim();
-                        } catch (BaseServerResponseException e) {
-                            log.error("FHIR Client returned with an error while reading the location with ID: " + locLogicalId);
-                            throw new ResourceNotFoundException("FHIR Client returned with an error while reading the location:" + e.getMessage());
-                        }
+                        locName = referenceResolver.resolve(Location.class, locLogicalId)
+                                .map(locationFromServer -> locationFromServer.getName().trim())
+                                .orElseThrow(() -> {
+                                    log.error("Could not find the location with ID: " + locLogicalId);
+                                    return new ResourceNotFoundException("No location was found for the given location ID:" + locLogicalId);
+                                });
                     }
                 }
                 //Add to map
@@ -559,7 +588,7 @@ private void checkDuplicateHealthcareServiceExistsDuringCreate(String organizati
         Bundle bundle = getHealthCareServiceBundleBasedOnCategoryAndType(organizationId, categorySystem, categoryCode, typeSystem, typeCode);
 
         if (bundle != null && !bundle.getEntry().isEmpty()) {
-            List<Bundle.BundleEntryComponent> bundleEntryComponents = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties)
+            List<Bundle.BundleEntryComponent> bundleEntryComponents = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor)
                     .stream().filter(res -> {
                         HealthcareService healthcareService = (HealthcareService) res.getResource();
                         return healthcareService.getName().equalsIgnoreCase(healthcareServiceName);
@@ -590,7 +619,7 @@ private void checkForDuplicateHealthcareServiceBasedOnTypesDuringUpdate(Healthca
     private void checkDuplicateHealthcareServiceExistsDuringUpdate(String organizationId, String healthcareServiceId, String categorySystem, String categoryCode, String typeSystem, String typeCode, String healthcareServiceName) {
         Bundle bundle = getHealthCareServiceBundleBasedOnCategoryAndType(organizationId, categorySystem, categoryCode, typeSystem, typeCode);
 
-        List<Bundle.BundleEntryComponent> bundleEntryComponents = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties);
+        List<Bundle.BundleEntryComponent> bundleEntryComponents = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor);
 
         if (!bundleEntryComponents.isEmpty()) {
             List<Bundle.BundleEntryComponent> bundleEntryComponentList = bundleEntryComponents.stream().filter(bundleEntryComponent -> {
@@ -0,0 +1,227 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.DomainResource;
+import org.hl7.fhir.dstu3.model.Identifier;
+import org.hl7.fhir.dstu3.model.Location;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Normalized identifier (system + value without spaces and dashes) to resource id index used for duplicate checks.
+ * Each resource type is bulk loaded on first use and then kept current from _lastUpdated deltas, our own writes and
+ * deletes. Deletes and identifier changes made by other clients do not show in the deltas, so every hit is confirmed
+ * against the FHIR server before it is returned.
+ */
+@Service
+@Slf4j
+public class IdentifierIndex {
+
+    private static final Map<ResourceType, Class<? extends DomainResource>> INDEXED_TYPES = new EnumMap<>(ResourceType.class);
+
+    static {
+        INDEXED_TYPES.put(ResourceType.Patient, Patient.class);
+        INDEXED_TYPES.put(ResourceType.Organization, Organization.class);
+        INDEXED_TYPES.put(ResourceType.Practitioner, Practitioner.class);
+        INDEXED_TYPES.put(ResourceType.Location, Location.class);
+    }
+
+    private final IGenericClient fhirClient;
+
+    private final FisProperties fisProperties;
+
+    private final Map<ResourceType, TypeIndex> indexes = new EnumMap<>(ResourceType.class);
+
+    public IdentifierIndex(IGenericClient fhirClient, FisProperties fisProperties) {
+        this.fhirClient = fhirClient;
+        this.fisProperties = fisProperties;
+        INDEXED_TYPES.keySet().forEach(type -> indexes.put(type, new TypeIndex()));
+    }
+
+    public static String normalize(String system, String value) {
+        return system.trim().toLowerCase() + "|" + value.replaceAll(" ", "").replaceAll("-", "").trim().toUpperCase();
+    }
+
+    public Set<String> findIds(ResourceType type, String system, String value) {
+        TypeIndex typeIndex = loadedIndex(type);
+        String key = normalize(system, value);
+        Set<String> indexedIds = new HashSet<>(typeIndex.idsByIdentifier.getOrDefault(key, Collections.emptySet()));
+        if (indexedIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(confirm(type, typeIndex, key, indexedIds));
+    }
+
+    public void index(ResourceType type, String id, List<Identifier> identifiers) {
+        TypeIndex typeIndex = indexes.get(type);
+        if (typeIndex == null) {
+            throw new IllegalArgumentException(type + " identifiers are not indexed");
+        }
+        typeIndex.put(id, identifiers);
+    }
+
+    @EventListener
+    public void onResourceDeleted(ResourceDeletedEvent event) {
+        indexes.forEach((type, typeIndex) -> {
+            if (event.isOf(type)) {
+                typeIndex.remove(event.getId());
+            }
+        });
+    }
+
+    @Scheduled(initialDelayString = "${ocp-fis.cache.identifier.pollIntervalInMs:30000}", fixedDelayString = "${ocp-fis.cache.identifier.pollIntervalInMs:30000}")
+    public void pollChanges() {
+        indexes.forEach((type, typeIndex) -> {
+            if (typeIndex.watermark != null) {
+                try {
+                    load(type, typeIndex);
+                } catch (Exception e) {
+                    log.error("Unable to refresh the " + type + " identifier index: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private TypeIndex loadedIndex(ResourceType type) {
+        TypeIndex typeIndex = indexes.get(type);
+        if (typeIndex == null) {
+            throw new IllegalArgumentException(type + " identifiers are not indexed");
+        }
+        if (typeIndex.watermark == null) {
+            load(type, typeIndex);
+        }
+        return typeIndex;
+    }
+
+    private void load(ResourceType type, TypeIndex typeIndex) {
+        synchronized (typeIndex) {
+            Date watermark = typeIndex.watermark;
+            IQuery query = fhirClient.search().forResource(INDEXED_TYPES.get(type));
+            if (watermark != null) {
+                //Overlap the previous delta, a write committed late with an earlier _lastUpdated is not skipped
+                long watermarkOverlapInMs = fisProperties.getCache().getIdentifier().getWatermarkOverlapInMs();
+                query.lastUpdated(new DateRangeParam(new Date(watermark.getTime() - watermarkOverlapInMs), null));
+            }
+            Bundle bundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(query)
+                    .count(fisProperties.getResourceSinglePageLimit())
+                    .returnBundle(Bundle.class)
+                    .elementsSubset("identifier")
+                    .execute();
+
+            Date newWatermark = watermark != null ? watermark : new Date(0);
+            for (Bundle.BundleEntryComponent entry : FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.of(fisProperties.getResourceSinglePageLimit()), fhirClient, fisProperties)) {
+                DomainResource resource = (DomainResource) entry.getResource();
+                typeIndex.put(resource.getIdElement().getIdPart(), identifiersOf(resource));
+                Date lastUpdated = resource.getMeta().getLastUpdated();
+                if (lastUpdated != null && lastUpdated.after(newWatermark)) {
+                    newWatermark = lastUpdated;
+                }
+            }
+            if (watermark == null) {
+                log.info("Indexed identifiers of " + typeIndex.identifiersById.size() + " " + type + " resources");
+            }
+            typeIndex.watermark = newWatermark;
+        }
+    }
+
+    /**
+     * Reads the current identifiers of the indexed ids, updates their entries and drops the ids deleted in the
+     * meantime.
+     *
+     * @return the ids that still have the identifier
+     */
+    private Set<String> confirm(ResourceType type, TypeIndex typeIndex, String key, Set<String> indexedIds) {
+        Bundle bundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(INDEXED_TYPES.get(type))
+                .where(new TokenClientParam("_id").exactly().codes(new ArrayList<>(indexedIds))))
+                .count(indexedIds.size())
+                .returnBundle(Bundle.class)
+                .elementsSubset("identifier")
+                .execute();
+
+        Set<String> confirmedIds = new HashSet<>();
+        Set<String> existingIds = new HashSet<>();
+        bundle.getEntry().stream()
+                .map(entry -> (DomainResource) entry.getResource())
+                .filter(resource -> indexedIds.contains(resource.getIdElement().getIdPart()))
+                .forEach(resource -> {
+                    String id = resource.getIdElement().getIdPart();
+                    existingIds.add(id);
+                    typeIndex.put(id, identifiersOf(resource));
+                    if (typeIndex.identifiersById.getOrDefault(id, Collections.emptySet()).contains(key)) {
+                        confirmedIds.add(id);
+                    }
+                });
+        indexedIds.stream()
+                .filter(id -> !existingIds.contains(id))
+                .forEach(typeIndex::remove);
+        return confirmedIds;
+    }
+
+    private List<Identifier> identifiersOf(DomainResource resource) {
+        switch (resource.getResourceType()) {
+            case Patient:
+                return ((Patient) resource).getIdentifier();
+            case Organization:
+                return ((Organization) resource).getIdentifier();
+            case Practitioner:
+                return ((Practitioner) resource).getIdentifier();
+            case Location:
+                return ((Location) resource).getIdentifier();
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    private static class TypeIndex {
+        private final Map<String, Set<String>> idsByIdentifier = new ConcurrentHashMap<>();
+        private final Map<String, Set<String>> identifiersById = new ConcurrentHashMap<>();
+        private volatile Date watermark;
+
+        private synchronized void put(String id, List<Identifier> identifiers) {
+            Set<String> keys = identifiers.stream()
+                    .filter(identifier -> identifier.hasSystem() && identifier.hasValue())
+                    .map(identifier -> normalize(identifier.getSystem(), identifier.getValue()))
+                    .collect(toSet());
+
+            //Drop identifiers removed by an update
+            identifiersById.getOrDefault(id, Collections.emptySet()).stream()
+                    .filter(key -> !keys.contains(key))
+                    .forEach(key -> idsByIdentifier.computeIfPresent(key, (k, ids) -> {
+                        ids.remove(id);
+                        return ids.isEmpty() ? null : ids;
+                    }));
+            keys.forEach(key -> idsByIdentifier.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id));
+            identifiersById.put(id, keys);
+        }
+
+        private synchronized void remove(String id) {
+            put(id, Collections.emptyList());
+            identifiersById.remove(id);
+        }
+    }
+}
@@ -20,6 +20,7 @@
 import gov.samhsa.ocp.ocpfis.service.exception.DuplicateResourceFoundException;
 import gov.samhsa.ocp.ocpfis.service.exception.ResourceNotFoundException;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
@@ -35,6 +36,7 @@
 import org.hl7.fhir.exceptions.FHIRException;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -58,14 +60,23 @@ public class LocationServiceImpl implements LocationService {
 
     private final ProvenanceUtil provenanceUtil;
 
+    private final IdentifierIndex identifierIndex;
+
+    private final FhirProfileRegistry fhirProfileRegistry;
+
+    private final AsyncTaskExecutor fhirQueryExecutor;
+
     @Autowired
-    public LocationServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, FhirValidator fhirValidator, LookUpService lookUpService, FisProperties fisProperties, ProvenanceUtil provenanceUtil) {
+    public LocationServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, FhirValidator fhirValidator, LookUpService lookUpService, FisProperties fisProperties, ProvenanceUtil provenanceUtil, IdentifierIndex identifierIndex, FhirProfileRegistry fhirProfileRegistry, AsyncTaskExecutor fhirQueryExecutor) {
         this.modelMapper = modelMapper;
         this.fhirClient = fhirClient;
         this.fhirValidator = fhirValidator;
         this.lookUpService = lookUpService;
         this.fisProperties = fisProperties;
         this.provenanceUtil = provenanceUtil;
+        this.identifierIndex = identifierIndex;
+        this.fhirProfileRegistry = fhirProfileRegistry;
+        this.fhirQueryExecutor = fhirQueryExecutor;
     }
 
     @Override
@@ -198,7 +209,7 @@ public void createLocation(String organizationId, LocationDto locationDto, Optio
             fhirLocation.setPartOf(new Reference("Location/" + locationDto.getManagingLocationLogicalId().trim()));
         }
         //Set Profile Meta Data
-        FhirProfileUtil.setLocationProfileMetaData(fhirClient, fhirLocation);
+        FhirProfileUtil.setLocationProfileMetaData(fhirProfileRegistry, fhirLocation);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, fhirLocation, Optional.empty(), ResourceType.Location.name(), "Create Location");
@@ -206,6 +217,7 @@ public void createLocation(String organizationId, LocationDto locationDto, Optio
         //Create
         MethodOutcome methodOutcome = FhirOperationUtil.createFhirResource(fhirClient, fhirLocation, ResourceType.Location.name());
         idList.add(ResourceType.Location.name() + "/" + FhirOperationUtil.getFhirId(methodOutcome));
+        identifierIndex.index(ResourceType.Location, FhirOperationUtil.getFhirId(methodOutcome), fhirLocation.getIdentifier());
 
         if (fisProperties.isProvenanceEnabled()) {
             provenanceUtil.createProvenance(idList, ProvenanceActivityEnum.CREATE, loggedInUser);
@@ -241,13 +253,14 @@ public void updateLocation(String organizationId, String locationId, LocationDto
         }
 
         //Set Profile Meta Data
-        FhirProfileUtil.setLocationProfileMetaData(fhirClient, existingFhirLocation);
+        FhirProfileUtil.setLocationProfileMetaData(fhirProfileRegistry, existingFhirLocation);
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, existingFhirLocation, Optional.of(locationId), ResourceType.Location.name(), "Update Location");
 
         //Update
         MethodOutcome methodOutcome = FhirOperationUtil.updateFhirResource(fhirClient, existingFhirLocation, "Update Location");
         idList.add(ResourceType.Location.name() + "/" + FhirOperationUtil.getFhirId(methodOutcome));
+        identifierIndex.index(ResourceType.Location, locationId.trim(), existingFhirLocation.getIdentifier());
 
         if (fisProperties.isProvenanceEnabled()) {
             provenanceUtil.createProvenance(idList, ProvenanceActivityEnum.UPDATE, loggedInUser);
@@ -261,7 +274,7 @@ public void inactivateLocation(String locationId) {
         existingFhirLocation.setStatus(Location.LocationStatus.INACTIVE);
 
         //Set Profile Meta Data
-        FhirProfileUtil.setLocationProfileMetaData(fhirClient, existingFhirLocation);
+        FhirProfileUtil.setLocationProfileMetaData(fhirProfileRegistry, existingFhirLocation);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, existingFhirLocation, Optional.of(locationId), ResourceType.Location.name(), "Inactivate Location");
@@ -405,13 +418,16 @@ private List<Bundle.BundleEntryComponent> getLocationBundleBasedOnIdentifierSyst
         List<Bundle.BundleEntryComponent> bundleEntry;
         if (identifierSystem != null && !identifierSystem.trim().isEmpty()
                 && identifierValue != null && !identifierValue.trim().isEmpty()) {
-            Bundle bundle = fhirClient.search().forResource(Location.class).returnBundle(Bundle.class).execute();
-            bundleEntry = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties).stream().filter(location -> {
-                Location l = (Location) location.getResource();
-                return l.getIdentifier().stream().anyMatch(identifier -> identifier.getSystem().equalsIgnoreCase(identifierSystem) && identifier.getValue().replaceAll(" ", "")
-                        .replaceAll("-", "").trim()
-                        .equalsIgnoreCase(identifierValue.replaceAll(" ", "").replaceAll("-", "").trim()));
-            }).collect(Collectors.toList());
+            List<String> locationIds = new ArrayList<>(identifierIndex.findIds(ResourceType.Location, identifierSystem, identifierValue));
+            if (locationIds.isEmpty()) {
+                bundleEntry = new ArrayList<>();
+            } else {
+                Bundle bundle = fhirClient.search().forResource(Location.class)
+                        .where(new TokenClientParam("_id").exactly().codes(locationIds))
+                        .returnBundle(Bundle.class)
+                        .execute();
+                bundleEntry = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor);
+            }
         } else if (identifierValue != null && !identifierValue.trim().isEmpty()) {
             Bundle bundle = fhirClient.search().forResource(Location.class)
                     .where(new TokenClientParam("identifier").exactly().code(identifierValue.trim()))
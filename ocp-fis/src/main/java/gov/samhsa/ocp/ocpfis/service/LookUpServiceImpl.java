@@ -1,7 +1,5 @@
 package gov.samhsa.ocp.ocpfis.service;
 
-import ca.uhn.fhir.rest.client.api.IGenericClient;
-import gov.samhsa.ocp.ocpfis.config.FisProperties;
 import gov.samhsa.ocp.ocpfis.domain.CodeSystemEnum;
 import gov.samhsa.ocp.ocpfis.domain.DateRangeEnum;
 import gov.samhsa.ocp.ocpfis.domain.IdentifierTypeEnum;
@@ -32,13 +30,10 @@
 @Slf4j
 public class LookUpServiceImpl implements LookUpService {
 
-    private final IGenericClient fhirClient;
+    private final ValueSetLookUpCache valueSetLookUpCache;
 
-    private final FisProperties fisProperties;
-
-    public LookUpServiceImpl(IGenericClient fhirClient, FisProperties fisProperties) {
-        this.fhirClient = fhirClient;
-        this.fisProperties = fisProperties;
+    public LookUpServiceImpl(ValueSetLookUpCache valueSetLookUpCache) {
+        this.valueSetLookUpCache = valueSetLookUpCache;
     }
 
     @Override
@@ -52,7 +47,7 @@ public List<DateRangeDto> getDateRanges() {
     @Override
     public List<ValueSetDto> getUspsStates() {
         List<ValueSetDto> stateCodes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.US_STATE.getUrlPath(), LookupPathUrls.US_STATE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.US_STATE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.US_STATE.getType())) {
 
             List<ValueSet.ConceptReferenceComponent> statesList = response.getCompose().getInclude().get(0).getConcept();
@@ -74,7 +69,7 @@ public List<ValueSetDto> getIdentifierTypes(Optional<String> resourceType) {
         final List<String> allowedPatientIdentifierTypes = Arrays.asList("DL", "PPN", "TAX", "MR", "DR", "SB");
         final List<String> allowedPractitionerIdentifierTypes = Arrays.asList("PRN", "TAX", "MD", "SB");
 
-        ValueSet response = getValueSets(LookupPathUrls.IDENTIFIER_TYPE.getUrlPath(), LookupPathUrls.IDENTIFIER_TYPE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.IDENTIFIER_TYPE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.IDENTIFIER_TYPE.getType())) {
             valueSetList = response.getExpansion().getContains();
         }
@@ -154,7 +149,7 @@ public List<IdentifierSystemDto> getIdentifierSystems(Optional<List<String>> ide
     @Override
     public List<ValueSetDto> getIdentifierUses() {
         List<ValueSetDto> identifierUses = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.IDENTIFIER_USE.getUrlPath(), LookupPathUrls.IDENTIFIER_USE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.IDENTIFIER_USE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.IDENTIFIER_USE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             identifierUses = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -167,7 +162,7 @@ public List<ValueSetDto> getIdentifierUses() {
     @Override
     public List<ValueSetDto> getLocationModes() {
         List<ValueSetDto> locationModes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.LOCATION_MODE.getUrlPath(), LookupPathUrls.LOCATION_MODE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.LOCATION_MODE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.LOCATION_MODE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             locationModes = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -180,7 +175,7 @@ public List<ValueSetDto> getLocationModes() {
     @Override
     public List<ValueSetDto> getLocationStatuses() {
         List<ValueSetDto> locationStatuses = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.LOCATION_STATUS.getUrlPath(), LookupPathUrls.LOCATION_STATUS.getType());
+        ValueSet response = getValueSets(LookupPathUrls.LOCATION_STATUS);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.LOCATION_STATUS.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             locationStatuses = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -200,7 +195,7 @@ public List<StatusBooleanValuesDto> getOrganizationStatuses() {
     @Override
     public List<ValueSetDto> getLocationPhysicalTypes() {
         List<ValueSetDto> physicalLocationTypes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.LOCATION_PHYSICAL_TYPE.getUrlPath(), LookupPathUrls.LOCATION_PHYSICAL_TYPE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.LOCATION_PHYSICAL_TYPE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.LOCATION_PHYSICAL_TYPE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             physicalLocationTypes = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -214,7 +209,7 @@ public List<ValueSetDto> getLocationPhysicalTypes() {
     @Override
     public List<ValueSetDto> getAddressTypes() {
         List<ValueSetDto> addressTypes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.ADDRESS_TYPE.getUrlPath(), LookupPathUrls.ADDRESS_TYPE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.ADDRESS_TYPE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.ADDRESS_TYPE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             addressTypes = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -227,7 +222,7 @@ public List<ValueSetDto> getAddressTypes() {
     @Override
     public List<ValueSetDto> getAddressUses() {
         List<ValueSetDto> addressUses = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.ADDRESS_USE.getUrlPath(), LookupPathUrls.ADDRESS_USE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.ADDRESS_USE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.ADDRESS_USE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             addressUses = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -240,7 +235,7 @@ public List<ValueSetDto> getAddressUses() {
     @Override
     public List<ValueSetDto> getTelecomUses() {
         List<ValueSetDto> telecomUses = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.TELECOM_USE.getUrlPath(), LookupPathUrls.TELECOM_USE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.TELECOM_USE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.TELECOM_USE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             telecomUses = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -253,7 +248,7 @@ public List<ValueSetDto> getTelecomUses() {
     @Override
     public List<ValueSetDto> getTelecomSystems() {
         List<ValueSetDto> telecomSystems = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.TELECOM_SYSTEM.getUrlPath(), LookupPathUrls.TELECOM_SYSTEM.getType());
+        ValueSet response = getValueSets(LookupPathUrls.TELECOM_SYSTEM);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.TELECOM_SYSTEM.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             telecomSystems = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -266,7 +261,7 @@ public List<ValueSetDto> getTelecomSystems() {
     @Override
     public List<ValueSetDto> getPractitionerRoles() {
         List<ValueSetDto> practitionerRoles = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.PRACTITIONER_ROLE.getUrlPath(), LookupPathUrls.PRACTITIONER_ROLE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.PRACTITIONER_ROLE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.PRACTITIONER_ROLE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             practitionerRoles = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -298,10 +293,9 @@ public List<ValueSetDto> getAdministrativeGenders() {
     public List<ValueSetDto> getUSCoreRace() {
         List<ValueSetDto> usCoreRaces = new ArrayList<>();
         ValueSet response = null;
-        String url = fisProperties.getFhir().getServerUrl() + "/ValueSet/$expand?url=http://hl7.org/fhir/us/core/ValueSet/omb-race-category";
 
         try {
-            response = (ValueSet) fhirClient.search().byUrl(url).execute();
+            response = getValueSets(LookupPathUrls.US_CORE_RACE);
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             usCoreRaces = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
         } catch (Exception e) {
@@ -309,9 +303,8 @@ public List<ValueSetDto> getUSCoreRace() {
         }
 
         if (response == null) {
-            url = fisProperties.getFhir().getServerUrl() + "/ValueSet/omb-race-category";
             try {
-                response = (ValueSet) fhirClient.search().byUrl(url).execute();
+                response = getValueSets(LookupPathUrls.US_CORE_RACE_VALUE_SET);
                 List<ValueSet.ConceptSetComponent> valueSetList = response.getCompose().getInclude();
                 String codingSystemUrl = CodeSystemEnum.RACE.getUrl();
                 usCoreRaces = valueSetList.stream().flatMap(obj -> obj.getConcept().stream()).map(s -> LookUpUtil.convertConceptReferenceToValueSetDto(s, codingSystemUrl)).collect(toList());
@@ -329,10 +322,9 @@ public List<ValueSetDto> getUSCoreRace() {
     public List<ValueSetDto> getUSCoreEthnicity() {
         List<ValueSetDto> usCoreEthnicities = new ArrayList<>();
         ValueSet response = null;
-        String url = fisProperties.getFhir().getServerUrl() + "/ValueSet/$expand?url=http://hl7.org/fhir/us/core/ValueSet/omb-ethnicity-category";
 
         try {
-            response = (ValueSet) fhirClient.search().byUrl(url).execute();
+            response = getValueSets(LookupPathUrls.US_CORE_ETHNICITY);
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             usCoreEthnicities = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
         } catch (Exception e) {
@@ -340,9 +332,8 @@ public List<ValueSetDto> getUSCoreEthnicity() {
         }
 
         if (response == null) {
-            url = fisProperties.getFhir().getServerUrl() + "/ValueSet/omb-ethnicity-category";
             try {
-                response = (ValueSet) fhirClient.search().byUrl(url).execute();
+                response = getValueSets(LookupPathUrls.US_CORE_ETHNICITY_VALUE_SET);
                 List<ValueSet.ConceptSetComponent> valueSetList = response.getCompose().getInclude();
                 String codingSystemUrl = CodeSystemEnum.ETHNICITY.getUrl();
                 usCoreEthnicities = valueSetList.stream().flatMap(obj -> obj.getConcept().stream()).map(s -> LookUpUtil.convertConceptReferenceToValueSetDto(s, codingSystemUrl)).collect(toList());
@@ -360,7 +351,7 @@ public List<ValueSetDto> getUSCoreEthnicity() {
     @Override
     public List<ValueSetDto> getUSCoreBirthSex() {
         List<ValueSetDto> birthSexList;
-        ValueSet response = getValueSets(LookupPathUrls.BIRTH_SEX.getUrlPath(), LookupPathUrls.BIRTH_SEX.getType());
+        ValueSet response = getValueSets(LookupPathUrls.BIRTH_SEX);
         List<ValueSet.ConceptSetComponent> valueSetList = response.getCompose().getInclude();
         String codingSystemUrl = CodeSystemEnum.ADMINISTRATIVE_GENDER.getUrl();
         birthSexList = valueSetList.stream().flatMap(obj -> obj.getConcept().stream()).map(s -> LookUpUtil.convertConceptReferenceToValueSetDto(s, codingSystemUrl)).collect(toList());
@@ -373,7 +364,7 @@ public List<ValueSetDto> getUSCoreBirthSex() {
     @Override
     public List<ValueSetDto> getLanguages() {
         List<ValueSetDto> languageList;
-        ValueSet response = getValueSets(LookupPathUrls.SIMPLE_LANGUAGE.getUrlPath(), LookupPathUrls.SIMPLE_LANGUAGE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.SIMPLE_LANGUAGE);
         List<ValueSet.ConceptSetComponent> valueSetList = response.getCompose().getInclude();
         String codingSystemUrl = CodeSystemEnum.LANGUAGE.getUrl();
         languageList = valueSetList.stream().flatMap(obj -> obj.getConcept().stream()).map(s -> LookUpUtil.convertConceptReferenceToValueSetDto(s, codingSystemUrl)).collect(toList());
@@ -385,7 +376,7 @@ public List<ValueSetDto> getLanguages() {
     @Override
     public List<ValueSetDto> getHealthcareServiceTypes() {
         List<ValueSetDto> healthcareServiceTypeCodes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.HEALTHCARE_SERVICE_TYPE.getUrlPath(), LookupPathUrls.HEALTHCARE_SERVICE_TYPE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.HEALTHCARE_SERVICE_TYPE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.HEALTHCARE_SERVICE_TYPE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> healthcareServiceTypeList = response.getExpansion().getContains();
             healthcareServiceTypeCodes = healthcareServiceTypeList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -398,7 +389,7 @@ public List<ValueSetDto> getHealthcareServiceTypes() {
     @Override
     public List<ValueSetDto> getHealthcareServiceCategories() {
         List<ValueSetDto> healthcareServiceCategoryCodes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.HEALTHCARE_SERVICE_CATEGORY.getUrlPath(), LookupPathUrls.HEALTHCARE_SERVICE_CATEGORY.getType());
+        ValueSet response = getValueSets(LookupPathUrls.HEALTHCARE_SERVICE_CATEGORY);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.HEALTHCARE_SERVICE_CATEGORY.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> healthcareServiceCategoryList = response.getExpansion().getContains();
             healthcareServiceCategoryCodes = healthcareServiceCategoryList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -411,7 +402,7 @@ public List<ValueSetDto> getHealthcareServiceCategories() {
     @Override
     public List<ValueSetDto> getHealthcareServiceSpecialities() {
         List<ValueSetDto> healthcareServiceSpecialitiesCodes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.HEALTHCARE_SERVICE_SPECIALITY_2.getUrlPath(), LookupPathUrls.HEALTHCARE_SERVICE_SPECIALITY_2.getType());
+        ValueSet response = getValueSets(LookupPathUrls.HEALTHCARE_SERVICE_SPECIALITY_2);
 
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.HEALTHCARE_SERVICE_SPECIALITY_2.getType())) {
             List<ValueSet.ConceptSetComponent> valueSetList = response.getCompose().getInclude();
@@ -439,7 +430,7 @@ public List<StatusBooleanValuesDto> getHealthcareServiceStatuses() {
     @Override
     public List<ValueSetDto> getHealthcareServiceReferralMethods() {
         List<ValueSetDto> healthcareServiceReferralMethodCodes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.HEALTHCARE_SERVICE_REFERRAL_METHOD.getUrlPath(), LookupPathUrls.HEALTHCARE_SERVICE_REFERRAL_METHOD.getType());
+        ValueSet response = getValueSets(LookupPathUrls.HEALTHCARE_SERVICE_REFERRAL_METHOD);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.HEALTHCARE_SERVICE_REFERRAL_METHOD.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> healthcareServiceCategoryList = response.getExpansion().getContains();
             healthcareServiceReferralMethodCodes = healthcareServiceCategoryList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -452,7 +443,7 @@ public List<ValueSetDto> getHealthcareServiceReferralMethods() {
     @Override
     public List<ValueSetDto> getCareTeamCategories() {
         List<ValueSetDto> careTeamCategory;
-        ValueSet response = getValueSets(LookupPathUrls.CARE_TEAM_CATEGORY.getUrlPath(), LookupPathUrls.CARE_TEAM_CATEGORY.getType());
+        ValueSet response = getValueSets(LookupPathUrls.CARE_TEAM_CATEGORY);
         List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
         careTeamCategory = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
         log.info("Found " + careTeamCategory.size() + " care team categories.");
@@ -463,7 +454,7 @@ public List<ValueSetDto> getCareTeamCategories() {
     @Override
     public List<ValueSetDto> getCareTeamStatuses() {
         List<ValueSetDto> careTeamStatusList;
-        ValueSet response = getValueSets(LookupPathUrls.CARE_TEAM_STATUS.getUrlPath(), LookupPathUrls.CARE_TEAM_STATUS.getType());
+        ValueSet response = getValueSets(LookupPathUrls.CARE_TEAM_STATUS);
         List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
         careTeamStatusList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
         log.info("Found " + careTeamStatusList.size() + " care team statuses.");
@@ -492,7 +483,7 @@ public List<ValueSetDto> getParticipantTypes() {
     public List<ValueSetDto> getParticipantRoles() {
         //CareTeam Participant Role
         List<ValueSetDto> participantRolesList;
-        ValueSet response = getValueSets(LookupPathUrls.PARTICIPANT_ROLE.getUrlPath(), LookupPathUrls.PARTICIPANT_ROLE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.PARTICIPANT_ROLE);
         List<ValueSet.ConceptSetComponent> valueSetList = response.getCompose().getInclude();
         String codingSystemUrl = CodeSystemEnum.CARETEAM_PARTICIPANT.getUrl();
         participantRolesList = valueSetList.stream().flatMap(obj -> obj.getConcept().stream()).map(s -> LookUpUtil.convertConceptReferenceToValueSetDto(s, codingSystemUrl)).collect(toList());
@@ -504,7 +495,7 @@ public List<ValueSetDto> getParticipantRoles() {
     @Override
     public List<ValueSetDto> getCareTeamReasons() {
         List<ValueSetDto> reasonCodes;
-        ValueSet response = getValueSets(LookupPathUrls.CARE_TEAM_REASON_CODE.getUrlPath(), LookupPathUrls.CARE_TEAM_REASON_CODE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.CARE_TEAM_REASON_CODE);
         List<ValueSet.ConceptSetComponent> valueSetList = response.getCompose().getInclude();
         String codingSystemUrl = CodeSystemEnum.CARETEAM_REASON.getUrl();
         reasonCodes = valueSetList.stream().flatMap(obj -> obj.getConcept().stream()).map(s -> LookUpUtil.convertConceptReferenceToValueSetDto(s, codingSystemUrl)).collect(toList());
@@ -516,7 +507,7 @@ public List<ValueSetDto> getCareTeamReasons() {
     @Override
     public List<ValueSetDto> getRelatedPersonPatientRelationshipTypes() {
         List<ValueSetDto> relationshipTypes;
-        ValueSet response = getValueSets(LookupPathUrls.RELATED_PERSON_PATIENT_RELATIONSHIPTYPES.getUrlPath(), LookupPathUrls.RELATED_PERSON_PATIENT_RELATIONSHIPTYPES.getType());
+        ValueSet response = getValueSets(LookupPathUrls.RELATED_PERSON_PATIENT_RELATIONSHIPTYPES);
         List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
         relationshipTypes = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
         log.info("Found " + relationshipTypes.size() + " relationship types.");
@@ -527,7 +518,7 @@ public List<ValueSetDto> getRelatedPersonPatientRelationshipTypes() {
     @Override
     public List<ValueSetDto> getTaskStatus() {
         List<ValueSetDto> taskStatus;
-        ValueSet response = getValueSets(LookupPathUrls.TASK_STATUS.getUrlPath(), LookupPathUrls.TASK_STATUS.getType());
+        ValueSet response = getValueSets(LookupPathUrls.TASK_STATUS);
         List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
         taskStatus = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
         log.info("Found " + taskStatus.size() + " task statuses.");
@@ -538,7 +529,7 @@ public List<ValueSetDto> getTaskStatus() {
     @Override
     public List<ValueSetDto> getRequestPriority() {
         List<ValueSetDto> requestPriority;
-        ValueSet response = getValueSets(LookupPathUrls.REQUEST_PRIORITY.getUrlPath(), LookupPathUrls.REQUEST_PRIORITY.getType());
+        ValueSet response = getValueSets(LookupPathUrls.REQUEST_PRIORITY);
         List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
         requestPriority = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
         log.info("Found " + requestPriority.size() + " request priorities.");
@@ -549,7 +540,7 @@ public List<ValueSetDto> getRequestPriority() {
     @Override
     public List<ValueSetDto> getTaskPerformerType() {
         List<ValueSetDto> taskPerformerType;
-        ValueSet response = getValueSets(LookupPathUrls.TASK_PERFORMER_TYPE.getUrlPath(), LookupPathUrls.TASK_PERFORMER_TYPE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.TASK_PERFORMER_TYPE);
         List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
         taskPerformerType = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
         log.info("Found " + taskPerformerType.size() + " task performer types.");
@@ -560,7 +551,7 @@ public List<ValueSetDto> getTaskPerformerType() {
     @Override
     public List<ValueSetDto> getRequestIntent() {
         List<ValueSetDto> requestIntent;
-        ValueSet response = getValueSets(LookupPathUrls.REQUEST_INTENT.getUrlPath(), LookupPathUrls.REQUEST_INTENT.getType());
+        ValueSet response = getValueSets(LookupPathUrls.REQUEST_INTENT);
         List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
         requestIntent = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
         log.info("Found " + requestIntent.size() + " request intents.");
@@ -572,7 +563,7 @@ public List<ValueSetDto> getRequestIntent() {
     @Override
     public List<ValueSetDto> getPublicationStatus() {
         List<ValueSetDto> publicationStatuses = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.PUBLICATION_STATUS.getUrlPath(), LookupPathUrls.PUBLICATION_STATUS.getType());
+        ValueSet response = getValueSets(LookupPathUrls.PUBLICATION_STATUS);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.PUBLICATION_STATUS.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             publicationStatuses = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -585,7 +576,7 @@ public List<ValueSetDto> getPublicationStatus() {
     @Override
     public List<ValueSetDto> getDefinitionTopic() {
         List<ValueSetDto> definitionTopics = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.DEFINITION_TOPIC.getUrlPath(), LookupPathUrls.DEFINITION_TOPIC.getType());
+        ValueSet response = getValueSets(LookupPathUrls.DEFINITION_TOPIC);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.DEFINITION_TOPIC.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             definitionTopics = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -598,7 +589,7 @@ public List<ValueSetDto> getDefinitionTopic() {
     @Override
     public List<ValueSetDto> getResourceType() {
         List<ValueSetDto> resourceTypes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.RESOURCE_TYPE.getUrlPath(), LookupPathUrls.RESOURCE_TYPE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.RESOURCE_TYPE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.RESOURCE_TYPE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             resourceTypes = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -611,14 +602,14 @@ public List<ValueSetDto> getResourceType() {
     @Override
     public List<ValueSetDto> getActionParticipantRole() {
         List<ValueSetDto> resourceTypes = new ArrayList<>();
-        ValueSet practitionerRoleResponse = getValueSets(LookupPathUrls.PRACTITIONER_ROLE.getUrlPath(), LookupPathUrls.PRACTITIONER_ROLE.getType());
+        ValueSet practitionerRoleResponse = getValueSets(LookupPathUrls.PRACTITIONER_ROLE);
         if (LookUpUtil.isValueSetAvailableInServer(practitionerRoleResponse, LookupPathUrls.PRACTITIONER_ROLE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = practitionerRoleResponse.getExpansion().getContains();
             resourceTypes = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
         }
 
         List<ValueSetDto> relatedPersonRelatedTypes = new ArrayList<>();
-        ValueSet relatedPersonRelationshipTypeResponse = getValueSets(LookupPathUrls.RELATED_PERSON_PATIENT_RELATIONSHIPTYPES.getUrlPath(), LookupPathUrls.RELATED_PERSON_PATIENT_RELATIONSHIPTYPES.getType());
+        ValueSet relatedPersonRelationshipTypeResponse = getValueSets(LookupPathUrls.RELATED_PERSON_PATIENT_RELATIONSHIPTYPES);
         if (LookUpUtil.isValueSetAvailableInServer(relatedPersonRelationshipTypeResponse, LookupPathUrls.RELATED_PERSON_PATIENT_RELATIONSHIPTYPES.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = relatedPersonRelationshipTypeResponse.getExpansion().getContains();
             relatedPersonRelatedTypes = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -632,7 +623,7 @@ public List<ValueSetDto> getActionParticipantRole() {
     @Override
     public List<ValueSetDto> getActionParticipantType() {
         List<ValueSetDto> actionParticipantTypes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.ACTION_PARTICIPATION_TYPE.getUrlPath(), LookupPathUrls.ACTION_PARTICIPATION_TYPE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.ACTION_PARTICIPATION_TYPE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.ACTION_PARTICIPATION_TYPE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             actionParticipantTypes = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -645,7 +636,7 @@ public List<ValueSetDto> getActionParticipantType() {
     @Override
     public List<ValueSetDto> getActivityDefinitionRelatedArtifactTypes() {
         List<ValueSetDto> relatedArtifactTypes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.ACTIVITY_DEFINITION_RELATED_ARTIFACT_TYPES.getUrlPath(), LookupPathUrls.ACTIVITY_DEFINITION_RELATED_ARTIFACT_TYPES.getType());
+        ValueSet response = getValueSets(LookupPathUrls.ACTIVITY_DEFINITION_RELATED_ARTIFACT_TYPES);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.ACTIVITY_DEFINITION_RELATED_ARTIFACT_TYPES.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             relatedArtifactTypes = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -658,7 +649,7 @@ public List<ValueSetDto> getActivityDefinitionRelatedArtifactTypes() {
     @Override
     public List<ValueSetDto> getCommunicationStatus() {
         List<ValueSetDto> communicationStatuses = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.COMMUNICATION_STATUS.getUrlPath(), LookupPathUrls.COMMUNICATION_STATUS.getType());
+        ValueSet response = getValueSets(LookupPathUrls.COMMUNICATION_STATUS);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.COMMUNICATION_STATUS.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             communicationStatuses = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -671,7 +662,7 @@ public List<ValueSetDto> getCommunicationStatus() {
     @Override
     public List<ValueSetDto> getCommunicationCategory() {
         List<ValueSetDto> communicationCategoryList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.COMMUNICATION_CATEGORY.getUrlPath(), LookupPathUrls.COMMUNICATION_CATEGORY.getType());
+        ValueSet response = getValueSets(LookupPathUrls.COMMUNICATION_CATEGORY);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.COMMUNICATION_CATEGORY.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             communicationCategoryList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -684,7 +675,7 @@ public List<ValueSetDto> getCommunicationCategory() {
     @Override
     public List<ValueSetDto> getCommunicationNotDoneReason() {
         List<ValueSetDto> resourceTypes = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.COMMUNICATION_NOT_DONE_REASON.getUrlPath(), LookupPathUrls.COMMUNICATION_NOT_DONE_REASON.getType());
+        ValueSet response = getValueSets(LookupPathUrls.COMMUNICATION_NOT_DONE_REASON);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.COMMUNICATION_NOT_DONE_REASON.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             resourceTypes = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -696,7 +687,7 @@ public List<ValueSetDto> getCommunicationNotDoneReason() {
     @Override
     public List<ValueSetDto> getCommunicationMedium() {
         List<ValueSetDto> communicationMedium = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.COMMUNICATION_MEDIUM.getUrlPath(), LookupPathUrls.COMMUNICATION_MEDIUM.getType());
+        ValueSet response = getValueSets(LookupPathUrls.COMMUNICATION_MEDIUM);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.COMMUNICATION_MEDIUM.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             communicationMedium = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -709,7 +700,7 @@ public List<ValueSetDto> getCommunicationMedium() {
     @Override
     public List<ValueSetDto> getAppointmentStatus() {
         List<ValueSetDto> appointmentStatusList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.APPOINTMENT_STATUS.getUrlPath(), LookupPathUrls.APPOINTMENT_STATUS.getType());
+        ValueSet response = getValueSets(LookupPathUrls.APPOINTMENT_STATUS);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.APPOINTMENT_STATUS.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             appointmentStatusList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -722,7 +713,7 @@ public List<ValueSetDto> getAppointmentStatus() {
     @Override
     public List<ValueSetDto> getAppointmentType() {
         List<ValueSetDto> appointmentTypeList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.APPOINTMENT_TYPE.getUrlPath(), LookupPathUrls.APPOINTMENT_TYPE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.APPOINTMENT_TYPE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.APPOINTMENT_TYPE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             appointmentTypeList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -735,7 +726,7 @@ public List<ValueSetDto> getAppointmentType() {
     @Override
     public List<ValueSetDto> getAppointmentParticipationStatus() {
         List<ValueSetDto> participationStatusList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.PARTICIPATION_STATUS.getUrlPath(), LookupPathUrls.PARTICIPATION_STATUS.getType());
+        ValueSet response = getValueSets(LookupPathUrls.PARTICIPATION_STATUS);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.PARTICIPATION_STATUS.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             participationStatusList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -767,7 +758,7 @@ public List<ValueSetDto> getAppointmentParticipantType() {
     @Override
     public List<ValueSetDto> getAppointmentParticipationType() {
         List<ValueSetDto> participationTypeList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.PARTICIPATION_TYPE.getUrlPath(), LookupPathUrls.PARTICIPATION_TYPE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.PARTICIPATION_TYPE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.PARTICIPATION_TYPE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             participationTypeList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -781,7 +772,7 @@ public List<ValueSetDto> getAppointmentParticipationType() {
     @Override
     public List<ValueSetDto> getAppointmentParticipantRequired() {
         List<ValueSetDto> participantRequiredList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.PARTICIPANT_REQUIRED.getUrlPath(), LookupPathUrls.PARTICIPANT_REQUIRED.getType());
+        ValueSet response = getValueSets(LookupPathUrls.PARTICIPANT_REQUIRED);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.PARTICIPANT_REQUIRED.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             participantRequiredList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -795,7 +786,7 @@ public List<ValueSetDto> getAppointmentParticipantRequired() {
     @Override
     public List<ValueSetDto> getProviderRole() {
         List<ValueSetDto> providerRoleList;
-        ValueSet response = getValueSets(LookupPathUrls.PROVIDER_ROLE.getUrlPath(), LookupPathUrls.PROVIDER_ROLE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.PROVIDER_ROLE);
         List<ValueSet.ConceptReferenceComponent> valueSetList = response.getCompose().getInclude().get(0).getConcept();
         String codingSystemUrl = CodeSystemEnum.PROVIDER_ROLE.getUrl();
         providerRoleList = valueSetList.stream().map(s -> LookUpUtil.convertConceptReferenceToValueSetDto(s, codingSystemUrl)).collect(toList());
@@ -808,7 +799,7 @@ public List<ValueSetDto> getProviderRole() {
     @Override
     public List<ValueSetDto> getProviderSpecialty() {
         List<ValueSetDto> providerSpecialtyList;
-        ValueSet response = getValueSets(LookupPathUrls.PROVIDER_SPECIALTY.getUrlPath(), LookupPathUrls.PROVIDER_SPECIALTY.getType());
+        ValueSet response = getValueSets(LookupPathUrls.PROVIDER_SPECIALTY);
         List<ValueSet.ConceptReferenceComponent> valueSetList = response.getCompose().getInclude().get(0).getConcept();
         String codingSystemUrl = CodeSystemEnum.PROVIDER_SPECIALTY.getUrl();
         providerSpecialtyList = valueSetList.stream().map(s -> LookUpUtil.convertConceptReferenceToValueSetDto(s, codingSystemUrl)).collect(toList());
@@ -821,7 +812,7 @@ public List<ValueSetDto> getProviderSpecialty() {
     @Override
     public List<ValueSetDto> getFlagStatus() {
         List<ValueSetDto> flagStatusList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.FLAG_STATUS.getUrlPath(), LookupPathUrls.FLAG_STATUS.getType());
+        ValueSet response = getValueSets(LookupPathUrls.FLAG_STATUS);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.FLAG_STATUS.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             flagStatusList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -835,7 +826,7 @@ public List<ValueSetDto> getFlagStatus() {
     @Override
     public List<ValueSetDto> getFlagCategory() {
         List<ValueSetDto> flagCategoryList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.FLAG_CATEGORY.getUrlPath(), LookupPathUrls.FLAG_CATEGORY.getType());
+        ValueSet response = getValueSets(LookupPathUrls.FLAG_CATEGORY);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.FLAG_CATEGORY.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             flagCategoryList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -849,7 +840,7 @@ public List<ValueSetDto> getFlagCategory() {
     @Override
     public List<ValueSetDto> getSecurityLabel() {
         List<ValueSetDto> securityLabelList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.SECURITY_LABEL.getUrlPath(), LookupPathUrls.SECURITY_LABEL.getType());
+        ValueSet response = getValueSets(LookupPathUrls.SECURITY_LABEL);
         List<ValueSet.ConceptSetComponent> valueSetList = response.getCompose().getInclude();
         for (ValueSet.ConceptSetComponent conceptComponent : valueSetList) {
             String codingSystemUrl = conceptComponent.getSystem();
@@ -866,7 +857,7 @@ public List<ValueSetDto> getSecurityLabel() {
     @Override
     public List<ValueSetDto> getPolicyholderRelationship() {
         List<ValueSetDto> policyholderRelationshipList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.POLICYHOLDER_RELATIONSHIP.getUrlPath(), LookupPathUrls.POLICYHOLDER_RELATIONSHIP.getType());
+        ValueSet response = getValueSets(LookupPathUrls.POLICYHOLDER_RELATIONSHIP);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.POLICYHOLDER_RELATIONSHIP.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             policyholderRelationshipList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -880,7 +871,7 @@ public List<ValueSetDto> getPolicyholderRelationship() {
     @Override
     public List<ValueSetDto> getFmStatus() {
         List<ValueSetDto> fmStatusList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.FM_STATUS.getUrlPath(), LookupPathUrls.FM_STATUS.getType());
+        ValueSet response = getValueSets(LookupPathUrls.FM_STATUS);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.FM_STATUS.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             fmStatusList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -894,7 +885,7 @@ public List<ValueSetDto> getFmStatus() {
     @Override
     public List<ValueSetDto> getCoverageType() {
         List<ValueSetDto> coverageTypeList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.COVERAGE_TYPE.getUrlPath(), LookupPathUrls.COVERAGE_TYPE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.COVERAGE_TYPE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.COVERAGE_TYPE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             coverageTypeList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -908,7 +899,7 @@ public List<ValueSetDto> getCoverageType() {
     @Override
     public List<ValueSetDto> getEocStatus() {
         List<ValueSetDto> eocStatusList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.EOC_STATUS.getUrlPath(), LookupPathUrls.EOC_STATUS.getType());
+        ValueSet response = getValueSets(LookupPathUrls.EOC_STATUS);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.EOC_STATUS.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             eocStatusList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -922,7 +913,7 @@ public List<ValueSetDto> getEocStatus() {
     @Override
     public List<ValueSetDto> getEocType() {
         List<ValueSetDto> eocTypeList = new ArrayList<>();
-        ValueSet response = getValueSets(LookupPathUrls.EOC_TYPE.getUrlPath(), LookupPathUrls.EOC_TYPE.getType());
+        ValueSet response = getValueSets(LookupPathUrls.EOC_TYPE);
         if (LookUpUtil.isValueSetAvailableInServer(response, LookupPathUrls.EOC_TYPE.getType())) {
             List<ValueSet.ValueSetExpansionContainsComponent> valueSetList = response.getExpansion().getContains();
             eocTypeList = valueSetList.stream().map(LookUpUtil::convertExpansionComponentToValueSetDto).collect(toList());
@@ -948,15 +939,7 @@ public List<ValueSetDto> getContactPurpose() {
     }
 
 
-    private ValueSet getValueSets(String urlPath, String type) {
-        ValueSet response;
-        String url = fisProperties.getFhir().getServerUrl() + urlPath;
-        try {
-            response = (ValueSet) fhirClient.search().byUrl(url).execute();
-        } catch (ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException e) {
-            log.error("Query was unsuccessful - Could not find any " + type + " code", e.getMessage());
-            throw new ResourceNotFoundException("Query was unsuccessful - Could not find any " + type + " code", e);
-        }
-        return response;
+    private ValueSet getValueSets(LookupPathUrls lookupPathUrl) {
+        return valueSetLookUpCache.get(lookupPathUrl);
     }
 }
@@ -0,0 +1,182 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.security.oauth2.client.OAuth2RestTemplate;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the client credentials access token used for FHIR server calls. The token is fetched
+ * in the background once a configured fraction of its lifetime has passed, so callers only
+ * wait on the token endpoint when there is no valid token at all.
+ */
+@Slf4j
+public class OAuth2AccessTokenHolder implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "fhir.client.token.";
+
+    private final OAuth2RestTemplate oAuth2RestTemplate;
+
+    private final FisProperties.Fhir.AccessToken accessTokenProperties;
+
+    private final ScheduledThreadPoolExecutor refreshExecutor;
+
+    private final AtomicReference<CompletableFuture<OAuth2AccessToken>> inFlightRefresh = new AtomicReference<>();
+
+    private final AtomicLong fetchCount = new AtomicLong();
+
+    private final AtomicLong fetchFailureCount = new AtomicLong();
+
+    private final AtomicLong totalFetchTimeInMs = new AtomicLong();
+
+    private final AtomicLong maxFetchTimeInMs = new AtomicLong();
+
+    private volatile long lastFetchTimeInMs;
+
+    private volatile OAuth2AccessToken accessToken;
+
+    //The only pending background refresh, replaced whenever a fetch schedules the next one
+    private ScheduledFuture<?> scheduledRefresh;
+
+    public OAuth2AccessTokenHolder(OAuth2RestTemplate oAuth2RestTemplate, FisProperties fisProperties) {
+        this(oAuth2RestTemplate, fisProperties, createRefreshExecutor());
+    }
+
+    OAuth2AccessTokenHolder(OAuth2RestTemplate oAuth2RestTemplate, FisProperties fisProperties, ScheduledThreadPoolExecutor refreshExecutor) {
+        this.oAuth2RestTemplate = oAuth2RestTemplate;
+        this.accessTokenProperties = fisProperties.getFhir().getAccessToken();
+        this.refreshExecutor = refreshExecutor;
+        //Fetch the first token before the first FHIR call needs it
+        refreshExecutor.execute(this::refreshAsync);
+    }
+
+    public String getAccessTokenValue() {
+        OAuth2AccessToken currentToken = accessToken;
+        if (currentToken == null || currentToken.isExpired()) {
+            //Only happens on startup or when background refreshes kept failing
+            return awaitRefresh().getValue();
+        }
+        return currentToken.getValue();
+    }
+
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long fetches = fetchCount.get();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "fetch", fetches));
+        metrics.add(new Metric<>(METRIC_PREFIX + "fetch.failure", fetchFailureCount.get()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "fetch.time.last", lastFetchTimeInMs));
+        metrics.add(new Metric<>(METRIC_PREFIX + "fetch.time.max", maxFetchTimeInMs.get()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "fetch.time.mean", fetches > 0 ? totalFetchTimeInMs.get() / fetches : 0));
+        OAuth2AccessToken currentToken = accessToken;
+        if (currentToken != null && currentToken.getExpiration() != null) {
+            metrics.add(new Metric<>(METRIC_PREFIX + "expires.in", currentToken.getExpiresIn()));
+        }
+        return metrics;
+    }
+
+    private OAuth2AccessToken awaitRefresh() {
+        try {
+            return refreshAsync().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a token fetch unless one is already running, in which case callers share its result.
+     */
+    private CompletableFuture<OAuth2AccessToken> refreshAsync() {
+        while (true) {
+            CompletableFuture<OAuth2AccessToken> inFlight = inFlightRefresh.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+            CompletableFuture<OAuth2AccessToken> refresh = new CompletableFuture<>();
+            if (inFlightRefresh.compareAndSet(null, refresh)) {
+                refreshExecutor.execute(() -> fetchAccessToken(refresh));
+                return refresh;
+            }
+        }
+    }
+
+    private void fetchAccessToken(CompletableFuture<OAuth2AccessToken> refresh) {
+        long start = System.currentTimeMillis();
+        try {
+            //Drop the token held by the client context, otherwise it is returned until it expires
+            oAuth2RestTemplate.getOAuth2ClientContext().setAccessToken(null);
+            OAuth2AccessToken fetchedToken = oAuth2RestTemplate.getAccessToken();
+            recordFetchTime(System.currentTimeMillis() - start);
+            accessToken = fetchedToken;
+            scheduleNextRefresh(fetchedToken, start);
+            inFlightRefresh.set(null);
+            refresh.complete(fetchedToken);
+        } catch (RuntimeException e) {
+            recordFetchTime(System.currentTimeMillis() - start);
+            fetchFailureCount.incrementAndGet();
+            log.error("Could not fetch an access token for the FHIR server, retrying in " + accessTokenProperties.getRetryIntervalInMs() + " ms", e);
+            scheduleRefresh(accessTokenProperties.getRetryIntervalInMs());
+            inFlightRefresh.set(null);
+            refresh.completeExceptionally(e);
+        }
+    }
+
+    private void scheduleNextRefresh(OAuth2AccessToken fetchedToken, long fetchedAt) {
+        if (fetchedToken.getExpiration() == null) {
+            log.info("Fetched a non-expiring access token for the FHIR server");
+            return;
+        }
+        long lifetimeInMs = fetchedToken.getExpiration().getTime() - fetchedAt;
+        long refreshDelayInMs = Math.max((long) (lifetimeInMs * accessTokenProperties.getRefreshAtLifetimeFraction()), 0);
+        log.debug("Fetched an access token for the FHIR server, next refresh in " + refreshDelayInMs + " ms");
+        scheduleRefresh(refreshDelayInMs);
+    }
+
+    /**
+     * Replaces the pending background refresh, so on-demand fetches and retries don't pile up refreshes.
+     */
+    private synchronized void scheduleRefresh(long delayInMs) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        scheduledRefresh = refreshExecutor.schedule(this::refreshAsync, delayInMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static ScheduledThreadPoolExecutor createRefreshExecutor() {
+        ScheduledThreadPoolExecutor refreshExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "fhir-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //Cancelled refreshes leave the queue right away instead of when they would have run
+        refreshExecutor.setRemoveOnCancelPolicy(true);
+        return refreshExecutor;
+    }
+
+    private void recordFetchTime(long fetchTimeInMs) {
+        fetchCount.incrementAndGet();
+        totalFetchTimeInMs.addAndGet(fetchTimeInMs);
+        maxFetchTimeInMs.accumulateAndGet(fetchTimeInMs, Math::max);
+        lastFetchTimeInMs = fetchTimeInMs;
+    }
+}
@@ -0,0 +1,476 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.constants.CareTeamConstants;
+import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirResourceUtil;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.CareTeam;
+import org.hl7.fhir.dstu3.model.DomainResource;
+import org.hl7.fhir.dstu3.model.EpisodeOfCare;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Period;
+import org.hl7.fhir.dstu3.model.PractitionerRole;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * In-memory index of which patients belong to an organization (Patient.managingOrganization and
+ * EpisodeOfCare.managingOrganization), which care teams a practitioner or organization participates in
+ * (CareTeam.participant) and which organizations a practitioner works for (PractitionerRole.organization).
+ * The index is bulk loaded at startup and then kept current from our own writes, applied right away, and from
+ * _lastUpdated deltas for the writes of other clients. Deleted
+ * resources are not returned by _lastUpdated searches, so our own deletes are evicted right away and deletes made by
+ * other clients are dropped by a periodic reconciliation of the indexed ids.
+ * The index answers list filters; access decisions must not rely on it alone as it trails the FHIR server.
+ */
+@Service
+@Slf4j
+public class OrganizationMembershipService implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "index.membership.";
+
+    private static final Map<ResourceType, IndexedType> INDEXED_TYPES = new EnumMap<>(ResourceType.class);
+
+    static {
+        INDEXED_TYPES.put(ResourceType.Patient, new IndexedType(Patient.class, "managingOrganization"));
+        INDEXED_TYPES.put(ResourceType.EpisodeOfCare, new IndexedType(EpisodeOfCare.class, "managingOrganization", "patient"));
+        INDEXED_TYPES.put(ResourceType.CareTeam, new IndexedType(CareTeam.class, "subject", "participant"));
+        INDEXED_TYPES.put(ResourceType.PractitionerRole, new IndexedType(PractitionerRole.class, "practitioner", "organization"));
+    }
+
+    private final IGenericClient fhirClient;
+
+    private final FisProperties fisProperties;
+
+    private final Map<ResourceType, Watermark> watermarks = new EnumMap<>(ResourceType.class);
+
+    //Changes whenever any relation changes
+    private final AtomicLong generation = new AtomicLong();
+
+    //organization id -> patient ids
+    private final Relation organizationPatients = new Relation(generation);
+
+    //participant id -> care team ids
+    private final Relation participantCareTeams = new Relation(generation);
+
+    //care team id -> patient id
+    private final Relation careTeamPatients = new Relation(generation);
+
+    //care team id -> ids of the practitioners that are care managers of the care team
+    private final Relation careTeamCareManagers = new Relation(generation);
+
+    //practitioner id -> organization ids
+    private final Relation practitionerOrganizations = new Relation(generation);
+
+    private final List<Relation> relations = Arrays.asList(organizationPatients, participantCareTeams, careTeamPatients,
+            careTeamCareManagers, practitionerOrganizations);
+
+    //care team id -> participant id -> periods of the participations, an open period when a participation has none
+    private final Map<String, Map<String, List<ParticipationPeriod>>> participationPeriods = new ConcurrentHashMap<>();
+
+    public OrganizationMembershipService(IGenericClient fhirClient, FisProperties fisProperties) {
+        this.fhirClient = fhirClient;
+        this.fisProperties = fisProperties;
+        INDEXED_TYPES.keySet().forEach(type -> watermarks.put(type, new Watermark()));
+    }
+
+    /**
+     * @return an unmodifiable view of the patient ids of the organization
+     */
+    public Set<String> getPatientIds(String organizationId) {
+        loaded(ResourceType.Patient, ResourceType.EpisodeOfCare);
+        return organizationPatients.targets(organizationId);
+    }
+
+    public boolean isMember(String organizationId, String patientId) {
+        return getPatientIds(organizationId).contains(patientId);
+    }
+
+    /**
+     * @return ids of the organizations that have a role for the practitioner
+     */
+    public Set<String> getOrganizationIds(String practitionerId) {
+        loaded(ResourceType.PractitionerRole);
+        return practitionerOrganizations.targets(practitionerId);
+    }
+
+    /**
+     * @return ids of the care teams any of the participants (practitioners, organizations, related persons etc.) is
+     * currently part of, participations outside their period are left out
+     */
+    public Set<String> getCareTeamIds(Collection<String> participantIds) {
+        loaded(ResourceType.CareTeam);
+        final Date now = new Date();
+        return participantIds.stream()
+                .flatMap(participantId -> participantCareTeams.targets(participantId).stream()
+                        .filter(careTeamId -> isParticipating(careTeamId, participantId, now)))
+                .collect(toSet());
+    }
+
+    /**
+     * @return ids of the patients of the care teams any of the participants is part of
+     */
+    public Set<String> getCareTeamPatientIds(Collection<String> participantIds) {
+        return getCareTeamIds(participantIds).stream()
+                .flatMap(careTeamId -> careTeamPatients.targets(careTeamId).stream())
+                .collect(toSet());
+    }
+
+    public Optional<String> getCareTeamPatientId(String careTeamId) {
+        loaded(ResourceType.CareTeam);
+        return careTeamPatients.targets(careTeamId).stream().findAny();
+    }
+
+    public boolean hasCareManager(String careTeamId) {
+        loaded(ResourceType.CareTeam);
+        return !careTeamCareManagers.targets(careTeamId).isEmpty();
+    }
+
+    /**
+     * @return a number that changes whenever a membership changes, for caches of decisions based on memberships
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void bulkLoad() {
+        INDEXED_TYPES.keySet().forEach(type -> {
+            try {
+                load(type);
+            } catch (Exception e) {
+                //Loaded on first use instead
+                log.error("Unable to load the " + type + " membership index: " + e.getMessage());
+            }
+        });
+    }
+
+    @Scheduled(initialDelayString = "${ocp-fis.cache.membership.pollIntervalInMs:30000}", fixedDelayString = "${ocp-fis.cache.membership.pollIntervalInMs:30000}")
+    public void pollChanges() {
+        watermarks.forEach((type, watermark) -> {
+            if (watermark.lastUpdated != null) {
+                try {
+                    load(type);
+                } catch (Exception e) {
+                    log.error("Unable to refresh the " + type + " membership index: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the resources that were deleted by other clients, which _lastUpdated deltas do not return.
+     */
+    @Scheduled(initialDelayString = "${ocp-fis.cache.membership.reconcileIntervalInMs:3600000}", fixedDelayString = "${ocp-fis.cache.membership.reconcileIntervalInMs:3600000}")
+    public void reconcile() {
+        watermarks.forEach((type, watermark) -> {
+            if (watermark.lastUpdated != null) {
+                try {
+                    reconcile(type);
+                } catch (Exception e) {
+                    log.error("Unable to reconcile the " + type + " membership index: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies our own write of a resource from the written content and the id the server assigned, so that the
+     * lists loaded next already reflect it. Resources of types that are not indexed are ignored.
+     */
+    public void index(String id, DomainResource resource) {
+        Watermark watermark = watermarks.get(resource.getResourceType());
+        if (watermark == null) {
+            return;
+        }
+        //Waits for a running delta, which may have read the resource before this write
+        synchronized (watermark) {
+            index(id, resource, watermark);
+        }
+    }
+
+    @EventListener
+    public void onResourceDeleted(ResourceDeletedEvent event) {
+        INDEXED_TYPES.keySet().stream()
+                .filter(event::isOf)
+                .forEach(type -> evict(type, event.getId()));
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long now = System.currentTimeMillis();
+        List<Metric<?>> metrics = new ArrayList<>();
+        watermarks.forEach((type, watermark) -> {
+            String prefix = METRIC_PREFIX + type.name().toLowerCase() + ".";
+            if (watermark.lastUpdated != null) {
+                metrics.add(new Metric<>(prefix + "watermark", watermark.lastUpdated.getTime()));
+                metrics.add(new Metric<>(prefix + "lag", now - watermark.polledAt));
+            }
+        });
+        metrics.add(new Metric<>(METRIC_PREFIX + "organizations", organizationPatients.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "participants", participantCareTeams.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "practitioners", practitionerOrganizations.size()));
+        return metrics;
+    }
+
+    private void loaded(ResourceType... types) {
+        for (ResourceType type : types) {
+            if (watermarks.get(type).lastUpdated == null) {
+                load(type);
+            }
+        }
+    }
+
+    private void load(ResourceType type) {
+        Watermark watermark = watermarks.get(type);
+        synchronized (watermark) {
+            long polledAt = System.currentTimeMillis();
+            IndexedType indexedType = INDEXED_TYPES.get(type);
+            IQuery query = fhirClient.search().forResource(indexedType.resourceClass);
+            if (watermark.lastUpdated != null) {
+                //Overlap the previous delta, a write committed late with an earlier _lastUpdated is not skipped
+                long watermarkOverlapInMs = fisProperties.getCache().getMembership().getWatermarkOverlapInMs();
+                query.lastUpdated(new DateRangeParam(new Date(watermark.lastUpdated.getTime() - watermarkOverlapInMs), null));
+            }
+            Bundle bundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(query)
+                    .count(fisProperties.getResourceSinglePageLimit())
+                    .returnBundle(Bundle.class)
+                    .elementsSubset(indexedType.elements)
+                    .execute();
+
+            Date newLastUpdated = watermark.lastUpdated != null ? watermark.lastUpdated : new Date(0);
+            int indexedCount = 0;
+            for (Bundle.BundleEntryComponent entry : FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.of(fisProperties.getResourceSinglePageLimit()), fhirClient, fisProperties)) {
+                DomainResource resource = (DomainResource) entry.getResource();
+                index(resource.getIdElement().getIdPart(), resource, watermark);
+                indexedCount++;
+                Date lastUpdated = resource.getMeta().getLastUpdated();
+                if (lastUpdated != null && lastUpdated.after(newLastUpdated)) {
+                    newLastUpdated = lastUpdated;
+                }
+            }
+            if (watermark.lastUpdated == null) {
+                log.info("Indexed memberships of " + indexedCount + " " + type + " resources");
+            }
+            watermark.lastUpdated = newLastUpdated;
+            watermark.polledAt = polledAt;
+        }
+    }
+
+    private void reconcile(ResourceType type) {
+        Watermark watermark = watermarks.get(type);
+        synchronized (watermark) {
+            IQuery query = fhirClient.search().forResource(INDEXED_TYPES.get(type).resourceClass);
+            Bundle bundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(query)
+                    .count(fisProperties.getResourceSinglePageLimit())
+                    .returnBundle(Bundle.class)
+                    .elementsSubset("id")
+                    .execute();
+            Set<String> existingIds = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.of(fisProperties.getResourceSinglePageLimit()), fhirClient, fisProperties).stream()
+                    .map(entry -> entry.getResource().getIdElement().getIdPart())
+                    .collect(toSet());
+            List<String> deletedIds = watermark.indexedIds.stream()
+                    .filter(id -> !existingIds.contains(id))
+                    .collect(toList());
+            deletedIds.forEach(id -> evict(type, id));
+            if (!deletedIds.isEmpty()) {
+                log.info("Dropped memberships of " + deletedIds.size() + " deleted " + type + " resources");
+            }
+        }
+    }
+
+    private void evict(ResourceType type, String id) {
+        String contributor = type + "/" + id;
+        //Also when the resource was written after the last delta, decisions may have been based on it
+        generation.incrementAndGet();
+        relations.forEach(relation -> relation.put(contributor, Collections.emptySet()));
+        if (type == ResourceType.CareTeam) {
+            putParticipationPeriods(id, Collections.emptyMap());
+        }
+        watermarks.get(type).indexedIds.remove(id);
+    }
+
+    private boolean isParticipating(String careTeamId, String participantId, Date date) {
+        List<ParticipationPeriod> periods = participationPeriods.getOrDefault(careTeamId, Collections.emptyMap()).get(participantId);
+        return periods == null || periods.stream().anyMatch(period -> period.contains(date));
+    }
+
+    private void putParticipationPeriods(String careTeamId, Map<String, List<ParticipationPeriod>> periodsByParticipant) {
+        Map<String, List<ParticipationPeriod>> previousPeriods = periodsByParticipant.isEmpty() ?
+                participationPeriods.remove(careTeamId) :
+                participationPeriods.put(careTeamId, periodsByParticipant);
+        if (!periodsByParticipant.equals(previousPeriods != null ? previousPeriods : Collections.emptyMap())) {
+            generation.incrementAndGet();
+        }
+    }
+
+    private void index(String id, DomainResource resource, Watermark watermark) {
+        watermark.indexedIds.add(id);
+        String contributor = resource.getResourceType() + "/" + id;
+        switch (resource.getResourceType()) {
+            case Patient:
+                Patient patient = (Patient) resource;
+                organizationPatients.put(contributor, edges(idOf(patient.getManagingOrganization()), id));
+                break;
+            case EpisodeOfCare:
+                EpisodeOfCare episodeOfCare = (EpisodeOfCare) resource;
+                organizationPatients.put(contributor, edges(idOf(episodeOfCare.getManagingOrganization()), idOf(episodeOfCare.getPatient())));
+                break;
+            case CareTeam:
+                CareTeam careTeam = (CareTeam) resource;
+                Set<Edge> participantEdges = new HashSet<>();
+                Set<Edge> careManagerEdges = new HashSet<>();
+                Map<String, List<ParticipationPeriod>> periodsByParticipant = new HashMap<>();
+                careTeam.getParticipant().forEach(participant -> {
+                    String memberId = idOf(participant.getMember());
+                    if (memberId != null) {
+                        participantEdges.add(new Edge(memberId, id));
+                        periodsByParticipant.computeIfAbsent(memberId, participantId -> new ArrayList<>())
+                                .add(ParticipationPeriod.of(participant.hasPeriod() ? participant.getPeriod() : null));
+                        if (participant.getMember().getReference().startsWith(ResourceType.Practitioner + "/")
+                                && FhirResourceUtil.getRoleFromCodeableConcept(participant.getRole()).contains(CareTeamConstants.CAREMANAGER_ROLE)) {
+                            careManagerEdges.add(new Edge(id, memberId));
+                        }
+                    }
+                });
+                putParticipationPeriods(id, periodsByParticipant);
+                participantCareTeams.put(contributor, participantEdges);
+                careTeamCareManagers.put(contributor, careManagerEdges);
+                String subjectReference = careTeam.getSubject().getReference();
+                careTeamPatients.put(contributor, subjectReference != null && subjectReference.startsWith(ResourceType.Patient + "/") ? edges(id, idOf(careTeam.getSubject())) : Collections.emptySet());
+                break;
+            case PractitionerRole:
+                PractitionerRole practitionerRole = (PractitionerRole) resource;
+                practitionerOrganizations.put(contributor, edges(idOf(practitionerRole.getPractitioner()), idOf(practitionerRole.getOrganization())));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static String idOf(Reference reference) {
+        if (reference == null || FhirOperationUtil.isStringNullOrEmpty(reference.getReference())) {
+            return null;
+        }
+        return reference.getReferenceElement().getIdPart();
+    }
+
+    private static Set<Edge> edges(String source, String target) {
+        return source != null && target != null ? Collections.singleton(new Edge(source, target)) : Collections.emptySet();
+    }
+
+    private static class IndexedType {
+        private final Class<? extends DomainResource> resourceClass;
+        private final String[] elements;
+
+        IndexedType(Class<? extends DomainResource> resourceClass, String... elements) {
+            this.resourceClass = resourceClass;
+            this.elements = elements;
+        }
+    }
+
+    private static class Watermark {
+        private volatile Date lastUpdated;
+        private volatile long polledAt;
+        private final Set<String> indexedIds = ConcurrentHashMap.newKeySet();
+    }
+
+    @Value
+    private static class Edge {
+        String source;
+        String target;
+    }
+
+    @Value
+    private static class ParticipationPeriod {
+        Date start;
+        Date end;
+
+        static ParticipationPeriod of(Period period) {
+            return period == null ? new ParticipationPeriod(null, null) : new ParticipationPeriod(period.getStart(), period.getEnd());
+        }
+
+        boolean contains(Date date) {
+            return FhirResourceUtil.isInPeriod(new Period().setStart(start).setEnd(end), date);
+        }
+    }
+
+    /**
+     * Source to target ids, remembering which resources contributed each pair so that an update of one resource
+     * does not drop a pair another resource still contributes.
+     */
+    private static class Relation {
+        private final Map<String, Map<String, Set<String>>> contributorsByTargetBySource = new ConcurrentHashMap<>();
+        private final Map<String, Set<Edge>> edgesByContributor = new ConcurrentHashMap<>();
+        private final AtomicLong generation;
+
+        private Relation(AtomicLong generation) {
+            this.generation = generation;
+        }
+
+        private Set<String> targets(String source) {
+            Map<String, Set<String>> contributorsByTarget = contributorsByTargetBySource.get(source);
+            return contributorsByTarget == null ? Collections.emptySet() : Collections.unmodifiableSet(contributorsByTarget.keySet());
+        }
+
+        private int size() {
+            return contributorsByTargetBySource.size();
+        }
+
+        private synchronized void put(String contributor, Set<Edge> edges) {
+            Set<Edge> previousEdges = edgesByContributor.getOrDefault(contributor, Collections.emptySet());
+            if (previousEdges.equals(edges)) {
+                return;
+            }
+            generation.incrementAndGet();
+            //Drop pairs removed by an update
+            previousEdges.stream()
+                    .filter(edge -> !edges.contains(edge))
+                    .forEach(edge -> contributorsByTargetBySource.computeIfPresent(edge.getSource(), (source, contributorsByTarget) -> {
+                        contributorsByTarget.computeIfPresent(edge.getTarget(), (target, contributors) -> {
+                            contributors.remove(contributor);
+                            return contributors.isEmpty() ? null : contributors;
+                        });
+                        return contributorsByTarget.isEmpty() ? null : contributorsByTarget;
+                    }));
+            edges.forEach(edge -> contributorsByTargetBySource.computeIfAbsent(edge.getSource(), source -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(edge.getTarget(), target -> ConcurrentHashMap.newKeySet())
+                    .add(contributor));
+            if (edges.isEmpty()) {
+                edgesByContributor.remove(contributor);
+            } else {
+                edgesByContributor.put(contributor, edges);
+            }
+        }
+    }
+}
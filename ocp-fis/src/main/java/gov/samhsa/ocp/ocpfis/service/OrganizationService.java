@@ -14,7 +14,7 @@ public interface OrganizationService {
 
     PageDto<OrganizationDto> getAllOrganizations(Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size);
 
-    PageDto<OrganizationDto> searchOrganizations(Optional<OrganizationController.SearchType> searchType, Optional<String> searchValue, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size, Optional<Boolean> showAll);
+    PageDto<OrganizationDto> searchOrganizations(Optional<OrganizationController.SearchType> searchType, Optional<String> searchValue, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size, Optional<Boolean> showAll, Optional<String> cursor);
 
     void createOrganization(OrganizationDto organizationDto, Optional<String> loggedInUser);
 
@@ -9,6 +9,7 @@
 import ca.uhn.fhir.validation.FhirValidator;
 import gov.samhsa.ocp.ocpfis.config.FisProperties;
 import gov.samhsa.ocp.ocpfis.domain.ProvenanceActivityEnum;
+import gov.samhsa.ocp.ocpfis.service.dto.IdentifierDto;
 import gov.samhsa.ocp.ocpfis.service.dto.OrganizationDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
 import gov.samhsa.ocp.ocpfis.service.dto.ReferenceDto;
@@ -17,6 +18,7 @@
 import gov.samhsa.ocp.ocpfis.service.exception.ResourceNotFoundException;
 import gov.samhsa.ocp.ocpfis.util.FhirDtoUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirResourceUtil;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
@@ -31,6 +33,7 @@
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -52,16 +55,22 @@ public class OrganizationServiceImpl implements OrganizationService {
 
     private final LookUpService lookUpService;
     private final ProvenanceUtil provenanceUtil;
+    private final IdentifierIndex identifierIndex;
+    private final FhirProfileRegistry fhirProfileRegistry;
 
+    private final AsyncTaskExecutor fhirQueryExecutor;
 
     @Autowired
-    public OrganizationServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, FhirValidator fhirValidator, FisProperties fisProperties, LookUpService lookUpService, ProvenanceUtil provenanceUtil) {
+    public OrganizationServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, FhirValidator fhirValidator, FisProperties fisProperties, LookUpService lookUpService, ProvenanceUtil provenanceUtil, IdentifierIndex identifierIndex, FhirProfileRegistry fhirProfileRegistry, AsyncTaskExecutor fhirQueryExecutor) {
         this.modelMapper = modelMapper;
         this.fhirClient = fhirClient;
         this.fhirValidator = fhirValidator;
         this.fisProperties = fisProperties;
         this.lookUpService = lookUpService;
         this.provenanceUtil = provenanceUtil;
+        this.identifierIndex = identifierIndex;
+        this.fhirProfileRegistry = fhirProfileRegistry;
+        this.fhirQueryExecutor = fhirQueryExecutor;
     }
 
     @Override
@@ -125,8 +134,17 @@ public PageDto<OrganizationDto> getAllOrganizations(Optional<Boolean> showInacti
     }
 
     @Override
-    public PageDto<OrganizationDto> searchOrganizations(Optional<OrganizationController.SearchType> type, Optional<String> value, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size, Optional<Boolean> showAll) {
+    public PageDto<OrganizationDto> searchOrganizations(Optional<OrganizationController.SearchType> type, Optional<String> value, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size, Optional<Boolean> showAll, Optional<String> cursor) {
         int numberOfOrganizationsPerPage = PaginationUtil.getValidPageSize(fisProperties, size, ResourceType.Organization.name());
+        String searchParametersHash = PaginationUtil.getSearchParametersHash(type, value, showInactive, numberOfOrganizationsPerPage);
+        Optional<Integer> pageNumber = PaginationUtil.getPageNumber(cursor, searchParametersHash, page, numberOfOrganizationsPerPage);
+
+        if (!showAll.isPresent() || !showAll.get()) {
+            Optional<Bundle> cursorOrganizationSearchBundle = PaginationUtil.getSearchBundleByCursor(fhirClient, fisProperties, cursor, searchParametersHash, numberOfOrganizationsPerPage);
+            if (cursorOrganizationSearchBundle.isPresent()) {
+                return organizationsInPage(cursorOrganizationSearchBundle.get(), numberOfOrganizationsPerPage, pageNumber, searchParametersHash);
+            }
+        }
 
         IQuery organizationIQuery = fhirClient.search().forResource(Organization.class).sort().descending(PARAM_LASTUPDATED);
 
@@ -151,7 +169,6 @@ public PageDto<OrganizationDto> searchOrganizations(Optional<OrganizationControl
 
         Bundle firstPageOrganizationSearchBundle;
         Bundle otherPageOrganizationSearchBundle;
-        boolean firstPage = true;
 
         firstPageOrganizationSearchBundle = (Bundle) organizationIQuery.count(numberOfOrganizationsPerPage).returnBundle(Bundle.class)
                 .execute();
@@ -167,45 +184,33 @@ public PageDto<OrganizationDto> searchOrganizations(Optional<OrganizationControl
 
         otherPageOrganizationSearchBundle = firstPageOrganizationSearchBundle;
 
-        if (page.isPresent() && page.get() > 1 && otherPageOrganizationSearchBundle.getLink(Bundle.LINK_NEXT) != null) {
-            firstPage = false;
-
-            otherPageOrganizationSearchBundle = PaginationUtil.getSearchBundleAfterFirstPage(fhirClient, fisProperties, firstPageOrganizationSearchBundle, page.get(), numberOfOrganizationsPerPage);
+        if (pageNumber.isPresent() && pageNumber.get() > 1 && otherPageOrganizationSearchBundle.getLink(Bundle.LINK_NEXT) != null) {
+            otherPageOrganizationSearchBundle = PaginationUtil.getSearchBundleAfterFirstPage(fhirClient, fisProperties, firstPageOrganizationSearchBundle, pageNumber.get(), numberOfOrganizationsPerPage);
+        } else {
+            pageNumber = Optional.of(1);
         }
 
-        List<Bundle.BundleEntryComponent> retrievedOrganizations = otherPageOrganizationSearchBundle.getEntry();
+        return organizationsInPage(otherPageOrganizationSearchBundle, numberOfOrganizationsPerPage, pageNumber, searchParametersHash);
+    }
 
-        List<OrganizationDto> organizationsList = retrievedOrganizations.stream().map(retrievedOrganization -> {
+    private PageDto<OrganizationDto> organizationsInPage(Bundle organizationSearchBundle, int numberOfOrganizationsPerPage, Optional<Integer> pageNumber, String searchParametersHash) {
+        List<OrganizationDto> organizationsList = organizationSearchBundle.getEntry().stream().map(retrievedOrganization -> {
             OrganizationDto organizationDto = modelMapper.map(retrievedOrganization.getResource(), OrganizationDto.class);
             organizationDto.setLogicalId(retrievedOrganization.getResource().getIdElement().getIdPart());
             return organizationDto;
         }).collect(toList());
 
-        double totalPages = Math.ceil((double) otherPageOrganizationSearchBundle.getTotal() / numberOfOrganizationsPerPage);
-        int currentPage = firstPage ? 1 : page.get();
+        double totalPages = Math.ceil((double) organizationSearchBundle.getTotal() / numberOfOrganizationsPerPage);
+        int currentPage = PaginationUtil.isFirstPage(pageNumber) ? 1 : pageNumber.get();
 
-        return new PageDto<>(organizationsList, numberOfOrganizationsPerPage, totalPages, currentPage, organizationsList.size(), otherPageOrganizationSearchBundle.getTotal());
+        PageDto<OrganizationDto> pageDto = new PageDto<>(organizationsList, numberOfOrganizationsPerPage, totalPages, currentPage, organizationsList.size(), organizationSearchBundle.getTotal());
+        pageDto.setNextCursor(PaginationUtil.getNextCursor(fisProperties, organizationSearchBundle, searchParametersHash));
+        return pageDto;
     }
 
     private int getOrganizationsCountByIdentifier(String system, String code) {
         log.info("Searching organizations with identifier.system : " + system + " and code : " + code);
-
-        Bundle searchBundle = fhirClient.search().forResource(Organization.class).where(new TokenClientParam("identifier").exactly().systemAndCode(system, code))
-                .returnBundle(Bundle.class).execute();
-        if (searchBundle.getTotal() == 0) {
-            Bundle organizationBundle = fhirClient.search().forResource(Organization.class).returnBundle(Bundle.class).execute();
-            return FhirOperationUtil.getAllBundleComponentsAsList(organizationBundle, Optional.empty(), fhirClient, fisProperties).stream().filter(organization -> {
-                Organization o = (Organization) organization.getResource();
-                return o.getIdentifier().stream().anyMatch(identifier ->
-                        (identifier.getSystem().equalsIgnoreCase(system) &&
-                                identifier.getValue().replaceAll(" ", "")
-                                        .replaceAll("-", "").trim()
-                                        .equalsIgnoreCase(code.replaceAll(" ", "").replaceAll("-", "").trim()))
-                );
-            }).collect(toList()).size();
-        } else {
-            return searchBundle.getTotal();
-        }
+        return identifierIndex.findIds(ResourceType.Organization, system, code).size();
     }
 
 
@@ -224,7 +229,7 @@ public void createOrganization(OrganizationDto organizationDto, Optional<String>
             fhirOrganization.setActive(Boolean.TRUE);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setOrganizationProfileMetaData(fhirClient, fhirOrganization);
+            FhirProfileUtil.setOrganizationProfileMetaData(fhirProfileRegistry, fhirOrganization);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, fhirOrganization, Optional.empty(), ResourceType.Organization.name(), "Create Organization");
@@ -232,12 +237,13 @@ public void createOrganization(OrganizationDto organizationDto, Optional<String>
             //Create
             MethodOutcome serverResponse = FhirOperationUtil.createFhirResource(fhirClient, fhirOrganization, ResourceType.Organization.name());
             idList.add(ResourceType.Organization.name() + "/" + FhirOperationUtil.getFhirId(serverResponse));
+            identifierIndex.index(ResourceType.Organization, FhirOperationUtil.getFhirId(serverResponse), fhirOrganization.getIdentifier());
 
             // Add TO DO Activity Definition
             ActivityDefinition activityDefinition = FhirResourceUtil.createToDoActivityDefinition(serverResponse.getId().getIdPart(), fisProperties, lookUpService, fhirClient);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setActivityDefinitionProfileMetaData(fhirClient, activityDefinition);
+            FhirProfileUtil.setActivityDefinitionProfileMetaData(fhirProfileRegistry, activityDefinition);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, activityDefinition, Optional.empty(), ResourceType.ActivityDefinition.name(), "Create ActivityDefinition (when creating an Organization)");
@@ -273,7 +279,7 @@ public void updateOrganization(String organizationId, OrganizationDto organizati
             existingOrganization.setActive(updatedOrganization.getActive());
 
             //Set Profile Meta Data
-            FhirProfileUtil.setOrganizationProfileMetaData(fhirClient, existingOrganization);
+            FhirProfileUtil.setOrganizationProfileMetaData(fhirProfileRegistry, existingOrganization);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, existingOrganization, Optional.of(organizationId), ResourceType.Organization.name(), "Update Organization");
@@ -281,6 +287,7 @@ public void updateOrganization(String organizationId, OrganizationDto organizati
             //Update
             MethodOutcome methodOutcome = FhirOperationUtil.updateFhirResource(fhirClient, existingOrganization, "Update Organization");
             idList.add(ResourceType.Organization.name() + "/" + FhirOperationUtil.getFhirId(methodOutcome));
+            identifierIndex.index(ResourceType.Organization, organizationId.trim(), existingOrganization.getIdentifier());
 
             if (fisProperties.isProvenanceEnabled()) {
                 provenanceUtil.createProvenance(idList, ProvenanceActivityEnum.UPDATE, loggedInUser);
@@ -308,7 +315,7 @@ public List<ReferenceDto> getOrganizationsByPractitioner(String practitioner) {
                 .returnBundle(Bundle.class).execute();
 
         if (bundle != null) {
-            List<Bundle.BundleEntryComponent> organizationComponents = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties);
+            List<Bundle.BundleEntryComponent> organizationComponents = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor);
 
             if (organizationComponents != null) {
                 organizations = organizationComponents.stream()
@@ -341,7 +348,7 @@ private void setOrganizationStatusToInactive(Organization existingFhirOrganizati
         existingFhirOrganization.setActive(false);
 
         //Set Profile Meta Data
-        FhirProfileUtil.setOrganizationProfileMetaData(fhirClient, existingFhirOrganization);
+        FhirProfileUtil.setOrganizationProfileMetaData(fhirProfileRegistry, existingFhirOrganization);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, existingFhirOrganization, Optional.of(existingFhirOrganization.getId()), ResourceType.Organization.name(), "Update Organization");
@@ -351,7 +358,7 @@ private void setOrganizationStatusToInactive(Organization existingFhirOrganizati
     }
 
     private List<OrganizationDto> convertAllBundleToSingleOrganizationDtoList(Bundle firstPageOrganizationSearchBundle, int numberOBundlePerPage) {
-        return FhirOperationUtil.getAllBundleComponentsAsList(firstPageOrganizationSearchBundle, Optional.of(numberOBundlePerPage), fhirClient, fisProperties)
+        return FhirOperationUtil.getAllBundleComponentsAsList(firstPageOrganizationSearchBundle, Optional.of(numberOBundlePerPage), fhirClient, fisProperties, fhirQueryExecutor)
                 .stream()
                 .map(retrievedOrganization -> {
                     OrganizationDto organizationDto = modelMapper.map(retrievedOrganization.getResource(), OrganizationDto.class);
@@ -362,31 +369,8 @@ private List<OrganizationDto> convertAllBundleToSingleOrganizationDtoList(Bundle
     }
 
     private boolean isDuplicateWhileUpdate(OrganizationDto organizationDto) {
-        final Organization organization = fhirClient.read().resource(Organization.class).withId(organizationDto.getLogicalId()).execute();
-
-        Bundle searchOrganization = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(Organization.class)
-                .where(Organization.IDENTIFIER.exactly().systemAndIdentifier(organizationDto.getIdentifiers().stream().findFirst().get().getSystem(), organizationDto.getIdentifiers().stream().findFirst().get().getValue())))
-                .returnBundle(Bundle.class).execute();
-
-        if (!searchOrganization.getEntry().isEmpty()) {
-            return !organization.getIdentifier().stream().anyMatch(identifier -> identifier.getSystem().equalsIgnoreCase(organizationDto.getIdentifiers().stream().findFirst().get().getSystem())
-                    && identifier.getValue().equalsIgnoreCase(organizationDto.getIdentifiers().stream().findFirst().get().getValue()));
-        } else {
-            Bundle organizationBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(Organization.class)).returnBundle(Bundle.class).execute();
-            List<Bundle.BundleEntryComponent> bundleEntryComponents = FhirOperationUtil.getAllBundleComponentsAsList(organizationBundle, Optional.empty(), fhirClient, fisProperties).stream().filter(org -> {
-                Organization o = (Organization) org.getResource();
-                return o.getIdentifier().stream().anyMatch(identifier -> identifier.getSystem().equalsIgnoreCase(organizationDto.getIdentifiers().stream().findFirst().get().getSystem()) && identifier.getValue().replaceAll(" ", "")
-                        .replaceAll("-", "").trim()
-                        .equalsIgnoreCase(organizationDto.getIdentifiers().stream().findFirst().get().getValue().replaceAll(" ", "").replaceAll("-", "").trim()));
-            }).collect(toList());
-            if (bundleEntryComponents.isEmpty()) {
-                return false;
-            } else {
-                return !bundleEntryComponents.stream().anyMatch(resource -> {
-                    Organization oRes = (Organization) resource.getResource();
-                    return oRes.getIdElement().getIdPart().equalsIgnoreCase(organization.getIdElement().getIdPart());
-                });
-            }
-        }
+        IdentifierDto identifierDto = organizationDto.getIdentifiers().stream().findFirst().get();
+        return identifierIndex.findIds(ResourceType.Organization, identifierDto.getSystem(), identifierDto.getValue()).stream()
+                .anyMatch(id -> !id.equalsIgnoreCase(organizationDto.getLogicalId().trim()));
     }
 }
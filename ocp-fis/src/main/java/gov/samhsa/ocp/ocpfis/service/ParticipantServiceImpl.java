@@ -58,20 +58,20 @@ public PageDto<ParticipantSearchDto> getAllParticipants(String patientId, Partic
             } else {
                 organization = organizationId(organization, patientId);
             }
-            PageDto<PractitionerDto> pageDto = practitionerService.searchPractitioners(Optional.ofNullable(PractitionerController.SearchType.name), value, organization, showInActive, page, size, showAll);
+            PageDto<PractitionerDto> pageDto = practitionerService.searchPractitioners(Optional.ofNullable(PractitionerController.SearchType.name), value, organization, showInActive, page, size, showAll, Optional.empty());
             participantsDto = convertPractitionersToParticipantsDto(pageDto, participantType);
 
         } else if (typeCode.equalsIgnoreCase(ParticipantTypeEnum.organization.getCode())) {
-            PageDto<OrganizationDto> pageDto = organizationService.searchOrganizations(Optional.ofNullable(OrganizationController.SearchType.name), value, showInActive, page, size, showAll);
+            PageDto<OrganizationDto> pageDto = organizationService.searchOrganizations(Optional.ofNullable(OrganizationController.SearchType.name), value, showInActive, page, size, showAll, Optional.empty());
             participantsDto = convertOrganizationsToParticipantsDto(pageDto, participantType);
 
         } else if (typeCode.equalsIgnoreCase(ParticipantTypeEnum.patient.getCode())) {
             //refactor getPatientsByValue to match other apis
-            PageDto<PatientDto> pageDto = patientService.getPatientsByValue(Optional.ofNullable("name"), value, Optional.empty(), organizationId(organization, patientId), Optional.empty(), showInActive, page, size, showAll);
+            PageDto<PatientDto> pageDto = patientService.getPatientsByValue(Optional.ofNullable("name"), value, Optional.empty(), organizationId(organization, patientId), Optional.empty(), showInActive, page, size, showAll, Optional.empty());
             participantsDto = convertPatientsToParticipantsDto(pageDto, participantType);
 
         } else if (typeCode.equalsIgnoreCase(ParticipantTypeEnum.relatedPerson.getCode())) {
-            PageDto<RelatedPersonDto> pageDto = relatedPersonService.searchRelatedPersons(patientId, Optional.of("name"), value, showInActive, page, size, showAll);
+            PageDto<RelatedPersonDto> pageDto = relatedPersonService.searchRelatedPersons(patientId, Optional.of("name"), value, showInActive, page, size, showAll, Optional.empty());
             participantsDto = convertRelatedPersonsToParticipantsDto(pageDto, participantType);
         }
 
@@ -84,7 +84,7 @@ public List<OutsideParticipant> retrieveOutsideParticipants(String patient, Stri
         if (participantType.equalsIgnoreCase("relatedPerson")) {
             //get relatedPerson of the patient
             //public PageDto<RelatedPersonDto> searchRelatedPersons(String patientId, Optional<String> searchKey, Optional<String> searchValue, Optional<Boolean> showInactive, Optional<Integer> pageNumber, Optional<Integer> pageSize, Optional<Boolean> showAll) {
-            PageDto<RelatedPersonDto> relatedPersonDtos = relatedPersonService.searchRelatedPersons(patient, Optional.of("name"), Optional.of(name), Optional.of(true), page, size, showAll);
+            PageDto<RelatedPersonDto> relatedPersonDtos = relatedPersonService.searchRelatedPersons(patient, Optional.of("name"), Optional.of(name), Optional.of(true), page, size, showAll, Optional.empty());
 
             List<RelatedPersonDto> relatedPersonList = relatedPersonDtos.getElements();
 
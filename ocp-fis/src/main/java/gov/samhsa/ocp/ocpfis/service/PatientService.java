@@ -6,12 +6,15 @@
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface PatientService {
 
     List<PatientDto> getPatients();
 
-    PageDto<PatientDto> getPatientsByValue(Optional<String> key, Optional<String> value, Optional<String> filterKey, Optional<String> organization, Optional<String> practitioner, Optional<Boolean> showInactive, Optional<Integer> pageNumber, Optional<Integer> pageSize,Optional<Boolean> showAll);
+    PageDto<PatientDto> getPatientsByValue(Optional<String> key, Optional<String> value, Optional<String> filterKey, Optional<String> organization, Optional<String> practitioner, Optional<Boolean> showInactive, Optional<Integer> pageNumber, Optional<Integer> pageSize, Optional<Boolean> showAll, Optional<String> cursor);
+
+    Stream<PatientDto> exportPatients(Optional<String> organization, Optional<Boolean> showInactive);
 
     List<PatientDto> getPatientsByPractitioner(Optional<String> practitioner, Optional<String> searchKey, Optional<String> searchValue);
 
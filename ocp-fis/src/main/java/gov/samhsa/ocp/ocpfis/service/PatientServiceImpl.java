@@ -33,21 +33,23 @@
 import gov.samhsa.ocp.ocpfis.service.mapping.CoverageToCoverageDtoMap;
 import gov.samhsa.ocp.ocpfis.service.mapping.EpisodeOfCareToEpisodeOfCareDtoMapper;
 import gov.samhsa.ocp.ocpfis.service.mapping.dtotofhirmodel.CareTeamDtoToCareTeamConverter;
+import gov.samhsa.ocp.ocpfis.util.BundleEntryIndex;
 import gov.samhsa.ocp.ocpfis.util.DateUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirDtoUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirResourceUtil;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
 import gov.samhsa.ocp.ocpfis.util.RichStringClientParam;
+import gov.samhsa.ocp.ocpfis.util.TransactionBundleBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.RandomStringUtils;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.CareTeam;
 import org.hl7.fhir.dstu3.model.CodeableConcept;
 import org.hl7.fhir.dstu3.model.Coding;
-import org.hl7.fhir.dstu3.model.Consent;
 import org.hl7.fhir.dstu3.model.Coverage;
 import org.hl7.fhir.dstu3.model.Enumerations;
 import org.hl7.fhir.dstu3.model.EpisodeOfCare;
@@ -59,31 +61,36 @@
 import org.hl7.fhir.dstu3.model.Patient;
 import org.hl7.fhir.dstu3.model.Period;
 import org.hl7.fhir.dstu3.model.Practitioner;
-import org.hl7.fhir.dstu3.model.PractitionerRole;
 import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.hl7.fhir.dstu3.model.Task;
-import org.hl7.fhir.dstu3.model.codesystems.V3ParticipationType;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.modelmapper.ModelMapper;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static ca.uhn.fhir.rest.api.Constants.PARAM_LASTUPDATED;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 @Service
 @Slf4j
@@ -98,7 +105,15 @@ public class PatientServiceImpl implements PatientService {
     private final CoverageServiceImpl coverageService;
     private final ProvenanceUtil provenanceUtil;
 
-    public PatientServiceImpl(IGenericClient fhirClient, IParser iParser, ModelMapper modelMapper, FhirValidator fhirValidator, FisProperties fisProperties, LookUpService lookUpService, ProvenanceUtil provenanceUtil, CoverageServiceImpl coverageService) {
+    private final IdentifierIndex identifierIndex;
+    private final ReferenceResolver referenceResolver;
+    private final ConsentAccessEvaluator consentAccessEvaluator;
+    private final OrganizationMembershipService organizationMembershipService;
+    private final FhirProfileRegistry fhirProfileRegistry;
+
+    private final AsyncTaskExecutor fhirQueryExecutor;
+
+    public PatientServiceImpl(IGenericClient fhirClient, IParser iParser, ModelMapper modelMapper, FhirValidator fhirValidator, FisProperties fisProperties, LookUpService lookUpService, ProvenanceUtil provenanceUtil, CoverageServiceImpl coverageService, IdentifierIndex identifierIndex, ReferenceResolver referenceResolver, ConsentAccessEvaluator consentAccessEvaluator, OrganizationMembershipService organizationMembershipService, FhirProfileRegistry fhirProfileRegistry, AsyncTaskExecutor fhirQueryExecutor) {
         this.fhirClient = fhirClient;
         this.iParser = iParser;
         this.modelMapper = modelMapper;
@@ -107,6 +122,12 @@ public PatientServiceImpl(IGenericClient fhirClient, IParser iParser, ModelMappe
         this.lookUpService = lookUpService;
         this.coverageService = coverageService;
         this.provenanceUtil = provenanceUtil;
+        this.identifierIndex = identifierIndex;
+        this.referenceResolver = referenceResolver;
+        this.consentAccessEvaluator = consentAccessEvaluator;
+        this.organizationMembershipService = organizationMembershipService;
+        this.fhirProfileRegistry = fhirProfileRegistry;
+        this.fhirQueryExecutor = fhirQueryExecutor;
     }
 
 
@@ -124,8 +145,19 @@ public List<PatientDto> getPatients() {
     }
 
     @Override
-    public PageDto<PatientDto> getPatientsByValue(Optional<String> searchKey, Optional<String> value, Optional<String> filterKey, Optional<String> organization, Optional<String> practitioner, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size, Optional<Boolean> showAll) {
+    public PageDto<PatientDto> getPatientsByValue(Optional<String> searchKey, Optional<String> value, Optional<String> filterKey, Optional<String> organization, Optional<String> practitioner, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size, Optional<Boolean> showAll, Optional<String> cursor) {
         int numberOfPatientsPerPage = PaginationUtil.getValidPageSize(fisProperties, size, ResourceType.Patient.name());
+        boolean showAllPatients = showAll.isPresent() && showAll.get();
+        boolean unassignedPatientsOnly = filterKey.isPresent() && SearchKeyEnum.PatientFilterKey.contains(filterKey.get()) && SearchKeyEnum.PatientFilterKey.UNASSIGNPATIENT.name().equalsIgnoreCase(filterKey.get());
+        String searchParametersHash = PaginationUtil.getSearchParametersHash(searchKey, value, filterKey, organization, practitioner, showInactive, numberOfPatientsPerPage);
+        Optional<Integer> pageNumber = PaginationUtil.getPageNumber(cursor, searchParametersHash, page, numberOfPatientsPerPage);
+
+        if (!showAllPatients && !unassignedPatientsOnly) {
+            Optional<Bundle> cursorPatientSearchBundle = PaginationUtil.getSearchBundleByCursor(fhirClient, fisProperties, cursor, searchParametersHash, numberOfPatientsPerPage);
+            if (cursorPatientSearchBundle.isPresent()) {
+                return patientsInPage(cursorPatientSearchBundle.get(), numberOfPatientsPerPage, pageNumber, searchParametersHash, filterKey, practitioner);
+            }
+        }
 
         IQuery PatientSearchQuery = fhirClient.search().forResource(Patient.class).sort().descending(PARAM_LASTUPDATED);
 
@@ -137,15 +169,17 @@ public PageDto<PatientDto> getPatientsByValue(Optional<String> searchKey, Option
         }
 
         if (filterKey.isPresent() && SearchKeyEnum.PatientFilterKey.contains(filterKey.get()) && SearchKeyEnum.PatientFilterKey.ASSOCIATECARETEAMPATIENT.name().equalsIgnoreCase(filterKey.get())) {
-            if (!patientsAssociatedWithPractitioner(practitioner.get(), organization.get()).isEmpty()) {
-                PatientSearchQuery.where(new TokenClientParam("_id").exactly().codes(patientsAssociatedWithPractitioner(practitioner.get(), organization.get())));
+            List<String> patientsAssociatedWithPractitioner = patientsAssociatedWithPractitioner(practitioner.get(), organization.get());
+            if (!patientsAssociatedWithPractitioner.isEmpty()) {
+                PatientSearchQuery.where(new TokenClientParam("_id").exactly().codes(patientsAssociatedWithPractitioner));
             } else {
                 log.info("No Patients were found for given organization.");
                 return new PageDto<>(new ArrayList<>(), numberOfPatientsPerPage, 0, 0, 0, 0);
             }
         } else if (organization.isPresent()) {
-            if (!patientsInOrganization(organization.get()).isEmpty()) {
-                PatientSearchQuery.where(new TokenClientParam("_id").exactly().codes(patientsInOrganization(organization.get())));
+            Set<String> patientsInOrganization = organizationMembershipService.getPatientIds(organization.get());
+            if (!patientsInOrganization.isEmpty()) {
+                PatientSearchQuery.where(new TokenClientParam("_id").exactly().codes(new ArrayList<>(patientsInOrganization)));
             } else {
                 log.info("No Patients were found for given organization.");
                 return new PageDto<>(new ArrayList<>(), numberOfPatientsPerPage, 0, 0, 0, 0);
@@ -163,10 +197,12 @@ public PageDto<PatientDto> getPatientsByValue(Optional<String> searchKey, Option
             }
         });
 
-        Bundle firstPagePatientSearchBundle;
-        boolean firstPage = true;
+        if (unassignedPatientsOnly) {
+            return getUnassignedPatients(PatientSearchQuery, numberOfPatientsPerPage, pageNumber, showAllPatients, filterKey, practitioner);
+        }
+
         log.debug("Patients Search Query to FHIR Server: START");
-        firstPagePatientSearchBundle = (Bundle) PatientSearchQuery
+        Bundle firstPagePatientSearchBundle = (Bundle) PatientSearchQuery
                 .count(numberOfPatientsPerPage)
                 .revInclude(Flag.INCLUDE_PATIENT)
                 .revInclude(EpisodeOfCare.INCLUDE_PATIENT)
@@ -176,21 +212,141 @@ public PageDto<PatientDto> getPatientsByValue(Optional<String> searchKey, Option
                 .execute();
         log.debug("Patients Search Query to FHIR Server: END");
 
-        List<PatientDto> patientDtos = convertAllBundleToSinglePatientDtoList(firstPagePatientSearchBundle, numberOfPatientsPerPage, filterKey, practitioner);
+        if (showAllPatients) {
+            List<Bundle.BundleEntryComponent> allPatientEntries = FhirOperationUtil.getAllBundleComponentsAsList(firstPagePatientSearchBundle, Optional.of(numberOfPatientsPerPage), fhirClient, fisProperties, fhirQueryExecutor);
+            List<PatientDto> patientDtos = convertBundleEntriesToPatientDtoList(allPatientEntries, filterKey, practitioner);
+            return (PageDto<PatientDto>) PaginationUtil.applyPaginationForCustomArrayList(patientDtos, patientDtos.size(), Optional.of(1), false);
+        }
 
-        if (filterKey.isPresent() && SearchKeyEnum.PatientFilterKey.contains(filterKey.get()) && SearchKeyEnum.PatientFilterKey.UNASSIGNPATIENT.name().equalsIgnoreCase(filterKey.get())) {
-            patientDtos = patientDtos.stream()
-                    .filter(pdto -> practitionerAssignedToPatient(careTeamBundle(pdto)))
-                    .collect(toList());
+        if (firstPagePatientSearchBundle.getEntry().isEmpty()) {
+            return new PageDto<>(new ArrayList<>(), numberOfPatientsPerPage, 0, 0, 0, 0);
         }
 
-        if (showAll.isPresent() && showAll.get()) {
-            return (PageDto<PatientDto>) PaginationUtil.applyPaginationForCustomArrayList(patientDtos, patientDtos.size(), Optional.of(1), false);
+        //Only the requested page is fetched from the FHIR server and mapped
+        Bundle patientSearchBundle = PaginationUtil.isFirstPage(pageNumber) ? firstPagePatientSearchBundle :
+                PaginationUtil.getSearchBundleAfterFirstPage(fhirClient, fisProperties, firstPagePatientSearchBundle, pageNumber.get(), numberOfPatientsPerPage);
+
+        return patientsInPage(patientSearchBundle, numberOfPatientsPerPage, pageNumber, searchParametersHash, filterKey, practitioner);
+    }
+
+    private PageDto<PatientDto> patientsInPage(Bundle patientSearchBundle, int numberOfPatientsPerPage, Optional<Integer> pageNumber, String searchParametersHash, Optional<String> filterKey, Optional<String> practitioner) {
+        List<PatientDto> patientDtos = convertBundleEntriesToPatientDtoList(patientSearchBundle.getEntry(), filterKey, practitioner);
+        PageDto<PatientDto> pageDto = (PageDto<PatientDto>) PaginationUtil.applyPaginationForSearchBundle(patientDtos, PaginationUtil.getTotal(patientSearchBundle, numberOfPatientsPerPage, pageNumber), numberOfPatientsPerPage, pageNumber);
+        pageDto.setNextCursor(PaginationUtil.getNextCursor(fisProperties, patientSearchBundle, searchParametersHash));
+        return pageDto;
+    }
+
+    /**
+     * A patient is unassigned when no participant of its care teams has a participant role, which cannot be expressed
+     * as a FHIR search parameter. The pages of the patient search are read together with the patients' care teams and
+     * filtered as they arrive, until the requested page and one more unassigned patient were found. The total is exact
+     * once the search is exhausted, otherwise it counts the unassigned patients found so far, which still announces the
+     * next page.
+     */
+    private PageDto<PatientDto> getUnassignedPatients(IQuery patientSearchQuery, int numberOfPatientsPerPage, Optional<Integer> page, boolean showAll, Optional<String> filterKey, Optional<String> practitioner) {
+        Set<String> participantRoleCodes = lookUpService.getParticipantRoles().stream()
+                .map(role -> role.getCode().trim())
+                .collect(toSet());
+
+        int currentPage = showAll || PaginationUtil.isFirstPage(page) ? 1 : page.get();
+        int fromIndex = (currentPage - 1) * numberOfPatientsPerPage;
+        int toIndex = showAll ? Integer.MAX_VALUE : fromIndex + numberOfPatientsPerPage;
+
+        Bundle firstPagePatientSearchBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(patientSearchQuery)
+                .count(numberOfPatientsPerPage)
+                .revInclude(CareTeam.INCLUDE_SUBJECT)
+                .revInclude(Flag.INCLUDE_PATIENT)
+                .revInclude(EpisodeOfCare.INCLUDE_PATIENT)
+                .revInclude(Coverage.INCLUDE_BENEFICIARY)
+                .returnBundle(Bundle.class)
+                .encodedJson()
+                .execute();
+
+        int unassignedPatientCount = 0;
+        List<Bundle.BundleEntryComponent> pageEntries = new ArrayList<>();
+        try (Stream<Bundle> patientSearchBundles = FhirOperationUtil.streamAllBundlePages(firstPagePatientSearchBundle, Optional.of(numberOfPatientsPerPage), fhirClient, fisProperties, fhirQueryExecutor)) {
+            Iterator<Bundle> patientSearchPages = patientSearchBundles.iterator();
+            //Going one past the requested page tells whether there is a next page
+            while (unassignedPatientCount <= toIndex && patientSearchPages.hasNext()) {
+                List<Bundle.BundleEntryComponent> entries = patientSearchPages.next().getEntry();
+                Set<String> assignedPatientIds = entries.stream()
+                        .filter(entry -> entry.getResource().getResourceType().equals(ResourceType.CareTeam))
+                        .map(entry -> (CareTeam) entry.getResource())
+                        .filter(careTeam -> careTeam.getParticipant().stream()
+                                .map(participant -> participant.getRole().getCoding().stream().findFirst())
+                                .anyMatch(role -> role.filter(Coding::hasCode).filter(coding -> participantRoleCodes.contains(coding.getCode().trim())).isPresent()))
+                        .map(careTeam -> careTeam.getSubject().getReferenceElement().getIdPart())
+                        .collect(toSet());
+
+                boolean pagePatientFound = false;
+                for (Bundle.BundleEntryComponent entry : entries) {
+                    if (entry.getResource().getResourceType().equals(ResourceType.Patient)
+                            && !assignedPatientIds.contains(entry.getResource().getIdElement().getIdPart())) {
+                        if (unassignedPatientCount >= fromIndex && unassignedPatientCount < toIndex) {
+                            pageEntries.add(entry);
+                            pagePatientFound = true;
+                        }
+                        unassignedPatientCount++;
+                    }
+                }
+                if (pagePatientFound) {
+                    //The flags, episodes of care and coverages of the page's patients
+                    entries.stream()
+                            .filter(entry -> !entry.getResource().getResourceType().equals(ResourceType.Patient))
+                            .forEach(pageEntries::add);
+                }
+            }
         }
 
-        return (PageDto<PatientDto>) PaginationUtil.applyPaginationForCustomArrayList(patientDtos, numberOfPatientsPerPage, page, false);
+        if (unassignedPatientCount == 0) {
+            return new PageDto<>(new ArrayList<>(), numberOfPatientsPerPage, 0, 0, 0, 0);
+        }
+        if (fromIndex >= unassignedPatientCount) {
+            throw new ResourceNotFoundException("No resources were found in the FHIR server for the page number: " + currentPage);
+        }
+
+        List<PatientDto> patientDtos = convertBundleEntriesToPatientDtoList(pageEntries, filterKey, practitioner);
+        int pageSize = showAll ? unassignedPatientCount : numberOfPatientsPerPage;
+        return new PageDto<>(patientDtos, pageSize, Math.ceil((double) unassignedPatientCount / pageSize), currentPage, patientDtos.size(), unassignedPatientCount);
     }
 
+    @Override
+    public Stream<PatientDto> exportPatients(Optional<String> organization, Optional<Boolean> showInactive) {
+        if (!organization.isPresent()) {
+            return exportPatientsByIds(Optional.empty(), showInactive);
+        }
+
+        List<String> patientsInOrganization = new ArrayList<>(organizationMembershipService.getPatientIds(organization.get()));
+        int maxIdsPerSearch = fisProperties.getFhir().getMaxIdsPerSearch();
+        //The patients of large organizations are exported one chunk of ids after the other, each chunk is searched
+        //when the previous one is written
+        return IntStream.range(0, (patientsInOrganization.size() + maxIdsPerSearch - 1) / maxIdsPerSearch)
+                .mapToObj(chunk -> patientsInOrganization.subList(chunk * maxIdsPerSearch, Math.min((chunk + 1) * maxIdsPerSearch, patientsInOrganization.size())))
+                .flatMap(patientIdChunk -> exportPatientsByIds(Optional.of(patientIdChunk), showInactive));
+    }
+
+    private Stream<PatientDto> exportPatientsByIds(Optional<List<String>> patientIds, Optional<Boolean> showInactive) {
+        IQuery patientExportQuery = fhirClient.search().forResource(Patient.class).sort().descending(PARAM_LASTUPDATED);
+
+        if (!showInactive.orElse(false)) {
+            patientExportQuery.where(new TokenClientParam("active").exactly().code(Boolean.TRUE.toString()));
+        }
+
+        patientIds.ifPresent(ids -> patientExportQuery.where(new TokenClientParam("_id").exactly().codes(ids)));
+
+        Bundle firstPagePatientBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(patientExportQuery)
+                .count(fisProperties.getResourceSinglePageLimit())
+                .revInclude(Flag.INCLUDE_PATIENT)
+                .revInclude(EpisodeOfCare.INCLUDE_PATIENT)
+                .revInclude(Coverage.INCLUDE_BENEFICIARY)
+                .returnBundle(Bundle.class)
+                .encodedJson()
+                .execute();
+
+        //Each page is mapped together with the flags, episodes of care and coverages included in it
+        return FhirOperationUtil.streamAllBundlePages(firstPagePatientBundle, Optional.of(fisProperties.getResourceSinglePageLimit()), fhirClient, fisProperties, fhirQueryExecutor)
+                .flatMap(patientBundle -> convertBundleEntriesToPatientDtoList(patientBundle.getEntry(), Optional.empty(), Optional.empty()).stream());
+    }
 
     @Override
     public PageDto<PatientDto> getPatientsByPractitioner(Optional<String> practitioner, Optional<String> searchKey, Optional<String> searchValue, Optional<Boolean> showInactive, Optional<Integer> pageNumber, Optional<Integer> pageSize) {
@@ -215,13 +371,17 @@ public List<PatientDto> getPatientsByPractitioner(Optional<String> practitioner,
                 .execute();
 
         if (bundle != null) {
-            List<Bundle.BundleEntryComponent> components = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties);
+            List<Bundle.BundleEntryComponent> components = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor);
             if (components != null && !components.isEmpty()) {
-                patients = components.stream()
+                List<Patient> patientResources = components.stream()
                         .filter(it -> it.getResource().getResourceType().equals(ResourceType.Patient))
                         .map(it -> (Patient) it.getResource())
                         .filter(it -> filterBySearchKey(it, searchKey, searchValue))
-                        .map(patient -> mapPatientToPatientDto(patient, bundle.getEntry()))
+                        .collect(toList());
+                Map<String, List<String>> activityTypesByPatient = getActivityTypesByPatient(patientResources);
+                BundleEntryIndex patientReferenceIndex = indexByPatientReference(bundle.getEntry());
+                patients = patientResources.stream()
+                        .map(patient -> mapPatientToPatientDto(patient, patientReferenceIndex, activityTypesByPatient))
                         .distinct()
                         .collect(toList());
             }
@@ -241,35 +401,12 @@ private boolean filterBySearchKey(Patient patient, Optional<String> searchKey, O
         return true;
     }
 
-    private Bundle careTeamBundle(PatientDto patientDto) {
-        return fhirClient.search().forResource(CareTeam.class)
-                .where(new ReferenceClientParam("subject").hasId(patientDto.getId())).returnBundle(Bundle.class).execute();
-    }
-
-    private Boolean practitionerAssignedToPatient(Bundle careTeamBundle) {
-        return careTeamBundle.getEntry().stream().map(ct -> (CareTeam) ct.getResource()).flatMap(ct -> ct.getParticipant().stream()
-                .map(par -> par.getRole().getCoding().stream().findFirst().get().getCode()))
-                .filter(r -> lookUpService.getParticipantRoles().stream().map(role -> role.getCode().trim()).collect(toList()).contains(r.trim()))
-                .collect(toList())
-                .isEmpty();
-    }
-
-    private PatientDto mapPatientToPatientDto(Patient patient, List<Bundle.BundleEntryComponent> response) {
+    private PatientDto mapPatientToPatientDto(Patient patient, BundleEntryIndex patientReferenceIndex, Map<String, List<String>> activityTypesByPatient) {
         PatientDto patientDto = modelMapper.map(patient, PatientDto.class);
         patientDto.setId(patient.getIdElement().getIdPart());
         patientDto.setMrn(patientDto.getIdentifier().stream().filter(iden -> iden.getSystem().equalsIgnoreCase(fisProperties.getPatient().getMrn().getCodeSystem())).findFirst().map(IdentifierDto::getValue));
         patientDto.setIdentifier(patientDto.getIdentifier().stream().filter(iden -> !iden.getSystem().equalsIgnoreCase(fisProperties.getPatient().getMrn().getCodeSystem())).collect(toList()));
-        Bundle bundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(Task.class).where(new ReferenceClientParam("patient").hasId(patient.getIdElement().getIdPart())))
-                .returnBundle(Bundle.class).encodedJson().execute();
-        List<String> types = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties).stream().map(at -> {
-            Task task = (Task) at.getResource();
-            try {
-                String activityTypeDecAndEndDate = task.getDefinitionReference().getDisplay() + " - Due: " + DateUtil.convertDateToString(task.getExecutionPeriod().getEnd());
-                return activityTypeDecAndEndDate;
-            } catch (FHIRException e) {
-                return "";
-            }
-        }).distinct().collect(toList());
+        List<String> types = new ArrayList<>(activityTypesByPatient.getOrDefault(patientDto.getId(), Collections.emptyList()));
 
         if (types.isEmpty()) {
             patientDto.setActivityTypes(Optional.empty());
@@ -290,13 +427,13 @@ private PatientDto mapPatientToPatientDto(Patient patient, List<Bundle.BundleEnt
         mapExtensionFields(patient, patientDto);
 
         //Getting flags into the patient dto
-        List<FlagDto> flagDtos = getFlagsForEachPatient(response, patient.getIdElement().getIdPart());
+        List<FlagDto> flagDtos = getFlagsForEachPatient(patientReferenceIndex, patient.getIdElement().getIdPart());
         patientDto.setFlags(Optional.ofNullable(flagDtos));
 
-        List<CoverageDto> coverageDtos = getConveragesForEachPatient(response, patient.getIdElement().getIdPart());
+        List<CoverageDto> coverageDtos = getConveragesForEachPatient(patientReferenceIndex, patient.getIdElement().getIdPart());
         patientDto.setCoverages(Optional.ofNullable(coverageDtos));
 
-        List<EpisodeOfCareDto> episodeOfCareDtos = getEocsForEachPatient(response, patient.getIdElement().getIdPart());
+        List<EpisodeOfCareDto> episodeOfCareDtos = getEocsForEachPatient(patientReferenceIndex, patient.getIdElement().getIdPart());
         patientDto.setEpisodeOfCares(episodeOfCareDtos);
 
         //set Organization
@@ -307,14 +444,54 @@ private PatientDto mapPatientToPatientDto(Patient patient, List<Bundle.BundleEnt
         return patientDto;
     }
 
+    private Map<String, List<String>> getActivityTypesByPatient(List<Patient> patients) {
+        Map<String, List<String>> activityTypesByPatient = new HashMap<>();
+        List<String> patientIds = patients.stream()
+                .map(patient -> patient.getIdElement().getIdPart())
+                .distinct()
+                .collect(toList());
+
+        int maxIdsPerSearch = fisProperties.getFhir().getMaxIdsPerSearch();
+        //One Task search per chunk of patients instead of one per patient
+        for (int fromIndex = 0; fromIndex < patientIds.size(); fromIndex += maxIdsPerSearch) {
+            List<String> patientIdChunk = patientIds.subList(fromIndex, Math.min(fromIndex + maxIdsPerSearch, patientIds.size()));
+            int pageSize = fisProperties.getResourceSinglePageLimit();
+            Bundle taskBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(Task.class).where(new ReferenceClientParam("patient").hasAnyOfIds(patientIdChunk)))
+                    .count(pageSize)
+                    .returnBundle(Bundle.class).encodedJson().execute();
+
+            FhirOperationUtil.getAllBundleComponentsAsList(taskBundle, Optional.of(pageSize), fhirClient, fisProperties, fhirQueryExecutor).stream()
+                    .filter(taskEntry -> taskEntry.getResource().getResourceType().equals(ResourceType.Task))
+                    .map(taskEntry -> (Task) taskEntry.getResource())
+                    .filter(task -> task.hasFor() && task.getFor().hasReference())
+                    .forEach(task -> {
+                        List<String> types = activityTypesByPatient.computeIfAbsent(task.getFor().getReferenceElement().getIdPart(), patientId -> new ArrayList<>());
+                        String activityTypeDecAndEndDate = getActivityTypeDecAndEndDate(task);
+                        if (!types.contains(activityTypeDecAndEndDate)) {
+                            types.add(activityTypeDecAndEndDate);
+                        }
+                    });
+        }
+        return activityTypesByPatient;
+    }
+
+    private String getActivityTypeDecAndEndDate(Task task) {
+        try {
+            return task.getDefinitionReference().getDisplay() + " - Due: " + DateUtil.convertDateToString(task.getExecutionPeriod().getEnd());
+        } catch (FHIRException e) {
+            return "";
+        }
+    }
+
     @Override
     public void createPatient(PatientDto patientDto, Optional<String> loggedInUser) {
-        //captures ids of all fhir resources created
-        List<String> idList = new ArrayList<>();
+        //collects all fhir resources to be created in a single transaction
+        TransactionBundleBuilder transaction = new TransactionBundleBuilder();
 
-        if (!checkDuplicatePatientOfSameOrganization(patientDto)) {
-            if (checkDuplicateInFhir(patientDto)) {
-                patientDto.getIdentifier().add(setUniqueIdentifierForPatient(patientsWithMatchedDuplicateCheckParameters(patientDto).stream()
+        List<Bundle.BundleEntryComponent> patientsWithDuplicateParameters = patientsWithMatchedDuplicateCheckParameters(patientDto);
+        if (!checkDuplicatePatientOfSameOrganization(patientsWithDuplicateParameters, patientDto)) {
+            if (!patientsWithDuplicateParameters.isEmpty()) {
+                patientDto.getIdentifier().add(setUniqueIdentifierForPatient(patientsWithDuplicateParameters.stream()
                         .map(pat -> (Patient) pat.getResource()).findAny().get().getIdentifier().stream()
                         .filter(iden -> iden.getSystem().equalsIgnoreCase(fisProperties.getPatient().getMrn().getCodeSystem()))
                         .map(Identifier::getValue).findAny().orElse(generateRandomMrn())));
@@ -332,46 +509,42 @@ public void createPatient(PatientDto patientDto, Optional<String> loggedInUser)
             setExtensionFields(patient, patientDto);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setPatientProfileMetaData(fhirClient, patient);
+            FhirProfileUtil.setPatientProfileMetaData(fhirProfileRegistry, patient);
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, patient, Optional.empty(), ResourceType.Patient.name(), "Create Patient");
             //Create
-            MethodOutcome patientMethodOutcome = FhirOperationUtil.createFhirResource(fhirClient, patient, ResourceType.Patient.name());
-            idList.add(ResourceType.Patient.name() + "/" + FhirOperationUtil.getFhirId(patientMethodOutcome));
+            String patientFullUrl = transaction.create(patient);
 
-            //Assign fhir Patient resource id.
+            //Other resources refer to the patient through its placeholder until the transaction assigns the id
             Reference patientId = new Reference();
-            String patientLogicalId = patientMethodOutcome.getId().getIdPart();
-            patientId.setReference("Patient/" + patientLogicalId);
+            patientId.setReference(patientFullUrl);
 
             //Create flag for the patient
             patientDto.getFlags().ifPresent(flags -> flags.forEach(flagDto -> {
                 Flag flag = convertFlagDtoToFlag(patientId, flagDto);
                 //Set Profile Meta Data
-                FhirProfileUtil.setFlagProfileMetaData(fhirClient, flag);
+                FhirProfileUtil.setFlagProfileMetaData(fhirProfileRegistry, flag);
                 //Validate
                 FhirOperationUtil.validateFhirResource(fhirValidator, flag, Optional.empty(), ResourceType.Flag.name(), "Create Flag(When creating Patient)");
                 //Create
-                MethodOutcome flagMethodOutcome = FhirOperationUtil.createFhirResource(fhirClient, flag, ResourceType.Flag.name());
-                idList.add(ResourceType.Flag.name() + "/" + FhirOperationUtil.getFhirId(flagMethodOutcome));
+                transaction.create(flag);
             }));
 
             //Create To-Do task
-            Task task = FhirResourceUtil.createToDoTask(patientMethodOutcome.getId().getIdPart(), patientDto.getPractitionerId().orElse(fisProperties.getDefaultPractitioner()), patientDto.getOrganizationId().orElse(fisProperties.getDefaultOrganization()), fhirClient, fisProperties);
+            Task task = FhirResourceUtil.createToDoTask(patientId, patientDto.getPractitionerId().orElse(fisProperties.getDefaultPractitioner()), patientDto.getOrganizationId().orElse(fisProperties.getDefaultOrganization()), fhirClient, fisProperties);
             task.setDefinition(FhirDtoUtil.mapReferenceDtoToReference(FhirResourceUtil.getRelatedActivityDefinition(patientDto.getOrganizationId().orElse(fisProperties.getDefaultOrganization()), ActivityDefinitionConstants.TO_DO, fhirClient, fisProperties)));
             //Set Profile Meta Data
-            FhirProfileUtil.setTaskProfileMetaData(fhirClient, task);
+            FhirProfileUtil.setTaskProfileMetaData(fhirProfileRegistry, task);
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, task, Optional.empty(), ResourceType.Task.name(), "Create Task(When creating Patient)");
             //Create
-            MethodOutcome taskMethodOutcome = FhirOperationUtil.createFhirResource(fhirClient, task, ResourceType.Task.name());
-            idList.add(ResourceType.Task.name() + "/" + FhirOperationUtil.getFhirId(taskMethodOutcome));
+            transaction.create(task);
 
             //Create EpisodeOfCare and default careTeam
             if (patientDto.getEpisodeOfCares() != null && !patientDto.getEpisodeOfCares().isEmpty()) {
                 patientDto.getEpisodeOfCares().forEach(eoc -> {
                     ReferenceDto patientReference = new ReferenceDto();
-                    patientReference.setReference(ResourceType.Patient + "/" + patientMethodOutcome.getId().getIdPart());
+                    patientReference.setReference(patientFullUrl);
                     patientDto.getName().stream().findAny().ifPresent(name -> patientReference.setDisplay(name.getFirstName() + " " + name.getLastName()));
                     eoc.setPatient(patientReference);
                     eoc.setManagingOrganization(orgReference(patientDto.getOrganizationId()));
@@ -380,39 +553,40 @@ public void createPatient(PatientDto patientDto, Optional<String> loggedInUser)
                     }
                     EpisodeOfCare episodeOfCare = convertEpisodeOfCareDtoToEpisodeOfCare(eoc);
                     //Set Profile Meta Data
-                    FhirProfileUtil.setEpisodeOfCareProfileMetaData(fhirClient, episodeOfCare);
+                    FhirProfileUtil.setEpisodeOfCareProfileMetaData(fhirProfileRegistry, episodeOfCare);
                     //Validate
                     FhirOperationUtil.validateFhirResource(fhirValidator, episodeOfCare, Optional.empty(), ResourceType.EpisodeOfCare.name(), "Create EpisodeOfCare(When creating Patient)");
                     //Create
-                    MethodOutcome episodeOfCareMethodOutcome = FhirOperationUtil.createFhirResource(fhirClient, episodeOfCare, ResourceType.EpisodeOfCare.name());
-
-                    idList.add(ResourceType.EpisodeOfCare.name() + "/" + FhirOperationUtil.getFhirId(episodeOfCareMethodOutcome));
+                    transaction.create(episodeOfCare);
                 }
                 );
 
                 //Create default CareTeam from EOC
                 try {
-                    CareTeamDto defaultCareTeamDto = getDefaultCareTeamDto(patientLogicalId, patientDto);
-                    final CareTeam careTeam = CareTeamDtoToCareTeamConverter.map(defaultCareTeamDto);
+                    final CareTeam careTeam = CareTeamDtoToCareTeamConverter.map(getDefaultCareTeamDto(patientDto), patientId);
 
                     //Set Profile Meta Data
-                    FhirProfileUtil.setCareTeamProfileMetaData(fhirClient, careTeam);
+                    FhirProfileUtil.setCareTeamProfileMetaData(fhirProfileRegistry, careTeam);
 
                     //Validate
                     FhirOperationUtil.validateFhirResource(fhirValidator, careTeam, Optional.empty(), ResourceType.CareTeam.name(), "Create CareTeam(Default)");
 
                     //Create
-                    MethodOutcome methodOutcome = FhirOperationUtil.createFhirResource(fhirClient, careTeam, ResourceType.CareTeam.name());
-                    idList.add(ResourceType.CareTeam.name() + "/" + FhirOperationUtil.getFhirId(methodOutcome));
+                    transaction.create(careTeam);
                 } catch (FHIRException | ParseException e) {
                     throw new FHIRClientException("FHIR Client returned with an error while creating default care team:" + e.getMessage());
                 }
             }
 
             if (fisProperties.isProvenanceEnabled()) {
-                provenanceUtil.createProvenance(idList, ProvenanceActivityEnum.CREATE, loggedInUser);
+                transaction.create(provenanceUtil.buildProvenance(transaction.getFullUrls(), ProvenanceActivityEnum.CREATE, loggedInUser));
             }
 
+            //Patient and all related resources are created atomically
+            Map<String, String> createdIds = transaction.submit(fhirClient, "Create Patient");
+            identifierIndex.index(ResourceType.Patient, new IdType(createdIds.get(patientFullUrl)).getIdPart(), patient.getIdentifier());
+            transaction.getResources().forEach(resource -> organizationMembershipService.index(resource.getIdElement().getIdPart(), resource));
+
         } else {
             log.info("Patient already exists with the given identifier system and value");
             throw new DuplicateResourceFoundException("Patient already exists with the given identifier system and value");
@@ -445,12 +619,14 @@ public void updatePatient(PatientDto patientDto, Optional<String> loggedInUser)
             setExtensionFields(patient, patientDto);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setPatientProfileMetaData(fhirClient, patient);
+            FhirProfileUtil.setPatientProfileMetaData(fhirProfileRegistry, patient);
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, patient, Optional.of(patientDto.getId()), ResourceType.Patient.name(), "Update Patient");
             //Update
             MethodOutcome methodOutcome = FhirOperationUtil.updateFhirResource(fhirClient, patient, ResourceType.Patient.name());
             idList.add(ResourceType.Patient.name() + "/" + FhirOperationUtil.getFhirId(methodOutcome));
+            identifierIndex.index(ResourceType.Patient, patientDto.getId(), patient.getIdentifier());
+            organizationMembershipService.index(patientDto.getId(), patient);
 
             Reference patientId = new Reference();
             patientId.setReference("Patient/" + methodOutcome.getId().getIdPart());
@@ -459,7 +635,7 @@ public void updatePatient(PatientDto patientDto, Optional<String> loggedInUser)
                 if (!duplicateCheckForFlag(flagDto, patientDto.getId())) {
                     Flag flag = convertFlagDtoToFlag(patientId, flagDto);
                     //Set Profile Meta Data
-                    FhirProfileUtil.setFlagProfileMetaData(fhirClient, flag);
+                    FhirProfileUtil.setFlagProfileMetaData(fhirProfileRegistry, flag);
 
                     if (flagDto.getLogicalId() != null) {
                         flag.setId(flagDto.getLogicalId());
@@ -499,7 +675,7 @@ public void updatePatient(PatientDto patientDto, Optional<String> loggedInUser)
                     }
                     EpisodeOfCare episodeOfCare = convertEpisodeOfCareDtoToEpisodeOfCare(eoc);
                     //Set Profile Meta Data
-                    FhirProfileUtil.setEpisodeOfCareProfileMetaData(fhirClient, episodeOfCare);
+                    FhirProfileUtil.setEpisodeOfCareProfileMetaData(fhirProfileRegistry, episodeOfCare);
                     if (eoc.getId() != null) {
                         episodeOfCare.setId(eoc.getId());
                         //Validate
@@ -507,12 +683,14 @@ public void updatePatient(PatientDto patientDto, Optional<String> loggedInUser)
                         //Update
                         MethodOutcome episodeOfCareMethodOutcome = FhirOperationUtil.updateFhirResource(fhirClient, episodeOfCare, ResourceType.EpisodeOfCare.name());
                         idList.add(ResourceType.EpisodeOfCare.name() + "/" + FhirOperationUtil.getFhirId(episodeOfCareMethodOutcome));
+                        organizationMembershipService.index(FhirOperationUtil.getFhirId(episodeOfCareMethodOutcome), episodeOfCare);
                     } else {
                         //Validate
                         FhirOperationUtil.validateFhirResource(fhirValidator, episodeOfCare, Optional.empty(), ResourceType.EpisodeOfCare.name(), "Create EpisodeOfCare(When updating Patient)");
                         //Create
                         MethodOutcome episodeOfCareMethodOutcome = FhirOperationUtil.createFhirResource(fhirClient, episodeOfCare, ResourceType.EpisodeOfCare.name());
                         idList.add(ResourceType.EpisodeOfCare.name() + "/" + FhirOperationUtil.getFhirId(episodeOfCareMethodOutcome));
+                        organizationMembershipService.index(FhirOperationUtil.getFhirId(episodeOfCareMethodOutcome), episodeOfCare);
                     }
                 });
             }
@@ -566,14 +744,16 @@ public PatientDto getPatientById(String patientId) {
             organization.setReference(patient.getManagingOrganization().getReference());
             patientDto.setOrganization(Optional.of(organization));
         }
+        BundleEntryIndex patientReferenceIndex = indexByPatientReference(patientBundle.getEntry());
+
         //Get Flags for the patient
-        List<FlagDto> flagDtos = getFlagsForEachPatient(patientBundle.getEntry(), patientBundleEntry.getResource().getIdElement().getIdPart());
+        List<FlagDto> flagDtos = getFlagsForEachPatient(patientReferenceIndex, patientBundleEntry.getResource().getIdElement().getIdPart());
         patientDto.setFlags(Optional.ofNullable(flagDtos));
 
-        List<EpisodeOfCareDto> eocDtos = getEocsForEachPatient(patientBundle.getEntry(), patientBundleEntry.getResource().getIdElement().getIdPart());
+        List<EpisodeOfCareDto> eocDtos = getEocsForEachPatient(patientReferenceIndex, patientBundleEntry.getResource().getIdElement().getIdPart());
         patientDto.setEpisodeOfCares(eocDtos);
 
-        List<CoverageDto> coverageDtos = getConveragesForEachPatient(patientBundle.getEntry(), patientBundleEntry.getResource().getIdElement().getIdPart());
+        List<CoverageDto> coverageDtos = getConveragesForEachPatient(patientReferenceIndex, patientBundleEntry.getResource().getIdElement().getIdPart());
         patientDto.setCoverages(Optional.ofNullable(coverageDtos));
 
         mapExtensionFields(patient, patientDto);
@@ -620,21 +800,31 @@ private List<PatientDto> convertBundleToPatientDtos(Bundle response, boolean isS
             // Search throw patient not found exception and list will show empty list
             if (isSearch) throw new PatientNotFoundException();
         } else {
-            patientDtos = response.getEntry().stream()
+            List<Patient> patients = response.getEntry().stream()
                     .filter(bundleEntryComponent -> bundleEntryComponent.getResource().getResourceType().equals(ResourceType.Patient))  //patient entries
                     .map(bundleEntryComponent -> (Patient) bundleEntryComponent.getResource()) // patient resources
                     .peek(patient -> log.debug(iParser.encodeResourceToString(patient)))
-                    .map(patient -> mapPatientToPatientDto(patient, response.getEntry()))
+                    .collect(toList());
+            Map<String, List<String>> activityTypesByPatient = getActivityTypesByPatient(patients);
+            BundleEntryIndex patientReferenceIndex = indexByPatientReference(response.getEntry());
+            patientDtos = patients.stream()
+                    .map(patient -> mapPatientToPatientDto(patient, patientReferenceIndex, activityTypesByPatient))
                     .collect(toList());
         }
         log.info("Total Patients retrieved from Server #" + patientDtos.size());
         return patientDtos;
     }
 
-    private List<FlagDto> getFlagsForEachPatient(List<Bundle.BundleEntryComponent> patientAndAllReferenceBundle, String patientId) {
-        return patientAndAllReferenceBundle.stream().filter(patientWithAllReference -> patientWithAllReference.getResource().getResourceType().equals(ResourceType.Flag))
-                .map(flagBundle -> (Flag) flagBundle.getResource())
-                .filter(flag -> flag.getSubject().getReference().equalsIgnoreCase("Patient/" + patientId))
+    private static BundleEntryIndex indexByPatientReference(List<Bundle.BundleEntryComponent> patientAndAllReferenceBundle) {
+        Map<ResourceType, Function<Resource, Reference>> patientReferences = new EnumMap<>(ResourceType.class);
+        patientReferences.put(ResourceType.Flag, flag -> ((Flag) flag).getSubject());
+        patientReferences.put(ResourceType.EpisodeOfCare, eoc -> ((EpisodeOfCare) eoc).getPatient());
+        patientReferences.put(ResourceType.Coverage, coverage -> ((Coverage) coverage).getBeneficiary());
+        return BundleEntryIndex.of(patientAndAllReferenceBundle, patientReferences);
+    }
+
+    private List<FlagDto> getFlagsForEachPatient(BundleEntryIndex patientReferenceIndex, String patientId) {
+        return patientReferenceIndex.<Flag>get(ResourceType.Flag, "Patient/" + patientId).stream()
                 // filter out inactive and entered in error status values
                 .filter(flag -> flag.getStatus().toCode().equals(Enumerations.PublicationStatus.ACTIVE.toCode()))
                 .map(flag -> {
@@ -661,17 +851,13 @@ private List<FlagDto> getFlagsForEachPatient(List<Bundle.BundleEntryComponent> p
                 }).collect(toList());
     }
 
-    private List<EpisodeOfCareDto> getEocsForEachPatient(List<Bundle.BundleEntryComponent> patientAndAllReferenceBundle, String patientId) {
-        return patientAndAllReferenceBundle.stream().filter(patientWithAllReference -> patientWithAllReference.getResource().getResourceType().equals(ResourceType.EpisodeOfCare))
-                .map(eocBundle -> (EpisodeOfCare) eocBundle.getResource())
-                .filter(eoc -> eoc.getPatient().getReference().equalsIgnoreCase("Patient/" + patientId))
+    private List<EpisodeOfCareDto> getEocsForEachPatient(BundleEntryIndex patientReferenceIndex, String patientId) {
+        return patientReferenceIndex.<EpisodeOfCare>get(ResourceType.EpisodeOfCare, "Patient/" + patientId).stream()
                 .map(eoc -> EpisodeOfCareToEpisodeOfCareDtoMapper.map(eoc, lookUpService)).collect(toList());
     }
 
-    private List<CoverageDto> getConveragesForEachPatient(List<Bundle.BundleEntryComponent> patientAndAllReferenceBundle, String patientId) {
-        return patientAndAllReferenceBundle.stream().filter(patientWithAllReference -> patientWithAllReference.getResource().getResourceType().equals(ResourceType.Coverage))
-                .map(coverageBundle -> (Coverage) coverageBundle.getResource())
-                .filter(coverage -> coverage.getBeneficiary().getReference().equalsIgnoreCase("Patient/" + patientId))
+    private List<CoverageDto> getConveragesForEachPatient(BundleEntryIndex patientReferenceIndex, String patientId) {
+        return patientReferenceIndex.<Coverage>get(ResourceType.Coverage, "Patient/" + patientId).stream()
                 .map(CoverageToCoverageDtoMap::map)
                 .collect(toList());
     }
@@ -837,59 +1023,31 @@ private boolean flagHasSameCodeAndCategory(Bundle bundle, FlagDto flagDto) {
         }
     }
 
-    private List<String> patientsInOrganization(String org) {
-        Bundle bundleFromPatient = fhirClient.search().forResource(Patient.class)
-                .where(new ReferenceClientParam("organization").hasId(org))
-                .returnBundle(Bundle.class)
-                .sort().descending(PARAM_LASTUPDATED)
-                .execute();
-
-        List<String> getPatientIdFromPatient = FhirOperationUtil.getAllBundleComponentsAsList(bundleFromPatient, Optional.empty(), fhirClient, fisProperties)
-                .stream().map(pat -> {
-                    Patient patient = (Patient) pat.getResource();
-                    return patient.getIdElement().getIdPart();
-                }).distinct().collect(toList());
-
-        //TODO:Remove the bundle after next data purge.
-        Bundle bundle = fhirClient.search().forResource(EpisodeOfCare.class)
-                .where(new ReferenceClientParam("organization").hasId(org))
-                .returnBundle(Bundle.class)
-                .sort().descending(PARAM_LASTUPDATED)
-                .execute();
-        List<String> getPatientFromEoc = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties).stream().map(eoc -> {
-            EpisodeOfCare episodeOfCare = (EpisodeOfCare) eoc.getResource();
-            return (episodeOfCare.hasPatient()) ? (episodeOfCare.getPatient().getReference().split("/")[1]) : null;
-        }).distinct().collect(toList());
-
-        return Stream.of(getPatientIdFromPatient, getPatientFromEoc).flatMap(Collection::stream).distinct().collect(toList());
-    }
-
     private List<String> patientsAssociatedWithPractitioner(String prac, String org) {
-        //List of organizations to which practitioner is associated with
-        List<String> organizationsPractitionerIsAssociatedWith = organizationsOfPractitioner(prac);
+        //Organizations to which practitioner is associated with, and the practitioner itself, as care team participants
+        Set<String> participants = new HashSet<>(organizationMembershipService.getOrganizationIds(prac));
+        participants.add(prac);
 
-        //List of patient with the practitioner's organization in the care team.
-        List<String> patientsRelatedWithOrganizationOfPractitionerOnCareTeam = getPatientsByParticipantsInCareTeam(organizationsPractitionerIsAssociatedWith);
-
-        //List of patient with the practitioner in the care team.
-        List<String> patientsRealtedWithPractitionerOnCareTeam = getPatientsByParticipantsInCareTeam(Arrays.asList(prac));
-
-        return Stream.of(patientsRelatedWithOrganizationOfPractitionerOnCareTeam, patientsRealtedWithPractitionerOnCareTeam).flatMap(Collection::stream).distinct().filter(s -> !patientsInOrganization(org).contains(s)).collect(toList());
+        Set<String> patientsInOrganization = organizationMembershipService.getPatientIds(org);
+        return organizationMembershipService.getCareTeamPatientIds(participants).stream()
+                .filter(s -> !patientsInOrganization.contains(s))
+                .collect(toList());
     }
 
-    private List<PatientDto> convertAllBundleToSinglePatientDtoList(Bundle firstPagePatientSearchBundle, int numberOBundlePerPage, Optional<String> filterKey, Optional<String> practitioner) {
-        List<Bundle.BundleEntryComponent> bundleEntryComponentList = FhirOperationUtil.getAllBundleComponentsAsList(firstPagePatientSearchBundle, Optional.of(numberOBundlePerPage), fhirClient, fisProperties);
-        return bundleEntryComponentList.stream()
+    private List<PatientDto> convertBundleEntriesToPatientDtoList(List<Bundle.BundleEntryComponent> bundleEntryComponentList, Optional<String> filterKey, Optional<String> practitioner) {
+        List<Patient> patients = bundleEntryComponentList.stream()
                 .filter(bundleEntryComponent -> bundleEntryComponent.getResource().getResourceType().equals(ResourceType.Patient))
                 .map(bundleEntryComponent -> (Patient) bundleEntryComponent.getResource())
+                .collect(toList());
+        Map<String, List<String>> activityTypesByPatient = getActivityTypesByPatient(patients);
+        BundleEntryIndex patientReferenceIndex = indexByPatientReference(bundleEntryComponentList);
+        Map<String, Boolean> canViewPatients = (filterKey.isPresent() && SearchKeyEnum.PatientFilterKey.contains(filterKey.get()) && SearchKeyEnum.PatientFilterKey.ASSOCIATECARETEAMPATIENT.name().equalsIgnoreCase(filterKey.get())) ?
+                consentAccessEvaluator.canViewPatients(practitioner.get(), patients.stream().map(patient -> patient.getIdElement().getIdPart()).collect(toList())) : null;
+        return patients.stream()
                 .map(patient -> {
-                    PatientDto patientDto = mapPatientToPatientDto(patient, bundleEntryComponentList);
-                    if (filterKey.isPresent() && SearchKeyEnum.PatientFilterKey.contains(filterKey.get()) && SearchKeyEnum.PatientFilterKey.ASSOCIATECARETEAMPATIENT.name().equalsIgnoreCase(filterKey.get())) {
-                        if (associatedPractitionerIsPresentInConsent(patientDto.getId(), practitioner)) {
-                            patientDto.setCanViewPatientDetail(Optional.of(true));
-                        } else {
-                            patientDto.setCanViewPatientDetail(Optional.of(false));
-                        }
+                    PatientDto patientDto = mapPatientToPatientDto(patient, patientReferenceIndex, activityTypesByPatient);
+                    if (canViewPatients != null) {
+                        patientDto.setCanViewPatientDetail(Optional.of(canViewPatients.getOrDefault(patientDto.getId(), false)));
                     } else {
                         patientDto.setCanViewPatientDetail(Optional.of(true));
                     }
@@ -913,28 +1071,23 @@ private boolean isDuplicateWhileUpdate(PatientDto patientDto) {
 
     private ReferenceDto orgReference(Optional<String> organizationId) {
         ReferenceDto referenceDto = new ReferenceDto();
-        referenceDto.setDisplay(fhirClient.read().resource(Organization.class).withId(organizationId.get()).execute().getName());
+        referenceResolver.resolve(Organization.class, organizationId.get()).ifPresent(organization -> referenceDto.setDisplay(organization.getName()));
         referenceDto.setReference("Organization/" + organizationId.get());
         return referenceDto;
     }
 
     private ReferenceDto pracReference(Optional<String> practitionerId) {
         ReferenceDto referenceDto = new ReferenceDto();
-        fhirClient.read().resource(Practitioner.class).withId(practitionerId.get()).execute().getName().stream().findAny()
+        referenceResolver.resolve(Practitioner.class, practitionerId.get()).flatMap(practitioner -> practitioner.getName().stream().findAny())
                 .ifPresent(name -> referenceDto.setDisplay(name.getGiven().stream().findFirst().get().toString() + " " + name.getFamily()));
         referenceDto.setReference("Practitioner/" + practitionerId.get());
         return referenceDto;
     }
 
 
-    private boolean checkDuplicateInFhir(PatientDto patientDto) {
-        return !patientsWithMatchedDuplicateCheckParameters(patientDto).isEmpty();
-    }
-
-    private boolean checkDuplicatePatientOfSameOrganization(PatientDto patientDto) {
-        List<Bundle.BundleEntryComponent> patientWithDuplicateParameters = patientsWithMatchedDuplicateCheckParameters(patientDto);
+    private boolean checkDuplicatePatientOfSameOrganization(List<Bundle.BundleEntryComponent> patientWithDuplicateParameters, PatientDto patientDto) {
         if (!patientWithDuplicateParameters.isEmpty()) {
-            return !patientsWithMatchedDuplicateCheckParameters(patientDto).stream().filter(pat -> {
+            return !patientWithDuplicateParameters.stream().filter(pat -> {
                 Patient patient = (Patient) pat.getResource();
                 return (patient.hasManagingOrganization()) && patient.getManagingOrganization().getReference().split("/")[1].equalsIgnoreCase(patientDto.getOrganizationId().get());
             }).collect(toList()).isEmpty();
@@ -952,8 +1105,12 @@ private List<Bundle.BundleEntryComponent> patientsWithMatchedDuplicateCheckParam
         String system = patientDto.getIdentifier().get(0).getSystem();
         String value = patientDto.getIdentifier().get(0).getValue();
         log.info("Searching patients with identifier system : " + system + " and value : " + value);
-        Bundle patientBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(Patient.class)).returnBundle(Bundle.class).execute();
-        return FhirOperationUtil.getAllBundleComponentsAsList(patientBundle, Optional.empty(), fhirClient, fisProperties).stream().filter(patient -> {
+        Set<String> patientIds = identifierIndex.findIds(ResourceType.Patient, system, value);
+        if (patientIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Bundle patientBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(Patient.class).where(new TokenClientParam("_id").exactly().codes(new ArrayList<>(patientIds)))).returnBundle(Bundle.class).execute();
+        return FhirOperationUtil.getAllBundleComponentsAsList(patientBundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor).stream().filter(patient -> {
             Patient p = (Patient) patient.getResource();
             return p.getIdentifier().stream().anyMatch(identifier -> checkIdentifier(system, value, identifier)) &&
                     checkFirstName(p, patientDto)
@@ -991,148 +1148,18 @@ private String generateRandomMrn() {
     }
 
 
-    private List<String> getPatientsByParticipantsInCareTeam(List<String> participants) {
-        List<String> patients = new ArrayList<>();
-
-        Bundle bundle = fhirClient.search().forResource(CareTeam.class)
-                .where(new ReferenceClientParam("participant").hasAnyOfIds(participants))
-                .returnBundle(Bundle.class)
-                .execute();
-
-        if (bundle != null) {
-            patients = bundle.getEntry().stream()
-                    .map(it -> (CareTeam) it.getResource())
-                    .map(it -> it.getSubject().getReference().split("/")[1])
-                    .collect(toList());
-
-        }
-
-        return patients;
-    }
-
-    private List<String> organizationsOfPractitioner(String practitioner) {
-        List<String> org = new ArrayList<>();
-
-        Bundle bundle = fhirClient.search().forResource(PractitionerRole.class)
-                .where(new ReferenceClientParam("practitioner").hasId(practitioner))
-                .returnBundle(Bundle.class)
-                .execute();
-
-        if (bundle != null) {
-            org = bundle.getEntry().stream()
-                    .map(it -> (PractitionerRole) it.getResource())
-                    .map(pr -> pr.getOrganization().getReference().split("/")[1])
-                    .collect(toList());
-        }
-
-        return org;
-    }
-
-    private Boolean associatedPractitionerIsPresentInConsent(String patientId, Optional<String> practitionerId) {
-        return practitionersPartOfConsentForThePatientAsPractitioner(patientId).contains(practitionerId.get()) || !organizationsOfPractitioner(practitionerId.get()).stream().filter(org -> organizationsPartOfConsentForThePatient(patientId).contains(org)).collect(toList()).isEmpty()
-                || !careTeamThePractitionerIsPartOf(practitionerId.get()).stream().filter(ct -> careTeamPartOfConsentForThePatient(patientId).contains(ct)).collect(toList()).isEmpty();
-    }
-
-
-    private List<String> practitionersPartOfConsentForThePatientAsPractitioner(String patientId) {
-        return FhirOperationUtil.getAllBundleComponentsAsList(consentForPatientBundle(patientId, true), Optional.empty(), fhirClient, fisProperties)
-                .stream()
-                .filter(e -> {
-                    final Date now = new Date();
-                    final Period period = ((Consent) e.getResource()).getPeriod();
-                    return period.getStart().before(now) && period.getEnd().after(now);
-                })
-                .flatMap(e -> {
-                    Consent consent = (Consent) e.getResource();
-                    return consent.getActor().stream()
-                            .filter(a -> a.getRole().getCoding().stream().findAny().get().getCode().equalsIgnoreCase(V3ParticipationType.IRCP.toCode()))
-                            .filter(a -> a.getReference().getReference().split("/")[0].equalsIgnoreCase(ResourceType.Practitioner.toString()))
-                            .map(pr -> pr.getReference().getReference().split("/")[1]);
-                })
-                .distinct()
-                .collect(toList());
-    }
-
-    private List<String> organizationsPartOfConsentForThePatient(String patientId) {
-        return FhirOperationUtil.getAllBundleComponentsAsList(consentForPatientBundle(patientId, true), Optional.empty(), fhirClient, fisProperties)
-                .stream()
-                .filter(e -> {
-                    final Date now = new Date();
-                    final Period period = ((Consent) e.getResource()).getPeriod();
-                    return period.getStart().before(now) && period.getEnd().after(now);
-                })
-                .flatMap(e -> {
-                    Consent consent = (Consent) e.getResource();
-                    return consent.getActor().stream()
-                            .filter(a -> a.getRole().getCoding().stream().findAny().get().getCode().equalsIgnoreCase(V3ParticipationType.IRCP.toCode()))
-                            .filter(a -> a.getReference().getReference().split("/")[0].equalsIgnoreCase(ResourceType.Organization.toString()))
-                            .map(pr -> pr.getReference().getReference().split("/")[1]);
-                })
-                .distinct()
-                .collect(toList());
-    }
-
-    private List<String> careTeamPartOfConsentForThePatient(String patientId) {
-        return FhirOperationUtil.getAllBundleComponentsAsList(consentForPatientBundle(patientId, true), Optional.empty(), fhirClient, fisProperties)
-                .stream()
-                .filter(e -> {
-                    final Date now = new Date();
-                    final Period period = ((Consent) e.getResource()).getPeriod();
-                    return period.getStart().before(now) && period.getEnd().after(now);
-                })
-                .flatMap(e -> {
-                    Consent consent = (Consent) e.getResource();
-                    return consent.getActor().stream()
-                            .filter(a -> a.getRole().getCoding().stream().findAny().get().getCode().equalsIgnoreCase(V3ParticipationType.IRCP.toCode()))
-                            .filter(a -> a.getReference().getReference().split("/")[0].equalsIgnoreCase(ResourceType.CareTeam.toString()))
-                            .map(pr -> pr.getReference().getReference().split("/")[1]);
-                })
-                .distinct()
-                .collect(toList());
-
-    }
-
-    private List<String> careTeamThePractitionerIsPartOf(String practitionerId) {
-        Bundle careTeamBundleForPractitionerId = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(CareTeam.class)
-                .where(new ReferenceClientParam("participant").hasId(practitionerId))).returnBundle(Bundle.class).execute();
-        Bundle careTeamBundleForPractitionerFromOrganizationId = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(CareTeam.class)
-                .where(new ReferenceClientParam("participant").hasAnyOfIds(organizationsOfPractitioner(practitionerId)))).returnBundle(Bundle.class).execute();
-        List<String> careTeamFromPractitionerId = FhirOperationUtil.getAllBundleComponentsAsList(careTeamBundleForPractitionerId, Optional.empty(), fhirClient, fisProperties)
-                .stream().map(c -> {
-                    CareTeam ct = (CareTeam) c.getResource();
-                    return ct.getIdElement().getIdPart();
-                }).distinct().collect(toList());
-        List<String> careTeamForPractitionerForOrganizationId = FhirOperationUtil.getAllBundleComponentsAsList(careTeamBundleForPractitionerFromOrganizationId, Optional.empty(), fhirClient, fisProperties)
-                .stream().map(c -> {
-                    CareTeam ct = (CareTeam) c.getResource();
-                    return ct.getIdElement().getIdPart();
-                }).distinct().collect(toList());
-        return Stream.of(careTeamFromPractitionerId, careTeamForPractitionerForOrganizationId).flatMap(Collection::stream).distinct().collect(toList());
-    }
-
-
-    private Bundle consentForPatientBundle(String patientId, boolean onlyActive) {
-        IQuery query = FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(Consent.class).where(new ReferenceClientParam("patient").hasId(patientId)));
-        if (onlyActive) {
-            query = query.where(new TokenClientParam("status").exactly().code("active"));
-        }
-        return (Bundle) query
-                .returnBundle(Bundle.class)
-                .execute();
-    }
-
     private List<String> getAllCareTeamForPatient(String patientId) {
         Bundle bundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(CareTeam.class).where(new ReferenceClientParam("patient").hasId(patientId)))
                 .returnBundle(Bundle.class)
                 .execute();
-        return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties)
+        return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor)
                 .stream().map(c -> {
                     CareTeam ct = (CareTeam) c.getResource();
                     return ct.getIdElement().getIdPart();
                 }).collect(toList());
     }
 
-    private CareTeamDto getDefaultCareTeamDto(String patientId, PatientDto patientDto) {
+    private CareTeamDto getDefaultCareTeamDto(PatientDto patientDto) {
 
         String careTeamName = patientDto.getName().get(0).getFirstName() + '_' + patientDto.getName().get(0).getLastName() + '_' + DateUtil.getCurrentTimeStamp();
         String earliestDate = getEarliestDate(patientDto);
@@ -1140,7 +1167,6 @@ private CareTeamDto getDefaultCareTeamDto(String patientId, PatientDto patientDt
         CareTeamDto careTeamDto = new CareTeamDto();
         careTeamDto.setName(careTeamName);
         careTeamDto.setStatusCode(CareTeamConstants.STATUS_ACTIVE);
-        careTeamDto.setSubjectId(patientId);
         careTeamDto.setStartDate(earliestDate); //No end Date
         careTeamDto.setManagingOrganization(patientDto.getOrganizationId().get());
         careTeamDto.setCategoryCode(CareTeamConstants.DEFAULT_CATEGORY_CODE);
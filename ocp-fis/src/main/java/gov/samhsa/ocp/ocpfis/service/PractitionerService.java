@@ -7,11 +7,14 @@
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface PractitionerService {
     PageDto<PractitionerDto> getAllPractitioners(Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size);
 
-    PageDto<PractitionerDto> searchPractitioners(Optional<PractitionerController.SearchType> searchType, Optional<String> searchValue, Optional<String> organization, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size, Optional<Boolean> showAll);
+    Stream<PractitionerDto> exportPractitioners(Optional<String> organization, Optional<Boolean> showInactive);
+
+    PageDto<PractitionerDto> searchPractitioners(Optional<PractitionerController.SearchType> searchType, Optional<String> searchValue, Optional<String> organization, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size, Optional<Boolean> showAll, Optional<String> cursor);
 
     PractitionerDto findPractitioner(Optional<String> organization, String firstName, Optional<String> middleName, String lastName, String identifierType, String identifier);
 
@@ -10,6 +10,7 @@
 import ca.uhn.fhir.validation.FhirValidator;
 import gov.samhsa.ocp.ocpfis.config.FisProperties;
 import gov.samhsa.ocp.ocpfis.domain.ProvenanceActivityEnum;
+import gov.samhsa.ocp.ocpfis.service.dto.IdentifierDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PractitionerDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PractitionerRoleDto;
@@ -19,6 +20,7 @@
 import gov.samhsa.ocp.ocpfis.service.exception.ResourceNotFoundException;
 import gov.samhsa.ocp.ocpfis.util.FhirDtoUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
@@ -37,12 +39,15 @@
 import org.hl7.fhir.dstu3.model.StringType;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static ca.uhn.fhir.rest.api.Constants.PARAM_LASTUPDATED;
 import static java.util.stream.Collectors.toList;
@@ -61,14 +66,23 @@ public class PractitionerServiceImpl implements PractitionerService {
     private final FisProperties fisProperties;
 
     private final ProvenanceUtil provenanceUtil;
+    private final IdentifierIndex identifierIndex;
+    private final OrganizationMembershipService organizationMembershipService;
+    private final FhirProfileRegistry fhirProfileRegistry;
+
+    private final AsyncTaskExecutor fhirQueryExecutor;
 
     @Autowired
-    public PractitionerServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, FhirValidator fhirValidator, FisProperties fisProperties, LookUpService lookUpService, ProvenanceUtil provenanceUtil) {
+    public PractitionerServiceImpl(ModelMapper modelMapper, IGenericClient fhirClient, FhirValidator fhirValidator, FisProperties fisProperties, LookUpService lookUpService, ProvenanceUtil provenanceUtil, IdentifierIndex identifierIndex, OrganizationMembershipService organizationMembershipService, FhirProfileRegistry fhirProfileRegistry, AsyncTaskExecutor fhirQueryExecutor) {
         this.modelMapper = modelMapper;
         this.fhirClient = fhirClient;
         this.fhirValidator = fhirValidator;
         this.fisProperties = fisProperties;
         this.provenanceUtil = provenanceUtil;
+        this.identifierIndex = identifierIndex;
+        this.organizationMembershipService = organizationMembershipService;
+        this.fhirProfileRegistry = fhirProfileRegistry;
+        this.fhirQueryExecutor = fhirQueryExecutor;
     }
 
     @Override
@@ -142,8 +156,20 @@ public List<PractitionerDto> getAllPractitionersInOrganization(String organizati
 
 
     @Override
-    public PageDto<PractitionerDto> searchPractitioners(Optional<PractitionerController.SearchType> type, Optional<String> value, Optional<String> organization, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size, Optional<Boolean> showAll) {
+    public PageDto<PractitionerDto> searchPractitioners(Optional<PractitionerController.SearchType> type, Optional<String> value, Optional<String> organization, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> size, Optional<Boolean> showAll, Optional<String> cursor) {
         int numberOfPractitionersPerPage = PaginationUtil.getValidPageSize(fisProperties, size, ResourceType.Practitioner.name());
+        String searchParametersHash = PaginationUtil.getSearchParametersHash(type, value, organization, showInactive, numberOfPractitionersPerPage);
+        Optional<Integer> pageNumber = PaginationUtil.getPageNumber(cursor, searchParametersHash, page, numberOfPractitionersPerPage);
+
+        if (!showAll.isPresent() || !showAll.get()) {
+            Optional<Bundle> cursorPractitionerSearchBundle = PaginationUtil.getSearchBundleByCursor(fhirClient, fisProperties, cursor, searchParametersHash, numberOfPractitionersPerPage);
+            if (cursorPractitionerSearchBundle.isPresent()) {
+                PageDto<PractitionerDto> pageDto = practitionersInPage(cursorPractitionerSearchBundle.get().getEntry(), cursorPractitionerSearchBundle.get(), numberOfPractitionersPerPage, PaginationUtil.isFirstPage(pageNumber), pageNumber);
+                pageDto.setNextCursor(PaginationUtil.getNextCursor(fisProperties, cursorPractitionerSearchBundle.get(), searchParametersHash));
+                return pageDto;
+            }
+        }
+
         IQuery practitionerIQuery = fhirClient.search().forResource(Practitioner.class).sort().descending(PARAM_LASTUPDATED);
 
 
@@ -191,14 +217,53 @@ public PageDto<PractitionerDto> searchPractitioners(Optional<PractitionerControl
 
         otherPagePractitionerSearchBundle = firstPagePractitionerSearchBundle;
 
-        if (page.isPresent() && page.get() > 1 && otherPagePractitionerSearchBundle.getLink(Bundle.LINK_NEXT) != null) {
+        if (pageNumber.isPresent() && pageNumber.get() > 1 && otherPagePractitionerSearchBundle.getLink(Bundle.LINK_NEXT) != null) {
             firstPage = false;
-            otherPagePractitionerSearchBundle = PaginationUtil.getSearchBundleAfterFirstPage(fhirClient, fisProperties, firstPagePractitionerSearchBundle, page.get(), numberOfPractitionersPerPage);
+            otherPagePractitionerSearchBundle = PaginationUtil.getSearchBundleAfterFirstPage(fhirClient, fisProperties, firstPagePractitionerSearchBundle, pageNumber.get(), numberOfPractitionersPerPage);
         }
 
         List<Bundle.BundleEntryComponent> retrievedPractitioners = otherPagePractitionerSearchBundle.getEntry();
 
-        return practitionersInPage(retrievedPractitioners, otherPagePractitionerSearchBundle, numberOfPractitionersPerPage, firstPage, page);
+        PageDto<PractitionerDto> pageDto = practitionersInPage(retrievedPractitioners, otherPagePractitionerSearchBundle, numberOfPractitionersPerPage, firstPage, pageNumber);
+        pageDto.setNextCursor(PaginationUtil.getNextCursor(fisProperties, otherPagePractitionerSearchBundle, searchParametersHash));
+        return pageDto;
+    }
+
+    @Override
+    public Stream<PractitionerDto> exportPractitioners(Optional<String> organization, Optional<Boolean> showInactive) {
+        if (!organization.isPresent()) {
+            return exportPractitionersByIds(Optional.empty(), showInactive);
+        }
+
+        //A practitioner with several roles in the organization is exported once
+        List<String> practitionerIds = practitionersFromOrg(organization.get()).stream().distinct().collect(toList());
+        int maxIdsPerSearch = fisProperties.getFhir().getMaxIdsPerSearch();
+        //The practitioners of large organizations are exported one chunk of ids after the other
+        return IntStream.range(0, (practitionerIds.size() + maxIdsPerSearch - 1) / maxIdsPerSearch)
+                .mapToObj(chunk -> practitionerIds.subList(chunk * maxIdsPerSearch, Math.min((chunk + 1) * maxIdsPerSearch, practitionerIds.size())))
+                .flatMap(practitionerIdChunk -> exportPractitionersByIds(Optional.of(practitionerIdChunk), showInactive));
+    }
+
+    private Stream<PractitionerDto> exportPractitionersByIds(Optional<List<String>> practitionerIds, Optional<Boolean> showInactive) {
+        IQuery practitionerIQuery = fhirClient.search().forResource(Practitioner.class).sort().descending(PARAM_LASTUPDATED);
+
+        practitionerIds.ifPresent(ids -> practitionerIQuery.where(new TokenClientParam("_id").exactly().codes(ids)));
+
+        if (!showInactive.orElse(false)) {
+            practitionerIQuery.where(new TokenClientParam("active").exactly().code("true"));
+        }
+
+        Bundle firstPagePractitionerSearchBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(practitionerIQuery)
+                .count(fisProperties.getResourceSinglePageLimit())
+                .revInclude(PractitionerRole.INCLUDE_PRACTITIONER)
+                .returnBundle(Bundle.class)
+                .execute();
+
+        //The practitioner roles of a practitioner are included in the same page as the practitioner
+        return FhirOperationUtil.streamAllBundlePages(firstPagePractitionerSearchBundle, Optional.of(fisProperties.getResourceSinglePageLimit()), fhirClient, fisProperties, fhirQueryExecutor)
+                .flatMap(practitionerBundle -> practitionerBundle.getEntry().stream()
+                        .filter(entry -> entry.getResource().getResourceType().equals(ResourceType.Practitioner))
+                        .map(entry -> covertEntryComponentToPractitioner(entry, practitionerBundle.getEntry())));
     }
 
     @Override
@@ -246,7 +311,7 @@ public List<ReferenceDto> getPractitionersInOrganizationByPractitionerId(Optiona
                     .returnBundle(Bundle.class).execute();
 
             if (bundle != null && !bundle.getEntry().isEmpty()) {
-                return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties)
+                return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor)
                         .stream().filter(it -> it.getResource().getResourceType().equals(ResourceType.Practitioner))
                         .map(it -> {
                             Practitioner pr = (Practitioner) it.getResource();
@@ -276,7 +341,7 @@ public List<ReferenceDto> getPractitionersInOrganizationByPractitionerId(Optiona
                     .returnBundle(Bundle.class).execute();
 
             if (bundle != null) {
-                List<Bundle.BundleEntryComponent> practitionerComponents = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties);
+                List<Bundle.BundleEntryComponent> practitionerComponents = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor);
 
                 if (practitionerComponents != null) {
                     organizations = practitionerComponents.stream()
@@ -329,7 +394,7 @@ public PageDto<PractitionerDto> getPractitionersByOrganizationAndRole(String org
                 .execute();
 
 
-        List<Bundle.BundleEntryComponent> practitionerBundleEntry = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.ofNullable(numberOfPractitionersPerPage), fhirClient, fisProperties);
+        List<Bundle.BundleEntryComponent> practitionerBundleEntry = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.ofNullable(numberOfPractitionersPerPage), fhirClient, fisProperties, fhirQueryExecutor);
 
         List<PractitionerDto> practitioners = practitionerBundleEntry.stream()
                 .filter(retrievedPractitionerAndPractitionerRoles -> retrievedPractitionerAndPractitionerRoles.getResource().getResourceType().equals(ResourceType.Practitioner))
@@ -406,7 +471,7 @@ private List<Bundle.BundleEntryComponent> getBundleForPractitioners(String organ
                 .include(new Include("PractitionerRole:practitioner"))
                 .returnBundle(Bundle.class)
                 .execute();
-        return FhirOperationUtil.getAllBundleComponentsAsList(practitionerBundle, Optional.empty(), fhirClient, fisProperties);
+        return FhirOperationUtil.getAllBundleComponentsAsList(practitionerBundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor);
     }
 
     private List<PractitionerDto> getPractitionerDtos(List<PractitionerDto> practitioners, List<Bundle.BundleEntryComponent> bundleEntry) {
@@ -435,7 +500,7 @@ public void createPractitioner(PractitionerDto practitionerDto, Optional<String>
             practitioner.setActive(true);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setPractitionerProfileMetaData(fhirClient, practitioner);
+            FhirProfileUtil.setPractitionerProfileMetaData(fhirProfileRegistry, practitioner);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, practitioner, Optional.empty(), ResourceType.Practitioner.name(), "Create Practitioner");
@@ -443,6 +508,7 @@ public void createPractitioner(PractitionerDto practitionerDto, Optional<String>
             //Create
             MethodOutcome methodOutcome = FhirOperationUtil.createFhirResource(fhirClient, practitioner, ResourceType.Practitioner.name());
             idList.add(ResourceType.Practitioner.name() + "/" + FhirOperationUtil.getFhirId(methodOutcome));
+            identifierIndex.index(ResourceType.Practitioner, FhirOperationUtil.getFhirId(methodOutcome), practitioner.getIdentifier());
 
             //Assign fhir Practitioner resource id.
             Reference practitionerId = new Reference();
@@ -467,7 +533,7 @@ public void createPractitioner(PractitionerDto practitionerDto, Optional<String>
                         practitionerRole.setSpecialty(Collections.singletonList(specialtyCodeableConcept));
 
                         //Set Profile Meta Data
-                        FhirProfileUtil.setPractitionerRoleProfileMetaData(fhirClient, practitionerRole);
+                        FhirProfileUtil.setPractitionerRoleProfileMetaData(fhirProfileRegistry, practitionerRole);
 
                         //Validate
                         FhirOperationUtil.validateFhirResource(fhirValidator, practitionerRole, Optional.empty(), ResourceType.PractitionerRole.name(), "Create Practitioner Role");
@@ -475,6 +541,7 @@ public void createPractitioner(PractitionerDto practitionerDto, Optional<String>
                         //Create
                         MethodOutcome practitionerMethodOutcome = FhirOperationUtil.createFhirResource(fhirClient, practitionerRole, ResourceType.PractitionerRole.name());
                         idList.add(ResourceType.PractitionerRole.name() + "/" + FhirOperationUtil.getFhirId(practitionerMethodOutcome));
+                        organizationMembershipService.index(FhirOperationUtil.getFhirId(practitionerMethodOutcome), practitionerRole);
                     }
             );
 
@@ -502,7 +569,7 @@ public void updatePractitioner(String practitionerId, PractitionerDto practition
             existingPractitioner.setAddress(updatedPractitioner.getAddress());
 
             //Set Profile Meta Data
-            FhirProfileUtil.setPractitionerProfileMetaData(fhirClient, existingPractitioner);
+            FhirProfileUtil.setPractitionerProfileMetaData(fhirProfileRegistry, existingPractitioner);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, existingPractitioner, Optional.of(practitionerId), ResourceType.Practitioner.name(), "Update Practitioner");
@@ -510,6 +577,7 @@ public void updatePractitioner(String practitionerId, PractitionerDto practition
             //Update
             MethodOutcome methodOutcome = FhirOperationUtil.updateFhirResource(fhirClient, existingPractitioner, "Update Practitioner");
             idList.add(ResourceType.Practitioner.name() + "/" + FhirOperationUtil.getFhirId(methodOutcome));
+            identifierIndex.index(ResourceType.Practitioner, practitionerId.trim(), existingPractitioner.getIdentifier());
 
             //Assign fhir Practitioner resource id.
             Reference practitionerReference = new Reference();
@@ -534,7 +602,7 @@ public void updatePractitioner(String practitionerId, PractitionerDto practition
                         practitionerRole.setSpecialty(Collections.singletonList(specialtyCodeableConcept));
 
                         //Set Profile Meta Data
-                        FhirProfileUtil.setPractitionerRoleProfileMetaData(fhirClient, practitionerRole);
+                        FhirProfileUtil.setPractitionerRoleProfileMetaData(fhirProfileRegistry, practitionerRole);
 
                         if (practitionerRoleDto.getLogicalId() != null) {
                             practitionerRole.setId(practitionerRoleDto.getLogicalId());
@@ -544,6 +612,7 @@ public void updatePractitioner(String practitionerId, PractitionerDto practition
                             //Update
                             MethodOutcome practitionerRoleMethodOutcome = FhirOperationUtil.updateFhirResource(fhirClient, practitionerRole, "Update Practitioner Role");
                             idList.add(ResourceType.PractitionerRole.name() + "/" + FhirOperationUtil.getFhirId(practitionerRoleMethodOutcome));
+                            organizationMembershipService.index(FhirOperationUtil.getFhirId(practitionerRoleMethodOutcome), practitionerRole);
 
                         } else {
                             // Validate
@@ -552,6 +621,7 @@ public void updatePractitioner(String practitionerId, PractitionerDto practition
                             //Create
                             MethodOutcome practitionerRoleMethodOutcome = FhirOperationUtil.createFhirResource(fhirClient, practitionerRole, ResourceType.PractitionerRole.name());
                             idList.add(ResourceType.PractitionerRole.name() + "/" + FhirOperationUtil.getFhirId(practitionerRoleMethodOutcome));
+                            organizationMembershipService.index(FhirOperationUtil.getFhirId(practitionerRoleMethodOutcome), practitionerRole);
 
                         }
                     }
@@ -643,7 +713,7 @@ private List<String> practitionersFromOrg(String org) {
                 .sort().descending(PARAM_LASTUPDATED)
                 .returnBundle(Bundle.class)
                 .execute();
-        return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties)
+        return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor)
                 .stream().map(pr -> {
                     PractitionerRole practitionerRole = (PractitionerRole) pr.getResource();
                     return practitionerRole.getPractitioner().getReference().split("/")[1];
@@ -651,7 +721,7 @@ private List<String> practitionersFromOrg(String org) {
     }
 
     private List<PractitionerDto> convertAllBundleToSinglePractitionerDtoList(Bundle firstPageSearchBundle, int numberOfBundlePerPage) {
-        List<Bundle.BundleEntryComponent> bundleEntryComponents = FhirOperationUtil.getAllBundleComponentsAsList(firstPageSearchBundle, Optional.of(numberOfBundlePerPage), fhirClient, fisProperties);
+        List<Bundle.BundleEntryComponent> bundleEntryComponents = FhirOperationUtil.getAllBundleComponentsAsList(firstPageSearchBundle, Optional.of(numberOfBundlePerPage), fhirClient, fisProperties, fhirQueryExecutor);
         return bundleEntryComponents.stream().filter(pr -> pr.getResource().getResourceType().equals(ResourceType.Practitioner))
                 .map(prac -> this.covertEntryComponentToPractitioner(prac, bundleEntryComponents)).collect(toList());
     }
@@ -666,51 +736,14 @@ private PractitionerDto covertEntryComponentToPractitioner(Bundle.BundleEntryCom
     }
 
     private boolean hasDuplicateIdentifier(PractitionerDto practitionerDto) {
-        return practitionerDto.getIdentifiers().stream().anyMatch(identifierDto -> {
-            if (fhirClient.search()
-                    .forResource(Practitioner.class)
-                    .where(new TokenClientParam("identifier")
-                            .exactly().systemAndCode(identifierDto.getSystem(), identifierDto.getValue()))
-                    .returnBundle(Bundle.class).execute().getTotal() > 0) {
-                return true;
-            } else {
-                Bundle practitionerBundle = fhirClient.search().forResource(Practitioner.class).returnBundle(Bundle.class).execute();
-                return !FhirOperationUtil.getAllBundleComponentsAsList(practitionerBundle, Optional.empty(), fhirClient, fisProperties).stream().filter(practitioner -> {
-                    Practitioner p = (Practitioner) practitioner.getResource();
-                    return p.getIdentifier().stream().anyMatch(identifier -> identifier.getSystem().equalsIgnoreCase(identifierDto.getSystem()) && identifier.getValue().replaceAll(" ", "")
-                            .replaceAll("-", "").trim()
-                            .equalsIgnoreCase(identifierDto.getValue().replaceAll(" ", "").replaceAll("-", "").trim()));
-                }).collect(toList()).isEmpty();
-            }
-        });
+        return practitionerDto.getIdentifiers().stream().anyMatch(identifierDto ->
+                !identifierIndex.findIds(ResourceType.Practitioner, identifierDto.getSystem(), identifierDto.getValue()).isEmpty());
     }
 
     private boolean isDuplicateWhileUpdate(PractitionerDto practitionerDto) {
-        final Practitioner practitioner = fhirClient.read().resource(Practitioner.class).withId(practitionerDto.getLogicalId()).execute();
-
-        Bundle searchPractitioner = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(Practitioner.class).where(Practitioner.IDENTIFIER.exactly().systemAndIdentifier(practitionerDto.getIdentifiers().stream().findFirst().get().getSystem(), practitionerDto.getIdentifiers().stream().findFirst().get().getValue())))
-                .returnBundle(Bundle.class).execute();
-
-        if (!searchPractitioner.getEntry().isEmpty()) {
-            return !practitioner.getIdentifier().stream().anyMatch(identifier -> identifier.getSystem().equalsIgnoreCase(practitionerDto.getIdentifiers().stream().findFirst().get().getSystem())
-                    && identifier.getValue().equalsIgnoreCase(practitionerDto.getIdentifiers().stream().findFirst().get().getValue()));
-        } else {
-            Bundle praBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(Practitioner.class)).returnBundle(Bundle.class).execute();
-            List<Bundle.BundleEntryComponent> bundleEntryComponents = FhirOperationUtil.getAllBundleComponentsAsList(praBundle, Optional.empty(), fhirClient, fisProperties).stream().filter(pat -> {
-                Practitioner p = (Practitioner) pat.getResource();
-                return p.getIdentifier().stream().anyMatch(identifier -> identifier.getSystem().equalsIgnoreCase(practitionerDto.getIdentifiers().stream().findFirst().get().getSystem()) && identifier.getValue().replaceAll(" ", "")
-                        .replaceAll("-", "").trim()
-                        .equalsIgnoreCase(practitionerDto.getIdentifiers().stream().findFirst().get().getValue().replaceAll(" ", "").replaceAll("-", "").trim()));
-            }).collect(toList());
-            if (bundleEntryComponents.isEmpty()) {
-                return false;
-            } else {
-                return !bundleEntryComponents.stream().anyMatch(resource -> {
-                    Practitioner pRes = (Practitioner) resource.getResource();
-                    return pRes.getIdElement().getIdPart().equalsIgnoreCase(practitioner.getIdElement().getIdPart());
-                });
-            }
-        }
+        IdentifierDto identifierDto = practitionerDto.getIdentifiers().stream().findFirst().get();
+        return identifierIndex.findIds(ResourceType.Practitioner, identifierDto.getSystem(), identifierDto.getValue()).stream()
+                .anyMatch(id -> !id.equalsIgnoreCase(practitionerDto.getLogicalId()));
     }
 
     private List<String> practitionersInOrganization(String organization) {
@@ -0,0 +1,148 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.DomainResource;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves referenced resources (mostly to get their display names) with one _id search per resource type
+ * instead of one read per reference. Results are memoized for the current web request and kept in a short-lived
+ * shared cache, so resolved resources are shared and must not be modified by callers.
+ */
+@Service
+@Slf4j
+public class ReferenceResolver implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "cache.reference.";
+
+    private static final String REQUEST_MEMO_ATTRIBUTE = ReferenceResolver.class.getName() + ".MEMO";
+
+    private final IGenericClient fhirClient;
+
+    private final FisProperties fisProperties;
+
+    private final Cache<String, DomainResource> resources;
+
+    public ReferenceResolver(IGenericClient fhirClient, FisProperties fisProperties) {
+        this.fhirClient = fhirClient;
+        this.fisProperties = fisProperties;
+        FisProperties.Cache.Reference referenceCache = fisProperties.getCache().getReference();
+        this.resources = Caffeine.newBuilder()
+                .maximumSize(referenceCache.getMaximumSize())
+                .expireAfterWrite(referenceCache.getTtlInSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public <T extends DomainResource> Optional<T> resolve(Class<T> resourceType, String id) {
+        if (FhirOperationUtil.isStringNullOrEmpty(id)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(resolve(resourceType, Collections.singletonList(id)).get(id.trim()));
+    }
+
+    /**
+     * @return the found resources by their logical id, ids that do not exist on the FHIR server are left out
+     */
+    public <T extends DomainResource> Map<String, T> resolve(Class<T> resourceType, Collection<String> ids) {
+        String resourceName = resourceType.getSimpleName();
+        Map<String, DomainResource> requestMemo = getRequestMemo();
+        Map<String, T> resolved = new HashMap<>();
+        Set<String> unresolvedIds = new LinkedHashSet<>();
+
+        ids.stream()
+                .filter(FhirOperationUtil::isStringNotNullAndNotEmpty)
+                .map(String::trim)
+                .forEach(id -> {
+                    String key = resourceName + "/" + id;
+                    DomainResource resource = requestMemo.get(key);
+                    if (resource == null) {
+                        resource = resources.getIfPresent(key);
+                    }
+                    if (resource != null) {
+                        requestMemo.put(key, resource);
+                        resolved.put(id, resourceType.cast(resource));
+                    } else {
+                        unresolvedIds.add(id);
+                    }
+                });
+
+        List<String> idsToSearch = new ArrayList<>(unresolvedIds);
+        int maxIdsPerSearch = fisProperties.getFhir().getMaxIdsPerSearch();
+        for (int fromIndex = 0; fromIndex < idsToSearch.size(); fromIndex += maxIdsPerSearch) {
+            List<String> idChunk = idsToSearch.subList(fromIndex, Math.min(fromIndex + maxIdsPerSearch, idsToSearch.size()));
+            IQuery searchQuery = fhirClient.search().forResource(resourceType)
+                    .where(new TokenClientParam("_id").exactly().codes(idChunk))
+                    .count(idChunk.size());
+            Bundle bundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(searchQuery).returnBundle(Bundle.class).execute();
+
+            bundle.getEntry().stream()
+                    .map(Bundle.BundleEntryComponent::getResource)
+                    .filter(resourceType::isInstance)
+                    .map(resourceType::cast)
+                    .forEach(resource -> {
+                        String id = resource.getIdElement().getIdPart();
+                        String key = resourceName + "/" + id;
+                        resources.put(key, resource);
+                        requestMemo.put(key, resource);
+                        resolved.put(id, resource);
+                    });
+        }
+
+        if (resolved.size() < ids.size()) {
+            log.debug("Could not resolve all " + resourceName + " references, resolved " + resolved.size() + " of " + ids.size());
+        }
+        return resolved;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = resources.stats();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "size", resources.estimatedSize()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit", stats.hitCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "miss", stats.missCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit.ratio", stats.hitRate()));
+        return metrics;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, DomainResource> getRequestMemo() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes == null) {
+            //Not called while serving a request, e.g. from a scheduled task
+            return new HashMap<>();
+        }
+        Map<String, DomainResource> requestMemo = (Map<String, DomainResource>) requestAttributes.getAttribute(REQUEST_MEMO_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (requestMemo == null) {
+            requestMemo = new ConcurrentHashMap<>();
+            requestAttributes.setAttribute(REQUEST_MEMO_ATTRIBUTE, requestMemo, RequestAttributes.SCOPE_REQUEST);
+        }
+        return requestMemo;
+    }
+}
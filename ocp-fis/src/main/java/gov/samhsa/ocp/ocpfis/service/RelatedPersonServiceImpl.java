@@ -17,6 +17,7 @@
 import gov.samhsa.ocp.ocpfis.service.mapping.RelatedPersonToRelatedPersonDtoConverter;
 import gov.samhsa.ocp.ocpfis.service.mapping.dtotofhirmodel.RelatedPersonDtoToRelatedPersonConverter;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
@@ -26,6 +27,7 @@
 import org.hl7.fhir.dstu3.model.RelatedPerson;
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.text.ParseException;
@@ -43,18 +45,32 @@ public class RelatedPersonServiceImpl implements RelatedPersonService {
     private final FhirValidator fhirValidator;
     private final FisProperties fisProperties;
     private final ProvenanceUtil provenanceUtil;
+    private final FhirProfileRegistry fhirProfileRegistry;
+
+    private final AsyncTaskExecutor fhirQueryExecutor;
 
     @Autowired
-    public RelatedPersonServiceImpl(IGenericClient fhirClient, FhirValidator fhirValidator, FisProperties fisProperties, ProvenanceUtil provenanceUtil) {
+    public RelatedPersonServiceImpl(IGenericClient fhirClient, FhirValidator fhirValidator, FisProperties fisProperties, ProvenanceUtil provenanceUtil, FhirProfileRegistry fhirProfileRegistry, AsyncTaskExecutor fhirQueryExecutor) {
         this.fhirClient = fhirClient;
         this.fhirValidator = fhirValidator;
         this.fisProperties = fisProperties;
         this.provenanceUtil = provenanceUtil;
+        this.fhirProfileRegistry = fhirProfileRegistry;
+        this.fhirQueryExecutor = fhirQueryExecutor;
     }
 
     @Override
-    public PageDto<RelatedPersonDto> searchRelatedPersons(String patientId, Optional<String> searchKey, Optional<String> searchValue, Optional<Boolean> showInactive, Optional<Integer> pageNumber, Optional<Integer> pageSize, Optional<Boolean> showAll) {
+    public PageDto<RelatedPersonDto> searchRelatedPersons(String patientId, Optional<String> searchKey, Optional<String> searchValue, Optional<Boolean> showInactive, Optional<Integer> page, Optional<Integer> pageSize, Optional<Boolean> showAll, Optional<String> cursor) {
         int numberPerPage = PaginationUtil.getValidPageSize(fisProperties, pageSize, ResourceType.RelatedPerson.name());
+        String searchParametersHash = PaginationUtil.getSearchParametersHash(patientId, searchKey, searchValue, showInactive, numberPerPage);
+        Optional<Integer> pageNumber = PaginationUtil.getPageNumber(cursor, searchParametersHash, page, numberPerPage);
+
+        if (!showAll.isPresent() || !showAll.get()) {
+            Optional<Bundle> cursorBundle = PaginationUtil.getSearchBundleByCursor(fhirClient, fisProperties, cursor, searchParametersHash, numberPerPage);
+            if (cursorBundle.isPresent()) {
+                return relatedPersonsInPage(cursorBundle.get(), numberPerPage, pageNumber, searchParametersHash);
+            }
+        }
 
         IQuery relatedPersonIQuery = fhirClient.search().forResource(RelatedPerson.class).where(new ReferenceClientParam("patient").hasId("Patient/" + patientId));
 
@@ -72,7 +88,6 @@ public PageDto<RelatedPersonDto> searchRelatedPersons(String patientId, Optional
 
         Bundle firstPageBundle;
         Bundle otherPageBundle;
-        boolean firstPage = true;
 
         firstPageBundle = (Bundle) relatedPersonIQuery.count(numberPerPage).returnBundle(Bundle.class).execute();
 
@@ -89,19 +104,21 @@ public PageDto<RelatedPersonDto> searchRelatedPersons(String patientId, Optional
         otherPageBundle = firstPageBundle;
 
         if (pageNumber.isPresent() && pageNumber.get() > 1) {
-            firstPage = false;
-
             otherPageBundle = PaginationUtil.getSearchBundleAfterFirstPage(fhirClient, fisProperties, firstPageBundle, pageNumber.get(), numberPerPage);
         }
 
-        List<Bundle.BundleEntryComponent> relatedPersons = otherPageBundle.getEntry();
+        return relatedPersonsInPage(otherPageBundle, numberPerPage, pageNumber, searchParametersHash);
+    }
 
-        List<RelatedPersonDto> relatedPersonList = relatedPersons.stream().map(this::convertToRelatedPerson).collect(toList());
+    private PageDto<RelatedPersonDto> relatedPersonsInPage(Bundle relatedPersonBundle, int numberPerPage, Optional<Integer> pageNumber, String searchParametersHash) {
+        List<RelatedPersonDto> relatedPersonList = relatedPersonBundle.getEntry().stream().map(this::convertToRelatedPerson).collect(toList());
 
-        double totalPages = Math.ceil((double) otherPageBundle.getTotal() / numberPerPage);
-        int currentPage = firstPage ? 1 : pageNumber.get();
+        double totalPages = Math.ceil((double) relatedPersonBundle.getTotal() / numberPerPage);
+        int currentPage = PaginationUtil.isFirstPage(pageNumber) ? 1 : pageNumber.get();
 
-        return new PageDto<>(relatedPersonList, numberPerPage, totalPages, currentPage, relatedPersonList.size(), otherPageBundle.getTotal());
+        PageDto<RelatedPersonDto> pageDto = new PageDto<>(relatedPersonList, numberPerPage, totalPages, currentPage, relatedPersonList.size(), relatedPersonBundle.getTotal());
+        pageDto.setNextCursor(PaginationUtil.getNextCursor(fisProperties, relatedPersonBundle, searchParametersHash));
+        return pageDto;
     }
 
     @Override
@@ -130,7 +147,7 @@ public void createRelatedPerson(RelatedPersonDto relatedPersonDto, Optional<Stri
             final RelatedPerson relatedPerson = RelatedPersonDtoToRelatedPersonConverter.map(relatedPersonDto);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setRelatedPersonProfileMetaData(fhirClient, relatedPerson);
+            FhirProfileUtil.setRelatedPersonProfileMetaData(fhirProfileRegistry, relatedPerson);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, relatedPerson, Optional.empty(), ResourceType.RelatedPerson.name(), "Create RelatedPerson");
@@ -159,7 +176,7 @@ public void updateRelatedPerson(String relatedPersonId, RelatedPersonDto related
             final RelatedPerson relatedPerson = RelatedPersonDtoToRelatedPersonConverter.map(relatedPersonDto);
 
             //Set Profile Meta Data
-            FhirProfileUtil.setRelatedPersonProfileMetaData(fhirClient, relatedPerson);
+            FhirProfileUtil.setRelatedPersonProfileMetaData(fhirProfileRegistry, relatedPerson);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, relatedPerson, Optional.of(relatedPersonId), ResourceType.RelatedPerson.name(), "Update RelatedPerson");
@@ -195,7 +212,7 @@ private void checkForDuplicates(RelatedPersonDto relatedPersonDto, String patien
                     .returnBundle(Bundle.class)
                     .execute();
 
-            if (!FhirOperationUtil.getAllBundleComponentsAsList(rPBundle, Optional.empty(), fhirClient, fisProperties).stream().filter(relatedP -> {
+            if (!FhirOperationUtil.getAllBundleComponentsAsList(rPBundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor).stream().filter(relatedP -> {
                 RelatedPerson rp = (RelatedPerson) relatedP.getResource();
                 return rp.getIdentifier().stream().anyMatch(identifier -> identifier.getSystem().equalsIgnoreCase(relatedPersonDto.getIdentifierType()) && identifier.getValue().replaceAll(" ", "")
                         .replaceAll("-", "").trim()
@@ -211,7 +228,7 @@ private RelatedPersonDto convertToRelatedPerson(Bundle.BundleEntryComponent bund
     }
 
     private List<RelatedPersonDto> convertAllBundleToSingleRelatedPersonDtoList(Bundle firstPageSearchBundle, int numberOBundlePerPage) {
-        return FhirOperationUtil.getAllBundleComponentsAsList(firstPageSearchBundle, Optional.of(numberOBundlePerPage), fhirClient, fisProperties)
+        return FhirOperationUtil.getAllBundleComponentsAsList(firstPageSearchBundle, Optional.of(numberOBundlePerPage), fhirClient, fisProperties, fhirQueryExecutor)
                 .stream().map(this::convertToRelatedPerson)
                 .collect(toList());
     }
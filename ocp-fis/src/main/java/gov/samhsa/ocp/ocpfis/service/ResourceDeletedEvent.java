@@ -0,0 +1,20 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import lombok.Value;
+import org.hl7.fhir.dstu3.model.ResourceType;
+
+/**
+ * Published after a resource was deleted from the FHIR server, so indexes and caches drop it at once instead of
+ * waiting for their next refresh.
+ */
+@Value
+public class ResourceDeletedEvent {
+
+    private final String resourceType;
+
+    private final String id;
+
+    public boolean isOf(ResourceType type) {
+        return type.name().equalsIgnoreCase(resourceType);
+    }
+}
@@ -4,6 +4,7 @@
 import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -13,9 +14,12 @@ public class ResourceServiceImpl implements ResourceService {
     @Autowired
     private IGenericClient fhirClient;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Override
     public void deleteResource(String resource, String id) {
         fhirClient.delete().resourceConditionalByType(resource).where(new TokenClientParam("_id").exactly().code(id)).execute();
-
+        eventPublisher.publishEvent(new ResourceDeletedEvent(resource, id));
     }
 }
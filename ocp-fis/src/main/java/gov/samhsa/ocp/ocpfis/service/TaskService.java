@@ -9,9 +9,12 @@
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface TaskService {
 
+    Stream<TaskDto> exportTasks(Optional<List<String>> statusList, Optional<String> patient, Optional<String> organization);
+
     PageDto<TaskDto> getTasks(Optional<List<String>> statusList, String searchKey, String searchValue, Optional<Integer> pageNumber, Optional<Integer> pageSize);
 
     List<TaskDto> getMainAndSubTasks(Optional<String> practitioner,
@@ -2,6 +2,8 @@
 
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.DateClientParam;
+import ca.uhn.fhir.rest.gclient.ICriterion;
 import ca.uhn.fhir.rest.gclient.IQuery;
 import ca.uhn.fhir.rest.gclient.ReferenceClientParam;
 import ca.uhn.fhir.rest.gclient.StringClientParam;
@@ -11,10 +13,10 @@
 import gov.samhsa.ocp.ocpfis.constants.ActivityDefinitionConstants;
 import gov.samhsa.ocp.ocpfis.domain.DateRangeEnum;
 import gov.samhsa.ocp.ocpfis.domain.ProvenanceActivityEnum;
+import gov.samhsa.ocp.ocpfis.domain.SearchKeyEnum;
 import gov.samhsa.ocp.ocpfis.domain.TaskDueEnum;
 import gov.samhsa.ocp.ocpfis.service.dto.ActivityDefinitionDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
-import gov.samhsa.ocp.ocpfis.service.dto.PatientDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PeriodDto;
 import gov.samhsa.ocp.ocpfis.service.dto.ReferenceDto;
 import gov.samhsa.ocp.ocpfis.service.dto.TaskDto;
@@ -26,6 +28,7 @@
 import gov.samhsa.ocp.ocpfis.util.DateUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirDtoUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.FhirProfileUtil;
 import gov.samhsa.ocp.ocpfis.util.FhirResourceUtil;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
@@ -33,61 +36,89 @@
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.dstu3.model.ActivityDefinition;
 import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Patient;
 import org.hl7.fhir.dstu3.model.Reference;
 import org.hl7.fhir.dstu3.model.ResourceType;
 import org.hl7.fhir.dstu3.model.Task;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.StringJoiner;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static ca.uhn.fhir.rest.api.Constants.PARAM_LASTUPDATED;
-import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 @Service
 @Slf4j
 public class TaskServiceImpl implements TaskService {
 
+    //Keeps the patient id list of a Task search well below common URL length limits
+    private static final int MAX_PATIENT_ID_PARAMETER_LENGTH = 1500;
+
+    private static final Comparator<TaskDto> BY_END_DATE = Comparator.comparing(
+            (TaskDto taskDto) -> taskDto.getExecutionPeriod() != null ? taskDto.getExecutionPeriod().getEnd() : null,
+            Comparator.nullsLast(Comparator.naturalOrder()));
+
     private final IGenericClient fhirClient;
     private final FhirValidator fhirValidator;
     private final LookUpService lookUpService;
     private final FisProperties fisProperties;
     private final ActivityDefinitionService activityDefinitionService;
-    private final PatientService patientService;
     private final Map<Task.TaskStatus, List<Task.TaskStatus>> taskStatuses;
     private final List<String> finalStatuses;
     private final List<ValueSetDto> taskPerformerTypes;
     private final ProvenanceUtil provenanceUtil;
+    private final TaskTreeLoader taskTreeLoader;
+    private final OrganizationMembershipService organizationMembershipService;
+    private final FhirProfileRegistry fhirProfileRegistry;
+    private final ReferenceResolver referenceResolver;
+
+    private final AsyncTaskExecutor fhirQueryExecutor;
 
     @Autowired
     public TaskServiceImpl(IGenericClient fhirClient,
                            FhirValidator fhirValidator, LookUpService lookUpService,
                            FisProperties fisProperties,
                            ActivityDefinitionService activityDefinitionService,
-                           PatientService patientService,
-                           ProvenanceUtil provenanceUtil) {
+                           ProvenanceUtil provenanceUtil,
+                           TaskTreeLoader taskTreeLoader,
+                           OrganizationMembershipService organizationMembershipService,
+                           FhirProfileRegistry fhirProfileRegistry,
+                           ReferenceResolver referenceResolver,
+                           AsyncTaskExecutor fhirQueryExecutor) {
         this.fhirClient = fhirClient;
         this.fhirValidator = fhirValidator;
         this.lookUpService = lookUpService;
         this.fisProperties = fisProperties;
         this.activityDefinitionService = activityDefinitionService;
-        this.patientService = patientService;
         this.taskStatuses = populateTaskStatuses();
         this.finalStatuses = Arrays.asList(Task.TaskStatus.COMPLETED.toCode(), Task.TaskStatus.FAILED.toCode(), Task.TaskStatus.CANCELLED.toCode());
         this.taskPerformerTypes = lookUpService.getTaskPerformerType();
         this.provenanceUtil = provenanceUtil;
+        this.taskTreeLoader = taskTreeLoader;
+        this.organizationMembershipService = organizationMembershipService;
+        this.fhirProfileRegistry = fhirProfileRegistry;
+        this.referenceResolver = referenceResolver;
+        this.fhirQueryExecutor = fhirQueryExecutor;
     }
 
     @Override
@@ -137,14 +168,18 @@ public PageDto<TaskDto> getTasks(Optional<List<String>> statusList, String searc
             otherPageTaskBundle = PaginationUtil.getSearchBundleAfterFirstPage(fhirClient, fisProperties, firstPageTaskBundle, pageNumber.get(), numberOfTasksPerPage);
         }
 
-        List<Bundle.BundleEntryComponent> retrievedTasks = otherPageTaskBundle.getEntry();
+        List<Task> retrievedTasks = otherPageTaskBundle.getEntry().stream()
+                .filter(retrivedBundle -> retrivedBundle.getResource().getResourceType().equals(ResourceType.Task))
+                .map(retrievedTask -> (Task) retrievedTask.getResource())
+                .collect(toList());
+
+        //Sub tasks of the whole page are fetched together
+        Map<String, List<Task>> subTasksByParentId = taskTreeLoader.getSubTasks(retrievedTasks.stream().map(task -> task.getIdElement().getIdPart()).collect(toList()));
 
         List<TaskDto> taskDtos = retrievedTasks.stream()
-                .filter(retrivedBundle -> retrivedBundle.getResource().getResourceType().equals(ResourceType.Task))
-                .map(retrievedTask -> {
-                    Task task = (Task) retrievedTask.getResource();
+                .map(task -> {
                     TaskDto taskDto = TaskToTaskDtoMap.map(task, taskPerformerTypes);
-                    setRollupNumbers(taskDto);
+                    setRollupNumbers(taskDto, subTasksByParentId.getOrDefault(taskDto.getLogicalId(), Collections.emptyList()));
                     return taskDto;
                 }).collect(toList());
 
@@ -154,6 +189,40 @@ public PageDto<TaskDto> getTasks(Optional<List<String>> statusList, String searc
         return new PageDto<>(taskDtos, numberOfTasksPerPage, totalPages, currentPage, taskDtos.size(), otherPageTaskBundle.getTotal());
     }
 
+    @Override
+    public Stream<TaskDto> exportTasks(Optional<List<String>> statusList, Optional<String> patient, Optional<String> organization) {
+        IQuery iQuery = fhirClient.search().forResource(Task.class);
+
+        patient.ifPresent(p -> iQuery.where(new ReferenceClientParam("patient").hasId("Patient/" + p)));
+        organization.ifPresent(org -> iQuery.where(new ReferenceClientParam("organization").hasId("Organization/" + org)));
+
+        if (statusList.isPresent() && !statusList.get().isEmpty()) {
+            iQuery.where(new TokenClientParam("status").exactly().codes(statusList.get()));
+        }
+
+        Bundle firstPageTaskBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(FhirOperationUtil.setLastUpdatedTimeSortOrder(iQuery, true))
+                .count(fisProperties.getResourceSinglePageLimit())
+                .returnBundle(Bundle.class)
+                .execute();
+
+        return FhirOperationUtil.streamAllBundlePages(firstPageTaskBundle, Optional.of(fisProperties.getResourceSinglePageLimit()), fhirClient, fisProperties, fhirQueryExecutor)
+                .flatMap(taskBundle -> {
+                    List<Task> tasks = taskBundle.getEntry().stream()
+                            .filter(entry -> entry.getResource().getResourceType().equals(ResourceType.Task))
+                            .map(entry -> (Task) entry.getResource())
+                            .collect(toList());
+
+                    //Sub tasks are fetched once per page for the rollup numbers
+                    Map<String, List<Task>> subTasksByParentId = taskTreeLoader.getSubTasks(tasks.stream().map(task -> task.getIdElement().getIdPart()).collect(toList()));
+
+                    return tasks.stream().map(task -> {
+                        TaskDto taskDto = TaskToTaskDtoMap.map(task, taskPerformerTypes);
+                        setRollupNumbers(taskDto, subTasksByParentId.getOrDefault(taskDto.getLogicalId(), Collections.emptyList()));
+                        return taskDto;
+                    });
+                });
+    }
+
     @Override
     public List<TaskDto> getMainAndSubTasks(Optional<String> practitioner,
                                             Optional<String> patient,
@@ -169,21 +238,15 @@ public List<TaskDto> getMainAndSubTasks(Optional<String> practitioner,
         IQuery ownerIQuery = getTasksIQuery(practitioner, organization, patient, partOf, "owner");
         IQuery requesterIQuery = getTasksIQuery(practitioner, organization, patient, partOf, "requester");
 
-        // Fetch Tasks and Map to TaskDtos if available
-        List<TaskDto> taskList = getTaskDtos(ownerIQuery);
-
-        List<TaskDto> taskListForRequester = getTaskDtos(requesterIQuery);
-        taskList.addAll(taskListForRequester);
-
-        //Add sub task
-        taskList.addAll(getSubTasks(taskList));
+        // Fetch the owned and requested tasks together with their sub tasks and main tasks
+        TaskTreeLoader.TaskTree taskTree = taskTreeLoader.load(Arrays.asList(ownerIQuery, requesterIQuery));
 
-        //Add main task
-        if (!getMainTaskIds(taskList).isEmpty()) {
-            taskList.addAll(getTaskDtos(fhirClient.search().forResource(Task.class).where(new TokenClientParam("_id").exactly().codes(getMainTaskIds(taskList)))));
-        }
-
-        List<TaskDto> taskDtos = taskList.stream().distinct().collect(toList());
+        List<TaskDto> taskDtos = taskTree.getRootsWithParentsAndSubTasks().stream()
+                .map(task -> {
+                    TaskDto taskDto = TaskToTaskDtoMap.map(task, taskPerformerTypes);
+                    setRollupNumbers(taskDto, taskTree.getSubTasks(taskDto.getLogicalId()));
+                    return taskDto;
+                }).collect(toList());
 
         //Apply Filters Based on Input Variables
         taskDtos = getTaskDtosBasedOnFilters(definition, partOf, isUpcomingTasks, taskDtos, filterDate, statusList);
@@ -216,7 +279,7 @@ public void createTask(TaskDto taskDto, Optional<String> loggedInUser) throws FH
             task.setAuthoredOn(java.sql.Date.valueOf(LocalDate.now()));
 
             //Set Profile Meta Data
-            FhirProfileUtil.setTaskProfileMetaData(fhirClient, task);
+            FhirProfileUtil.setTaskProfileMetaData(fhirProfileRegistry, task);
 
             //Validate
             FhirOperationUtil.validateFhirResource(fhirValidator, task, Optional.empty(), ResourceType.Task.name(), "Create Task");
@@ -260,7 +323,7 @@ public void updateTask(String taskId, TaskDto taskDto, Optional<String> loggedIn
         task.setAuthoredOn(existingTask.getAuthoredOn());
 
         //Set Profile Meta Data
-        FhirProfileUtil.setTaskProfileMetaData(fhirClient, task);
+        FhirProfileUtil.setTaskProfileMetaData(fhirProfileRegistry, task);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, task, Optional.of(taskId), ResourceType.Task.name(), "Update Task");
@@ -289,7 +352,7 @@ public void deactivateTask(String taskId) {
         Task task = fhirClient.read().resource(Task.class).withId(taskId.trim()).execute();
         task.setStatus(Task.TaskStatus.CANCELLED);
         //Set Profile Meta Data
-        FhirProfileUtil.setTaskProfileMetaData(fhirClient, task);
+        FhirProfileUtil.setTaskProfileMetaData(fhirProfileRegistry, task);
 
         //Validate
         FhirOperationUtil.validateFhirResource(fhirValidator, task, Optional.of(taskId), ResourceType.Task.name(), "Deactivate Task");
@@ -398,7 +461,7 @@ public List<ReferenceDto> getRelatedTasks(String patient, Optional<String> defin
             //If TO_DO definition type and TO_DO task is not present.
             if (definition.get().equalsIgnoreCase(ActivityDefinitionConstants.TO_DO) && taskReferenceList.isEmpty() && practitioner.isPresent() && organization.isPresent()) {
                 //Creating To-Do Task
-                Task task = FhirResourceUtil.createToDoTask(patient, practitioner.get(), organization.get(), fhirClient, fisProperties);
+                Task task = FhirResourceUtil.createToDoTask(new Reference("Patient/" + patient), practitioner.get(), organization.get(), fhirClient, fisProperties);
 
                 IQuery activityDefinitionQuery = fhirClient.search().forResource(ActivityDefinition.class)
                         .where(new StringClientParam("publisher").matches().value("Organization/" + organization.get()))
@@ -453,33 +516,95 @@ private boolean isValidTaskStatus(TaskDto newTaskDto) throws FHIRException {
     }
 
     private List<TaskDto> getUpcomingTasksByPractitioner(String practitioner, Optional<String> searchKey, Optional<String> searchValue) {
-        List<PatientDto> patients = patientService.getPatientsByPractitioner(Optional.ofNullable(practitioner), Optional.empty(), Optional.empty());
-
-        List<TaskDto> allTasks = patients.stream()
-                .flatMap(it -> getTasksByPatient(it.getId()).stream())
-                .distinct()
-                .collect(toList());
-
-        Map<String, List<TaskDto>> tasksGroupedByPatient = allTasks.stream().collect(groupingBy(x -> x.getBeneficiary().getReference()));
+        Set<String> patientIds = getPatientIdsBySearchKey(organizationMembershipService.getCareTeamPatientIds(Collections.singletonList(practitioner)), searchKey, searchValue);
+        Date periodLowerBound = java.sql.Date.valueOf(LocalDate.now().minusDays(fisProperties.getTask().getUpcomingLookbackInDays()));
+
+        //Tasks of each patient, earliest due date first and tasks without due date last
+        Map<String, PriorityQueue<TaskDto>> tasksByPatient = new HashMap<>();
+        Set<String> taskIds = new HashSet<>();
+
+        for (List<String> patientIdChunk : chunkByParameterLength(patientIds)) {
+            //Tasks due within the lookback and tasks without execution period, which a period search does not match
+            Stream.of(new DateClientParam("period").afterOrEquals().day(periodLowerBound), new DateClientParam("period").isMissing(true))
+                    .flatMap(periodCriterion -> getTasksOfPatients(patientIdChunk, periodCriterion).stream())
+                    .filter(task -> taskIds.add(task.getIdElement().getIdPart()))
+                    .map(task -> TaskToTaskDtoMap.map(task, taskPerformerTypes))
+                    .filter(taskDto -> taskDto.getBeneficiary() != null && taskDto.getBeneficiary().getReference() != null)
+                    .forEach(taskDto -> tasksByPatient.computeIfAbsent(taskDto.getBeneficiary().getReference(), patient -> new PriorityQueue<>(BY_END_DATE)).add(taskDto));
+        }
 
         List<TaskDto> finalList = new ArrayList<>();
 
-        for (Map.Entry<String, List<TaskDto>> entry : tasksGroupedByPatient.entrySet()) {
-            List<TaskDto> filtered = entry.getValue();
-            Collections.sort(filtered);
+        for (PriorityQueue<TaskDto> patientTasks : tasksByPatient.values()) {
+            TaskDto upcomingTask = patientTasks.poll();
+            finalList.add(upcomingTask);
 
-            if (!filtered.isEmpty()) {
-                TaskDto upcomingTask = filtered.get(0);
-                finalList.add(upcomingTask);
-
-                filtered.stream().skip(1).filter(task -> endDateAvailable(upcomingTask) && upcomingTask.getExecutionPeriod().getEnd().equals(task.getExecutionPeriod().getEnd())).forEach(finalList::add);
+            //Other tasks due on the same day
+            while (endDateAvailable(upcomingTask) && !patientTasks.isEmpty() && endDateAvailable(patientTasks.peek())
+                    && upcomingTask.getExecutionPeriod().getEnd().equals(patientTasks.peek().getExecutionPeriod().getEnd())) {
+                finalList.add(patientTasks.poll());
             }
         }
 
-        Collections.sort(finalList);
+        //TaskDto considers tasks without due date equal to any other task, which does not keep them last
+        finalList.sort(BY_END_DATE);
         return finalList;
     }
 
+    private List<Task> getTasksOfPatients(List<String> patientIds, ICriterion<?> periodCriterion) {
+        IQuery taskQuery = fhirClient.search().forResource(Task.class)
+                .where(new ReferenceClientParam("patient").hasAnyOfIds(patientIds))
+                .where(periodCriterion);
+        Bundle taskBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(taskQuery)
+                .count(fisProperties.getResourceSinglePageLimit())
+                .returnBundle(Bundle.class)
+                .execute();
+
+        return FhirOperationUtil.getAllBundleComponentsAsList(taskBundle, Optional.of(fisProperties.getResourceSinglePageLimit()), fhirClient, fisProperties, fhirQueryExecutor).stream()
+                .filter(entry -> entry.getResource().getResourceType().equals(ResourceType.Task))
+                .map(entry -> (Task) entry.getResource())
+                .collect(toList());
+    }
+
+    private Set<String> getPatientIdsBySearchKey(Set<String> patientIds, Optional<String> searchKey, Optional<String> searchValue) {
+        if (!searchKey.isPresent() || !searchValue.isPresent()) {
+            return patientIds;
+        }
+        return referenceResolver.resolve(Patient.class, patientIds).values().stream()
+                .filter(patient -> filterBySearchKey(patient, searchKey.get(), searchValue.get()))
+                .map(patient -> patient.getIdElement().getIdPart())
+                .collect(toSet());
+    }
+
+    private boolean filterBySearchKey(Patient patient, String searchKey, String searchValue) {
+        if (searchKey.equalsIgnoreCase(SearchKeyEnum.CommonSearchKey.NAME.name())) {
+            return FhirResourceUtil.checkPatientName(patient, searchValue);
+        } else if (searchKey.equalsIgnoreCase(SearchKeyEnum.CommonSearchKey.IDENTIFIER.name())) {
+            return FhirResourceUtil.checkPatientId(patient, searchValue);
+        }
+        //Unknown search keys do not filter, as in the patient search
+        return true;
+    }
+
+    private List<List<String>> chunkByParameterLength(Collection<String> ids) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        int chunkLength = 0;
+        for (String id : ids) {
+            if (!chunk.isEmpty() && chunkLength + id.length() + 1 > MAX_PATIENT_ID_PARAMETER_LENGTH) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                chunkLength = 0;
+            }
+            chunk.add(id);
+            chunkLength += id.length() + 1;
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
     private boolean endDateAvailable(TaskDto dto) {
         return dto.getExecutionPeriod() != null && dto.getExecutionPeriod().getEnd() != null;
     }
@@ -506,29 +631,6 @@ private void retrieveActivityDefinitionDuration(TaskDto taskDto) {
     }
 
 
-    private List<TaskDto> getTasksByPatient(String patient) {
-        List<TaskDto> tasks = new ArrayList<>();
-
-        List<Bundle.BundleEntryComponent> bundleEntry = getBundleForPatient(patient);
-
-        if (bundleEntry != null && !bundleEntry.isEmpty()) {
-
-            tasks = bundleEntry.stream()
-                    .map(it -> (Task) it.getResource())
-                    .map(it -> TaskToTaskDtoMap.map(it, taskPerformerTypes))
-                    .collect(toList());
-        }
-
-        return tasks;
-    }
-
-    private List<Bundle.BundleEntryComponent> getBundleForPatient(String patient) {
-        Bundle bundle = fhirClient.search().forResource(Task.class)
-                .where(new ReferenceClientParam("patient").hasId(ResourceType.Patient + "/" + patient))
-                .returnBundle(Bundle.class).execute();
-        return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties);
-    }
-
     private List<Bundle.BundleEntryComponent> getBundleForRelatedTask(String patient, Optional<String> organization) {
         IQuery taskQuery = fhirClient.search().forResource(Task.class)
                 .where(new ReferenceClientParam("patient").hasId(patient));
@@ -539,7 +641,7 @@ private List<Bundle.BundleEntryComponent> getBundleForRelatedTask(String patient
         Bundle bundle = (Bundle) taskQueryNoCache
                 .returnBundle(Bundle.class)
                 .execute();
-        return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties);
+        return FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties, fhirQueryExecutor);
     }
 
     private boolean isDuplicate(TaskDto taskDto) {
@@ -693,50 +795,6 @@ private IQuery getTasksIQuery(Optional<String> practitionerId, Optional<String>
         return iQueryNoCache;
     }
 
-    private List<String> getMainTaskIds(List<TaskDto> taskDtos) {
-        return taskDtos.stream().filter(taskDto -> (taskDto.getPartOf() != null))
-                .filter(taskDto -> taskDto.getPartOf().getReference() != null)
-                .map(taskDto -> taskDto.getPartOf().getReference().split("/")[1])
-                .distinct()
-                .collect(toList());
-    }
-
-    private List<TaskDto> getSubTasks(List<TaskDto> taskDtos) {
-        List<TaskDto> taskDtoList = new ArrayList<>();
-        if (!getTaskReferences(taskDtos).isEmpty()) {
-            IQuery iQuery = fhirClient.search().forResource(Task.class)
-                    .where(new ReferenceClientParam("part-of").hasAnyOfIds(getTaskReferences(taskDtos)));
-            taskDtoList = getTaskDtos(iQuery);
-        }
-        return taskDtoList;
-    }
-
-    private List<String> getTaskReferences(List<TaskDto> taskDtos) {
-        return taskDtos.stream().map(TaskDto::getLogicalId).collect(toList());
-    }
-
-    private List<TaskDto> getTaskDtos(IQuery iQuery) {
-        Bundle firstPageTaskBundle = (Bundle) iQuery
-                .returnBundle(Bundle.class)
-                .execute();
-
-        if (firstPageTaskBundle == null || firstPageTaskBundle.getEntry().isEmpty()) {
-            log.info("No Tasks were found in the FHIR server.");
-            return new ArrayList<>();
-        }
-
-        List<Bundle.BundleEntryComponent> retrievedTasks = FhirOperationUtil.getAllBundleComponentsAsList(firstPageTaskBundle, Optional.empty(), fhirClient, fisProperties);
-
-        return retrievedTasks.stream()
-                .filter(retrievedBundle -> retrievedBundle.getResource().getResourceType().equals(ResourceType.Task))
-                .map(retrievedTask -> {
-                    Task task = (Task) retrievedTask.getResource();
-                    TaskDto taskDto = TaskToTaskDtoMap.map(task, taskPerformerTypes);
-                    setRollupNumbers(taskDto);
-                    return taskDto;
-                }).collect(toList());
-    }
-
     private TaskDto getToDoTaskDto(Optional<String> practitioner, Optional<String> patient, Optional<String> organization, Optional<String> definition) {
         List<ReferenceDto> referenceDtos = getRelatedTasks(patient.get(), definition, practitioner, organization);
 
@@ -795,47 +853,16 @@ private boolean subTasksInFinalStatus(List<TaskDto> subtasks) {
         return subtasks.stream().map(it -> it.getStatus().getCode()).anyMatch(status -> finalStatuses.contains(status));
     }
 
-    private int getRemainingSubtasks(List<TaskDto> subtasks) {
-        int counter = 0;
-        for (TaskDto taskDto : subtasks) {
-            if (!finalStatuses.contains(taskDto.getStatus().getCode())) {
-                counter++;
-            }
-        }
-        return counter;
-    }
-
     private void setRollupNumbers(TaskDto parentTaskDto) {
-        List<TaskDto> subtasks = getSubTasks(parentTaskDto);
-
-        if (subtasks == null || subtasks.isEmpty()) {
-            parentTaskDto.setTotalSubtasks(0);
-            parentTaskDto.setRemainingSubtasks(0);
-        }
-
-        parentTaskDto.setTotalSubtasks(subtasks.size());
-        parentTaskDto.setRemainingSubtasks(getRemainingSubtasks(subtasks));
+        setRollupNumbers(parentTaskDto, taskTreeLoader.getSubTasks(Collections.singletonList(parentTaskDto.getLogicalId()))
+                .getOrDefault(parentTaskDto.getLogicalId(), Collections.emptyList()));
     }
 
-    private List<TaskDto> getSubTasks(TaskDto parentTaskDto) {
-        List<TaskDto> subTasksList = new ArrayList<>();
-
-        IQuery iQuery = fhirClient.search().forResource(Task.class)
-                .where(new ReferenceClientParam("part-of").hasAnyOfIds(Arrays.asList(parentTaskDto.getLogicalId())));
-        Bundle bundle = (Bundle) iQuery.returnBundle(Bundle.class).execute();
-
-        if (bundle != null) {
-            List<Bundle.BundleEntryComponent> components = FhirOperationUtil.getAllBundleComponentsAsList(bundle, Optional.empty(), fhirClient, fisProperties);
-
-            if (components != null) {
-                subTasksList = components.stream()
-                        .map(it -> (Task) it.getResource())
-                        .map(it -> TaskToTaskDtoMap.map(it, taskPerformerTypes))
-                        .collect(toList());
-            }
-        }
-
-        return subTasksList;
+    private void setRollupNumbers(TaskDto parentTaskDto, List<Task> subtasks) {
+        parentTaskDto.setTotalSubtasks(subtasks.size());
+        parentTaskDto.setRemainingSubtasks((int) subtasks.stream()
+                .filter(subtask -> !subtask.hasStatus() || !finalStatuses.contains(subtask.getStatus().toCode()))
+                .count());
     }
 
 }
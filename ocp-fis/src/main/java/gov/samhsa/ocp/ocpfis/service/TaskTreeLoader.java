@@ -0,0 +1,272 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.ICriterion;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.ReferenceClientParam;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.service.exception.FHIRClientException;
+import gov.samhsa.ocp.ocpfis.util.FhirCallTracker;
+import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.OperationOutcome;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.hl7.fhir.dstu3.model.Task;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Loads tasks together with their parent tasks and sub tasks. Each root query pulls the whole task tree with
+ * _include:iterate and _revinclude:iterate on Task:part-of, the root queries run concurrently on the shared FHIR query
+ * executor and the tree is linked in memory, so sub task rollups need no further FHIR calls. When the FHIR server
+ * truncated the included tasks, the tree is loaded again level by level with explicit part-of and _id searches.
+ */
+@Service
+@Slf4j
+public class TaskTreeLoader {
+
+    private final IGenericClient fhirClient;
+
+    private final FisProperties fisProperties;
+
+    private final AsyncTaskExecutor fhirQueryExecutor;
+
+    public TaskTreeLoader(IGenericClient fhirClient, FisProperties fisProperties, AsyncTaskExecutor fhirQueryExecutor) {
+        this.fhirClient = fhirClient;
+        this.fisProperties = fisProperties;
+        this.fhirQueryExecutor = fhirQueryExecutor;
+    }
+
+    /**
+     * Runs the root queries concurrently, the tasks they match are the roots of the returned tree.
+     */
+    public TaskTree load(List<IQuery> rootQueries) {
+        //Only the first pages are searched on the pool, further pages are fetched from this thread, so no pooled query
+        //waits for a page fetch queued behind it
+        List<Future<Bundle>> otherResults = rootQueries.stream()
+                .skip(1)
+                .map(rootQuery -> fhirQueryExecutor.submit(FhirCallTracker.propagate(() -> searchWithParentsAndSubTasks(rootQuery))))
+                .collect(toList());
+
+        List<Bundle.BundleEntryComponent> entries = new ArrayList<>();
+        try {
+            if (!rootQueries.isEmpty()) {
+                entries.addAll(getAllPagesWithParentsAndSubTasks(searchWithParentsAndSubTasks(rootQueries.get(0))));
+            }
+            for (Future<Bundle> otherResult : otherResults) {
+                entries.addAll(getAllPagesWithParentsAndSubTasks(waitForResult(otherResult)));
+            }
+        } catch (RuntimeException e) {
+            //The tree is incomplete anyway, so don't leave the other root queries occupying the pool
+            otherResults.forEach(otherResult -> otherResult.cancel(true));
+            throw e;
+        }
+        return new TaskTree(entries);
+    }
+
+    /**
+     * @return the sub tasks of each of the given tasks, by parent task id
+     */
+    public Map<String, List<Task>> getSubTasks(Collection<String> parentTaskIds) {
+        return new TaskTree(searchByIds(parentTaskIds, TaskTreeLoader::partOf)).subTasksByParentId;
+    }
+
+    private Bundle searchWithParentsAndSubTasks(IQuery rootQuery) {
+        return (Bundle) rootQuery
+                .count(fisProperties.getResourceSinglePageLimit())
+                .include(Task.INCLUDE_PART_OF.asRecursive())
+                .revInclude(Task.INCLUDE_PART_OF.asRecursive())
+                .returnBundle(Bundle.class)
+                .execute();
+    }
+
+    private List<Bundle.BundleEntryComponent> getAllPagesWithParentsAndSubTasks(Bundle taskBundle) {
+        if (taskBundle == null || taskBundle.getEntry().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Bundle.BundleEntryComponent> entries = new ArrayList<>();
+        boolean includesTruncated = false;
+        try (Stream<Bundle> taskPages = FhirOperationUtil.streamAllBundlePages(taskBundle, Optional.of(fisProperties.getResourceSinglePageLimit()), fhirClient, fisProperties, fhirQueryExecutor)) {
+            for (Iterator<Bundle> pages = taskPages.iterator(); pages.hasNext(); ) {
+                Bundle page = pages.next();
+                entries.addAll(page.getEntry());
+                includesTruncated = includesTruncated || isIncludesTruncated(page);
+            }
+        }
+        if (!includesTruncated) {
+            return entries;
+        }
+
+        log.warn("The FHIR server truncated the parent tasks and sub tasks included in a task search, loading them with part-of searches");
+        return withParentsAndSubTasks(entries.stream().filter(TaskTree::isMatch).collect(toList()));
+    }
+
+    /**
+     * A page is truncated when the FHIR server reports a problem with the search, e.g. an include limit, or when the
+     * page holds as many included resources as the server returns at most.
+     */
+    private boolean isIncludesTruncated(Bundle page) {
+        long includeCount = page.getEntry().stream()
+                .filter(entry -> entry.getSearch().hasMode() && entry.getSearch().getMode().equals(Bundle.SearchEntryMode.INCLUDE))
+                .count();
+        boolean hasOutcome = page.getEntry().stream()
+                .anyMatch(entry -> entry.getResource() instanceof OperationOutcome
+                        || (entry.getSearch().hasMode() && entry.getSearch().getMode().equals(Bundle.SearchEntryMode.OUTCOME)));
+        return hasOutcome || includeCount >= fisProperties.getFhir().getMaxIncludesPerPage();
+    }
+
+    /**
+     * Loads the parent tasks of the root tasks up the tree with _id searches, then the sub tasks of all of them down
+     * the tree with part-of searches, one level at a time.
+     */
+    private List<Bundle.BundleEntryComponent> withParentsAndSubTasks(List<Bundle.BundleEntryComponent> rootEntries) {
+        List<Bundle.BundleEntryComponent> entries = new ArrayList<>(rootEntries);
+        Set<String> loadedIds = rootEntries.stream().map(entry -> entry.getResource().getIdElement().getIdPart()).collect(toSet());
+
+        Set<String> parentIds = parentIdsOf(rootEntries, loadedIds);
+        while (!parentIds.isEmpty()) {
+            List<Bundle.BundleEntryComponent> parentEntries = included(searchByIds(parentIds, idChunk -> new TokenClientParam("_id").exactly().codes(idChunk)), loadedIds);
+            entries.addAll(parentEntries);
+            parentIds = parentIdsOf(parentEntries, loadedIds);
+        }
+
+        Set<String> parentTaskIds = new LinkedHashSet<>(loadedIds);
+        while (!parentTaskIds.isEmpty()) {
+            List<Bundle.BundleEntryComponent> subTaskEntries = included(searchByIds(parentTaskIds, TaskTreeLoader::partOf), loadedIds);
+            entries.addAll(subTaskEntries);
+            parentTaskIds = subTaskEntries.stream().map(entry -> entry.getResource().getIdElement().getIdPart()).collect(toCollection(LinkedHashSet::new));
+        }
+        return entries;
+    }
+
+    /**
+     * @return the tasks not loaded yet, marked as included so they are not taken for root tasks
+     */
+    private static List<Bundle.BundleEntryComponent> included(List<Bundle.BundleEntryComponent> entries, Set<String> loadedIds) {
+        List<Bundle.BundleEntryComponent> includedEntries = new ArrayList<>();
+        for (Bundle.BundleEntryComponent entry : entries) {
+            if (entry.getResource().getResourceType().equals(ResourceType.Task) && loadedIds.add(entry.getResource().getIdElement().getIdPart())) {
+                entry.getSearch().setMode(Bundle.SearchEntryMode.INCLUDE);
+                includedEntries.add(entry);
+            }
+        }
+        return includedEntries;
+    }
+
+    private static Set<String> parentIdsOf(List<Bundle.BundleEntryComponent> entries, Set<String> loadedIds) {
+        return entries.stream()
+                .flatMap(entry -> TaskTree.parentIds((Task) entry.getResource()).stream())
+                .filter(parentId -> !loadedIds.contains(parentId))
+                .collect(toCollection(LinkedHashSet::new));
+    }
+
+    private static ICriterion<?> partOf(List<String> parentTaskIds) {
+        return new ReferenceClientParam("part-of").hasAnyOfIds(parentTaskIds);
+    }
+
+    private List<Bundle.BundleEntryComponent> searchByIds(Collection<String> taskIds, Function<List<String>, ICriterion<?>> criterion) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(taskIds));
+        List<Bundle.BundleEntryComponent> entries = new ArrayList<>();
+
+        int maxIdsPerSearch = fisProperties.getFhir().getMaxIdsPerSearch();
+        for (int fromIndex = 0; fromIndex < ids.size(); fromIndex += maxIdsPerSearch) {
+            List<String> idChunk = ids.subList(fromIndex, Math.min(fromIndex + maxIdsPerSearch, ids.size()));
+            IQuery taskQuery = fhirClient.search().forResource(Task.class)
+                    .where(criterion.apply(idChunk));
+            Bundle taskBundle = (Bundle) FhirOperationUtil.setNoCacheControlDirective(taskQuery)
+                    .count(fisProperties.getResourceSinglePageLimit())
+                    .returnBundle(Bundle.class)
+                    .execute();
+            entries.addAll(FhirOperationUtil.getAllBundleComponentsAsList(taskBundle, Optional.of(fisProperties.getResourceSinglePageLimit()), fhirClient, fisProperties, fhirQueryExecutor));
+        }
+        return entries;
+    }
+
+    private static <T> T waitForResult(Future<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FHIRClientException("Interrupted while fetching tasks");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new FHIRClientException("FHIR Client returned with an error while fetching tasks: " + e.getCause().getMessage());
+        }
+    }
+
+    public static class TaskTree {
+        //Deduplicated by logical id, in the order of the search results
+        private final Map<String, Task> tasksById = new LinkedHashMap<>();
+        private final Set<String> rootIds = new LinkedHashSet<>();
+        private final Map<String, List<Task>> subTasksByParentId = new HashMap<>();
+
+        TaskTree(List<Bundle.BundleEntryComponent> entries) {
+            entries.stream()
+                    .filter(entry -> entry.getResource().getResourceType().equals(ResourceType.Task))
+                    .forEach(entry -> {
+                        Task task = (Task) entry.getResource();
+                        String id = task.getIdElement().getIdPart();
+                        if (isMatch(entry)) {
+                            rootIds.add(id);
+                        }
+                        tasksById.putIfAbsent(id, task);
+                    });
+
+            tasksById.values().forEach(task -> parentIds(task)
+                    .forEach(parentId -> subTasksByParentId.computeIfAbsent(parentId, key -> new ArrayList<>()).add(task)));
+        }
+
+        /**
+         * @return the root tasks, followed by their sub tasks and their parent tasks
+         */
+        public List<Task> getRootsWithParentsAndSubTasks() {
+            Map<String, Task> tasks = new LinkedHashMap<>();
+            rootIds.forEach(rootId -> tasks.put(rootId, tasksById.get(rootId)));
+            rootIds.forEach(rootId -> getSubTasks(rootId).forEach(subTask -> tasks.putIfAbsent(subTask.getIdElement().getIdPart(), subTask)));
+            rootIds.forEach(rootId -> parentIds(tasksById.get(rootId)).stream()
+                    .filter(tasksById::containsKey)
+                    .forEach(parentId -> tasks.putIfAbsent(parentId, tasksById.get(parentId))));
+            return new ArrayList<>(tasks.values());
+        }
+
+        public List<Task> getSubTasks(String taskId) {
+            return subTasksByParentId.getOrDefault(taskId, Collections.emptyList());
+        }
+
+        private static boolean isMatch(Bundle.BundleEntryComponent entry) {
+            return !entry.getSearch().hasMode() || entry.getSearch().getMode().equals(Bundle.SearchEntryMode.MATCH);
+        }
+
+        private static List<String> parentIds(Task task) {
+            return task.getPartOf().stream()
+                    .filter(partOf -> FhirOperationUtil.isStringNotNullAndNotEmpty(partOf.getReference()))
+                    .map(partOf -> partOf.getReferenceElement().getIdPart())
+                    .collect(toList());
+        }
+    }
+}
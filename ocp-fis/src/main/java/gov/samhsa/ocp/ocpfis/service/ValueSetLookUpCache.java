@@ -0,0 +1,81 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.domain.LookupPathUrls;
+import gov.samhsa.ocp.ocpfis.service.exception.ResourceNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.ValueSet;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Service
+@Slf4j
+public class ValueSetLookUpCache implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "cache.lookup.";
+
+    private final IGenericClient fhirClient;
+
+    private final FisProperties fisProperties;
+
+    private final LoadingCache<LookupPathUrls, ValueSet> valueSets;
+
+    public ValueSetLookUpCache(IGenericClient fhirClient, FisProperties fisProperties) {
+        this.fhirClient = fhirClient;
+        this.fisProperties = fisProperties;
+        FisProperties.Cache.Lookup lookupCache = fisProperties.getCache().getLookup();
+        this.valueSets = Caffeine.newBuilder()
+                .maximumSize(lookupCache.getMaximumSize())
+                .expireAfterWrite(lookupCache.getTtlInSeconds(), TimeUnit.SECONDS)
+                .refreshAfterWrite(lookupCache.getRefreshAfterInSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build(this::loadValueSet);
+    }
+
+    public ValueSet get(LookupPathUrls lookupPathUrl) {
+        return valueSets.get(lookupPathUrl);
+    }
+
+    public void evict(LookupPathUrls lookupPathUrl) {
+        log.info("Evicting cached " + lookupPathUrl.getType() + " lookup");
+        valueSets.invalidate(lookupPathUrl);
+    }
+
+    public void evictAll() {
+        log.info("Evicting all cached lookups");
+        valueSets.invalidateAll();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = valueSets.stats();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "size", valueSets.estimatedSize()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit", stats.hitCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "miss", stats.missCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "hit.ratio", stats.hitRate()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "load.failure", stats.loadFailureCount()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "eviction", stats.evictionCount()));
+        return metrics;
+    }
+
+    private ValueSet loadValueSet(LookupPathUrls lookupPathUrl) {
+        String url = fisProperties.getFhir().getServerUrl() + lookupPathUrl.getUrlPath();
+        try {
+            return (ValueSet) fhirClient.search().byUrl(url).execute();
+        } catch (ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException e) {
+            log.error("Query was unsuccessful - Could not find any " + lookupPathUrl.getType() + " code", e.getMessage());
+            throw new ResourceNotFoundException("Query was unsuccessful - Could not find any " + lookupPathUrl.getType() + " code", e);
+        }
+    }
+}
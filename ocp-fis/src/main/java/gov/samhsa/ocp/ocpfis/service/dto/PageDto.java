@@ -23,6 +23,7 @@
     int totalElements;
     boolean hasElements;
     List<T> elements;
+    String nextCursor; //Opaque, pass it back as "cursor" to load the next page without running the search again
     // TODO: Add sort related info
 
 
@@ -0,0 +1,15 @@
+package gov.samhsa.ocp.ocpfis.service.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+public class FhirCallBudgetExceededException extends RuntimeException {
+    public FhirCallBudgetExceededException() {
+        super();
+    }
+
+    public FhirCallBudgetExceededException(String message) {
+        super(message);
+    }
+}
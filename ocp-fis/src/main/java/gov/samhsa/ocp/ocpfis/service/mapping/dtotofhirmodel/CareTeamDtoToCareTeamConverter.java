@@ -22,6 +22,14 @@
 public class CareTeamDtoToCareTeamConverter {
 
     public static CareTeam map(CareTeamDto careTeamDto) throws FHIRException, ParseException {
+        return map(careTeamDto, new Reference("Patient/" + careTeamDto.getSubjectId()));
+    }
+
+    /**
+     * Maps a care team whose subject is given as a reference, e.g. the placeholder of a patient created in the same
+     * transaction.
+     */
+    public static CareTeam map(CareTeamDto careTeamDto, Reference subject) throws FHIRException, ParseException {
         CareTeam careTeam = new CareTeam();
         //id
         careTeam.setId(careTeamDto.getId());
@@ -53,7 +61,7 @@ public static CareTeam map(CareTeamDto careTeamDto) throws FHIRException, ParseE
         careTeam.addCategory(codeableConcept);
 
         //subject
-        careTeam.getSubject().setReference("Patient/" + careTeamDto.getSubjectId());
+        careTeam.setSubject(subject);
 
         //start and end date
         Period period = new Period();
@@ -0,0 +1,60 @@
+package gov.samhsa.ocp.ocpfis.util;
+
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.dstu3.model.ResourceType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Groups the entries of a search response by resource type and by the resource they refer to, so included resources
+ * are looked up per referenced resource without scanning the whole response again.
+ */
+public final class BundleEntryIndex {
+
+    private final Map<ResourceType, Map<String, List<Resource>>> resourcesByTypeAndReference = new HashMap<>();
+
+    private BundleEntryIndex() {
+    }
+
+    /**
+     * @param referenceAccessors the reference to index by, for each resource type to index; entries of other resource
+     *                           types are left out
+     */
+    public static BundleEntryIndex of(List<Bundle.BundleEntryComponent> entries, Map<ResourceType, Function<Resource, Reference>> referenceAccessors) {
+        BundleEntryIndex index = new BundleEntryIndex();
+        entries.stream()
+                .map(Bundle.BundleEntryComponent::getResource)
+                .filter(resource -> resource != null && referenceAccessors.containsKey(resource.getResourceType()))
+                .forEach(resource -> {
+                    Reference reference = referenceAccessors.get(resource.getResourceType()).apply(resource);
+                    if (reference != null && FhirOperationUtil.isStringNotNullAndNotEmpty(reference.getReference())) {
+                        index.resourcesByTypeAndReference
+                                .computeIfAbsent(resource.getResourceType(), type -> new HashMap<>())
+                                .computeIfAbsent(toKey(reference.getReference()), key -> new ArrayList<>())
+                                .add(resource);
+                    }
+                });
+        return index;
+    }
+
+    /**
+     * @param reference a relative or absolute reference, such as Patient/123
+     * @return the indexed resources of the given type that refer to the given resource, in response order
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Resource> List<T> get(ResourceType resourceType, String reference) {
+        return (List<T>) resourcesByTypeAndReference.getOrDefault(resourceType, Collections.emptyMap())
+                .getOrDefault(toKey(reference), Collections.emptyList());
+    }
+
+    private static String toKey(String reference) {
+        return new Reference(reference).getReferenceElement().toUnqualifiedVersionless().getValue();
+    }
+}
@@ -0,0 +1,116 @@
+package gov.samhsa.ocp.ocpfis.util;
+
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds up the FHIR calls made while handling one inbound request, and names the service class making them. Work
+ * handed to other threads for the request is counted too, under the same service class, when it is wrapped with
+ * {@link #propagate(Callable)}.
+ */
+public final class FhirCallTracker {
+
+    private static final ThreadLocal<Usage> currentUsage = new ThreadLocal<>();
+
+    private static final ThreadLocal<String> currentCaller = new ThreadLocal<>();
+
+    private FhirCallTracker() {
+    }
+
+    public static Usage start() {
+        Usage usage = new Usage();
+        currentUsage.set(usage);
+        return usage;
+    }
+
+    public static void stop() {
+        currentUsage.remove();
+    }
+
+    public static Optional<Usage> current() {
+        return Optional.ofNullable(currentUsage.get());
+    }
+
+    /**
+     * @return the previous caller, to be restored with {@link #restoreCaller(String)} when the caller returns
+     */
+    public static String enterCaller(String caller) {
+        String previousCaller = currentCaller.get();
+        currentCaller.set(caller);
+        return previousCaller;
+    }
+
+    public static void restoreCaller(String previousCaller) {
+        set(currentCaller, previousCaller);
+    }
+
+    public static Optional<String> currentCaller() {
+        return Optional.ofNullable(currentCaller.get());
+    }
+
+    public static void recordCall(long timeInMs) {
+        Usage usage = currentUsage.get();
+        if (usage != null) {
+            usage.calls.increment();
+            usage.timeInMs.add(timeInMs);
+        }
+    }
+
+    public static void recordBytes(long bytes) {
+        Usage usage = currentUsage.get();
+        if (usage != null) {
+            usage.bytes.add(bytes);
+        }
+    }
+
+    /**
+     * @return the task, counting its FHIR calls against the request and the caller of the calling thread
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        Usage usage = currentUsage.get();
+        String caller = currentCaller.get();
+        if (usage == null && caller == null) {
+            return task;
+        }
+        return () -> {
+            Usage previousUsage = currentUsage.get();
+            String previousCaller = currentCaller.get();
+            set(currentUsage, usage);
+            set(currentCaller, caller);
+            try {
+                return task.call();
+            } finally {
+                set(currentUsage, previousUsage);
+                set(currentCaller, previousCaller);
+            }
+        };
+    }
+
+    private static <T> void set(ThreadLocal<T> threadLocal, T value) {
+        if (value == null) {
+            threadLocal.remove();
+        } else {
+            threadLocal.set(value);
+        }
+    }
+
+    public static class Usage {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder timeInMs = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        // Calls made in parallel are all added up
+        public long getTimeInMs() {
+            return timeInMs.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+    }
+}
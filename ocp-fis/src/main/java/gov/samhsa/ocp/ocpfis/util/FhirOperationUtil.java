@@ -4,7 +4,6 @@
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.gclient.IQuery;
-import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.SingleValidationMessage;
@@ -16,15 +15,26 @@
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.DomainResource;
-import org.hl7.fhir.dstu3.model.ResourceType;
-import org.hl7.fhir.dstu3.model.StructureDefinition;
 import org.hl7.fhir.dstu3.model.UriType;
+import org.springframework.core.task.AsyncTaskExecutor;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static ca.uhn.fhir.rest.api.Constants.PARAM_LASTUPDATED;
 
@@ -115,23 +125,52 @@ public static IQuery setLastUpdatedTimeSortOrder(IQuery searchQuery, Boolean isD
         return searchQuery;
     }
 
+    /**
+     * Fetches the remaining pages one at a time on the calling thread.
+     */
     public static List<Bundle.BundleEntryComponent> getAllBundleComponentsAsList(Bundle bundle, Optional<Integer> countSize, IGenericClient fhirClient, FisProperties fisProperties) {
-        int pageNumber = PAGE_NUMBER;
+        return getAllBundleComponentsAsList(bundle, countSize, fhirClient, fisProperties, null);
+    }
+
+    /**
+     * Fetches the remaining pages concurrently on the given executor, the shared FHIR query executor of the caller.
+     */
+    public static List<Bundle.BundleEntryComponent> getAllBundleComponentsAsList(Bundle bundle, Optional<Integer> countSize, IGenericClient fhirClient, FisProperties fisProperties, AsyncTaskExecutor pageFetchExecutor) {
         int pageSize = countSize.orElse(fisProperties.getFhir().getDefaultResourceBundlePageSize());
-        Bundle updatedBundle = bundle;
         List<Bundle.BundleEntryComponent> bundleEntryComponents = new ArrayList<>();
         if (!bundle.getEntry().isEmpty()) {
             bundleEntryComponents.addAll(bundle.getEntry());
 
+            Bundle updatedBundle = bundle;
+            int pageNumber = PAGE_NUMBER;
+            int parallelism = fisProperties.getFhir().getPageFetchParallelism();
+            int lastPageNumber = bundle.hasTotal() ? (bundle.getTotal() + pageSize - 1) / pageSize : 1;
+
+            if (updatedBundle.getLink(Bundle.LINK_NEXT) != null && pageFetchExecutor != null && parallelism > 1 && lastPageNumber >= PAGE_NUMBER) {
+                //All offsets are known from the total, so fetch the remaining pages concurrently, never more than
+                //parallelism pages of this search at a time, and keep them in page order
+                Deque<Future<Bundle>> pages = new ArrayDeque<>();
+                int nextPageNumber = PAGE_NUMBER;
+                try {
+                    while (nextPageNumber <= lastPageNumber || !pages.isEmpty()) {
+                        while (nextPageNumber <= lastPageNumber && pages.size() < parallelism) {
+                            final int currentPage = nextPageNumber++;
+                            pages.add(fetchPage(pageFetchExecutor, () -> getPage(bundle, currentPage, pageSize, fhirClient, fisProperties)));
+                        }
+                        updatedBundle = waitForPage(pages.poll());
+                        bundleEntryComponents.addAll(updatedBundle.getEntry());
+                    }
+                } catch (RuntimeException e) {
+                    //The result is incomplete anyway, so don't leave the other pages of this search occupying the pool
+                    pages.forEach(page -> page.cancel(true));
+                    throw e;
+                }
+                pageNumber = lastPageNumber + 1;
+            }
+
+            //Follow remaining next links one at a time, e.g. when the server did not return a total
             while (updatedBundle.getLink(Bundle.LINK_NEXT) != null) {
-                int offset = ((pageNumber >= 1 ? pageNumber : 1) - 1) * pageSize;
-                String pageUrl = fisProperties.getFhir().getServerUrl()
-                        + "?_getpages=" + bundle.getId()
-                        + "&_getpagesoffset=" + offset
-                        + "&_count=" + pageSize
-                        + "&_bundletype=searchset";
-
-                updatedBundle = fhirClient.search().byUrl(pageUrl).returnBundle(Bundle.class).execute();
+                updatedBundle = getPage(bundle, pageNumber, pageSize, fhirClient, fisProperties);
                 bundleEntryComponents.addAll(updatedBundle.getEntry());
                 pageNumber++;
             }
@@ -139,116 +178,109 @@ public static List<Bundle.BundleEntryComponent> getAllBundleComponentsAsList(Bun
         return bundleEntryComponents;
     }
 
-    public static List<UriType> getURIList(IGenericClient fhirClient, String resource) {
-        Bundle structureDefinitionBundle = null;
-
-        switch (resource.toUpperCase()) {
-            case "APPOINTMENT":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("Appointment"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "CARETEAM":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("CareTeam"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "COMMUNICATION":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("Communication"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "CONSENT":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("Consent"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "COVERAGE":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("Coverage"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "EPISODEOFCARE":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("EpisodeOfCare"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "FLAG":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("Flag"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "HEALTHCARESERVICE":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("HealthcareService"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "LOCATION":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("Location"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "ORGANIZATION":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("Organization"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "PATIENT":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("Patient"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "PRACTITIONER":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("Practitioner"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "PRACTITIONERROLE":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("PractitionerRole"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "RELATEDPERSON":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("RelatedPerson"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            case "TASK":
-                structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
-                        .where(new TokenClientParam("type").exactly().code("Task"))
-                        .returnBundle(Bundle.class)
-                        .execute();
-                break;
-            default:
+    /**
+     * Lazily walks the pages of a search result, reading each page on the calling thread.
+     */
+    public static Stream<Bundle> streamAllBundlePages(Bundle bundle, Optional<Integer> countSize, IGenericClient fhirClient, FisProperties fisProperties) {
+        return streamAllBundlePages(bundle, countSize, fhirClient, fisProperties, null);
+    }
+
+    /**
+     * Lazily walks the pages of a search result. The page after the one being consumed is requested in the background
+     * on the given executor, never more than one page ahead, so a slow consumer holds back further reads from the FHIR
+     * server.
+     */
+    public static Stream<Bundle> streamAllBundlePages(Bundle bundle, Optional<Integer> countSize, IGenericClient fhirClient, FisProperties fisProperties, AsyncTaskExecutor pageFetchExecutor) {
+        int pageSize = countSize.orElse(fisProperties.getFhir().getDefaultResourceBundlePageSize());
+        PageIterator pages = new PageIterator() {
+            private Bundle loadedPage = bundle;
+            private Future<Bundle> requestedPage;
+            private int pageNumber = PAGE_NUMBER;
+
+            @Override
+            public boolean hasNext() {
+                if (loadedPage == null && requestedPage != null) {
+                    loadedPage = waitForPage(requestedPage);
+                    requestedPage = null;
+                }
+                return loadedPage != null;
+            }
+
+            @Override
+            public Bundle next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Bundle page = loadedPage;
+                loadedPage = null;
+                if (page.getLink(Bundle.LINK_NEXT) != null) {
+                    final int nextPageNumber = pageNumber++;
+                    requestedPage = fetchPage(pageFetchExecutor, () -> getPage(bundle, nextPageNumber, pageSize, fhirClient, fisProperties));
+                }
+                return page;
+            }
 
+            @Override
+            public void cancel() {
+                if (requestedPage != null) {
+                    requestedPage.cancel(true);
+                    requestedPage = null;
+                }
+            }
+        };
+        //Closing the stream, e.g. when the consumer stops early, abandons the page requested ahead
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(pages::cancel);
+    }
+
+    private static Bundle getPage(Bundle bundle, int pageNumber, int pageSize, IGenericClient fhirClient, FisProperties fisProperties) {
+        int offset = ((pageNumber >= 1 ? pageNumber : 1) - 1) * pageSize;
+        String pageUrl = fisProperties.getFhir().getServerUrl()
+                + "?_getpages=" + bundle.getId()
+                + "&_getpagesoffset=" + offset
+                + "&_count=" + pageSize
+                + "&_bundletype=searchset";
+
+        return fhirClient.search().byUrl(pageUrl).returnBundle(Bundle.class).execute();
+    }
+
+    private static Bundle waitForPage(Future<Bundle> page) {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FHIRClientException("Interrupted while fetching search result pages");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new FHIRClientException("FHIR Client returned with an error while fetching search result pages: " + e.getCause().getMessage());
+        }
+    }
+
+    //Without an executor the page is fetched on the calling thread
+    private static Future<Bundle> fetchPage(AsyncTaskExecutor executor, Callable<Bundle> pageFetch) {
+        if (executor == null) {
+            FutureTask<Bundle> page = new FutureTask<>(pageFetch);
+            page.run();
+            return page;
         }
+        return executor.submit(FhirCallTracker.propagate(pageFetch));
+    }
+
+    private interface PageIterator extends Iterator<Bundle> {
+        void cancel();
+    }
 
-        if (structureDefinitionBundle != null && !structureDefinitionBundle.getEntry().isEmpty()) {
-            //First check in server
-            log.info("Number of Structure Definitions found:" + structureDefinitionBundle.getTotal() + " for " + resource);
+    public static List<UriType> getURIList(FhirProfileRegistry fhirProfileRegistry, String resource) {
+        Optional<List<String>> profileUrls = fhirProfileRegistry.getProfileUrls(resource);
 
-            List<StructureDefinition> structureDefinitionList = structureDefinitionBundle.getEntry().stream()
-                    .filter(bundle -> bundle.getResource().getResourceType().equals(ResourceType.StructureDefinition))
-                    .map(structureDefinition -> (StructureDefinition) structureDefinition.getResource())
-                    .collect(Collectors.toList());
-            return structureDefinitionList.stream().map(StructureDefinition::getUrlElement).collect(Collectors.toList());
+        if (profileUrls.isPresent() && !profileUrls.get().isEmpty()) {
+            //First check in profiles loaded from server
+            return profileUrls.get().stream().map(UriType::new).collect(Collectors.toList());
         } else {
             //Return URI List from ENUM
-            log.info("No StructureDefinition found...Getting URL from ENUM for " + resource);
+            log.debug("No StructureDefinition loaded...Getting URL from ENUM for " + resource);
             try {
                 String url = StructureDefinitionEnum.valueOf(resource.toUpperCase()).getUrl();
                 if (url != null && !url.isEmpty()) {
@@ -0,0 +1,89 @@
+package gov.samhsa.ocp.ocpfis.util;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.domain.StructureDefinitionEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.hl7.fhir.dstu3.model.StructureDefinition;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Keeps the StructureDefinition profile URLs of every resource type in {@link StructureDefinitionEnum}
+ * so that writes can stamp Meta.profile without searching the FHIR server.
+ */
+@Service
+@Slf4j
+public class FhirProfileRegistry {
+
+    private final IGenericClient fhirClient;
+
+    private final FisProperties fisProperties;
+
+    private volatile Map<String, List<String>> profileUrlsByResourceType = Collections.emptyMap();
+
+    public FhirProfileRegistry(IGenericClient fhirClient, FisProperties fisProperties) {
+        this.fhirClient = fhirClient;
+        this.fisProperties = fisProperties;
+    }
+
+    public Optional<List<String>> getProfileUrls(String resourceType) {
+        return Optional.ofNullable(profileUrlsByResourceType.get(resourceType.toUpperCase()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        refresh();
+    }
+
+    @Scheduled(initialDelayString = "${ocp-fis.cache.profile.refreshIntervalInMs:3600000}", fixedDelayString = "${ocp-fis.cache.profile.refreshIntervalInMs:3600000}")
+    public void scheduledRefresh() {
+        refresh();
+    }
+
+    public void refresh() {
+        List<String> resourceTypes = Arrays.stream(ResourceType.values())
+                .map(ResourceType::name)
+                .filter(StructureDefinitionEnum::contains)
+                .collect(toList());
+
+        try {
+            //One search for all resource types instead of one per write
+            Bundle structureDefinitionBundle = fhirClient.search().forResource(StructureDefinition.class)
+                    .where(new TokenClientParam("type").exactly().codes(resourceTypes))
+                    .count(fisProperties.getResourceSinglePageLimit())
+                    .returnBundle(Bundle.class)
+                    .elementsSubset("url", "type")
+                    .execute();
+
+            Map<String, List<String>> profileUrls = new HashMap<>();
+            FhirOperationUtil.getAllBundleComponentsAsList(structureDefinitionBundle, Optional.of(fisProperties.getResourceSinglePageLimit()), fhirClient, fisProperties).stream()
+                    .filter(entry -> entry.getResource().getResourceType().equals(ResourceType.StructureDefinition))
+                    .map(entry -> (StructureDefinition) entry.getResource())
+                    .filter(structureDefinition -> structureDefinition.hasType() && structureDefinition.hasUrl())
+                    .forEach(structureDefinition -> profileUrls.computeIfAbsent(structureDefinition.getType().toUpperCase(), type -> new ArrayList<>())
+                            .add(structureDefinition.getUrl()));
+
+            profileUrlsByResourceType = Collections.unmodifiableMap(profileUrls);
+            log.info("Loaded StructureDefinition profiles for " + profileUrls.keySet());
+        } catch (Exception e) {
+            // Keep serving the previous profiles, or the ENUM fallback, until the next refresh
+            log.error("Unable to refresh StructureDefinition profiles: " + e.getMessage());
+        }
+    }
+}
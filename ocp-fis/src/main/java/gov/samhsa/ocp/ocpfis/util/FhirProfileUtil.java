@@ -1,6 +1,5 @@
 package gov.samhsa.ocp.ocpfis.util;
 
-import ca.uhn.fhir.rest.client.api.IGenericClient;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.dstu3.model.ActivityDefinition;
 import org.hl7.fhir.dstu3.model.Appointment;
@@ -27,128 +26,128 @@
 @Slf4j
 public class FhirProfileUtil {
 
-    public static void setAppointmentProfileMetaData(IGenericClient fhirClient, Appointment appointment) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Appointment.toString());
+    public static void setAppointmentProfileMetaData(FhirProfileRegistry fhirProfileRegistry, Appointment appointment) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.Appointment.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             appointment.setMeta(meta);
         }
     }
 
-    public static void setCareTeamProfileMetaData(IGenericClient fhirClient, CareTeam careTeam) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.CareTeam.toString());
+    public static void setCareTeamProfileMetaData(FhirProfileRegistry fhirProfileRegistry, CareTeam careTeam) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.CareTeam.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             careTeam.setMeta(meta);
         }
     }
 
-    public static void setRelatedPersonProfileMetaData(IGenericClient fhirClient, RelatedPerson relatedPerson) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.RelatedPerson.toString());
+    public static void setRelatedPersonProfileMetaData(FhirProfileRegistry fhirProfileRegistry, RelatedPerson relatedPerson) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.RelatedPerson.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             relatedPerson.setMeta(meta);
         }
     }
 
-    public static void setHealthCareServiceProfileMetaData(IGenericClient fhirClient, HealthcareService healthcareService){
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.HealthcareService.toString());
+    public static void setHealthCareServiceProfileMetaData(FhirProfileRegistry fhirProfileRegistry, HealthcareService healthcareService){
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.HealthcareService.toString());
         if(uriList !=null && !uriList.isEmpty()){
             Meta meta = new Meta().setProfile(uriList);
             healthcareService.setMeta(meta);
         }
     }
 
-    public static void setLocationProfileMetaData(IGenericClient fhirClient, Location fhirLocation) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Location.toString());
+    public static void setLocationProfileMetaData(FhirProfileRegistry fhirProfileRegistry, Location fhirLocation) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.Location.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             fhirLocation.setMeta(meta);
         }
     }
 
-    public static void setOrganizationProfileMetaData(IGenericClient fhirClient, Organization organization) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Organization.toString());
+    public static void setOrganizationProfileMetaData(FhirProfileRegistry fhirProfileRegistry, Organization organization) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.Organization.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             organization.setMeta(meta);
         }
     }
 
-    public static void setActivityDefinitionProfileMetaData(IGenericClient fhirClient, ActivityDefinition activityDefinition) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.ActivityDefinition.toString());
+    public static void setActivityDefinitionProfileMetaData(FhirProfileRegistry fhirProfileRegistry, ActivityDefinition activityDefinition) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.ActivityDefinition.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             activityDefinition.setMeta(meta);
         }
     }
 
-    public static void setPractitionerProfileMetaData(IGenericClient fhirClient, Practitioner practitioner) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Practitioner.toString());
+    public static void setPractitionerProfileMetaData(FhirProfileRegistry fhirProfileRegistry, Practitioner practitioner) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.Practitioner.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             practitioner.setMeta(meta);
         }
     }
 
-    public static void setPractitionerRoleProfileMetaData(IGenericClient fhirClient, PractitionerRole practitionerRole) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.PractitionerRole.toString());
+    public static void setPractitionerRoleProfileMetaData(FhirProfileRegistry fhirProfileRegistry, PractitionerRole practitionerRole) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.PractitionerRole.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             practitionerRole.setMeta(meta);
         }
     }
 
-    public static void setCommunicationProfileMetaData(IGenericClient fhirClient, Communication communication) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Communication.toString());
+    public static void setCommunicationProfileMetaData(FhirProfileRegistry fhirProfileRegistry, Communication communication) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.Communication.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             communication.setMeta(meta);
         }
     }
 
-    public static void setTaskProfileMetaData(IGenericClient fhirClient, Task task) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Task.toString());
+    public static void setTaskProfileMetaData(FhirProfileRegistry fhirProfileRegistry, Task task) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.Task.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             task.setMeta(meta);
         }
     }
 
-    public static void setCoverageProfileMetaData(IGenericClient fhirClient, Coverage coverage) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Coverage.toString());
+    public static void setCoverageProfileMetaData(FhirProfileRegistry fhirProfileRegistry, Coverage coverage) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.Coverage.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             coverage.setMeta(meta);
         }
     }
 
-    public static void setConsentProfileMetaData(IGenericClient fhirClient, Consent consent) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Consent.toString());
+    public static void setConsentProfileMetaData(FhirProfileRegistry fhirProfileRegistry, Consent consent) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.Consent.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             consent.setMeta(meta);
         }
     }
 
-    public static void setPatientProfileMetaData(IGenericClient fhirClient, Patient patient) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Patient.toString());
+    public static void setPatientProfileMetaData(FhirProfileRegistry fhirProfileRegistry, Patient patient) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.Patient.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             patient.setMeta(meta);
         }
     }
 
-    public static void setFlagProfileMetaData(IGenericClient fhirClient, Flag flag) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.Flag.toString());
+    public static void setFlagProfileMetaData(FhirProfileRegistry fhirProfileRegistry, Flag flag) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.Flag.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             flag.setMeta(meta);
         }
     }
 
-    public static void setEpisodeOfCareProfileMetaData(IGenericClient fhirClient, EpisodeOfCare episodeOfCare) {
-        List<UriType> uriList = FhirOperationUtil.getURIList(fhirClient, ResourceType.EpisodeOfCare.toString());
+    public static void setEpisodeOfCareProfileMetaData(FhirProfileRegistry fhirProfileRegistry, EpisodeOfCare episodeOfCare) {
+        List<UriType> uriList = FhirOperationUtil.getURIList(fhirProfileRegistry, ResourceType.EpisodeOfCare.toString());
         if (uriList != null && !uriList.isEmpty()) {
             Meta meta = new Meta().setProfile(uriList);
             episodeOfCare.setMeta(meta);
@@ -1,15 +1,12 @@
 package gov.samhsa.ocp.ocpfis.util;
 
 import ca.uhn.fhir.rest.client.api.IGenericClient;
-import ca.uhn.fhir.rest.gclient.ReferenceClientParam;
 import ca.uhn.fhir.rest.gclient.StringClientParam;
-import ca.uhn.fhir.rest.gclient.TokenClientParam;
 import gov.samhsa.ocp.ocpfis.config.FisProperties;
 import gov.samhsa.ocp.ocpfis.constants.ActivityDefinitionConstants;
 import gov.samhsa.ocp.ocpfis.constants.IdentifierConstants;
 import gov.samhsa.ocp.ocpfis.domain.KnownIdentifierSystemEnum;
 import gov.samhsa.ocp.ocpfis.service.LookUpService;
-import gov.samhsa.ocp.ocpfis.service.dto.AbstractCareTeamDto;
 import gov.samhsa.ocp.ocpfis.service.dto.AddressDto;
 import gov.samhsa.ocp.ocpfis.service.dto.IdentifierDto;
 import gov.samhsa.ocp.ocpfis.service.dto.ReferenceDto;
@@ -20,7 +17,6 @@
 import org.hl7.fhir.dstu3.model.ActivityDefinition;
 import org.hl7.fhir.dstu3.model.Address;
 import org.hl7.fhir.dstu3.model.Bundle;
-import org.hl7.fhir.dstu3.model.CareTeam;
 import org.hl7.fhir.dstu3.model.CodeableConcept;
 import org.hl7.fhir.dstu3.model.Coding;
 import org.hl7.fhir.dstu3.model.ContactPoint;
@@ -33,7 +29,6 @@
 import org.hl7.fhir.dstu3.model.Practitioner;
 import org.hl7.fhir.dstu3.model.Reference;
 import org.hl7.fhir.dstu3.model.RelatedArtifact;
-import org.hl7.fhir.dstu3.model.RelatedPerson;
 import org.hl7.fhir.dstu3.model.Task;
 import org.hl7.fhir.dstu3.model.Timing;
 import org.hl7.fhir.dstu3.model.Type;
@@ -44,9 +39,9 @@
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Slf4j
 public class FhirResourceUtil {
@@ -116,6 +111,16 @@ public static String getRoleFromCodeableConcept(CodeableConcept codeableConcept)
         return codingRoleCode.isPresent() ? codingRoleCode.get().getCode() : "";
     }
 
+    /**
+     * @return whether the date lies within the period, a missing start or end leaves the period open on that side
+     */
+    public static boolean isInPeriod(Period period, Date date) {
+        if (period == null) {
+            return true;
+        }
+        return (!period.hasStart() || !period.getStart().after(date)) && (!period.hasEnd() || !period.getEnd().before(date));
+    }
+
     public static Extension createExtension(String url, Type t) {
         Extension ext = new Extension();
         ext.setUrl(url);
@@ -170,7 +175,7 @@ public static ActivityDefinition createToDoActivityDefinition(String referenceOr
         return activityDefinition;
     }
 
-    public static Task createToDoTask(String patientId, String practitionerId, String organizationId, IGenericClient fhirClient, FisProperties fisProperties) {
+    public static Task createToDoTask(Reference patient, String practitionerId, String organizationId, IGenericClient fhirClient, FisProperties fisProperties) {
         Task task = new Task();
 
         task.setStatus(Task.TaskStatus.READY);
@@ -188,8 +193,6 @@ public static Task createToDoTask(String patientId, String practitionerId, Strin
                 .setSystem(TaskPerformerType.REQUESTER.getSystem());
         task.setPerformerType(Collections.singletonList(performerType));
 
-        Reference patient = new Reference();
-        patient.setReference("Patient/" + patientId);
         task.setFor(patient);
         task.setDescription(ActivityDefinitionConstants.TO_DO);
 
@@ -220,168 +223,6 @@ public static ReferenceDto getRelatedActivityDefinition(String organizationId, S
         return referenceDto;
     }
 
-    public static List<AbstractCareTeamDto> getOrganizationActors(Optional<String> patientId, Optional<String> name, Optional<String> organizationId, Optional<List<String>> careTeams, IGenericClient fhirClient, FisProperties fisProperties) {
-        Bundle organizationBundle = fhirClient.search().forResource(Organization.class)
-                .where(new TokenClientParam("_id").exactly().codes(participantIds(organizationId, patientId, careTeams, fhirClient)))
-                .where(new RichStringClientParam("name").matches().value(name.orElse("")))
-                .returnBundle(Bundle.class)
-                .elementsSubset("id", "resourceType", "name", "identifier", "telecom", "address")
-                .execute();
-        List<Bundle.BundleEntryComponent> organizationBundleEntryList = FhirOperationUtil.getAllBundleComponentsAsList(organizationBundle, Optional.empty(), fhirClient, fisProperties);
-
-        return organizationBundleEntryList.stream().map(org -> {
-            AbstractCareTeamDto abstractCareTeamDto = new AbstractCareTeamDto();
-            Organization organization = (Organization) org.getResource();
-            abstractCareTeamDto.setId(organization.getIdElement().getIdPart());
-            abstractCareTeamDto.setDisplay(organization.getName());
-            abstractCareTeamDto.setCareTeamType(AbstractCareTeamDto.CareTeamType.ORGANIZATION);
-            List<IdentifierDto> identifierDtos = organization.getIdentifier().stream()
-                    .map(FhirResourceUtil::entireCovertIdentifierToIdentifierDto)
-                    .collect(Collectors.toList());
-            abstractCareTeamDto.setIdentifiers(identifierDtos);
-
-            organization.getAddress().stream().findAny().ifPresent(address -> {
-                AddressDto addressDto = convertAddressToAddressDto(address);
-                abstractCareTeamDto.setAddress(addressDto);
-            });
-
-            if (organization.hasTelecom()) {
-                organization.getTelecom().stream()
-                        .filter(telecom -> {
-                            if (telecom.hasSystem())
-                                return telecom.getSystem().getDisplay().equalsIgnoreCase(ContactPointSystem.PHONE.toString());
-                            return false;
-                        })
-                        .findAny().ifPresent(phone -> abstractCareTeamDto.setPhoneNumber(Optional.ofNullable(phone.getValue())));
-
-                organization.getTelecom().stream().filter(telecom -> {
-                    if (telecom.hasSystem())
-                        return telecom.getSystem().getDisplay().equalsIgnoreCase(ContactPointSystem.EMAIL.toString());
-                    return false;
-                })
-                        .findAny().ifPresent(email -> abstractCareTeamDto.setEmail(Optional.ofNullable(email.getValue())));
-            }
-            return abstractCareTeamDto;
-        }).distinct().collect(Collectors.toList());
-    }
-
-    public static List<AbstractCareTeamDto> getPractitionerActors(Optional<String> patientId, Optional<String> name, Optional<String> practitionerId, Optional<List<String>> careTeams, IGenericClient fhirClient, FisProperties fisProperties) {
-        Bundle practitionerBundle = fhirClient.search().forResource(Practitioner.class)
-                .where(new TokenClientParam("_id").exactly().codes(participantIds(practitionerId, patientId, careTeams, fhirClient)))
-                .where(new RichStringClientParam("name").matches().value(name.orElse("")))
-                .returnBundle(Bundle.class)
-                .elementsSubset("id", "resourceType", "name", "identifier", "telecom", "address")
-                .execute();
-
-        List<Bundle.BundleEntryComponent> practitionerBundleEntryList = FhirOperationUtil.getAllBundleComponentsAsList(practitionerBundle, Optional.empty(), fhirClient, fisProperties);
-
-        return practitionerBundleEntryList.stream().map(pr -> {
-            AbstractCareTeamDto abstractCareTeamDto = new AbstractCareTeamDto();
-            Practitioner practitioner = (Practitioner) pr.getResource();
-            abstractCareTeamDto.setId(practitioner.getIdElement().getIdPart());
-            practitioner.getName().stream().findAny().ifPresent(humanName -> abstractCareTeamDto.setDisplay(humanName.getGiven().stream().findAny().get() + " " + humanName.getFamily()));
-
-            abstractCareTeamDto.setCareTeamType(AbstractCareTeamDto.CareTeamType.PRACTITIONER);
-            List<IdentifierDto> identifierDtos = practitioner.getIdentifier().stream()
-                    .map(FhirResourceUtil::entireCovertIdentifierToIdentifierDto)
-                    .collect(Collectors.toList());
-            abstractCareTeamDto.setIdentifiers(identifierDtos);
-
-            practitioner.getAddress().stream().findAny().ifPresent(address -> {
-                        AddressDto addressDto = convertAddressToAddressDto(address);
-                        abstractCareTeamDto.setAddress(addressDto);
-                    }
-            );
-
-            if (practitioner.hasTelecom()) {
-                practitioner.getTelecom().stream()
-                        .filter(telecom -> {
-                            if (telecom.hasSystem())
-                                return telecom.getSystem().getDisplay().equalsIgnoreCase(ContactPointSystem.PHONE.toString());
-                            return false;
-                        })
-                        .findAny().ifPresent(phone -> abstractCareTeamDto.setPhoneNumber(Optional.ofNullable(phone.getValue())));
-
-                practitioner.getTelecom().stream().filter(telecom -> {
-                    if (telecom.hasSystem())
-                        return telecom.getSystem().getDisplay().equalsIgnoreCase(ContactPointSystem.EMAIL.toString());
-                    return false;
-                })
-                        .findAny().ifPresent(email -> abstractCareTeamDto.setEmail(Optional.ofNullable(email.getValue())));
-            }
-            return abstractCareTeamDto;
-
-        }).distinct().collect(Collectors.toList());
-    }
-
-    public static List<AbstractCareTeamDto> getRelatedPersonActors(Optional<String> patientId, Optional<String> name, Optional<String> relatedPersonId, Optional<List<String>> careTeams, IGenericClient fhirClient, FisProperties fisProperties) {
-
-        Bundle relatedBundle = fhirClient.search().forResource(RelatedPerson.class)
-                .where(new TokenClientParam("_id").exactly().codes(participantIds(relatedPersonId, patientId, careTeams, fhirClient)))
-                .where(new RichStringClientParam("name").matches().value(name.orElse("")))
-                .returnBundle(Bundle.class)
-                .elementsSubset("id", "resourceType", "name", "identifier", "telecom", "address")
-                .execute();
-
-        List<Bundle.BundleEntryComponent> relatedPersonBundleEntryList = FhirOperationUtil.getAllBundleComponentsAsList(relatedBundle, Optional.empty(), fhirClient, fisProperties);
-
-        return relatedPersonBundleEntryList.stream().map(rp -> {
-            AbstractCareTeamDto abstractCareTeamDto = new AbstractCareTeamDto();
-            RelatedPerson relatedPerson = (RelatedPerson) rp.getResource();
-            abstractCareTeamDto.setId(relatedPerson.getIdElement().getIdPart());
-
-            abstractCareTeamDto.setCareTeamType(AbstractCareTeamDto.CareTeamType.RELATEDPERSON);
-            relatedPerson.getName().stream().findAny().ifPresent(humanName -> abstractCareTeamDto.setDisplay(humanName.getGiven().stream().findAny().get() + " " + humanName.getFamily()));
-
-            List<IdentifierDto> identifierDtos = relatedPerson.getIdentifier().stream()
-                    .map(FhirResourceUtil::entireCovertIdentifierToIdentifierDto)
-                    .collect(Collectors.toList());
-            abstractCareTeamDto.setIdentifiers(identifierDtos);
-
-            relatedPerson.getAddress().stream().findAny().ifPresent(address -> {
-                        AddressDto addressDto = convertAddressToAddressDto(address);
-                        abstractCareTeamDto.setAddress(addressDto);
-                    }
-            );
-
-            if (relatedPerson.hasTelecom()) {
-                relatedPerson.getTelecom().stream()
-                        .filter(telecom -> {
-                            if (telecom.hasSystem())
-                                return telecom.getSystem().getDisplay().equalsIgnoreCase(ContactPointSystem.PHONE.toString());
-                            return false;
-                        })
-                        .findAny().ifPresent(phone -> abstractCareTeamDto.setPhoneNumber(Optional.ofNullable(phone.getValue())));
-
-                relatedPerson.getTelecom().stream().filter(telecom -> {
-                    if (telecom.hasSystem())
-                        return telecom.getSystem().getDisplay().equalsIgnoreCase(ContactPointSystem.EMAIL.toString());
-                    return false;
-                })
-                        .findAny().ifPresent(email -> abstractCareTeamDto.setEmail(Optional.ofNullable(email.getValue())));
-            }
-            return abstractCareTeamDto;
-        }).distinct().collect(Collectors.toList());
-    }
-
-    public static List<String> getCareTeamParticipantIdsFromPatient(Optional<String> patientId, IGenericClient fhirClient) {
-        List<String> participantIds = new ArrayList<>();
-        if (patientId.isPresent()) {
-            Bundle careTeamBundle = fhirClient.search().forResource(CareTeam.class).where(new ReferenceClientParam("patient").hasId(patientId.get()))
-                    .returnBundle(Bundle.class)
-                    .elementsSubset("participant")
-                    .execute();
-            participantIds = careTeamBundle.getEntry().stream().flatMap(careTeam -> {
-                CareTeam ct = (CareTeam) careTeam.getResource();
-                return ct.getParticipant().stream().map(par -> {
-                    String references = par.getMember().getReference().split("/")[1];
-                    return references;
-                });
-            }).collect(Collectors.toList());
-        }
-        return participantIds;
-    }
-
     public static AddressDto convertAddressToAddressDto(Address address) {
         AddressDto addressDto = new AddressDto();
         if (address.hasLine()) {
@@ -432,25 +273,6 @@ public static IdentifierDto entireCovertIdentifierToIdentifierDto(Identifier ide
         return identifierDto;
     }
 
-    public static List<String> participantIds(Optional<String> participantId, Optional<String> patientId, Optional<List<String>> careTeams, IGenericClient fhirClient) {
-        List<String> participantIds;
-        if (participantId.isPresent()) {
-            participantIds = Collections.singletonList(participantId.get());
-        } else if (careTeams.isPresent()) {
-            participantIds = getParticipantIdFromCareTeam(careTeams, fhirClient);
-        } else {
-            participantIds = getCareTeamParticipantIdsFromPatient(patientId, fhirClient);
-        }
-        return participantIds;
-    }
-
-    public static List<String> getParticipantIdFromCareTeam(Optional<List<String>> careTeams, IGenericClient fhirClient) {
-        Bundle bundle = fhirClient.search().forResource(CareTeam.class).where(new TokenClientParam("_id").exactly().codes(careTeams.get())).returnBundle(Bundle.class).execute();
-
-        return bundle.getEntry().stream().map(ct -> (CareTeam) ct.getResource()).flatMap(ct -> ct.getParticipant().stream().map(par -> par.getMember().getReference().split("/")[1])).distinct().collect(Collectors.toList());
-
-    }
-
     public static Address convertAddressDtoToAddress(AddressDto source, LookUpService lookUpService){
         Address fhirAddress = new Address();
         List<ValueSetDto> validAddressUses =  lookUpService.getAddressUses();
@@ -0,0 +1,77 @@
+package gov.samhsa.ocp.ocpfis.util;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.CapabilityStatement;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tells which custom search parameters the FHIR server supports, from the search parameters its capability statement
+ * lists. DSTU3 has no search parameter for Communication.topic; when the server does not define one, topic filtering
+ * has to happen in memory. Nothing is written to the FHIR server, defining the search parameter is up to its
+ * administrators.
+ */
+@Service
+@Slf4j
+public class FhirSearchParameterSupport {
+
+    public static final String COMMUNICATION_TOPIC = "topic";
+
+    private final IGenericClient fhirClient;
+
+    //"ResourceType.code" of the supported search parameters, null until the capability statement was read
+    private volatile Set<String> supportedSearchParameters;
+
+    public FhirSearchParameterSupport(IGenericClient fhirClient) {
+        this.fhirClient = fhirClient;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${ocp-fis.fhir.searchParameterRefreshIntervalInMs:3600000}", fixedDelayString = "${ocp-fis.fhir.searchParameterRefreshIntervalInMs:3600000}")
+    public void refresh() {
+        try {
+            CapabilityStatement capabilityStatement = fhirClient.capabilities().ofType(CapabilityStatement.class).execute();
+            Set<String> searchParameters = new HashSet<>();
+            capabilityStatement.getRest().forEach(rest -> rest.getResource().forEach(resource ->
+                    resource.getSearchParam().forEach(searchParam -> searchParameters.add(resource.getType() + "." + searchParam.getName()))));
+            supportedSearchParameters = searchParameters;
+            log.info("FHIR server supports the Communication topic search parameter: " + isSupported(ResourceType.Communication, COMMUNICATION_TOPIC));
+        } catch (Exception e) {
+            //A transient failure keeps the search parameters last read until the next refresh
+            if (supportedSearchParameters == null) {
+                log.error("Unable to read the search parameters of the FHIR server, custom search parameters are not used: " + e.getMessage());
+                supportedSearchParameters = Collections.emptySet();
+            } else {
+                log.error("Unable to refresh the search parameters of the FHIR server, keeping the ones last read: " + e.getMessage());
+            }
+        }
+    }
+
+    public boolean isSupported(ResourceType resourceType, String code) {
+        Set<String> searchParameters = supportedSearchParameters;
+        if (searchParameters == null) {
+            refresh();
+            searchParameters = supportedSearchParameters;
+        }
+        return searchParameters.contains(resourceType.name() + "." + code);
+    }
+
+    /**
+     * Records that the FHIR server rejected a search parameter, e.g. after it was removed, until the next refresh.
+     */
+    public void markUnsupported(ResourceType resourceType, String code) {
+        Set<String> searchParameters = new HashSet<>(supportedSearchParameters != null ? supportedSearchParameters : Collections.emptySet());
+        if (searchParameters.remove(resourceType.name() + "." + code)) {
+            log.warn("FHIR server rejected the " + resourceType.name() + " " + code + " search parameter, filtering in memory");
+        }
+        supportedSearchParameters = searchParameters;
+    }
+}
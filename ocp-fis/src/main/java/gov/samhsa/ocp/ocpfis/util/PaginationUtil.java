@@ -3,13 +3,18 @@
 import ca.uhn.fhir.model.api.Include;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
 import gov.samhsa.ocp.ocpfis.config.FisProperties;
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
+import gov.samhsa.ocp.ocpfis.service.exception.BadRequestException;
 import gov.samhsa.ocp.ocpfis.service.exception.ResourceNotFoundException;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.dstu3.model.Bundle;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
@@ -40,7 +45,8 @@ public static Bundle getSearchBundleAfterFirstPage(IGenericClient fhirClient, Fi
             //Assuming page number starts with 1
             int offset = ((pageNumber >= 1 ? pageNumber : 1) - 1) * pageSize;
 
-            if (offset >= SearchBundle.getTotal()) {
+            //A server still counting a large search leaves the total out, the next link tells there are more pages
+            if (SearchBundle.hasTotal() && offset >= SearchBundle.getTotal()) {
                 throw new ResourceNotFoundException("No resources were found in the FHIR server for the page number: " + pageNumber);
             }
 
@@ -59,6 +65,76 @@ public static Bundle getSearchBundleAfterFirstPage(IGenericClient fhirClient, Fi
         }
     }
 
+    /**
+     * @return a digest of the parameters and the page size a search was run with, so a cursor of another search is
+     * rejected instead of silently returning that search's pages
+     */
+    public static String getSearchParametersHash(Object... searchParameters) {
+        return Integer.toHexString(Arrays.deepToString(searchParameters).hashCode());
+    }
+
+    /**
+     * Loads the page a cursor points to straight from the search cache of the FHIR server, without running the search again.
+     *
+     * @return empty when no cursor is given or its search has expired, in which case the search has to be run again
+     * @throws BadRequestException when the cursor is malformed or was issued for a search with other parameters
+     */
+    public static Optional<Bundle> getSearchBundleByCursor(IGenericClient fhirClient, FisProperties fisProperties, Optional<String> cursor, String searchParametersHash, int pageSize) {
+        if (!cursor.isPresent()) {
+            return Optional.empty();
+        }
+        SearchCursor searchCursor = SearchCursor.decode(cursor.get(), searchParametersHash);
+        if (searchCursor.expiresAt <= System.currentTimeMillis()) {
+            return Optional.empty();
+        }
+
+        String pageUrl = fisProperties.getFhir().getServerUrl()
+                + "?" + PARAM_PAGINGACTION + "=" + searchCursor.searchId
+                + "&" + PARAM_PAGINGOFFSET + "=" + searchCursor.offset
+                + "&" + PARAM_COUNT + "=" + pageSize
+                + "&_bundletype=searchset";
+        try {
+            return Optional.of(fhirClient.search().byUrl(pageUrl)
+                    .returnBundle(Bundle.class)
+                    .execute());
+        } catch (ResourceGoneException | ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException e) {
+            log.debug("Search " + searchCursor.searchId + " is no longer available on the FHIR server, running it again");
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the page number a cursor points to, or the given page number when no cursor is given
+     */
+    public static Optional<Integer> getPageNumber(Optional<String> cursor, String searchParametersHash, Optional<Integer> pageNumber, int pageSize) {
+        return cursor.isPresent() ? Optional.of(SearchCursor.decode(cursor.get(), searchParametersHash).offset / pageSize + 1) : pageNumber;
+    }
+
+    /**
+     * @return an opaque cursor to the page after the given search bundle, or null when it is the last page
+     */
+    public static String getNextCursor(FisProperties fisProperties, Bundle searchBundle, String searchParametersHash) {
+        Bundle.BundleLinkComponent nextLink = searchBundle.getLink(Bundle.LINK_NEXT);
+        if (nextLink == null || nextLink.getUrl() == null || !nextLink.getUrl().contains("?")) {
+            return null;
+        }
+        String searchId = null;
+        Integer offset = null;
+        for (String parameter : nextLink.getUrl().substring(nextLink.getUrl().indexOf('?') + 1).split("&")) {
+            String[] nameAndValue = parameter.split("=", 2);
+            if (nameAndValue.length == 2 && nameAndValue[0].equals(PARAM_PAGINGACTION)) {
+                searchId = nameAndValue[1];
+            } else if (nameAndValue.length == 2 && nameAndValue[0].equals(PARAM_PAGINGOFFSET)) {
+                offset = Integer.valueOf(nameAndValue[1]);
+            }
+        }
+        if (searchId == null || offset == null) {
+            return null;
+        }
+        long expiresAt = System.currentTimeMillis() + fisProperties.getFhir().getSearchCursorTtlInSeconds() * 1000L;
+        return new SearchCursor(searchId, offset, expiresAt, searchParametersHash).encode();
+    }
+
     public static PageDto<?> applyPaginationForSearchBundle(List<?> elements,
                                                             int totalElementsInBundle,
                                                             int numberOfElementsPerPage,
@@ -69,6 +145,22 @@ public static PageDto<?> applyPaginationForSearchBundle(List<?> elements,
         return new PageDto<>(elements, numberOfElementsPerPage, totalPages, currentPage, elements.size(), totalElementsInBundle);
     }
 
+    /**
+     * @return the total of the search, or when the server left it out, e.g. while still counting a large search, the
+     * matches up to the given page plus one when there is a next page, which still announces that page
+     */
+    public static int getTotal(Bundle searchBundle, int pageSize, Optional<Integer> pageNumber) {
+        if (searchBundle.hasTotal()) {
+            return searchBundle.getTotal();
+        }
+        int currentPage = isFirstPage(pageNumber) ? 1 : pageNumber.get();
+        long matchesInPage = searchBundle.getEntry().stream()
+                .filter(entry -> entry.getSearch().getMode() != Bundle.SearchEntryMode.INCLUDE && entry.getSearch().getMode() != Bundle.SearchEntryMode.OUTCOME)
+                .count();
+        int next = searchBundle.getLink(Bundle.LINK_NEXT) != null ? 1 : 0;
+        return (currentPage - 1) * pageSize + (int) matchesInPage + next;
+    }
+
     public static PageDto<?> applyPaginationForCustomArrayList(List<?> elements,
                                                                int numberOfElementsPerPage,
                                                                Optional<Integer> pageNumber,
@@ -168,4 +260,37 @@ public static int getValidPageSize(FisProperties fisProperties, Optional<Integer
         }
         return numberOfResourcesPerPage;
     }
+
+    private static class SearchCursor {
+        private final String searchId;
+        private final int offset;
+        private final long expiresAt;
+        private final String searchParametersHash;
+
+        SearchCursor(String searchId, int offset, long expiresAt, String searchParametersHash) {
+            this.searchId = searchId;
+            this.offset = offset;
+            this.expiresAt = expiresAt;
+            this.searchParametersHash = searchParametersHash;
+        }
+
+        String encode() {
+            String value = searchId + "|" + offset + "|" + expiresAt + "|" + searchParametersHash;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static SearchCursor decode(String cursor, String searchParametersHash) {
+            SearchCursor searchCursor;
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+                searchCursor = new SearchCursor(parts[0], Integer.parseInt(parts[1]), Long.parseLong(parts[2]), parts[3]);
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new BadRequestException("Invalid cursor: " + cursor);
+            }
+            if (!searchCursor.searchParametersHash.equals(searchParametersHash)) {
+                throw new BadRequestException("The cursor belongs to a search with other parameters, run the search again without it");
+            }
+            return searchCursor;
+        }
+    }
 }
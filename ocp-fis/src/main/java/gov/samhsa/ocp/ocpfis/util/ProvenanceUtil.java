@@ -27,6 +27,12 @@ public ProvenanceUtil(IGenericClient fhirClient) {
     }
 
     public void createProvenance(List<String> idList, ProvenanceActivityEnum provenanceActivityEnum, Optional<String> loggedInUser) {
+        Provenance provenance = buildProvenance(idList, provenanceActivityEnum, loggedInUser);
+        log.info("Creating Provenance");
+        fhirClient.create().resource(provenance).execute();
+    }
+
+    public Provenance buildProvenance(List<String> idList, ProvenanceActivityEnum provenanceActivityEnum, Optional<String> loggedInUser) {
         Provenance provenance = new Provenance();
 
         //target
@@ -62,7 +68,6 @@ public void createProvenance(List<String> idList, ProvenanceActivityEnum provena
         agent.setWho(whoRef);
 
         provenance.setAgent(Collections.singletonList(agent));
-        log.info("Creating Provenance");
-        fhirClient.create().resource(provenance).execute();
+        return provenance;
     }
 }
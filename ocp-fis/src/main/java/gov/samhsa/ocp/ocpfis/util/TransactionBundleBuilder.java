@@ -0,0 +1,83 @@
+package gov.samhsa.ocp.ocpfis.util;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.util.FhirTerser;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import gov.samhsa.ocp.ocpfis.service.exception.FHIRClientException;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.DomainResource;
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.dstu3.model.Reference;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Collects resources to be created together and submits them as a single FHIR transaction Bundle.
+ * Resources are addressed by urn:uuid placeholders until the server assigns their ids.
+ */
+@Slf4j
+public class TransactionBundleBuilder {
+
+    private final Bundle transactionBundle = new Bundle().setType(Bundle.BundleType.TRANSACTION);
+
+    public String create(DomainResource resource) {
+        String fullUrl = IdType.newRandomUuid().getValue();
+        transactionBundle.addEntry()
+                .setFullUrl(fullUrl)
+                .setResource(resource)
+                .getRequest()
+                .setMethod(Bundle.HTTPVerb.POST)
+                .setUrl(resource.getResourceType().name());
+        return fullUrl;
+    }
+
+    public List<String> getFullUrls() {
+        return transactionBundle.getEntry().stream().map(Bundle.BundleEntryComponent::getFullUrl).collect(toList());
+    }
+
+    /**
+     * @return the resources of the transaction, after it was submitted with their server assigned ids and their
+     * references to each other resolved
+     */
+    public List<DomainResource> getResources() {
+        return transactionBundle.getEntry().stream().map(entry -> (DomainResource) entry.getResource()).collect(toList());
+    }
+
+    /**
+     * @return the server assigned "ResourceType/id" of every entry, keyed by its urn:uuid placeholder
+     */
+    public Map<String, String> submit(IGenericClient fhirClient, String actionAndResourceName) {
+        try {
+            Bundle responseBundle = fhirClient.transaction().withBundle(transactionBundle).execute();
+
+            //Response entries are returned in the same order as the request entries
+            Map<String, String> createdIds = new LinkedHashMap<>();
+            for (int i = 0; i < transactionBundle.getEntry().size(); i++) {
+                String location = responseBundle.getEntry().get(i).getResponse().getLocation();
+                createdIds.put(transactionBundle.getEntry().get(i).getFullUrl(), new IdType(location).toUnqualifiedVersionless().getValue());
+            }
+            log.info(actionAndResourceName + " was successful. Created " + createdIds.values());
+            resolvePlaceholders(fhirClient.getFhirContext().newTerser(), createdIds);
+            return createdIds;
+        } catch (BaseServerResponseException e) {
+            log.error("Could NOT " + actionAndResourceName);
+            throw new FHIRClientException("FHIR Client returned with an error during " + actionAndResourceName + " : " + e.getMessage());
+        }
+    }
+
+    //The resources then read as the server stored them
+    private void resolvePlaceholders(FhirTerser fhirTerser, Map<String, String> createdIds) {
+        transactionBundle.getEntry().forEach(entry -> {
+            DomainResource resource = (DomainResource) entry.getResource();
+            resource.setId(createdIds.get(entry.getFullUrl()));
+            fhirTerser.getAllPopulatedChildElementsOfType(resource, Reference.class).stream()
+                    .filter(reference -> createdIds.containsKey(reference.getReference()))
+                    .forEach(reference -> reference.setReference(createdIds.get(reference.getReference())));
+        });
+    }
+}
@@ -1,5 +1,6 @@
 package gov.samhsa.ocp.ocpfis.web;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import gov.samhsa.ocp.ocpfis.service.AppointmentService;
 import gov.samhsa.ocp.ocpfis.service.dto.AppointmentDto;
 import gov.samhsa.ocp.ocpfis.service.dto.AppointmentParticipantReferenceDto;
@@ -7,6 +8,7 @@
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
 import gov.samhsa.ocp.ocpfis.service.dto.ParticipantReferenceDto;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -15,6 +17,7 @@
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -25,8 +28,11 @@ public class AppointmentController {
 
     private final AppointmentService appointmentService;
 
-    public AppointmentController(AppointmentService appointmentService) {
+    private final ObjectMapper objectMapper;
+
+    public AppointmentController(AppointmentService appointmentService, ObjectMapper objectMapper) {
         this.appointmentService = appointmentService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/appointments")
@@ -48,6 +54,13 @@ public List<ParticipantReferenceDto> getAppointmentParticipants(@PathVariable St
         return appointmentService.getAppointmentParticipants(patientId, roles, appointmentId);
     }
 
+    @GetMapping(value = "/appointments/export", produces = NdjsonResponse.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportAppointments(@RequestParam Optional<List<String>> statusList,
+                                                                    @RequestParam(value = "patientId") Optional<String> patientId,
+                                                                    @RequestParam(value = "practitionerId") Optional<String> practitionerId) {
+        return NdjsonResponse.of(appointmentService.exportAppointments(statusList, patientId, practitionerId), objectMapper);
+    }
+
     @GetMapping("/appointments/{appointmentId}")
     public AppointmentDto getAppointmentById(@PathVariable String appointmentId) {
         return appointmentService.getAppointmentById(appointmentId);
@@ -0,0 +1,48 @@
+package gov.samhsa.ocp.ocpfis.web;
+
+import gov.samhsa.ocp.ocpfis.domain.LookupPathUrls;
+import gov.samhsa.ocp.ocpfis.service.ValueSetLookUpCache;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
+import org.springframework.boot.actuate.endpoint.mvc.AbstractMvcEndpoint;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Administration of the in-process caches. It is an actuator endpoint, so it is only served under the management
+ * context and is protected by the management security like the other sensitive endpoints.
+ */
+@Component
+public class CacheMvcEndpoint extends AbstractMvcEndpoint {
+
+    private final ValueSetLookUpCache valueSetLookUpCache;
+
+    private final FhirProfileRegistry fhirProfileRegistry;
+
+    public CacheMvcEndpoint(ValueSetLookUpCache valueSetLookUpCache, FhirProfileRegistry fhirProfileRegistry) {
+        super("/caches", true);
+        this.valueSetLookUpCache = valueSetLookUpCache;
+        this.fhirProfileRegistry = fhirProfileRegistry;
+    }
+
+    @DeleteMapping("/lookups")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void evictLookups() {
+        valueSetLookUpCache.evictAll();
+    }
+
+    @DeleteMapping("/lookups/{lookup}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void evictLookup(@PathVariable LookupPathUrls lookup) {
+        valueSetLookUpCache.evict(lookup);
+    }
+
+    @PostMapping("/profiles/refresh")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void refreshProfiles() {
+        fhirProfileRegistry.refresh();
+    }
+}
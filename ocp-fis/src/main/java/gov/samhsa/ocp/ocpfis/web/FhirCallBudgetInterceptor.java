@@ -0,0 +1,116 @@
+package gov.samhsa.ocp.ocpfis.web;
+
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.service.exception.FhirCallBudgetExceededException;
+import gov.samhsa.ocp.ocpfis.util.FhirCallTracker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Counts the FHIR calls made for each controller call, returns them in the X-Fhir-* response headers and reports the
+ * controller calls that go over the FHIR call budget.
+ */
+@ControllerAdvice
+@Slf4j
+public class FhirCallBudgetInterceptor extends HandlerInterceptorAdapter implements ResponseBodyAdvice<Object> {
+
+    public static final String FHIR_CALLS_HEADER = "X-Fhir-Calls";
+    public static final String FHIR_TIME_HEADER = "X-Fhir-Time";
+    public static final String FHIR_BYTES_HEADER = "X-Fhir-Bytes";
+
+    private final FisProperties.Fhir.CallBudget callBudget;
+
+    public FhirCallBudgetInterceptor(FisProperties fisProperties) {
+        this.callBudget = fisProperties.getFhir().getCallBudget();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod) {
+            FhirCallTracker.start();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    // Response bodies are written before postHandle, so the headers are added here for controllers returning a body
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        FhirCallTracker.current().ifPresent(usage -> {
+            response.getHeaders().set(FHIR_CALLS_HEADER, String.valueOf(usage.getCalls()));
+            response.getHeaders().set(FHIR_TIME_HEADER, String.valueOf(usage.getTimeInMs()));
+            response.getHeaders().set(FHIR_BYTES_HEADER, String.valueOf(usage.getBytes()));
+            failIfOverBudget(usage, returnType.getDeclaringClass().getSimpleName() + "." + returnType.getMethod().getName());
+        });
+        return body;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) {
+        if (!response.isCommitted() && handler instanceof HandlerMethod) {
+            FhirCallTracker.current().ifPresent(usage -> {
+                response.setHeader(FHIR_CALLS_HEADER, String.valueOf(usage.getCalls()));
+                response.setHeader(FHIR_TIME_HEADER, String.valueOf(usage.getTimeInMs()));
+                response.setHeader(FHIR_BYTES_HEADER, String.valueOf(usage.getBytes()));
+                failIfOverBudget(usage, getControllerMethod((HandlerMethod) handler));
+            });
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        FhirCallTracker.current().ifPresent(usage -> {
+            if (isOverBudget(usage) && handler instanceof HandlerMethod) {
+                log.warn(getOverBudgetMessage(usage, getControllerMethod((HandlerMethod) handler)));
+            }
+        });
+        FhirCallTracker.stop();
+    }
+
+    // Streamed responses are written on another thread, the request thread is done with the FHIR calls
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        FhirCallTracker.stop();
+    }
+
+    private void failIfOverBudget(FhirCallTracker.Usage usage, String controllerMethod) {
+        if (callBudget.isFailWhenExceeded() && isOverBudget(usage)) {
+            String message = getOverBudgetMessage(usage, controllerMethod);
+            log.warn(message);
+            // Reported once, the error response is not checked again
+            FhirCallTracker.stop();
+            throw new FhirCallBudgetExceededException(message);
+        }
+    }
+
+    private String getOverBudgetMessage(FhirCallTracker.Usage usage, String controllerMethod) {
+        return "FHIR call budget exceeded by " + controllerMethod + ": " + usage.getCalls() + " calls in " + usage.getTimeInMs() + " ms, "
+                + usage.getBytes() + " bytes; the budget is " + callBudget.getMaxCalls() + " calls in " + callBudget.getMaxTimeInMs() + " ms";
+    }
+
+    private boolean isOverBudget(FhirCallTracker.Usage usage) {
+        return usage.getCalls() > callBudget.getMaxCalls() || usage.getTimeInMs() > callBudget.getMaxTimeInMs();
+    }
+
+    private static String getControllerMethod(HandlerMethod handlerMethod) {
+        return handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName();
+    }
+}
@@ -0,0 +1,28 @@
+package gov.samhsa.ocp.ocpfis.web;
+
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptorAdapter;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Gives the streamed NDJSON exports a longer async request timeout, the other async requests keep the default one.
+ */
+public class NdjsonExportTimeoutInterceptor extends CallableProcessingInterceptorAdapter {
+
+    private final long requestTimeoutInMs;
+
+    public NdjsonExportTimeoutInterceptor(long requestTimeoutInMs) {
+        this.requestTimeoutInMs = requestTimeoutInMs;
+    }
+
+    // Called on the request thread before the async processing, and with it the timeout, starts
+    @Override
+    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+        if (request instanceof AsyncWebRequest && Boolean.TRUE.equals(request.getAttribute(NdjsonResponse.EXPORT_REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST))) {
+            ((AsyncWebRequest) request).setTimeout(requestTimeoutInMs);
+        }
+    }
+}
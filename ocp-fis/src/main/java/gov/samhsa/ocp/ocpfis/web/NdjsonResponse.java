@@ -0,0 +1,81 @@
+package gov.samhsa.ocp.ocpfis.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Streams DTOs as newline delimited JSON, writing each one as soon as it is mapped.
+ */
+@Slf4j
+public final class NdjsonResponse {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    // Marks the request for the export request timeout, see NdjsonExportTimeoutInterceptor
+    public static final String EXPORT_REQUEST_ATTRIBUTE = NdjsonResponse.class.getName() + ".EXPORT";
+
+    public static final String ERROR_FIELD = "error";
+
+    static final String EXPORT_FAILED_MESSAGE = "The export failed, the records above are incomplete";
+
+    private static final int FLUSH_INTERVAL = 100;
+
+    private NdjsonResponse() {
+    }
+
+    public static <T> ResponseEntity<StreamingResponseBody> of(Stream<T> elements, ObjectMapper objectMapper) {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            requestAttributes.setAttribute(EXPORT_REQUEST_ATTRIBUTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            // Closing the stream abandons the FHIR page requested ahead, also when writing fails because the client went away
+            try (Stream<T> stream = elements) {
+                Iterator<T> iterator = stream.iterator();
+                int count = 0;
+                Optional<byte[]> line;
+                while ((line = nextLine(iterator, objectMapper, outputStream, count)).isPresent()) {
+                    outputStream.write(line.get());
+                    outputStream.write('\n');
+                    if (++count % FLUSH_INTERVAL == 0) {
+                        outputStream.flush();
+                    }
+                }
+                outputStream.flush();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+
+    /**
+     * The 200 status is sent with the first records, so a failure while reading or mapping further records ends the
+     * export with an error record before the response is aborted.
+     */
+    private static <T> Optional<byte[]> nextLine(Iterator<T> iterator, ObjectMapper objectMapper, OutputStream outputStream, int count) throws IOException {
+        try {
+            return iterator.hasNext() ? Optional.of(objectMapper.writeValueAsBytes(iterator.next())) : Optional.empty();
+        } catch (RuntimeException | JsonProcessingException e) {
+            log.error("NDJSON export failed after " + count + " records", e);
+            outputStream.write(objectMapper.writeValueAsBytes(Collections.singletonMap(ERROR_FIELD, EXPORT_FAILED_MESSAGE)));
+            outputStream.write('\n');
+            outputStream.flush();
+            throw e;
+        }
+    }
+}
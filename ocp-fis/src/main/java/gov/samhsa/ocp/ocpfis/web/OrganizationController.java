@@ -42,8 +42,8 @@ public OrganizationDto getOrganization(@PathVariable String organizationId) {
     }
 
     @GetMapping("/search")
-    public PageDto<OrganizationDto> searchOrganizations(@RequestParam Optional<SearchType> searchType, @RequestParam Optional<String> searchValue, @RequestParam Optional<Boolean> showInactive, @RequestParam Optional<Integer> page, @RequestParam Optional<Integer> size, Optional<Boolean> showAll) {
-        return organizationService.searchOrganizations(searchType, searchValue, showInactive, page, size, showAll);
+    public PageDto<OrganizationDto> searchOrganizations(@RequestParam Optional<SearchType> searchType, @RequestParam Optional<String> searchValue, @RequestParam Optional<Boolean> showInactive, @RequestParam Optional<Integer> page, @RequestParam Optional<Integer> size, Optional<Boolean> showAll, @RequestParam Optional<String> cursor) {
+        return organizationService.searchOrganizations(searchType, searchValue, showInactive, page, size, showAll, cursor);
     }
 
     @PostMapping
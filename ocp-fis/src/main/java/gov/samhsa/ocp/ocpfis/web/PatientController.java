@@ -1,11 +1,13 @@
 package gov.samhsa.ocp.ocpfis.web;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import gov.samhsa.ocp.ocpfis.service.PatientService;
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PatientDto;
 import gov.samhsa.ocp.ocpfis.service.exception.BadRequestException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -15,6 +17,7 @@
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import java.util.Arrays;
@@ -31,8 +34,11 @@ public enum SearchType {
 
     private final PatientService patientService;
 
-    public PatientController(PatientService patientService) {
+    private final ObjectMapper objectMapper;
+
+    public PatientController(PatientService patientService, ObjectMapper objectMapper) {
         this.patientService = patientService;
+        this.objectMapper = objectMapper;
     }
 
 
@@ -45,8 +51,15 @@ public PageDto<PatientDto> getPatientsByValue(@RequestParam(value = "type", defa
                                                   @RequestParam(value = "showInactive", defaultValue = "false") Optional<Boolean> showInactive,
                                                   @RequestParam Optional<Integer> page,
                                                   @RequestParam Optional<Integer> size,
-                                                  @RequestParam(value="showAll") Optional<Boolean> showAll) {
-        return patientService.getPatientsByValue(searchKey, searchValue, filterKey, organization, practitioner, showInactive, page, size,showAll);
+                                                  @RequestParam(value="showAll") Optional<Boolean> showAll,
+                                                  @RequestParam Optional<String> cursor) {
+        return patientService.getPatientsByValue(searchKey, searchValue, filterKey, organization, practitioner, showInactive, page, size, showAll, cursor);
+    }
+
+    @GetMapping(value = "/export", produces = NdjsonResponse.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPatients(@RequestParam(value = "organization") Optional<String> organization,
+                                                                @RequestParam(value = "showInactive", defaultValue = "false") Optional<Boolean> showInactive) {
+        return NdjsonResponse.of(patientService.exportPatients(organization, showInactive), objectMapper);
     }
 
     @PostMapping
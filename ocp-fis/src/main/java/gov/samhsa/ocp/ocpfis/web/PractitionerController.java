@@ -1,11 +1,13 @@
 package gov.samhsa.ocp.ocpfis.web;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import gov.samhsa.ocp.ocpfis.service.PractitionerService;
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PractitionerDto;
 import gov.samhsa.ocp.ocpfis.service.dto.ReferenceDto;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -15,6 +17,7 @@
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 
 import javax.validation.Valid;
@@ -31,9 +34,17 @@ public enum SearchType {
     @Autowired
     private PractitionerService practitionerService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @GetMapping("/search")
-    public PageDto<PractitionerDto> searchPractitioners(@RequestParam Optional<SearchType> searchType, @RequestParam Optional<String> searchValue,Optional<String> organization, @RequestParam Optional<Boolean> showInactive, @RequestParam Optional<Integer> page, @RequestParam Optional<Integer> size,Optional<Boolean> showAll) {
-        return practitionerService.searchPractitioners(searchType, searchValue, organization, showInactive, page, size,showAll);
+    public PageDto<PractitionerDto> searchPractitioners(@RequestParam Optional<SearchType> searchType, @RequestParam Optional<String> searchValue,Optional<String> organization, @RequestParam Optional<Boolean> showInactive, @RequestParam Optional<Integer> page, @RequestParam Optional<Integer> size,Optional<Boolean> showAll, @RequestParam Optional<String> cursor) {
+        return practitionerService.searchPractitioners(searchType, searchValue, organization, showInactive, page, size, showAll, cursor);
+    }
+
+    @GetMapping(value = "/export", produces = NdjsonResponse.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPractitioners(@RequestParam Optional<String> organization, @RequestParam Optional<Boolean> showInactive) {
+        return NdjsonResponse.of(practitionerService.exportPractitioners(organization, showInactive), objectMapper);
     }
 
     @GetMapping("/find")
@@ -49,8 +49,9 @@ public PageDto<RelatedPersonDto> getRelatedPersons(
                                                        @RequestParam Optional<Boolean> showInActive,
                                                        @RequestParam Optional<Integer> pageNumber,
                                                        @RequestParam Optional<Integer> pageSize,
-                                                       @RequestParam Optional<Boolean> showAll) {
-        return relatedPersonService.searchRelatedPersons(patientId, searchKey, searchValue, showInActive, pageNumber, pageSize,showAll);
+                                                       @RequestParam Optional<Boolean> showAll,
+                                                       @RequestParam Optional<String> cursor) {
+        return relatedPersonService.searchRelatedPersons(patientId, searchKey, searchValue, showInActive, pageNumber, pageSize, showAll, cursor);
     }
 
     @GetMapping("/{relatedPersonId}")
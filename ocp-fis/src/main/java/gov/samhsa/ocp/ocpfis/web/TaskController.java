@@ -1,5 +1,6 @@
 package gov.samhsa.ocp.ocpfis.web;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import gov.samhsa.ocp.ocpfis.domain.DateRangeEnum;
 import gov.samhsa.ocp.ocpfis.service.TaskService;
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
@@ -9,6 +10,7 @@
 import org.hl7.fhir.exceptions.FHIRException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -17,6 +19,7 @@
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -29,6 +32,9 @@ public class TaskController {
     @Autowired
     private TaskService taskService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @GetMapping("/tasks/search")
     public PageDto<TaskDto> getTasks(@RequestParam Optional<List<String>> statusList,
                                      @RequestParam(value = "searchType") String searchKey,
@@ -64,6 +70,13 @@ public void deactivateTask(@PathVariable String taskId) {
         taskService.deactivateTask(taskId);
     }
 
+    @GetMapping(value = "/tasks/export", produces = NdjsonResponse.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportTasks(@RequestParam Optional<List<String>> statusList,
+                                                             @RequestParam(value = "patient") Optional<String> patient,
+                                                             @RequestParam(value = "organization") Optional<String> organization) {
+        return NdjsonResponse.of(taskService.exportTasks(statusList, patient, organization), objectMapper);
+    }
+
     @GetMapping("/tasks/{taskId}")
     public TaskDto getTaskById(@PathVariable String taskId) {
         return taskService.getTaskById(taskId);
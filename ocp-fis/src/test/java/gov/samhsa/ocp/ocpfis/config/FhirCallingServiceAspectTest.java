@@ -0,0 +1,95 @@
+package gov.samhsa.ocp.ocpfis.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import gov.samhsa.ocp.ocpfis.service.CareTeamGraph;
+import gov.samhsa.ocp.ocpfis.service.CareTeamServiceImpl;
+import gov.samhsa.ocp.ocpfis.service.CommunicationService;
+import gov.samhsa.ocp.ocpfis.service.IdentifierIndex;
+import gov.samhsa.ocp.ocpfis.service.LookUpService;
+import gov.samhsa.ocp.ocpfis.service.OrganizationMembershipService;
+import gov.samhsa.ocp.ocpfis.service.PractitionerServiceImpl;
+import gov.samhsa.ocp.ocpfis.service.ReferenceResolver;
+import gov.samhsa.ocp.ocpfis.util.FhirCallTracker;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
+import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.modelmapper.ModelMapper;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class FhirCallingServiceAspectTest {
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().registerSingleton("fisProperties", fhirStub.newFisProperties());
+        context.getBeanFactory().registerSingleton("modelMapper", new ModelMapper());
+        context.getBeanFactory().registerSingleton("lookUpService", mock(LookUpService.class));
+        context.getBeanFactory().registerSingleton("provenanceUtil", mock(ProvenanceUtil.class));
+        context.getBeanFactory().registerSingleton("identifierIndex", mock(IdentifierIndex.class));
+        context.getBeanFactory().registerSingleton("organizationMembershipService", mock(OrganizationMembershipService.class));
+        context.getBeanFactory().registerSingleton("fhirProfileRegistry", mock(FhirProfileRegistry.class));
+        context.getBeanFactory().registerSingleton("communicationService", mock(CommunicationService.class));
+        context.getBeanFactory().registerSingleton("referenceResolver", mock(ReferenceResolver.class));
+        context.getBeanFactory().registerSingleton("careTeamGraph", mock(CareTeamGraph.class));
+        context.register(FhirServiceConfig.class, PractitionerServiceImpl.class, CareTeamServiceImpl.class);
+        context.refresh();
+        context.getBean(FhirContext.class).getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void testServicesInjectedByTheirClassAreProxiedByClass() {
+        //Act
+        CareTeamServiceImpl careTeamService = context.getBean(CareTeamServiceImpl.class);
+        PractitionerServiceImpl practitionerService = context.getBean(PractitionerServiceImpl.class);
+
+        //Assert
+        assertTrue(AopUtils.isCglibProxy(careTeamService));
+        assertTrue(AopUtils.isCglibProxy(practitionerService));
+        assertSame(practitionerService, ReflectionTestUtils.getField(AopTestUtils.getTargetObject(careTeamService), "practitionerService"));
+    }
+
+    @Test
+    public void testFhirCallsAreReportedUnderTheServiceClass() {
+        //Arrange
+        CareTeamServiceImpl careTeamService = context.getBean(CareTeamServiceImpl.class);
+
+        //Act
+        careTeamService.getCareTeams(Optional.empty(), "patientId", "1", Optional.of(1), Optional.of(20));
+
+        //Assert
+        Map<String, Number> metrics = context.getBean(FhirClientCallMetrics.class).metrics().stream()
+                .collect(toMap(Metric::getName, metric -> (Number) metric.getValue()));
+        assertEquals(1, metrics.get("fhir.client.calls.CareTeamServiceImpl.CareTeam.search.count").intValue());
+        assertFalse(FhirCallTracker.currentCaller().isPresent());
+    }
+}
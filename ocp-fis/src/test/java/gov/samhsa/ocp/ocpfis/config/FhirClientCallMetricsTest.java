@@ -0,0 +1,196 @@
+package gov.samhsa.ocp.ocpfis.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServer;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import gov.samhsa.ocp.ocpfis.service.OAuth2AccessTokenHolder;
+import gov.samhsa.ocp.ocpfis.util.FhirCallTracker;
+import gov.samhsa.ocp.ocpfis.util.FhirOperationUtil;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FhirClientCallMetricsTest {
+
+    private static final String METRIC_PREFIX = "fhir.client.calls.";
+    private static final long SLOW_SERVER_LATENCY_IN_MS = 2000;
+    private static final long ACCESS_TOKEN_WAIT_IN_MS = 1000;
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    @ClassRule
+    public static FhirStubServerRule slowFhirStub = new FhirStubServerRule(FhirStubServer.builder().latencyInMs(SLOW_SERVER_LATENCY_IN_MS));
+
+    private AnnotationConfigApplicationContext context;
+
+    private String patientId;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        patientId = fhirStub.getStore().create(new Patient()).getIdElement().getIdPart();
+    }
+
+    @After
+    public void tearDown() {
+        FhirCallTracker.stop();
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void testRecordsCallsWithTheirWireBytes() {
+        //Arrange
+        IGenericClient fhirClient = startContext(fhirStub.newFisProperties(), Optional.empty());
+        FhirCallTracker.Usage usage = FhirCallTracker.start();
+
+        //Act
+        fhirClient.read().resource(Patient.class).withId(patientId).execute();
+        fhirClient.search().forResource(Patient.class).returnBundle(Bundle.class).execute();
+
+        //Assert
+        Map<String, Number> metrics = getMetrics();
+        assertEquals(1, metrics.get(METRIC_PREFIX + "unknown.Patient.read.count").intValue());
+        assertEquals(1, metrics.get(METRIC_PREFIX + "unknown.Patient.read.status.200").intValue());
+        assertEquals(0, metrics.get(METRIC_PREFIX + "unknown.Patient.read.failed").intValue());
+        assertEquals(1, metrics.get(METRIC_PREFIX + "unknown.Patient.search.count").intValue());
+        long responseBytes = metrics.get(METRIC_PREFIX + "unknown.Patient.read.responseBytes").longValue()
+                + metrics.get(METRIC_PREFIX + "unknown.Patient.search.responseBytes").longValue();
+        assertTrue(responseBytes > 0);
+        assertEquals(2, usage.getCalls());
+        assertEquals(responseBytes, usage.getBytes());
+    }
+
+    @Test
+    public void testCountsCallsFailingToConnect() throws IOException {
+        //Arrange
+        FisProperties fisProperties = fhirStub.newFisProperties();
+        fisProperties.getFhir().setServerUrl("http://localhost:" + getUnusedPort() + "/fhir");
+        IGenericClient fhirClient = startContext(fisProperties, Optional.empty());
+        FhirCallTracker.Usage usage = FhirCallTracker.start();
+
+        //Act
+        try {
+            fhirClient.read().resource(Patient.class).withId(patientId).execute();
+            fail("Reading from a server that is down should fail");
+        } catch (FhirClientConnectionException e) {
+            //Assert
+            Map<String, Number> metrics = getMetrics();
+            assertEquals(1, metrics.get(METRIC_PREFIX + "unknown.Patient.read.count").intValue());
+            assertEquals(1, metrics.get(METRIC_PREFIX + "unknown.Patient.read.failed").intValue());
+            assertEquals(1, usage.getCalls());
+        }
+    }
+
+    @Test
+    public void testCountsCallsTimingOut() {
+        //Arrange
+        slowFhirStub.reset();
+        String slowPatientId = slowFhirStub.getStore().create(new Patient()).getIdElement().getIdPart();
+        FisProperties fisProperties = slowFhirStub.newFisProperties();
+        fisProperties.getFhir().setClientSocketTimeoutInMs("200");
+        IGenericClient fhirClient = startContext(fisProperties, Optional.empty());
+
+        //Act
+        try {
+            fhirClient.read().resource(Patient.class).withId(slowPatientId).execute();
+            fail("Reading from a server slower than the socket timeout should fail");
+        } catch (FhirClientConnectionException e) {
+            //Assert
+            Map<String, Number> metrics = getMetrics();
+            assertEquals(1, metrics.get(METRIC_PREFIX + "unknown.Patient.read.failed").intValue());
+            assertTrue(metrics.get(METRIC_PREFIX + "unknown.Patient.read.maxTimeInMs").longValue() < SLOW_SERVER_LATENCY_IN_MS);
+        }
+    }
+
+    @Test
+    public void testDoesNotCountTheAccessTokenWait() {
+        //Arrange
+        FisProperties fisProperties = fhirStub.newFisProperties();
+        fisProperties.getFhir().setServerSecurityEnabled(true);
+        OAuth2AccessTokenHolder oAuth2AccessTokenHolder = mock(OAuth2AccessTokenHolder.class);
+        when(oAuth2AccessTokenHolder.getAccessTokenValue()).thenAnswer(invocation -> {
+            Thread.sleep(ACCESS_TOKEN_WAIT_IN_MS);
+            return "access-token";
+        });
+        IGenericClient fhirClient = startContext(fisProperties, Optional.of(oAuth2AccessTokenHolder));
+
+        //Act
+        fhirClient.read().resource(Patient.class).withId(patientId).execute();
+
+        //Assert
+        Map<String, Number> metrics = getMetrics();
+        assertEquals(1, metrics.get(METRIC_PREFIX + "unknown.Patient.read.count").intValue());
+        assertTrue(metrics.get(METRIC_PREFIX + "unknown.Patient.read.maxTimeInMs").longValue() < ACCESS_TOKEN_WAIT_IN_MS);
+    }
+
+    @Test
+    public void testReportsTheCallingServiceAlsoOnThePageFetchThreads() {
+        //Arrange
+        IntStream.range(0, 29).forEach(i -> fhirStub.getStore().create(new Patient()));
+        FisProperties fisProperties = fhirStub.newFisProperties();
+        IGenericClient fhirClient = startContext(fisProperties, Optional.empty());
+        String previousCaller = FhirCallTracker.enterCaller("PatientServiceImpl");
+
+        //Act
+        try {
+            Bundle firstPage = fhirClient.search().forResource(Patient.class).count(10).returnBundle(Bundle.class).execute();
+            FhirOperationUtil.getAllBundleComponentsAsList(firstPage, Optional.of(10), fhirClient, fisProperties, context.getBean("fhirQueryExecutor", AsyncTaskExecutor.class));
+        } finally {
+            FhirCallTracker.restoreCaller(previousCaller);
+        }
+
+        //Assert
+        Map<String, Number> metrics = getMetrics();
+        assertEquals(1, metrics.get(METRIC_PREFIX + "PatientServiceImpl.Patient.search.count").intValue());
+        assertEquals(2, metrics.get(METRIC_PREFIX + "PatientServiceImpl.searchset.page.count").intValue());
+        assertFalse(metrics.keySet().stream().anyMatch(name -> name.startsWith(METRIC_PREFIX + "unknown.")));
+    }
+
+    private IGenericClient startContext(FisProperties fisProperties, Optional<OAuth2AccessTokenHolder> oAuth2AccessTokenHolder) {
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().registerSingleton("fisProperties", fisProperties);
+        oAuth2AccessTokenHolder.ifPresent(holder -> context.getBeanFactory().registerSingleton("oAuth2AccessTokenHolder", holder));
+        context.register(FhirServiceConfig.class);
+        context.refresh();
+        //Only the calls of the test are counted, not the server conformance check
+        context.getBean(FhirContext.class).getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+        return context.getBean(IGenericClient.class);
+    }
+
+    private Map<String, Number> getMetrics() {
+        return context.getBean(FhirClientCallMetrics.class).metrics().stream()
+                .collect(toMap(Metric::getName, metric -> (Number) metric.getValue()));
+    }
+
+    private static int getUnusedPort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+}
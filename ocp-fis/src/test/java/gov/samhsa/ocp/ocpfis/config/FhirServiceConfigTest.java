@@ -0,0 +1,76 @@
+package gov.samhsa.ocp.ocpfis.config;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.Map;
+
+import static java.util.stream.Collectors.toMap;
+import static org.junit.Assert.assertEquals;
+
+public class FhirServiceConfigTest {
+
+    private static final int MAX_TOTAL_CONNECTIONS = 7;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 3;
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        FisProperties fisProperties = fhirStub.newFisProperties();
+        fisProperties.getFhir().getTransport().setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+        fisProperties.getFhir().getTransport().setMaxConnectionsPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().registerSingleton("fisProperties", fisProperties);
+        context.register(FhirServiceConfig.class);
+        context.refresh();
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void testFhirClientConnectionManagerUsesTransportPoolSizes() {
+        //Act
+        PoolingHttpClientConnectionManager connectionManager = context.getBean(PoolingHttpClientConnectionManager.class);
+
+        //Assert
+        assertEquals(MAX_TOTAL_CONNECTIONS, connectionManager.getMaxTotal());
+        assertEquals(MAX_CONNECTIONS_PER_ROUTE, connectionManager.getDefaultMaxPerRoute());
+    }
+
+    @Test
+    public void testFhirClientReusesPooledConnection() {
+        //Arrange
+        String patientId = fhirStub.getStore().create(new Patient()).getIdElement().getIdPart();
+        IGenericClient fhirClient = context.getBean(IGenericClient.class);
+
+        //Act
+        for (int i = 0; i < 5; i++) {
+            fhirClient.read().resource(Patient.class).withId(patientId).execute();
+        }
+
+        //Assert
+        Map<String, Number> metrics = context.getBean(FhirClientPoolMetrics.class).metrics().stream()
+                .collect(toMap(Metric::getName, metric -> (Number) metric.getValue()));
+        //Sequential requests return their connection to the pool and the next request reuses it
+        assertEquals(0, metrics.get("fhir.client.pool.leased").intValue());
+        assertEquals(1, metrics.get("fhir.client.pool.available").intValue());
+        assertEquals(MAX_TOTAL_CONNECTIONS, metrics.get("fhir.client.pool.max").intValue());
+    }
+}
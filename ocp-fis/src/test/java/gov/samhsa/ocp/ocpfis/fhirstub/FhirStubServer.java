@@ -0,0 +1,119 @@
+package gov.samhsa.ocp.ocpfis.fhirstub;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.server.FifoMemoryPagingProvider;
+import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import lombok.Builder;
+import lombok.Getter;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.hl7.fhir.dstu3.model.ActivityDefinition;
+import org.hl7.fhir.dstu3.model.Appointment;
+import org.hl7.fhir.dstu3.model.CareTeam;
+import org.hl7.fhir.dstu3.model.CodeSystem;
+import org.hl7.fhir.dstu3.model.Communication;
+import org.hl7.fhir.dstu3.model.Consent;
+import org.hl7.fhir.dstu3.model.Coverage;
+import org.hl7.fhir.dstu3.model.EpisodeOfCare;
+import org.hl7.fhir.dstu3.model.Flag;
+import org.hl7.fhir.dstu3.model.HealthcareService;
+import org.hl7.fhir.dstu3.model.Location;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.PractitionerRole;
+import org.hl7.fhir.dstu3.model.Provenance;
+import org.hl7.fhir.dstu3.model.RelatedPerson;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.dstu3.model.SearchParameter;
+import org.hl7.fhir.dstu3.model.StructureDefinition;
+import org.hl7.fhir.dstu3.model.Task;
+import org.hl7.fhir.dstu3.model.ValueSet;
+
+import javax.servlet.DispatcherType;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * An in-memory DSTU3 FHIR server on a free local port, for tests that exercise the FIS services against real HTTP
+ * traffic: paging, includes, transactions and, when configured, the latency and bandwidth of a remote server.
+ * <p>
+ * <pre>
+ * try (FhirStubServer server = FhirStubServer.builder().latencyInMs(50).build().start()) {
+ *     new SyntheticDataGenerator(42).generate(server.getStore(), 250);
+ *     IGenericClient client = fhirContext.newRestfulGenericClient(server.getServerUrl());
+ *     ...
+ * }
+ * </pre>
+ * JUnit tests use it through {@link FhirStubServerRule}.
+ */
+public class FhirStubServer implements AutoCloseable {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAXIMUM_PAGE_SIZE = 500;
+    private static final int MAXIMUM_SEARCHES_KEPT = 1000;
+
+    private static final List<Class<? extends Resource>> RESOURCE_TYPES = Arrays.asList(
+            ActivityDefinition.class, Appointment.class, CareTeam.class, CodeSystem.class, Communication.class,
+            Consent.class, Coverage.class, EpisodeOfCare.class, Flag.class, HealthcareService.class, Location.class,
+            Organization.class, Patient.class, Practitioner.class, PractitionerRole.class, Provenance.class,
+            RelatedPerson.class, SearchParameter.class, StructureDefinition.class, Task.class, ValueSet.class);
+
+    @Getter
+    private final InMemoryFhirStore store = new InMemoryFhirStore();
+
+    private final Server server;
+
+    /**
+     * @param latencyInMs     delay of each response
+     * @param bytesPerSecond  bandwidth of the responses, 0 for no limit
+     * @param defaultPageSize page size of the searches without _count
+     */
+    @Builder
+    private FhirStubServer(long latencyInMs, long bytesPerSecond, int defaultPageSize) {
+        FhirContext fhirContext = FhirContext.forDstu3();
+        SearchParameterMatcher matcher = new SearchParameterMatcher(fhirContext);
+
+        RestfulServer restfulServer = new RestfulServer(fhirContext);
+        restfulServer.setDefaultResponseEncoding(EncodingEnum.JSON);
+        restfulServer.setResourceProviders(RESOURCE_TYPES.stream()
+                .map(resourceType -> (IResourceProvider) new InMemoryResourceProvider(resourceType, fhirContext, store, matcher))
+                .collect(toList()));
+        restfulServer.registerProvider(new InMemoryTransactionProvider(fhirContext, store));
+        restfulServer.registerInterceptor(new SearchSetInterceptor());
+
+        FifoMemoryPagingProvider pagingProvider = new FifoMemoryPagingProvider(MAXIMUM_SEARCHES_KEPT);
+        pagingProvider.setDefaultPageSize(defaultPageSize > 0 ? defaultPageSize : DEFAULT_PAGE_SIZE);
+        pagingProvider.setMaximumPageSize(MAXIMUM_PAGE_SIZE);
+        restfulServer.setPagingProvider(pagingProvider);
+
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(restfulServer), "/fhir/*");
+        context.addFilter(new FilterHolder(new ThrottlingFilter(latencyInMs, bytesPerSecond)), "/*", EnumSet.of(DispatcherType.REQUEST));
+
+        server = new Server(0);
+        server.setHandler(context);
+    }
+
+    public FhirStubServer start() throws Exception {
+        server.start();
+        return this;
+    }
+
+    public String getServerUrl() {
+        return "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/fhir";
+    }
+
+    @Override
+    public void close() throws Exception {
+        server.stop();
+    }
+}
@@ -0,0 +1,144 @@
+package gov.samhsa.ocp.ocpfis.fhirstub;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import org.junit.rules.ExternalResource;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@link FhirStubServer} around the tests of a class and provides a client and FIS properties pointing to it.
+ * <p>
+ * <pre>
+ * &#64;ClassRule
+ * public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+ * </pre>
+ */
+public class FhirStubServerRule extends ExternalResource {
+
+    // Creating a FHIR context is slow, all tests share one
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forDstu3();
+
+    static {
+        FHIR_CONTEXT.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+    }
+
+    private final FhirStubServer.FhirStubServerBuilder serverBuilder;
+
+    private final AtomicInteger callCount = new AtomicInteger();
+
+    private FhirStubServer server;
+
+    private IGenericClient fhirClient;
+
+    public FhirStubServerRule() {
+        this(FhirStubServer.builder());
+    }
+
+    public FhirStubServerRule(FhirStubServer.FhirStubServerBuilder serverBuilder) {
+        this.serverBuilder = serverBuilder;
+    }
+
+    @Override
+    protected void before() throws Exception {
+        server = serverBuilder.build().start();
+        fhirClient = FHIR_CONTEXT.newRestfulGenericClient(server.getServerUrl());
+        fhirClient.registerInterceptor(new IClientInterceptor() {
+            @Override
+            public void interceptRequest(IHttpRequest theRequest) {
+                callCount.incrementAndGet();
+            }
+
+            @Override
+            public void interceptResponse(IHttpResponse theResponse) {
+            }
+        });
+    }
+
+    @Override
+    protected void after() {
+        try {
+            server.close();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to stop the stub FHIR server", e);
+        }
+    }
+
+    public static FhirContext getFhirContext() {
+        return FHIR_CONTEXT;
+    }
+
+    public InMemoryFhirStore getStore() {
+        return server.getStore();
+    }
+
+    public String getServerUrl() {
+        return server.getServerUrl();
+    }
+
+    /**
+     * A new client of the stub server, for tests that register their own interceptors.
+     */
+    public IGenericClient newFhirClient() {
+        return FHIR_CONTEXT.newRestfulGenericClient(server.getServerUrl());
+    }
+
+    public IGenericClient getFhirClient() {
+        return fhirClient;
+    }
+
+    /**
+     * @return the number of requests made through {@link #getFhirClient()} since the last reset
+     */
+    public int getCallCount() {
+        return callCount.get();
+    }
+
+    public void resetCallCount() {
+        callCount.set(0);
+    }
+
+    /**
+     * Clears the store and the call count, to be called before each test.
+     */
+    public void reset() {
+        getStore().clear();
+        resetCallCount();
+    }
+
+    /**
+     * @return the FIS properties with their defaults, the stub server as FHIR server and the mandatory nested
+     * properties set
+     */
+    public FisProperties newFisProperties() {
+        FisProperties fisProperties = new FisProperties();
+        FisProperties.Fhir fhir = new FisProperties.Fhir();
+        fhir.setServerUrl(server.getServerUrl());
+        fhir.setClientSocketTimeoutInMs("10000");
+        fhir.setDefaultResourceBundlePageSize(20);
+        fisProperties.setFhir(fhir);
+        fisProperties.setResourceSinglePageLimit(100);
+        fisProperties.setDefaultOrganization("organization-default");
+        fisProperties.setDefaultPractitioner("practitioner-default");
+        fisProperties.setActivityDefinition(new FisProperties.ActivityDefinition());
+        fisProperties.setAppointment(new FisProperties.Appointment());
+        fisProperties.setCommunication(new FisProperties.Communication());
+        fisProperties.setHealthcareService(new FisProperties.HealthcareService());
+        fisProperties.setLocation(new FisProperties.Location());
+        fisProperties.setPractitioner(new FisProperties.Practitioner());
+        fisProperties.setOrganization(new FisProperties.Organization());
+        fisProperties.setRelatedPerson(new FisProperties.RelatedPerson());
+        fisProperties.setCareTeam(new FisProperties.CareTeam());
+        fisProperties.setCoverage(new FisProperties.Coverage());
+        FisProperties.Patient patient = new FisProperties.Patient();
+        patient.getMrn().setCodeSystem("http://ocp.samhsa.gov/mrn");
+        patient.getMrn().setLength(10);
+        fisProperties.setPatient(patient);
+        return fisProperties;
+    }
+}
@@ -0,0 +1,95 @@
+package gov.samhsa.ocp.ocpfis.fhirstub;
+
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.dstu3.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resources of the stub server by type and id, in the order they were created. Callers get copies, so the stored
+ * resources only change through the store.
+ */
+public class InMemoryFhirStore {
+
+    private final Map<String, Map<String, Resource>> resourcesByType = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /**
+     * Stores the resource with its own id, or with a new one when it has none.
+     *
+     * @return the stored resource
+     */
+    public Resource create(Resource resource) {
+        String resourceType = resource.getResourceType().name();
+        String id = resource.getIdElement().hasIdPart() ? resource.getIdElement().getIdPart() : newId();
+        Resource stored = resource.copy();
+        stored.setId(new IdType(resourceType, id, "1"));
+        stored.getMeta().setVersionId("1").setLastUpdated(new Date());
+        getResources(resourceType).put(id, stored);
+        return stored.copy();
+    }
+
+    public Resource update(Resource resource) {
+        String resourceType = resource.getResourceType().name();
+        String id = resource.getIdElement().getIdPart();
+        Map<String, Resource> resources = getResources(resourceType);
+        synchronized (resources) {
+            Resource current = resources.get(id);
+            if (current == null) {
+                return create(resource);
+            }
+            String version = String.valueOf(Long.parseLong(current.getMeta().getVersionId()) + 1);
+            Resource stored = resource.copy();
+            stored.setId(new IdType(resourceType, id, version));
+            stored.getMeta().setVersionId(version).setLastUpdated(new Date());
+            resources.put(id, stored);
+            return stored.copy();
+        }
+    }
+
+    public boolean delete(String resourceType, String id) {
+        return getResources(resourceType).remove(id) != null;
+    }
+
+    public Optional<Resource> read(String resourceType, String id) {
+        return Optional.ofNullable(getResources(resourceType).get(id)).map(Resource::copy);
+    }
+
+    /**
+     * @return the stored resources themselves, they must not be changed
+     */
+    List<Resource> list(String resourceType) {
+        Map<String, Resource> resources = resourcesByType.get(resourceType);
+        if (resources == null) {
+            return Collections.emptyList();
+        }
+        synchronized (resources) {
+            return new ArrayList<>(resources.values());
+        }
+    }
+
+    public int count(String resourceType) {
+        return getResources(resourceType).size();
+    }
+
+    public void clear() {
+        resourcesByType.clear();
+    }
+
+    String newId() {
+        return String.valueOf(nextId.getAndIncrement());
+    }
+
+    private Map<String, Resource> getResources(String resourceType) {
+        return resourcesByType.computeIfAbsent(resourceType, type -> Collections.synchronizedMap(new LinkedHashMap<>()));
+    }
+}
@@ -0,0 +1,244 @@
+package gov.samhsa.ocp.ocpfis.fhirstub;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.annotation.ConditionalUrlParam;
+import ca.uhn.fhir.rest.annotation.Create;
+import ca.uhn.fhir.rest.annotation.Delete;
+import ca.uhn.fhir.rest.annotation.IdParam;
+import ca.uhn.fhir.rest.annotation.Read;
+import ca.uhn.fhir.rest.annotation.ResourceParam;
+import ca.uhn.fhir.rest.annotation.Search;
+import ca.uhn.fhir.rest.annotation.Update;
+import ca.uhn.fhir.rest.api.MethodOutcome;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.rest.server.SimpleBundleProvider;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.util.UrlUtil;
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Read, create, update, delete and search of one resource type, backed by the in-memory store. Searches support
+ * _include and _revinclude, with :recurse and :iterate, and _sort; the server pages the results.
+ */
+class InMemoryResourceProvider implements IResourceProvider {
+
+    // Included resources are marked, so the search mode of their bundle entries can be set
+    static final String INCLUDED_USER_DATA = "fhirStubIncluded";
+
+    private static final int MAX_INCLUDE_DEPTH = 10;
+
+    private final Class<? extends Resource> resourceType;
+
+    private final FhirContext fhirContext;
+
+    private final InMemoryFhirStore store;
+
+    private final SearchParameterMatcher matcher;
+
+    InMemoryResourceProvider(Class<? extends Resource> resourceType, FhirContext fhirContext, InMemoryFhirStore store, SearchParameterMatcher matcher) {
+        this.resourceType = resourceType;
+        this.fhirContext = fhirContext;
+        this.store = store;
+        this.matcher = matcher;
+    }
+
+    @Override
+    public Class<? extends IBaseResource> getResourceType() {
+        return resourceType;
+    }
+
+    @Read(version = true)
+    public IBaseResource read(@IdParam IdType theId) {
+        return store.read(getResourceTypeName(), theId.getIdPart()).orElseThrow(() -> new ResourceNotFoundException(theId));
+    }
+
+    @Create
+    public MethodOutcome create(@ResourceParam String theResourceBody) {
+        Resource resource = parse(theResourceBody);
+        // The server assigns the ids of created resources
+        resource.setIdElement(null);
+        Resource created = store.create(resource);
+        MethodOutcome outcome = new MethodOutcome(created.getIdElement());
+        outcome.setCreated(true);
+        outcome.setResource(created);
+        return outcome;
+    }
+
+    @Update
+    public MethodOutcome update(@IdParam IdType theId, @ResourceParam String theResourceBody) {
+        Resource resource = parse(theResourceBody);
+        resource.setId(theId.getIdPart());
+        Resource updated = store.update(resource);
+        MethodOutcome outcome = new MethodOutcome(updated.getIdElement());
+        outcome.setResource(updated);
+        return outcome;
+    }
+
+    /**
+     * Deletes by id, or every resource matching a conditional URL such as CareTeam?_id=1.
+     */
+    @Delete
+    public MethodOutcome delete(@IdParam IdType theId, @ConditionalUrlParam String theConditionalUrl) {
+        if (theConditionalUrl != null) {
+            String query = theConditionalUrl.contains("?") ? theConditionalUrl.substring(theConditionalUrl.indexOf('?') + 1) : "";
+            findMatches(UrlUtil.parseQueryString(query))
+                    .forEach(resource -> store.delete(getResourceTypeName(), resource.getIdElement().getIdPart()));
+            return new MethodOutcome();
+        }
+        if (!store.delete(getResourceTypeName(), theId.getIdPart())) {
+            throw new ResourceNotFoundException(theId);
+        }
+        return new MethodOutcome(theId);
+    }
+
+    @Search(allowUnknownParams = true)
+    public IBundleProvider search(RequestDetails theRequestDetails) {
+        Map<String, String[]> parameters = theRequestDetails.getParameters();
+
+        List<Resource> matches = findMatches(parameters);
+
+        if (parameters.containsKey("_sort")) {
+            List<String> sortParameters = Arrays.stream(parameters.get("_sort"))
+                    .flatMap(value -> Arrays.stream(value.split(",")))
+                    .collect(toList());
+            Comparator<Resource> sortOrder = matcher.getSortOrder(sortParameters);
+            matches.sort(sortOrder);
+        }
+
+        List<String[]> includes = getIncludeParameters(parameters, "_include");
+        List<String[]> revIncludes = getIncludeParameters(parameters, "_revinclude");
+
+        return new SimpleBundleProvider(new ArrayList<IBaseResource>(matches)) {
+            @Override
+            public List<IBaseResource> getResources(int theFromIndex, int theToIndex) {
+                List<Resource> page = super.getResources(theFromIndex, theToIndex).stream()
+                        .map(resource -> ((Resource) resource).copy())
+                        .collect(toList());
+                List<IBaseResource> pageWithIncludes = new ArrayList<>(page);
+                pageWithIncludes.addAll(getIncluded(page, includes, revIncludes));
+                return pageWithIncludes;
+            }
+        };
+    }
+
+    private List<Resource> findMatches(Map<String, String[]> parameters) {
+        return store.list(getResourceTypeName()).stream()
+                .filter(resource -> parameters.entrySet().stream()
+                        .filter(parameter -> isSearchParameter(parameter.getKey()))
+                        // Repeated parameters must all match, the comma separated values of each are alternatives
+                        .allMatch(parameter -> Arrays.stream(parameter.getValue())
+                                .allMatch(value -> matcher.matches(resource, parameter.getKey(), Arrays.asList(value.split(","))))))
+                .collect(toList());
+    }
+
+    private List<Resource> getIncluded(List<Resource> page, List<String[]> includes, List<String[]> revIncludes) {
+        Map<String, Resource> included = new LinkedHashMap<>();
+        Set<String> returned = new HashSet<>();
+        page.forEach(resource -> returned.add(toKey(resource)));
+
+        List<Resource> sources = page;
+        for (int depth = 0; depth < MAX_INCLUDE_DEPTH && !sources.isEmpty(); depth++) {
+            boolean iterating = depth > 0;
+            Map<String, Resource> added = new LinkedHashMap<>();
+
+            for (String[] include : includes) {
+                if (iterating && !isIterating(include)) {
+                    continue;
+                }
+                for (Resource source : sources) {
+                    if (!include[1].equals("*") && !include[1].equals(source.getResourceType().name())) {
+                        continue;
+                    }
+                    for (Reference reference : matcher.getReferences(source, include[2])) {
+                        String targetType = reference.getReferenceElement().getResourceType();
+                        if (targetType == null || (include[3] != null && !include[3].equals(targetType))) {
+                            continue;
+                        }
+                        String key = targetType + "/" + reference.getReferenceElement().getIdPart();
+                        if (!returned.contains(key)) {
+                            store.read(targetType, reference.getReferenceElement().getIdPart()).ifPresent(target -> added.put(key, target));
+                        }
+                    }
+                }
+            }
+
+            Set<String> sourceKeys = sources.stream().map(InMemoryResourceProvider::toKey).collect(toSet());
+            for (String[] revInclude : revIncludes) {
+                if (iterating && !isIterating(revInclude)) {
+                    continue;
+                }
+                for (Resource candidate : store.list(revInclude[1])) {
+                    String key = toKey(candidate);
+                    if (!returned.contains(key) && !added.containsKey(key) && matcher.getReferences(candidate, revInclude[2]).stream()
+                            .anyMatch(reference -> sourceKeys.contains(reference.getReferenceElement().toUnqualifiedVersionless().getValue()))) {
+                        added.put(key, candidate.copy());
+                    }
+                }
+            }
+
+            added.values().forEach(resource -> resource.setUserData(INCLUDED_USER_DATA, Boolean.TRUE));
+            returned.addAll(added.keySet());
+            included.putAll(added);
+            sources = new ArrayList<>(added.values());
+        }
+        return new ArrayList<>(included.values());
+    }
+
+    /**
+     * @return the modifier, source type, search parameter and optional target type of each include
+     */
+    private static List<String[]> getIncludeParameters(Map<String, String[]> parameters, String includeParameter) {
+        List<String[]> includes = new ArrayList<>();
+        parameters.forEach((name, values) -> {
+            if (name.equals(includeParameter) || name.startsWith(includeParameter + ":")) {
+                String modifier = name.equals(includeParameter) ? "" : name.substring(includeParameter.length() + 1);
+                for (String value : values) {
+                    String[] parts = value.split(":");
+                    includes.add(value.equals("*")
+                            ? new String[]{modifier, "*", "*", null}
+                            : new String[]{modifier, parts[0], parts.length > 1 ? parts[1] : "*", parts.length > 2 ? parts[2] : null});
+                }
+            }
+        });
+        return includes;
+    }
+
+    private static boolean isIterating(String[] include) {
+        return include[0].equals("recurse") || include[0].equals("iterate");
+    }
+
+    private static boolean isSearchParameter(String name) {
+        return !name.startsWith("_") || name.equals("_id") || name.startsWith("_id:") || name.equals("_lastUpdated");
+    }
+
+    private static String toKey(Resource resource) {
+        return resource.getResourceType().name() + "/" + resource.getIdElement().getIdPart();
+    }
+
+    private Resource parse(String resourceBody) {
+        IParser parser = resourceBody.trim().startsWith("<") ? fhirContext.newXmlParser() : fhirContext.newJsonParser();
+        return parser.parseResource(resourceType, resourceBody);
+    }
+
+    private String getResourceTypeName() {
+        return fhirContext.getResourceDefinition(resourceType).getName();
+    }
+}
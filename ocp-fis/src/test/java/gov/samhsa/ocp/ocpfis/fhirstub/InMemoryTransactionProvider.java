@@ -0,0 +1,86 @@
+package gov.samhsa.ocp.ocpfis.fhirstub;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.annotation.Transaction;
+import ca.uhn.fhir.rest.annotation.TransactionParam;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.FhirTerser;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.IdType;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transactions of creates, updates and deletes. References to the urn:uuid full URLs of created entries are replaced
+ * by the ids the entries get, as a FHIR server does.
+ */
+class InMemoryTransactionProvider {
+
+    private static final String URN_UUID_PREFIX = "urn:uuid:";
+
+    private final FhirTerser terser;
+
+    private final InMemoryFhirStore store;
+
+    InMemoryTransactionProvider(FhirContext fhirContext, InMemoryFhirStore store) {
+        this.terser = fhirContext.newTerser();
+        this.store = store;
+    }
+
+    @Transaction
+    public Bundle transaction(@TransactionParam Bundle theRequest) {
+        Map<String, String> idsByFullUrl = new HashMap<>();
+        theRequest.getEntry().stream()
+                .filter(entry -> entry.getRequest().getMethod() == Bundle.HTTPVerb.POST && entry.hasResource())
+                .forEach(entry -> {
+                    Resource resource = entry.getResource();
+                    resource.setId(store.newId());
+                    if (entry.hasFullUrl() && entry.getFullUrl().startsWith(URN_UUID_PREFIX)) {
+                        idsByFullUrl.put(entry.getFullUrl(), resource.getResourceType().name() + "/" + resource.getIdElement().getIdPart());
+                    }
+                });
+
+        Bundle response = new Bundle().setType(Bundle.BundleType.TRANSACTIONRESPONSE);
+        for (Bundle.BundleEntryComponent entry : theRequest.getEntry()) {
+            Bundle.HTTPVerb method = entry.getRequest().getMethod();
+            if (method == null) {
+                throw new InvalidRequestException("Transaction entry without a request method");
+            }
+            if (entry.hasResource()) {
+                replaceReferences(entry.getResource(), idsByFullUrl);
+            }
+
+            Bundle.BundleEntryResponseComponent entryResponse = response.addEntry().getResponse();
+            switch (method) {
+                case POST:
+                    Resource created = store.create(entry.getResource());
+                    entryResponse.setStatus("201 Created").setLocation(created.getIdElement().getValue());
+                    break;
+                case PUT:
+                    IdType updateId = new IdType(entry.getRequest().getUrl());
+                    Resource resource = entry.getResource();
+                    resource.setId(updateId.getIdPart());
+                    Resource updated = store.update(resource);
+                    entryResponse.setStatus("200 OK").setLocation(updated.getIdElement().getValue());
+                    break;
+                case DELETE:
+                    IdType deleteId = new IdType(entry.getRequest().getUrl());
+                    store.delete(deleteId.getResourceType(), deleteId.getIdPart());
+                    entryResponse.setStatus("204 No Content");
+                    break;
+                default:
+                    throw new InvalidRequestException("Transaction entries with method " + method + " are not supported by the stub server");
+            }
+        }
+        return response;
+    }
+
+    private void replaceReferences(Resource resource, Map<String, String> idsByFullUrl) {
+        terser.getAllPopulatedChildElementsOfType(resource, Reference.class).stream()
+                .filter(reference -> idsByFullUrl.containsKey(reference.getReference()))
+                .forEach(reference -> reference.setReference(idsByFullUrl.get(reference.getReference())));
+    }
+}
@@ -0,0 +1,322 @@
+package gov.samhsa.ocp.ocpfis.fhirstub;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import ca.uhn.fhir.util.FhirTerser;
+import org.hl7.fhir.dstu3.model.Address;
+import org.hl7.fhir.dstu3.model.BaseDateTimeType;
+import org.hl7.fhir.dstu3.model.CodeableConcept;
+import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.ContactPoint;
+import org.hl7.fhir.dstu3.model.DateTimeType;
+import org.hl7.fhir.dstu3.model.HumanName;
+import org.hl7.fhir.dstu3.model.Identifier;
+import org.hl7.fhir.dstu3.model.Period;
+import org.hl7.fhir.dstu3.model.PrimitiveType;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Evaluates search parameters against resources, using the search parameter definitions of the FHIR context. Only the
+ * parameter types and modifiers used by this service are supported, other parameters match every resource.
+ */
+class SearchParameterMatcher {
+
+    private static final Date EARLIEST = new Date(Long.MIN_VALUE);
+    private static final Date LATEST = new Date(Long.MAX_VALUE);
+
+    private final FhirContext fhirContext;
+
+    private final FhirTerser terser;
+
+    SearchParameterMatcher(FhirContext fhirContext) {
+        this.fhirContext = fhirContext;
+        this.terser = fhirContext.newTerser();
+    }
+
+    /**
+     * @param parameterName the parameter name, optionally followed by a modifier such as :exact or :contains
+     * @param orValues      the comma separated alternatives of one occurrence of the parameter
+     */
+    boolean matches(Resource resource, String parameterName, List<String> orValues) {
+        String[] nameAndModifier = parameterName.split(":", 2);
+        String name = nameAndModifier[0];
+        Optional<String> modifier = nameAndModifier.length > 1 ? Optional.of(nameAndModifier[1]) : Optional.empty();
+
+        if (name.equals("_id")) {
+            return orValues.contains(resource.getIdElement().getIdPart());
+        }
+        if (name.equals("_lastUpdated")) {
+            Date lastUpdated = resource.getMeta().getLastUpdated();
+            return orValues.stream().anyMatch(value -> matchesDate(lastUpdated, lastUpdated, value));
+        }
+        // Chained parameters and _has are not supported
+        if (name.contains(".") || name.startsWith("_")) {
+            return true;
+        }
+
+        RuntimeSearchParam searchParam = getSearchParam(resource, name);
+        if (searchParam == null) {
+            return true;
+        }
+        List<Object> values = getValues(resource, searchParam);
+
+        if (modifier.filter("missing"::equals).isPresent()) {
+            return orValues.stream().anyMatch(value -> Boolean.parseBoolean(value) == values.isEmpty());
+        }
+
+        switch (searchParam.getParamType()) {
+            case TOKEN:
+                return orValues.stream().anyMatch(value -> values.stream().anyMatch(candidate -> matchesToken(candidate, value)));
+            case REFERENCE:
+                return orValues.stream().anyMatch(value -> values.stream()
+                        .filter(Reference.class::isInstance)
+                        .anyMatch(candidate -> matchesReference((Reference) candidate, value, name)));
+            case STRING:
+                return orValues.stream().anyMatch(value -> values.stream().anyMatch(candidate -> matchesString(candidate, value, modifier)));
+            case DATE:
+                return orValues.stream().anyMatch(value -> values.stream().anyMatch(candidate -> matchesDate(candidate, value)));
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return the references held by the resource in the given search parameter, or all references for *
+     */
+    List<Reference> getReferences(Resource resource, String parameterName) {
+        if (parameterName.equals("*")) {
+            return terser.getAllPopulatedChildElementsOfType(resource, Reference.class);
+        }
+        RuntimeSearchParam searchParam = getSearchParam(resource, parameterName);
+        if (searchParam == null || searchParam.getParamType() != RestSearchParameterTypeEnum.REFERENCE) {
+            return new ArrayList<>();
+        }
+        return getValues(resource, searchParam).stream()
+                .filter(Reference.class::isInstance)
+                .map(Reference.class::cast)
+                .filter(reference -> reference.getReferenceElement().hasIdPart())
+                .collect(toList());
+    }
+
+    /**
+     * @param sortParameters the _sort values, a leading - sorts in descending order
+     */
+    Comparator<Resource> getSortOrder(List<String> sortParameters) {
+        Comparator<Resource> sortOrder = (first, second) -> 0;
+        for (String sortParameter : sortParameters) {
+            boolean descending = sortParameter.startsWith("-");
+            String name = descending ? sortParameter.substring(1) : sortParameter;
+            Comparator<Resource> parameterOrder;
+            if (name.equals("_lastUpdated")) {
+                parameterOrder = Comparator.comparing((Resource resource) -> resource.getMeta().getLastUpdated(), Comparator.nullsLast(Comparator.<Date>naturalOrder()));
+            } else if (name.equals("_id")) {
+                parameterOrder = Comparator.comparing((Resource resource) -> resource.getIdElement().getIdPart(), Comparator.nullsLast(Comparator.<String>naturalOrder()));
+            } else {
+                parameterOrder = Comparator.comparing((Resource resource) -> getSortValue(resource, name), Comparator.nullsLast(Comparator.<String>naturalOrder()));
+            }
+            sortOrder = sortOrder.thenComparing(descending ? parameterOrder.reversed() : parameterOrder);
+        }
+        return sortOrder;
+    }
+
+    private String getSortValue(Resource resource, String name) {
+        RuntimeSearchParam searchParam = getSearchParam(resource, name);
+        if (searchParam == null) {
+            return null;
+        }
+        return getValues(resource, searchParam).stream()
+                .map(value -> {
+                    if (value instanceof BaseDateTimeType) {
+                        return ((BaseDateTimeType) value).getValueAsString();
+                    }
+                    if (value instanceof Period) {
+                        return ((Period) value).getStartElement().getValueAsString();
+                    }
+                    return getStrings(value).stream().findFirst().orElse(null);
+                })
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private RuntimeSearchParam getSearchParam(Resource resource, String name) {
+        RuntimeResourceDefinition resourceDefinition = fhirContext.getResourceDefinition(resource);
+        return resourceDefinition.getSearchParam(name);
+    }
+
+    private List<Object> getValues(Resource resource, RuntimeSearchParam searchParam) {
+        String resourceType = resource.getResourceType().name();
+        List<Object> values = new ArrayList<>();
+        for (String path : searchParam.getPath().split("\\|")) {
+            String simplePath = toSimplePath(path.trim());
+            if (simplePath.startsWith(resourceType + ".")) {
+                values.addAll(terser.getValues(resource, simplePath));
+            }
+        }
+        return values;
+    }
+
+    // Drops the FHIRPath functions and type casts the terser does not understand
+    private static String toSimplePath(String path) {
+        String simplePath = path.replace("(", "").replace(")", "");
+        int functionStart = simplePath.indexOf(".where");
+        if (functionStart >= 0) {
+            simplePath = simplePath.substring(0, functionStart);
+        }
+        int castStart = simplePath.indexOf(" as ");
+        if (castStart >= 0) {
+            simplePath = simplePath.substring(0, castStart);
+        }
+        return simplePath.trim();
+    }
+
+    private static boolean matchesToken(Object candidate, String value) {
+        String system = null;
+        String code = value;
+        int separator = value.indexOf('|');
+        if (separator >= 0) {
+            system = value.substring(0, separator);
+            code = value.substring(separator + 1);
+        }
+
+        if (candidate instanceof CodeableConcept) {
+            String finalSystem = system;
+            String finalCode = code;
+            return ((CodeableConcept) candidate).getCoding().stream().anyMatch(coding -> matchesSystemAndCode(coding.getSystem(), coding.getCode(), finalSystem, finalCode));
+        }
+        if (candidate instanceof Coding) {
+            return matchesSystemAndCode(((Coding) candidate).getSystem(), ((Coding) candidate).getCode(), system, code);
+        }
+        if (candidate instanceof Identifier) {
+            return matchesSystemAndCode(((Identifier) candidate).getSystem(), ((Identifier) candidate).getValue(), system, code);
+        }
+        if (candidate instanceof ContactPoint) {
+            return matchesSystemAndCode(null, ((ContactPoint) candidate).getValue(), system, code);
+        }
+        if (candidate instanceof PrimitiveType) {
+            return code.equals(((PrimitiveType<?>) candidate).getValueAsString());
+        }
+        return false;
+    }
+
+    private static boolean matchesSystemAndCode(String candidateSystem, String candidateCode, String system, String code) {
+        // An empty system, as in |code, only matches codes without a system
+        if (system != null && (system.isEmpty() ? candidateSystem != null && !candidateSystem.isEmpty() : !system.equals(candidateSystem))) {
+            return false;
+        }
+        return code.isEmpty() || code.equals(candidateCode);
+    }
+
+    private boolean matchesReference(Reference candidate, String value, String parameterName) {
+        if (!candidate.getReferenceElement().hasIdPart()) {
+            return false;
+        }
+        Reference wanted = new Reference(value);
+        if (!wanted.getReferenceElement().getIdPart().equals(candidate.getReferenceElement().getIdPart())) {
+            return false;
+        }
+        String candidateType = candidate.getReferenceElement().getResourceType();
+        String wantedType = wanted.getReferenceElement().hasResourceType() ? wanted.getReferenceElement().getResourceType() : getResourceTypeNamed(parameterName);
+        return wantedType == null || candidateType == null || wantedType.equals(candidateType);
+    }
+
+    // Parameters such as patient and organization only refer to the resource type they are named after
+    private String getResourceTypeNamed(String parameterName) {
+        String resourceType = Character.toUpperCase(parameterName.charAt(0)) + parameterName.substring(1);
+        try {
+            return fhirContext.getResourceDefinition(resourceType).getName();
+        } catch (DataFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean matchesString(Object candidate, String value, Optional<String> modifier) {
+        String wanted = value.toLowerCase();
+        return getStrings(candidate).stream()
+                .map(String::toLowerCase)
+                .anyMatch(string -> {
+                    if (modifier.filter("exact"::equals).isPresent()) {
+                        return string.equals(wanted);
+                    }
+                    if (modifier.filter("contains"::equals).isPresent()) {
+                        return string.contains(wanted);
+                    }
+                    return string.startsWith(wanted);
+                });
+    }
+
+    private static List<String> getStrings(Object candidate) {
+        List<String> strings = new ArrayList<>();
+        if (candidate instanceof HumanName) {
+            HumanName name = (HumanName) candidate;
+            strings.add(name.getFamily());
+            strings.add(name.getText());
+            name.getGiven().forEach(given -> strings.add(given.getValue()));
+            name.getPrefix().forEach(prefix -> strings.add(prefix.getValue()));
+        } else if (candidate instanceof Address) {
+            Address address = (Address) candidate;
+            address.getLine().forEach(line -> strings.add(line.getValue()));
+            strings.addAll(Arrays.asList(address.getCity(), address.getState(), address.getPostalCode(), address.getCountry(), address.getText()));
+        } else if (candidate instanceof PrimitiveType) {
+            strings.add(((PrimitiveType<?>) candidate).getValueAsString());
+        }
+        return strings.stream().filter(Objects::nonNull).collect(toList());
+    }
+
+    private static boolean matchesDate(Object candidate, String value) {
+        if (candidate instanceof BaseDateTimeType && ((BaseDateTimeType) candidate).getValue() != null) {
+            BaseDateTimeType dateTime = (BaseDateTimeType) candidate;
+            return matchesDate(dateTime.getValue(), dateTime.getPrecision().add(dateTime.getValue(), 1), value);
+        }
+        if (candidate instanceof Period) {
+            Period period = (Period) candidate;
+            return matchesDate(period.hasStart() ? period.getStart() : EARLIEST, period.hasEnd() ? period.getEnd() : LATEST, value);
+        }
+        return false;
+    }
+
+    /**
+     * Compares the range of the candidate with the range of the searched date, which is as long as its precision.
+     */
+    private static boolean matchesDate(Date candidateStart, Date candidateEnd, String value) {
+        if (candidateStart == null) {
+            return false;
+        }
+        boolean hasPrefix = value.length() > 2 && Character.isLetter(value.charAt(0));
+        String prefix = hasPrefix ? value.substring(0, 2) : "eq";
+        DateTimeType wanted = new DateTimeType(hasPrefix ? value.substring(2) : value);
+        Date wantedStart = wanted.getValue();
+        Date wantedEnd = wanted.getPrecision().add(wantedStart, 1);
+
+        switch (prefix) {
+            case "gt":
+            case "sa":
+                return candidateEnd.compareTo(wantedEnd) >= 0;
+            case "ge":
+                return candidateEnd.compareTo(wantedStart) >= 0;
+            case "lt":
+            case "eb":
+                return candidateStart.before(wantedStart);
+            case "le":
+                return candidateStart.before(wantedEnd);
+            case "ne":
+                return candidateEnd.compareTo(wantedStart) <= 0 || !candidateStart.before(wantedEnd);
+            default:
+                return candidateStart.before(wantedEnd) && candidateEnd.after(wantedStart);
+        }
+    }
+}
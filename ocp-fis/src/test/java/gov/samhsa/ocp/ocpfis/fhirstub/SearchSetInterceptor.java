@@ -0,0 +1,48 @@
+package gov.samhsa.ocp.ocpfis.fhirstub;
+
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.interceptor.InterceptorAdapter;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Objects;
+
+/**
+ * Completes the search result bundles of the stub server: the bundle id is the id of the search, which FIS uses to
+ * build the URLs of the other pages, and included resources get the include search mode.
+ */
+class SearchSetInterceptor extends InterceptorAdapter {
+
+    private static final String GET_PAGES_PARAMETER = "_getpages=";
+
+    @Override
+    public boolean outgoingResponse(RequestDetails theRequestDetails, IBaseResource theResponseObject,
+                                    HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) {
+        if (theResponseObject instanceof Bundle && ((Bundle) theResponseObject).getType() == Bundle.BundleType.SEARCHSET) {
+            Bundle bundle = (Bundle) theResponseObject;
+            bundle.getLink().stream()
+                    .map(link -> getSearchId(link.getUrl()))
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .ifPresent(bundle::setId);
+            bundle.getEntry().stream()
+                    .filter(Bundle.BundleEntryComponent::hasResource)
+                    .forEach(entry -> entry.getSearch().setMode(entry.getResource().getUserData(InMemoryResourceProvider.INCLUDED_USER_DATA) != null
+                            ? Bundle.SearchEntryMode.INCLUDE
+                            : Bundle.SearchEntryMode.MATCH));
+        }
+        return true;
+    }
+
+    private static String getSearchId(String url) {
+        int start = url == null ? -1 : url.indexOf(GET_PAGES_PARAMETER);
+        if (start < 0) {
+            return null;
+        }
+        start += GET_PAGES_PARAMETER.length();
+        int end = url.indexOf('&', start);
+        return end < 0 ? url.substring(start) : url.substring(start, end);
+    }
+}
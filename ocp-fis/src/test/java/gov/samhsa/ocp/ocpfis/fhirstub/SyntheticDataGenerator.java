@@ -0,0 +1,277 @@
+package gov.samhsa.ocp.ocpfis.fhirstub;
+
+import com.github.javafaker.Faker;
+import org.hl7.fhir.dstu3.model.Address;
+import org.hl7.fhir.dstu3.model.Appointment;
+import org.hl7.fhir.dstu3.model.CareTeam;
+import org.hl7.fhir.dstu3.model.CodeableConcept;
+import org.hl7.fhir.dstu3.model.ContactPoint;
+import org.hl7.fhir.dstu3.model.Coverage;
+import org.hl7.fhir.dstu3.model.Enumerations;
+import org.hl7.fhir.dstu3.model.EpisodeOfCare;
+import org.hl7.fhir.dstu3.model.Flag;
+import org.hl7.fhir.dstu3.model.HumanName;
+import org.hl7.fhir.dstu3.model.Identifier;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Period;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.PractitionerRole;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.dstu3.model.Task;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seeds the in-memory store with related organizations, practitioners, patients, care teams, tasks and appointments.
+ * The same seed gives the same data, so tests can assert on it. Ids are prefixed by type, e.g. patient-1.
+ */
+public class SyntheticDataGenerator {
+
+    private static final String IDENTIFIER_SYSTEM = "http://ocp.samhsa.gov/fhir-stub";
+
+    // All dates are relative to a fixed day, so the data does not depend on when the test runs
+    private static final long BASE_TIME_IN_MS = 1514764800000L;
+
+    private final Random random;
+
+    private final Faker faker;
+
+    private long nextId = 1;
+
+    public SyntheticDataGenerator(long seed) {
+        this.random = new Random(seed);
+        this.faker = new Faker(new Random(seed));
+    }
+
+    /**
+     * Generates the patients with their organizations, practitioners, care teams, tasks and appointments; about one
+     * organization for every 50 patients and one practitioner for every 10.
+     */
+    public List<Patient> generate(InMemoryFhirStore store, int patientCount) {
+        List<Organization> organizations = generateOrganizations(store, Math.max(1, patientCount / 50));
+        List<Practitioner> practitioners = generatePractitioners(store, Math.max(1, patientCount / 10), organizations);
+        List<Patient> patients = generatePatients(store, patientCount, organizations);
+        generateCareTeams(store, patients, practitioners, organizations);
+        generateTasks(store, patients, practitioners, organizations, 3);
+        generateAppointments(store, patients, practitioners, 2);
+        return patients;
+    }
+
+    public List<Organization> generateOrganizations(InMemoryFhirStore store, int count) {
+        List<Organization> organizations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Organization organization = new Organization();
+            organization.setId(newId("organization"));
+            organization.setActive(true);
+            organization.setName(faker.company().name());
+            organization.addIdentifier(newIdentifier());
+            organization.addAddress(newAddress());
+            organization.addTelecom(newPhone());
+            organizations.add(store(store, organization));
+        }
+        return organizations;
+    }
+
+    /**
+     * Each practitioner gets a role in one of the organizations.
+     */
+    public List<Practitioner> generatePractitioners(InMemoryFhirStore store, int count, List<Organization> organizations) {
+        List<Practitioner> practitioners = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Practitioner practitioner = new Practitioner();
+            practitioner.setId(newId("practitioner"));
+            practitioner.setActive(random.nextInt(10) > 0);
+            practitioner.addName(newName());
+            practitioner.addIdentifier(newIdentifier());
+            practitioner.addAddress(newAddress());
+            practitioner.addTelecom(newPhone());
+            practitioners.add(store(store, practitioner));
+
+            PractitionerRole practitionerRole = new PractitionerRole();
+            practitionerRole.setId(newId("practitionerrole"));
+            practitionerRole.setActive(practitioner.getActive());
+            practitionerRole.setPractitioner(referenceTo(practitioner));
+            practitionerRole.setOrganization(referenceTo(pick(organizations)));
+            store(store, practitionerRole);
+        }
+        return practitioners;
+    }
+
+    /**
+     * Each patient gets a flag, an episode of care with one of the organizations and a coverage.
+     */
+    public List<Patient> generatePatients(InMemoryFhirStore store, int count, List<Organization> organizations) {
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Organization organization = pick(organizations);
+
+            Patient patient = new Patient();
+            patient.setId(newId("patient"));
+            patient.setActive(random.nextInt(10) > 0);
+            patient.addName(newName());
+            patient.addIdentifier(newIdentifier());
+            patient.addAddress(newAddress());
+            patient.addTelecom(newPhone());
+            patient.setGender(random.nextBoolean() ? Enumerations.AdministrativeGender.FEMALE : Enumerations.AdministrativeGender.MALE);
+            patient.setBirthDate(daysFromBase(-365 * (18 + random.nextInt(60))));
+            patient.setManagingOrganization(referenceTo(organization));
+            patients.add(store(store, patient));
+
+            Flag flag = new Flag();
+            flag.setId(newId("flag"));
+            flag.setStatus(Flag.FlagStatus.ACTIVE);
+            flag.setSubject(referenceTo(patient));
+            flag.setCode(new CodeableConcept().setText(faker.lorem().sentence()));
+            flag.setPeriod(new Period().setStart(daysFromBase(-random.nextInt(365))));
+            store(store, flag);
+
+            EpisodeOfCare episodeOfCare = new EpisodeOfCare();
+            episodeOfCare.setId(newId("episodeofcare"));
+            episodeOfCare.setStatus(EpisodeOfCare.EpisodeOfCareStatus.ACTIVE);
+            episodeOfCare.setPatient(referenceTo(patient));
+            episodeOfCare.setManagingOrganization(referenceTo(organization));
+            episodeOfCare.setPeriod(new Period().setStart(daysFromBase(-random.nextInt(365))));
+            store(store, episodeOfCare);
+
+            Coverage coverage = new Coverage();
+            coverage.setId(newId("coverage"));
+            coverage.setStatus(Coverage.CoverageStatus.ACTIVE);
+            coverage.setBeneficiary(referenceTo(patient));
+            coverage.setSubscriber(referenceTo(patient));
+            coverage.setSubscriberId(faker.idNumber().valid());
+            store(store, coverage);
+        }
+        return patients;
+    }
+
+    /**
+     * One care team for each patient, with one to three of the practitioners acting for one of the organizations.
+     */
+    public List<CareTeam> generateCareTeams(InMemoryFhirStore store, List<Patient> patients, List<Practitioner> practitioners, List<Organization> organizations) {
+        List<CareTeam> careTeams = new ArrayList<>();
+        for (Patient patient : patients) {
+            CareTeam careTeam = new CareTeam();
+            careTeam.setId(newId("careteam"));
+            careTeam.setStatus(CareTeam.CareTeamStatus.ACTIVE);
+            careTeam.setName(faker.name().lastName() + " Care Team");
+            careTeam.setSubject(referenceTo(patient));
+            careTeam.setPeriod(new Period().setStart(daysFromBase(-random.nextInt(365))).setEnd(daysFromBase(random.nextInt(365))));
+            Reference organization = referenceTo(pick(organizations));
+            for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                careTeam.addParticipant()
+                        .setMember(referenceTo(pick(practitioners)))
+                        .setOnBehalfOf(organization.copy());
+            }
+            careTeams.add(store(store, careTeam));
+        }
+        return careTeams;
+    }
+
+    /**
+     * Tasks for each patient; every task after the first is part of the first one.
+     */
+    public List<Task> generateTasks(InMemoryFhirStore store, List<Patient> patients, List<Practitioner> practitioners, List<Organization> organizations, int tasksPerPatient) {
+        List<Task> tasks = new ArrayList<>();
+        for (Patient patient : patients) {
+            Task parentTask = null;
+            for (int i = 0; i < tasksPerPatient; i++) {
+                Task task = new Task();
+                task.setId(newId("task"));
+                task.setStatus(random.nextInt(4) == 0 ? Task.TaskStatus.COMPLETED : Task.TaskStatus.INPROGRESS);
+                task.setIntent(Task.TaskIntent.PLAN);
+                task.setPriority(Task.TaskPriority.ROUTINE);
+                task.setDescription(faker.lorem().sentence());
+                task.setFor(referenceTo(patient));
+                task.setOwner(referenceTo(pick(practitioners)));
+                task.getRequester().setAgent(referenceTo(pick(practitioners))).setOnBehalfOf(referenceTo(pick(organizations)));
+                task.setAuthoredOn(daysFromBase(-random.nextInt(90)));
+                task.setExecutionPeriod(new Period().setStart(task.getAuthoredOn()).setEnd(daysFromBase(random.nextInt(90))));
+                if (parentTask != null) {
+                    task.addPartOf(referenceTo(parentTask));
+                }
+                tasks.add(store(store, task));
+                if (parentTask == null) {
+                    parentTask = task;
+                }
+            }
+        }
+        return tasks;
+    }
+
+    public List<Appointment> generateAppointments(InMemoryFhirStore store, List<Patient> patients, List<Practitioner> practitioners, int appointmentsPerPatient) {
+        List<Appointment> appointments = new ArrayList<>();
+        for (Patient patient : patients) {
+            for (int i = 0; i < appointmentsPerPatient; i++) {
+                Date start = new Date(daysFromBase(random.nextInt(60) - 30).getTime() + TimeUnit.HOURS.toMillis(8 + random.nextInt(9)));
+                Appointment appointment = new Appointment();
+                appointment.setId(newId("appointment"));
+                appointment.setStatus(Appointment.AppointmentStatus.BOOKED);
+                appointment.setDescription(faker.lorem().sentence());
+                appointment.setStart(start);
+                appointment.setEnd(new Date(start.getTime() + TimeUnit.MINUTES.toMillis(30)));
+                appointment.setCreated(daysFromBase(-random.nextInt(30) - 30));
+                appointment.addParticipant()
+                        .setActor(referenceTo(patient))
+                        .setRequired(Appointment.ParticipantRequired.REQUIRED)
+                        .setStatus(Appointment.ParticipationStatus.ACCEPTED);
+                appointment.addParticipant()
+                        .setActor(referenceTo(pick(practitioners)))
+                        .setRequired(Appointment.ParticipantRequired.REQUIRED)
+                        .setStatus(Appointment.ParticipationStatus.NEEDSACTION);
+                appointments.add(store(store, appointment));
+            }
+        }
+        return appointments;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Resource> T store(InMemoryFhirStore store, T resource) {
+        return (T) store.create(resource);
+    }
+
+    private String newId(String prefix) {
+        return prefix + "-" + nextId++;
+    }
+
+    private <T> T pick(List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private HumanName newName() {
+        return new HumanName().setFamily(faker.name().lastName()).addGiven(faker.name().firstName());
+    }
+
+    private Identifier newIdentifier() {
+        return new Identifier().setSystem(IDENTIFIER_SYSTEM).setValue(faker.idNumber().valid());
+    }
+
+    private Address newAddress() {
+        return new Address()
+                .addLine(faker.address().streetAddress())
+                .setCity(faker.address().city())
+                .setState(faker.address().stateAbbr())
+                .setPostalCode(faker.address().zipCode())
+                .setCountry("US");
+    }
+
+    private ContactPoint newPhone() {
+        return new ContactPoint()
+                .setSystem(ContactPoint.ContactPointSystem.PHONE)
+                .setUse(ContactPoint.ContactPointUse.WORK)
+                .setValue(faker.phoneNumber().phoneNumber());
+    }
+
+    private static Reference referenceTo(Resource resource) {
+        return new Reference(resource.getResourceType().name() + "/" + resource.getIdElement().getIdPart());
+    }
+
+    private static Date daysFromBase(int days) {
+        return new Date(BASE_TIME_IN_MS + TimeUnit.DAYS.toMillis(days));
+    }
+}
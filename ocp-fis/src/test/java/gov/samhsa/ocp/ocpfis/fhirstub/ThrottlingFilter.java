@@ -0,0 +1,171 @@
+package gov.samhsa.ocp.ocpfis.fhirstub;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delays every response of the stub server and limits the rate its body is written at, to resemble a remote FHIR
+ * server.
+ */
+class ThrottlingFilter implements Filter {
+
+    // Bytes written between two bandwidth checks
+    private static final int CHUNK_SIZE = 1024;
+
+    private final long latencyInMs;
+
+    private final long bytesPerSecond;
+
+    /**
+     * @param bytesPerSecond 0 for no limit
+     */
+    ThrottlingFilter(long latencyInMs, long bytesPerSecond) {
+        this.latencyInMs = latencyInMs;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        sleep(latencyInMs);
+        if (bytesPerSecond > 0) {
+            ThrottledResponse throttledResponse = new ThrottledResponse((HttpServletResponse) response);
+            chain.doFilter(request, throttledResponse);
+            throttledResponse.finish();
+        } else {
+            chain.doFilter(request, response);
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttling the stub FHIR server");
+        }
+    }
+
+    private class ThrottledResponse extends HttpServletResponseWrapper {
+
+        private ThrottledOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        ThrottledResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new ThrottledOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            super.flushBuffer();
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+    }
+
+    private class ThrottledOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+
+        private final long startedAtInNanos = System.nanoTime();
+
+        private long bytesWritten;
+
+        ThrottledOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            throttle(1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            for (int chunkStart = offset; chunkStart < offset + length; chunkStart += CHUNK_SIZE) {
+                int chunkLength = Math.min(CHUNK_SIZE, offset + length - chunkStart);
+                delegate.write(bytes, chunkStart, chunkLength);
+                throttle(chunkLength);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+
+        // Waits until writing the bytes so far takes as long as it would at the configured bandwidth
+        private void throttle(int length) throws IOException {
+            bytesWritten += length;
+            long dueInNanos = TimeUnit.SECONDS.toNanos(bytesWritten) / bytesPerSecond;
+            long aheadInMs = TimeUnit.NANOSECONDS.toMillis(dueInNanos - (System.nanoTime() - startedAtInNanos));
+            if (aheadInMs > 0) {
+                delegate.flush();
+                sleep(aheadInMs);
+            }
+        }
+    }
+}
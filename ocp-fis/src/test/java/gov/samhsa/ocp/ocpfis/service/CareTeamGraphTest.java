@@ -0,0 +1,141 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import org.hl7.fhir.dstu3.model.CareTeam;
+import org.hl7.fhir.dstu3.model.HumanName;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CareTeamGraphTest {
+
+    private static final int MAX_IDS_PER_SEARCH = 2;
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private OrganizationMembershipService organizationMembershipService;
+
+    private CareTeamGraph careTeamGraph;
+
+    private String patientId;
+    private String practitionerId;
+    private String organizationId;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        patientId = fhirStub.getStore().create(new Patient()).getIdElement().getIdPart();
+        Practitioner practitioner = new Practitioner();
+        practitioner.addName(new HumanName().setFamily("Smith").addGiven("Jane"));
+        practitionerId = fhirStub.getStore().create(practitioner).getIdElement().getIdPart();
+        organizationId = fhirStub.getStore().create(new Organization().setName("Clinic")).getIdElement().getIdPart();
+
+        FisProperties fisProperties = fhirStub.newFisProperties();
+        fisProperties.getFhir().setMaxIdsPerSearch(MAX_IDS_PER_SEARCH);
+        organizationMembershipService = new OrganizationMembershipService(fhirStub.getFhirClient(), fisProperties);
+        careTeamGraph = new CareTeamGraph(fhirStub.getFhirClient(), fisProperties, new ReferenceResolver(fhirStub.getFhirClient(), fisProperties), organizationMembershipService);
+        organizationMembershipService.bulkLoad();
+        fhirStub.resetCallCount();
+    }
+
+    @Test
+    public void testGetCareTeamsOfPatientResolvesMemberNames() {
+        //Arrange
+        createCareTeam("Practitioner/" + practitionerId, "Organization/" + organizationId);
+
+        //Act
+        List<CareTeamGraph.CareTeamNode> careTeams = careTeamGraph.getCareTeamsOfPatient(patientId);
+
+        //Assert
+        assertEquals(1, careTeams.size());
+        List<String> displays = careTeams.get(0).getMembers().stream().map(CareTeamGraph.Member::getDisplay).collect(toList());
+        assertEquals(Arrays.asList("Jane Smith", "Clinic"), displays);
+        //The care team search and one search per member type
+        assertEquals(3, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testGetCareTeamsOfPatientServesCachedCareTeams() {
+        //Arrange
+        createCareTeam("Practitioner/" + practitionerId);
+        careTeamGraph.getCareTeamsOfPatient(patientId);
+        fhirStub.resetCallCount();
+
+        //Act
+        List<CareTeamGraph.CareTeamNode> careTeams = careTeamGraph.getCareTeamsOfPatient(patientId);
+
+        //Assert
+        assertEquals(1, careTeams.size());
+        assertEquals(0, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testGetCareTeamsOfPatientSearchesAgainAfterCareTeamWrittenElsewhere() {
+        //Arrange
+        createCareTeam("Practitioner/" + practitionerId);
+        assertEquals(1, careTeamGraph.getCareTeamsOfPatient(patientId).size());
+        //E.g. the default care team of a new patient, or a care team written by another client
+        createCareTeam("Organization/" + organizationId);
+        organizationMembershipService.pollChanges();
+
+        //Act
+        List<CareTeamGraph.CareTeamNode> careTeams = careTeamGraph.getCareTeamsOfPatient(patientId);
+
+        //Assert
+        assertEquals(2, careTeams.size());
+    }
+
+    @Test
+    public void testOnResourceDeletedDropsCareTeam() {
+        //Arrange
+        String careTeamId = createCareTeam("Practitioner/" + practitionerId);
+        assertEquals(1, careTeamGraph.getCareTeamsOfPatient(patientId).size());
+        fhirStub.getStore().delete(ResourceType.CareTeam.name(), careTeamId);
+
+        //Act
+        careTeamGraph.onResourceDeleted(new ResourceDeletedEvent(ResourceType.CareTeam.name(), careTeamId));
+
+        //Assert
+        assertTrue(careTeamGraph.getCareTeamsOfPatient(patientId).isEmpty());
+        assertTrue(careTeamGraph.getCareTeams(Collections.singletonList(careTeamId)).isEmpty());
+    }
+
+    @Test
+    public void testGetCareTeamsSearchesIdsInChunks() {
+        //Arrange
+        List<String> careTeamIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            careTeamIds.add(createCareTeam());
+        }
+
+        //Act
+        List<CareTeamGraph.CareTeamNode> careTeams = careTeamGraph.getCareTeams(careTeamIds);
+
+        //Assert
+        assertEquals(careTeamIds, careTeams.stream().map(CareTeamGraph.CareTeamNode::getId).collect(toList()));
+        assertEquals(3, fhirStub.getCallCount());
+    }
+
+    private String createCareTeam(String... members) {
+        CareTeam careTeam = new CareTeam();
+        careTeam.setSubject(new Reference("Patient/" + patientId));
+        Arrays.stream(members).forEach(member -> careTeam.addParticipant().setMember(new Reference(member)));
+        return fhirStub.getStore().create(careTeam).getIdElement().getIdPart();
+    }
+}
@@ -0,0 +1,160 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.validation.FhirValidator;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import gov.samhsa.ocp.ocpfis.service.dto.CareTeamDto;
+import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
+import gov.samhsa.ocp.ocpfis.service.dto.ParticipantDto;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
+import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
+import org.hl7.fhir.dstu3.model.CareTeam;
+import org.hl7.fhir.dstu3.model.HumanName;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.RelatedPerson;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+public class CareTeamServiceImplSearchTest {
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private CareTeamServiceImpl careTeamService;
+
+    private String patientId;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        Patient patient = new Patient();
+        patient.addName(new HumanName().setFamily("Smith").addGiven("Pat"));
+        patientId = create(patient);
+
+        FisProperties fisProperties = fhirStub.newFisProperties();
+        careTeamService = new CareTeamServiceImpl(fhirStub.getFhirClient(), mock(FhirValidator.class), mock(LookUpService.class), fisProperties,
+                mock(CommunicationService.class), mock(ProvenanceUtil.class), mock(PractitionerServiceImpl.class),
+                new ReferenceResolver(fhirStub.getFhirClient(), fisProperties), mock(OrganizationMembershipService.class),
+                mock(CareTeamGraph.class), mock(FhirProfileRegistry.class), new TaskExecutorAdapter(new SyncTaskExecutor()));
+    }
+
+    @Test
+    public void testGetCareTeamsResolvesSubjectAndMembersFromTheIncludedResources() {
+        //Arrange
+        Practitioner practitioner = new Practitioner();
+        practitioner.addName(new HumanName().setFamily("Doe").addGiven("John"));
+        String practitionerId = create(practitioner);
+        String organizationId = create(new Organization().setName("Member Clinic"));
+        String onBehalfOfId = create(new Organization().setName("Employer Clinic"));
+        RelatedPerson relatedPerson = new RelatedPerson(new Reference("Patient/" + patientId));
+        relatedPerson.addName(new HumanName().setFamily("Roe").addGiven("Rita"));
+        String relatedPersonId = create(relatedPerson);
+
+        CareTeam careTeam = newCareTeam();
+        careTeam.addParticipant().setMember(new Reference("Practitioner/" + practitionerId)).setOnBehalfOf(new Reference("Organization/" + onBehalfOfId));
+        careTeam.addParticipant().setMember(new Reference("Organization/" + organizationId));
+        careTeam.addParticipant().setMember(new Reference("RelatedPerson/" + relatedPersonId));
+        careTeam.addParticipant().setMember(new Reference("Patient/" + patientId));
+        create(careTeam);
+        fhirStub.resetCallCount();
+
+        //Act
+        PageDto<CareTeamDto> careTeams = getCareTeams();
+
+        //Assert
+        assertEquals(1, careTeams.getElements().size());
+        CareTeamDto careTeamDto = careTeams.getElements().get(0);
+        assertEquals(patientId, careTeamDto.getSubjectId());
+        assertEquals("Pat", careTeamDto.getSubjectFirstName());
+        assertEquals("Smith", careTeamDto.getSubjectLastName());
+
+        Map<String, ParticipantDto> participants = getParticipantsByMemberId(careTeamDto);
+        assertEquals(4, participants.size());
+
+        ParticipantDto practitionerParticipant = participants.get(practitionerId);
+        assertEquals("Practitioner", practitionerParticipant.getMemberType());
+        assertEquals(Optional.of("John"), practitionerParticipant.getMemberFirstName());
+        assertEquals(Optional.of("Doe"), practitionerParticipant.getMemberLastName());
+        assertEquals(onBehalfOfId, practitionerParticipant.getOnBehalfOfId());
+        assertEquals("Employer Clinic", practitionerParticipant.getOnBehalfOfName());
+
+        ParticipantDto organizationParticipant = participants.get(organizationId);
+        assertEquals("Organization", organizationParticipant.getMemberType());
+        assertEquals(Optional.of("Member Clinic"), organizationParticipant.getMemberName());
+
+        ParticipantDto relatedPersonParticipant = participants.get(relatedPersonId);
+        assertEquals("RelatedPerson", relatedPersonParticipant.getMemberType());
+        assertEquals(Optional.of("Rita"), relatedPersonParticipant.getMemberFirstName());
+        assertEquals(Optional.of("Roe"), relatedPersonParticipant.getMemberLastName());
+
+        ParticipantDto patientParticipant = participants.get(patientId);
+        assertEquals("Patient", patientParticipant.getMemberType());
+        assertEquals(Optional.of("Pat"), patientParticipant.getMemberFirstName());
+        assertEquals(Optional.of("Smith"), patientParticipant.getMemberLastName());
+
+        //The care team search with its includes and the onBehalfOf organization search
+        assertEquals(2, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testGetCareTeamsLeavesMembersThatAreNotIncludedUnresolved() {
+        //Arrange
+        Practitioner practitioner = new Practitioner();
+        practitioner.addName(new HumanName().setFamily("Doe").addGiven("John"));
+        String practitionerId = create(practitioner);
+
+        CareTeam careTeam = newCareTeam();
+        careTeam.addParticipant().setMember(new Reference("Practitioner/" + practitionerId));
+        careTeam.addParticipant().setMember(new Reference("Practitioner/deleted-practitioner"));
+        create(careTeam);
+
+        //Act
+        PageDto<CareTeamDto> careTeams = getCareTeams();
+
+        //Assert
+        List<ParticipantDto> participantDtos = careTeams.getElements().get(0).getParticipants();
+        assertEquals(2, participantDtos.size());
+        assertEquals(practitionerId, participantDtos.get(0).getMemberId());
+        assertEquals("Practitioner", participantDtos.get(0).getMemberType());
+        assertNull(participantDtos.get(1).getMemberId());
+        assertNull(participantDtos.get(1).getMemberType());
+    }
+
+    private PageDto<CareTeamDto> getCareTeams() {
+        return careTeamService.getCareTeams(Optional.empty(), "patientId", patientId, Optional.of(1), Optional.of(20));
+    }
+
+    private CareTeam newCareTeam() {
+        CareTeam careTeam = new CareTeam();
+        careTeam.setStatus(CareTeam.CareTeamStatus.ACTIVE);
+        careTeam.setName("Care Team");
+        careTeam.setSubject(new Reference("Patient/" + patientId));
+        return careTeam;
+    }
+
+    private static String create(Resource resource) {
+        return fhirStub.getStore().create(resource).getIdElement().getIdPart();
+    }
+
+    private static Map<String, ParticipantDto> getParticipantsByMemberId(CareTeamDto careTeamDto) {
+        return careTeamDto.getParticipants().stream()
+                .collect(toMap(ParticipantDto::getMemberId, Function.identity()));
+    }
+}
@@ -8,6 +8,7 @@
 import gov.samhsa.ocp.ocpfis.service.dto.CareTeamDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
 import gov.samhsa.ocp.ocpfis.service.dto.ValueSetDto;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.CareTeam;
@@ -59,6 +60,18 @@ public class CareTeamServiceImplTest {
     @Mock
     private LookUpService lookUpService;
 
+    @Mock
+    private ReferenceResolver referenceResolver;
+
+    @Mock
+    private OrganizationMembershipService organizationMembershipService;
+
+    @Mock
+    private CareTeamGraph careTeamGraph;
+
+    @Mock
+    private FhirProfileRegistry fhirProfileRegistry;
+
     @InjectMocks
     public CareTeamServiceImpl careTeamService;
 
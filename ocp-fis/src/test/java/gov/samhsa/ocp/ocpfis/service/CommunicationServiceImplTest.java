@@ -0,0 +1,126 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.validation.FhirValidator;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import gov.samhsa.ocp.ocpfis.service.dto.CommunicationDto;
+import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
+import gov.samhsa.ocp.ocpfis.util.FhirSearchParameterSupport;
+import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
+import org.hl7.fhir.dstu3.model.Communication;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CommunicationServiceImplTest {
+
+    private static final String PATIENT_ID = "patient-1";
+    private static final String APPOINTMENT_ID = "appointment-1";
+    private static final int TOPIC_COMMUNICATION_COUNT = 12;
+    private static final int PAGE_SIZE = 5;
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private FhirSearchParameterSupport fhirSearchParameterSupport;
+
+    private CommunicationServiceImpl communicationService;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        for (int i = 0; i < 30; i++) {
+            Communication communication = new Communication();
+            communication.setStatus(Communication.CommunicationStatus.COMPLETED);
+            communication.setSubject(new Reference("Patient/" + PATIENT_ID));
+            if (i % 2 == 0 && i < 2 * TOPIC_COMMUNICATION_COUNT) {
+                communication.addTopic(new Reference("Appointment/" + APPOINTMENT_ID));
+            } else {
+                communication.addTopic(new Reference("Appointment/appointment-2"));
+            }
+            fhirStub.getStore().create(communication);
+        }
+
+        fhirSearchParameterSupport = mock(FhirSearchParameterSupport.class);
+        communicationService = new CommunicationServiceImpl(fhirStub.getFhirClient(), mock(FhirValidator.class), mock(LookUpService.class),
+                fhirStub.newFisProperties(), mock(ProvenanceUtil.class), mock(FhirProfileRegistry.class), fhirSearchParameterSupport,
+                new TaskExecutorAdapter(new SyncTaskExecutor()));
+    }
+
+    @Test
+    public void testGetCommunicationsFiltersByTopicInMemoryWhenServerLacksTopicParameter() {
+        //Arrange
+        when(fhirSearchParameterSupport.isSupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC)).thenReturn(false);
+
+        //Act
+        PageDto<CommunicationDto> communications = getTopicCommunicationsPage(1);
+
+        //Assert
+        assertEquals(PAGE_SIZE, communications.getElements().size());
+        //The scan stops after the first communication about the topic past the page
+        assertEquals(PAGE_SIZE + 1, communications.getTotalElements());
+        assertTrue(communications.isHasNextPage());
+        assertTrue(communications.getElements().stream().allMatch(communication -> communication.getTopic().getReference().equals("Appointment/" + APPOINTMENT_ID)));
+    }
+
+    @Test
+    public void testGetCommunicationsPagesTopicCommunicationsFilteredInMemory() {
+        //Arrange
+        when(fhirSearchParameterSupport.isSupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC)).thenReturn(false);
+
+        //Act
+        PageDto<CommunicationDto> lastPage = getTopicCommunicationsPage(3);
+
+        //Assert
+        assertEquals(3, lastPage.getCurrentPage());
+        assertEquals(TOPIC_COMMUNICATION_COUNT - 2 * PAGE_SIZE, lastPage.getElements().size());
+        assertEquals(TOPIC_COMMUNICATION_COUNT, lastPage.getTotalElements());
+        assertFalse(lastPage.isHasNextPage());
+        assertTrue(lastPage.getElements().stream().allMatch(communication -> communication.getTopic().getReference().equals("Appointment/" + APPOINTMENT_ID)));
+    }
+
+    @Test
+    public void testGetCommunicationsFilteredInMemoryReadsOnlyThePagesNeeded() {
+        //Arrange
+        when(fhirSearchParameterSupport.isSupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC)).thenReturn(false);
+        for (int i = 0; i < 60; i++) {
+            Communication communication = new Communication();
+            communication.setSubject(new Reference("Patient/" + PATIENT_ID));
+            communication.addTopic(new Reference("Appointment/" + APPOINTMENT_ID));
+            fhirStub.getStore().create(communication);
+        }
+        FisProperties fisProperties = fhirStub.newFisProperties();
+        fisProperties.setResourceSinglePageLimit(PAGE_SIZE);
+        communicationService = new CommunicationServiceImpl(fhirStub.getFhirClient(), mock(FhirValidator.class), mock(LookUpService.class),
+                fisProperties, mock(ProvenanceUtil.class), mock(FhirProfileRegistry.class), fhirSearchParameterSupport,
+                new TaskExecutorAdapter(new SyncTaskExecutor()));
+        fhirStub.resetCallCount();
+
+        //Act
+        PageDto<CommunicationDto> communications = getTopicCommunicationsPage(1);
+
+        //Assert
+        assertEquals(PAGE_SIZE, communications.getElements().size());
+        //At most the 18 communications about other topics come before 6 about the topic, so the scan reads up to 5
+        //pages and 1 ahead, and 1 search reads the communications of the page; not all 18 pages of the patient
+        assertTrue(fhirStub.getCallCount() <= 7);
+    }
+
+    private PageDto<CommunicationDto> getTopicCommunicationsPage(int pageNumber) {
+        return communicationService.getCommunications(Optional.empty(), "patientId", PATIENT_ID, Optional.empty(),
+                Optional.of(APPOINTMENT_ID), Optional.of(ResourceType.Appointment.name()), Optional.of(pageNumber), Optional.of(PAGE_SIZE));
+    }
+}
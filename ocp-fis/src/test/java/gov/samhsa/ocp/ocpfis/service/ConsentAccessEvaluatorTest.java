@@ -0,0 +1,213 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import org.hl7.fhir.dstu3.model.CareTeam;
+import org.hl7.fhir.dstu3.model.CodeableConcept;
+import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.Consent;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Period;
+import org.hl7.fhir.dstu3.model.PractitionerRole;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.hl7.fhir.dstu3.model.codesystems.V3ParticipationType;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConsentAccessEvaluatorTest {
+
+    private static final String PRACTITIONER_ID = "practitioner-1";
+    private static final String ORGANIZATION_ID = "organization-1";
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private OrganizationMembershipService organizationMembershipService;
+
+    private ConsentAccessEvaluator consentAccessEvaluator;
+
+    private String patientId;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        patientId = fhirStub.getStore().create(new Patient()).getIdElement().getIdPart();
+
+        FisProperties fisProperties = fhirStub.newFisProperties();
+        organizationMembershipService = new OrganizationMembershipService(fhirStub.getFhirClient(), fisProperties);
+        consentAccessEvaluator = new ConsentAccessEvaluator(fhirStub.getFhirClient(), fisProperties, organizationMembershipService);
+        organizationMembershipService.bulkLoad();
+    }
+
+    @Test
+    public void testCanViewPatientsGrantsParticipantOfRecipientCareTeam() {
+        //Arrange
+        CareTeam careTeam = (CareTeam) fhirStub.getStore().create(newCareTeam(PRACTITIONER_ID));
+        fhirStub.getStore().create(newConsent(patientId, "CareTeam/" + careTeam.getIdElement().getIdPart()));
+
+        //Act
+        boolean canView = canViewPatient();
+
+        //Assert
+        assertTrue(canView);
+    }
+
+    @Test
+    public void testCanViewPatientsGrantsPractitionerOfRecipientOrganization() {
+        //Arrange
+        PractitionerRole practitionerRole = new PractitionerRole();
+        practitionerRole.setPractitioner(new Reference("Practitioner/" + PRACTITIONER_ID));
+        practitionerRole.setOrganization(new Reference("Organization/" + ORGANIZATION_ID));
+        fhirStub.getStore().create(practitionerRole);
+        fhirStub.getStore().create(newConsent(patientId, "Organization/" + ORGANIZATION_ID));
+
+        //Act
+        boolean canView = canViewPatient();
+
+        //Assert
+        assertTrue(canView);
+    }
+
+    @Test
+    public void testCanViewPatientsDeniesWithoutConsent() {
+        //Arrange
+        fhirStub.getStore().create(newCareTeam(PRACTITIONER_ID));
+
+        //Act
+        boolean canView = canViewPatient();
+
+        //Assert
+        assertFalse(canView);
+    }
+
+    @Test
+    public void testCanViewPatientsDeniesAfterConsentIsRevoked() {
+        //Arrange
+        CareTeam careTeam = (CareTeam) fhirStub.getStore().create(newCareTeam(PRACTITIONER_ID));
+        Consent consent = (Consent) fhirStub.getStore().create(newConsent(patientId, "CareTeam/" + careTeam.getIdElement().getIdPart()));
+        assertTrue(canViewPatient());
+        consent.setStatus(Consent.ConsentState.INACTIVE);
+        fhirStub.getStore().update(consent);
+
+        //Act
+        boolean canView = canViewPatient();
+
+        //Assert
+        assertFalse(canView);
+    }
+
+    @Test
+    public void testCanViewPatientsDeniesAfterPractitionerLeavesRecipientCareTeam() {
+        //Arrange
+        CareTeam careTeam = (CareTeam) fhirStub.getStore().create(newCareTeam(PRACTITIONER_ID));
+        fhirStub.getStore().create(newConsent(patientId, "CareTeam/" + careTeam.getIdElement().getIdPart()));
+        assertTrue(canViewPatient());
+        careTeam.getParticipant().clear();
+        careTeam.addParticipant().setMember(new Reference("Practitioner/practitioner-2"));
+        fhirStub.getStore().update(careTeam);
+        organizationMembershipService.index(careTeam.getIdElement().getIdPart(), careTeam);
+
+        //Act
+        boolean canView = canViewPatient();
+
+        //Assert
+        //The consent is unchanged, the cached decision must not outlive the membership it was based on
+        assertFalse(canView);
+    }
+
+    @Test
+    public void testCanViewPatientsDeniesAfterRecipientCareTeamIsDeleted() {
+        //Arrange
+        CareTeam careTeam = (CareTeam) fhirStub.getStore().create(newCareTeam(PRACTITIONER_ID));
+        String careTeamId = careTeam.getIdElement().getIdPart();
+        fhirStub.getStore().create(newConsent(patientId, "CareTeam/" + careTeamId));
+        assertTrue(canViewPatient());
+        fhirStub.getStore().delete(ResourceType.CareTeam.name(), careTeamId);
+        organizationMembershipService.onResourceDeleted(new ResourceDeletedEvent(ResourceType.CareTeam.name(), careTeamId));
+
+        //Act
+        boolean canView = canViewPatient();
+
+        //Assert
+        assertFalse(canView);
+    }
+
+    @Test
+    public void testCanViewPatientsSearchesCareTeamsTheIndexHasNotPickedUp() {
+        //Arrange
+        CareTeam careTeam = (CareTeam) fhirStub.getStore().create(newCareTeam(PRACTITIONER_ID));
+        fhirStub.getStore().create(newConsent(patientId, "CareTeam/" + careTeam.getIdElement().getIdPart()));
+
+        //Act
+        boolean canView = canViewPatient();
+
+        //Assert
+        assertTrue(organizationMembershipService.getCareTeamIds(Collections.singleton(PRACTITIONER_ID)).isEmpty());
+        assertTrue(canView);
+    }
+
+    @Test
+    public void testCanViewPatientsDeniesParticipationThatHasEnded() {
+        //Arrange
+        CareTeam careTeam = newCareTeam(PRACTITIONER_ID);
+        careTeam.getParticipantFirstRep().setPeriod(new Period().setEnd(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1))));
+        careTeam = (CareTeam) fhirStub.getStore().create(careTeam);
+        fhirStub.getStore().create(newConsent(patientId, "CareTeam/" + careTeam.getIdElement().getIdPart()));
+
+        //Act
+        boolean canView = canViewPatient();
+
+        //Assert
+        assertFalse(canView);
+    }
+
+    @Test
+    public void testCanViewPatientsDecidesPerPatient() {
+        //Arrange
+        CareTeam careTeam = (CareTeam) fhirStub.getStore().create(newCareTeam(PRACTITIONER_ID));
+        fhirStub.getStore().create(newConsent(patientId, "CareTeam/" + careTeam.getIdElement().getIdPart()));
+        String otherPatientId = fhirStub.getStore().create(new Patient()).getIdElement().getIdPart();
+
+        //Act
+        Map<String, Boolean> canView = consentAccessEvaluator.canViewPatients(PRACTITIONER_ID, Arrays.asList(patientId, otherPatientId));
+
+        //Assert
+        assertTrue(canView.get(patientId));
+        assertFalse(canView.get(otherPatientId));
+    }
+
+    private boolean canViewPatient() {
+        return consentAccessEvaluator.canViewPatients(PRACTITIONER_ID, Collections.singletonList(patientId)).get(patientId);
+    }
+
+    private CareTeam newCareTeam(String practitionerId) {
+        CareTeam careTeam = new CareTeam();
+        careTeam.setStatus(CareTeam.CareTeamStatus.ACTIVE);
+        careTeam.setSubject(new Reference("Patient/" + patientId));
+        careTeam.addParticipant().setMember(new Reference("Practitioner/" + practitionerId));
+        return careTeam;
+    }
+
+    private static Consent newConsent(String patientId, String recipient) {
+        long now = System.currentTimeMillis();
+        Consent consent = new Consent();
+        consent.setStatus(Consent.ConsentState.ACTIVE);
+        consent.setPatient(new Reference("Patient/" + patientId));
+        consent.setPeriod(new Period().setStart(new Date(now - TimeUnit.DAYS.toMillis(1))).setEnd(new Date(now + TimeUnit.DAYS.toMillis(1))));
+        consent.addActor()
+                .setRole(new CodeableConcept().addCoding(new Coding().setCode(V3ParticipationType.IRCP.toCode())))
+                .setReference(new Reference(recipient));
+        return consent;
+    }
+}
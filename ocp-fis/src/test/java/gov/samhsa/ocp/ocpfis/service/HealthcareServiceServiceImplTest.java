@@ -10,6 +10,7 @@
 import gov.samhsa.ocp.ocpfis.service.dto.HealthcareServiceDto;
 import gov.samhsa.ocp.ocpfis.service.dto.NameLogicalIdIdentifiersDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.HealthcareService;
@@ -51,6 +52,12 @@ public class HealthcareServiceServiceImplTest {
     @Mock
     private FisProperties fisProperties;
 
+    @Mock
+    private ReferenceResolver referenceResolver;
+
+    @Mock
+    private FhirProfileRegistry fhirProfileRegistry;
+
     @InjectMocks
     private HealthcareServiceServiceImpl healthcareServiceService;
 
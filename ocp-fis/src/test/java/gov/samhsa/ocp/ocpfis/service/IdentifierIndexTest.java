@@ -0,0 +1,108 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import org.hl7.fhir.dstu3.model.Identifier;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IdentifierIndexTest {
+
+    private static final String SYSTEM = "urn:oid:2.16.840.1.113883.4.4";
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private IdentifierIndex identifierIndex;
+
+    private String organizationId;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        Organization organization = new Organization();
+        organization.setName("Community Clinic");
+        organization.addIdentifier().setSystem(SYSTEM).setValue("12-345 678");
+        organizationId = fhirStub.getStore().create(organization).getIdElement().getIdPart();
+
+        identifierIndex = new IdentifierIndex(fhirStub.getFhirClient(), fhirStub.newFisProperties());
+    }
+
+    @Test
+    public void testFindIdsMatchesNormalizedIdentifier() {
+        //Act and Assert
+        assertEquals(Collections.singleton(organizationId), identifierIndex.findIds(ResourceType.Organization, SYSTEM, "12345678"));
+        assertTrue(identifierIndex.findIds(ResourceType.Organization, SYSTEM, "87654321").isEmpty());
+    }
+
+    @Test
+    public void testFindIdsDoesNotSearchWithoutHit() {
+        //Arrange
+        identifierIndex.findIds(ResourceType.Organization, SYSTEM, "12345678");
+        fhirStub.resetCallCount();
+
+        //Act
+        identifierIndex.findIds(ResourceType.Organization, SYSTEM, "87654321");
+
+        //Assert
+        assertEquals(0, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testFindIdsForgetsResourceDeletedByOtherClient() {
+        //Arrange
+        identifierIndex.findIds(ResourceType.Organization, SYSTEM, "12345678");
+        fhirStub.getStore().delete(ResourceType.Organization.name(), organizationId);
+
+        //Act and Assert
+        assertTrue(identifierIndex.findIds(ResourceType.Organization, SYSTEM, "12345678").isEmpty());
+    }
+
+    @Test
+    public void testFindIdsFollowsIdentifierChangedByOtherClient() {
+        //Arrange
+        identifierIndex.findIds(ResourceType.Organization, SYSTEM, "12345678");
+        Organization organization = (Organization) fhirStub.getStore().read(ResourceType.Organization.name(), organizationId).get();
+        organization.setIdentifier(Collections.singletonList(new Identifier().setSystem(SYSTEM).setValue("87654321")));
+        fhirStub.getStore().update(organization);
+
+        //Act and Assert
+        assertTrue(identifierIndex.findIds(ResourceType.Organization, SYSTEM, "12345678").isEmpty());
+    }
+
+    @Test
+    public void testResourceDeletedEventEvictsResource() {
+        //Arrange
+        identifierIndex.findIds(ResourceType.Organization, SYSTEM, "12345678");
+        fhirStub.resetCallCount();
+
+        //Act
+        identifierIndex.onResourceDeleted(new ResourceDeletedEvent("organization", organizationId));
+
+        //Assert
+        assertTrue(identifierIndex.findIds(ResourceType.Organization, SYSTEM, "12345678").isEmpty());
+        assertEquals(0, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testIndexedWriteIsFound() {
+        //Arrange
+        identifierIndex.findIds(ResourceType.Organization, SYSTEM, "12345678");
+        Organization organization = new Organization();
+        organization.addIdentifier().setSystem(SYSTEM).setValue("11111111");
+        String createdId = fhirStub.getFhirClient().create().resource(organization).execute().getId().getIdPart();
+
+        //Act
+        identifierIndex.index(ResourceType.Organization, createdId, organization.getIdentifier());
+
+        //Assert
+        assertEquals(Collections.singleton(createdId), identifierIndex.findIds(ResourceType.Organization, SYSTEM, "1111-1111"));
+    }
+}
@@ -5,9 +5,12 @@
 import ca.uhn.fhir.rest.gclient.IQuery;
 import ca.uhn.fhir.rest.gclient.IUntypedQuery;
 import ca.uhn.fhir.rest.gclient.ReferenceClientParam;
+import ca.uhn.fhir.validation.FhirValidator;
 import gov.samhsa.ocp.ocpfis.config.FisProperties;
 import gov.samhsa.ocp.ocpfis.service.dto.LocationDto;
 import gov.samhsa.ocp.ocpfis.service.exception.ResourceNotFoundException;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
+import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.Location;
 import org.hl7.fhir.dstu3.model.Resource;
@@ -41,6 +44,17 @@ public class LocationServiceImplTest {
     private IGenericClient fhirClient;
     @Mock
     private FisProperties fisProperties;
+    @Mock
+    private FhirValidator fhirValidator;
+    @Mock
+    private LookUpService lookUpService;
+    @Mock
+    private ProvenanceUtil provenanceUtil;
+    @Mock
+    private IdentifierIndex identifierIndex;
+
+    @Mock
+    private FhirProfileRegistry fhirProfileRegistry;
 
     @InjectMocks
     private LocationServiceImpl locationServiceImpl;
@@ -0,0 +1,103 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.oauth2.client.OAuth2ClientContext;
+import org.springframework.security.oauth2.client.OAuth2RestTemplate;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OAuth2AccessTokenHolderTest {
+
+    private OAuth2RestTemplate oAuth2RestTemplate;
+    private FisProperties fisProperties;
+    private ScheduledThreadPoolExecutor refreshExecutor;
+
+    @Before
+    public void setUp() {
+        oAuth2RestTemplate = mock(OAuth2RestTemplate.class);
+        when(oAuth2RestTemplate.getOAuth2ClientContext()).thenReturn(mock(OAuth2ClientContext.class));
+        fisProperties = new FisProperties();
+        fisProperties.setFhir(new FisProperties.Fhir());
+
+        refreshExecutor = new ScheduledThreadPoolExecutor(1);
+        refreshExecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    @After
+    public void tearDown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testGetAccessTokenValueFetchesToken() {
+        //Arrange
+        OAuth2AccessToken token = newToken("token-1", false);
+        when(oAuth2RestTemplate.getAccessToken()).thenReturn(token);
+        OAuth2AccessTokenHolder accessTokenHolder = new OAuth2AccessTokenHolder(oAuth2RestTemplate, fisProperties, refreshExecutor);
+
+        //Act
+        String tokenValue = accessTokenHolder.getAccessTokenValue();
+
+        //Assert
+        assertEquals("token-1", tokenValue);
+    }
+
+    @Test
+    public void testOnlyOneRefreshStaysScheduledAfterRepeatedFetches() {
+        //Arrange
+        //A token the server considers expired makes every call fetch a new one, each fetch schedules a refresh
+        OAuth2AccessToken expiredToken = newToken("token-1", true);
+        when(oAuth2RestTemplate.getAccessToken()).thenReturn(expiredToken);
+        OAuth2AccessTokenHolder accessTokenHolder = new OAuth2AccessTokenHolder(oAuth2RestTemplate, fisProperties, refreshExecutor);
+
+        //Act
+        for (int i = 0; i < 5; i++) {
+            accessTokenHolder.getAccessTokenValue();
+        }
+
+        //Assert
+        verify(oAuth2RestTemplate, atLeast(5)).getAccessToken();
+        assertEquals(1, refreshExecutor.getQueue().size());
+    }
+
+    @Test
+    public void testOnlyOneRetryStaysScheduledAfterRepeatedFailures() {
+        //Arrange
+        when(oAuth2RestTemplate.getAccessToken()).thenThrow(new IllegalStateException("Token endpoint unavailable"));
+        OAuth2AccessTokenHolder accessTokenHolder = new OAuth2AccessTokenHolder(oAuth2RestTemplate, fisProperties, refreshExecutor);
+
+        //Act
+        for (int i = 0; i < 5; i++) {
+            try {
+                accessTokenHolder.getAccessTokenValue();
+                fail("The failure of the token endpoint must reach the caller without a token");
+            } catch (IllegalStateException e) {
+                assertEquals("Token endpoint unavailable", e.getMessage());
+            }
+        }
+
+        //Assert
+        assertEquals(1, refreshExecutor.getQueue().size());
+    }
+
+    private static OAuth2AccessToken newToken(String value, boolean expired) {
+        OAuth2AccessToken token = mock(OAuth2AccessToken.class);
+        when(token.getValue()).thenReturn(value);
+        when(token.isExpired()).thenReturn(expired);
+        when(token.getExpiration()).thenReturn(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+        return token;
+    }
+}
@@ -0,0 +1,229 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import org.hl7.fhir.dstu3.model.CareTeam;
+import org.hl7.fhir.dstu3.model.EpisodeOfCare;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Period;
+import org.hl7.fhir.dstu3.model.PractitionerRole;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OrganizationMembershipServiceTest {
+
+    private static final String ORGANIZATION_ID = "organization-1";
+    private static final String OTHER_ORGANIZATION_ID = "organization-2";
+    private static final String PRACTITIONER_ID = "practitioner-1";
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private OrganizationMembershipService organizationMembershipService;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        organizationMembershipService = new OrganizationMembershipService(fhirStub.getFhirClient(), fhirStub.newFisProperties());
+    }
+
+    @Test
+    public void testGetPatientIdsIncludesManagedPatientsAndEpisodesOfCare() {
+        //Arrange
+        String managedPatientId = createPatient(ORGANIZATION_ID);
+        String episodePatientId = createPatient(OTHER_ORGANIZATION_ID);
+        createEpisodeOfCare(ORGANIZATION_ID, episodePatientId);
+        createPatient(OTHER_ORGANIZATION_ID);
+
+        //Act
+        Set<String> patientIds = organizationMembershipService.getPatientIds(ORGANIZATION_ID);
+
+        //Assert
+        assertEquals(new HashSet<>(Arrays.asList(managedPatientId, episodePatientId)), patientIds);
+    }
+
+    @Test
+    public void testIsMemberAnswersFromTheLoadedIndex() {
+        //Arrange
+        String patientId = createPatient(ORGANIZATION_ID);
+        String otherPatientId = createPatient(OTHER_ORGANIZATION_ID);
+        organizationMembershipService.getPatientIds(ORGANIZATION_ID);
+        fhirStub.resetCallCount();
+
+        //Act
+        boolean member = organizationMembershipService.isMember(ORGANIZATION_ID, patientId);
+        boolean otherMember = organizationMembershipService.isMember(ORGANIZATION_ID, otherPatientId);
+
+        //Assert
+        assertTrue(member);
+        assertFalse(otherMember);
+        //Membership checks are set lookups, not one FHIR search per candidate patient
+        assertEquals(0, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testIndexAppliesOwnWritesWithoutAFhirCall() {
+        //Arrange
+        organizationMembershipService.getPatientIds(ORGANIZATION_ID);
+        Patient patient = (Patient) fhirStub.getStore().create(newPatient(ORGANIZATION_ID));
+        fhirStub.resetCallCount();
+
+        //Act
+        organizationMembershipService.index(patient.getIdElement().getIdPart(), patient);
+
+        //Assert
+        //The list loaded right after the write already has the patient
+        assertTrue(organizationMembershipService.isMember(ORGANIZATION_ID, patient.getIdElement().getIdPart()));
+        assertEquals(0, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testIndexMovesPatientToNewOrganization() {
+        //Arrange
+        String patientId = createPatient(ORGANIZATION_ID);
+        organizationMembershipService.getPatientIds(ORGANIZATION_ID);
+        Patient patient = (Patient) fhirStub.getStore().read(ResourceType.Patient.name(), patientId).get();
+        patient.setManagingOrganization(new Reference("Organization/" + OTHER_ORGANIZATION_ID));
+        fhirStub.getStore().update(patient);
+
+        //Act
+        organizationMembershipService.index(patientId, patient);
+
+        //Assert
+        assertFalse(organizationMembershipService.isMember(ORGANIZATION_ID, patientId));
+        assertTrue(organizationMembershipService.isMember(OTHER_ORGANIZATION_ID, patientId));
+    }
+
+    @Test
+    public void testGetCareTeamPatientIdsOfPractitionerAndItsOrganizations() {
+        //Arrange
+        String practitionerPatientId = createPatient(OTHER_ORGANIZATION_ID);
+        String organizationPatientId = createPatient(OTHER_ORGANIZATION_ID);
+        createCareTeam(practitionerPatientId, "Practitioner/" + PRACTITIONER_ID);
+        createCareTeam(organizationPatientId, "Organization/" + ORGANIZATION_ID);
+        createCareTeam(createPatient(OTHER_ORGANIZATION_ID), "Practitioner/practitioner-2");
+        PractitionerRole practitionerRole = new PractitionerRole();
+        practitionerRole.setPractitioner(new Reference("Practitioner/" + PRACTITIONER_ID));
+        practitionerRole.setOrganization(new Reference("Organization/" + ORGANIZATION_ID));
+        fhirStub.getStore().create(practitionerRole);
+
+        //Act
+        Set<String> participantIds = new HashSet<>(organizationMembershipService.getOrganizationIds(PRACTITIONER_ID));
+        participantIds.add(PRACTITIONER_ID);
+        Set<String> patientIds = organizationMembershipService.getCareTeamPatientIds(participantIds);
+
+        //Assert
+        assertEquals(Collections.singleton(ORGANIZATION_ID), organizationMembershipService.getOrganizationIds(PRACTITIONER_ID));
+        assertEquals(new HashSet<>(Arrays.asList(practitionerPatientId, organizationPatientId)), patientIds);
+    }
+
+    @Test
+    public void testPollChangesPicksUpWritesOfOtherClients() {
+        //Arrange
+        organizationMembershipService.getPatientIds(ORGANIZATION_ID);
+        String patientId = createPatient(ORGANIZATION_ID);
+        assertFalse(organizationMembershipService.isMember(ORGANIZATION_ID, patientId));
+
+        //Act
+        organizationMembershipService.pollChanges();
+
+        //Assert
+        assertTrue(organizationMembershipService.isMember(ORGANIZATION_ID, patientId));
+    }
+
+    @Test
+    public void testOnResourceDeletedEvictsCareTeam() {
+        //Arrange
+        String patientId = createPatient(ORGANIZATION_ID);
+        String careTeamId = createCareTeam(patientId, "Practitioner/" + PRACTITIONER_ID);
+        assertEquals(Collections.singleton(patientId), organizationMembershipService.getCareTeamPatientIds(Collections.singleton(PRACTITIONER_ID)));
+        long generation = organizationMembershipService.getGeneration();
+        fhirStub.getStore().delete(ResourceType.CareTeam.name(), careTeamId);
+
+        //Act
+        organizationMembershipService.onResourceDeleted(new ResourceDeletedEvent(ResourceType.CareTeam.name(), careTeamId));
+
+        //Assert
+        assertTrue(organizationMembershipService.getCareTeamPatientIds(Collections.singleton(PRACTITIONER_ID)).isEmpty());
+        assertFalse(organizationMembershipService.getCareTeamPatientId(careTeamId).isPresent());
+        assertNotEquals(generation, organizationMembershipService.getGeneration());
+    }
+
+    @Test
+    public void testReconcileDropsResourcesDeletedByOtherClients() {
+        //Arrange
+        String patientId = createPatient(ORGANIZATION_ID);
+        String otherPatientId = createPatient(ORGANIZATION_ID);
+        organizationMembershipService.getPatientIds(ORGANIZATION_ID);
+        fhirStub.getStore().delete(ResourceType.Patient.name(), patientId);
+        organizationMembershipService.pollChanges();
+        assertTrue(organizationMembershipService.isMember(ORGANIZATION_ID, patientId));
+
+        //Act
+        organizationMembershipService.reconcile();
+
+        //Assert
+        assertFalse(organizationMembershipService.isMember(ORGANIZATION_ID, patientId));
+        assertTrue(organizationMembershipService.isMember(ORGANIZATION_ID, otherPatientId));
+    }
+
+    @Test
+    public void testGetCareTeamIdsLeavesOutParticipationsOutsideTheirPeriod() {
+        //Arrange
+        long now = System.currentTimeMillis();
+        String currentCareTeamId = createCareTeam(createPatient(ORGANIZATION_ID), "Practitioner/" + PRACTITIONER_ID,
+                new Period().setStart(new Date(now - TimeUnit.DAYS.toMillis(1))));
+        createCareTeam(createPatient(ORGANIZATION_ID), "Practitioner/" + PRACTITIONER_ID,
+                new Period().setEnd(new Date(now - TimeUnit.DAYS.toMillis(1))));
+        createCareTeam(createPatient(ORGANIZATION_ID), "Practitioner/" + PRACTITIONER_ID,
+                new Period().setStart(new Date(now + TimeUnit.DAYS.toMillis(1))));
+
+        //Act
+        Set<String> careTeamIds = organizationMembershipService.getCareTeamIds(Collections.singleton(PRACTITIONER_ID));
+
+        //Assert
+        assertEquals(Collections.singleton(currentCareTeamId), careTeamIds);
+    }
+
+    private String createPatient(String organizationId) {
+        return fhirStub.getStore().create(newPatient(organizationId)).getIdElement().getIdPart();
+    }
+
+    private static Patient newPatient(String organizationId) {
+        Patient patient = new Patient();
+        patient.setManagingOrganization(new Reference("Organization/" + organizationId));
+        return patient;
+    }
+
+    private void createEpisodeOfCare(String organizationId, String patientId) {
+        EpisodeOfCare episodeOfCare = new EpisodeOfCare();
+        episodeOfCare.setManagingOrganization(new Reference("Organization/" + organizationId));
+        episodeOfCare.setPatient(new Reference("Patient/" + patientId));
+        fhirStub.getStore().create(episodeOfCare);
+    }
+
+    private String createCareTeam(String patientId, String member) {
+        return createCareTeam(patientId, member, null);
+    }
+
+    private String createCareTeam(String patientId, String member, Period period) {
+        CareTeam careTeam = new CareTeam();
+        careTeam.setSubject(new Reference("Patient/" + patientId));
+        careTeam.addParticipant().setMember(new Reference(member)).setPeriod(period);
+        return fhirStub.getStore().create(careTeam).getIdElement().getIdPart();
+    }
+}
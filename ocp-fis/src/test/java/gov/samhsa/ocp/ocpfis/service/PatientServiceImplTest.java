@@ -0,0 +1,425 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.util.FhirTerser;
+import ca.uhn.fhir.validation.FhirValidator;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import gov.samhsa.ocp.ocpfis.fhirstub.SyntheticDataGenerator;
+import gov.samhsa.ocp.ocpfis.service.dto.EpisodeOfCareDto;
+import gov.samhsa.ocp.ocpfis.service.dto.FlagDto;
+import gov.samhsa.ocp.ocpfis.service.dto.IdentifierDto;
+import gov.samhsa.ocp.ocpfis.service.dto.NameDto;
+import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
+import gov.samhsa.ocp.ocpfis.service.dto.PatientDto;
+import gov.samhsa.ocp.ocpfis.service.dto.PeriodDto;
+import gov.samhsa.ocp.ocpfis.service.dto.ReferenceDto;
+import gov.samhsa.ocp.ocpfis.service.dto.ValueSetDto;
+import gov.samhsa.ocp.ocpfis.service.mapping.ModelMapperTestConfig;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
+import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.CareTeam;
+import org.hl7.fhir.dstu3.model.CodeableConcept;
+import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.EpisodeOfCare;
+import org.hl7.fhir.dstu3.model.Flag;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Period;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.dstu3.model.Task;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PatientServiceImplTest {
+
+    private static final int PATIENT_COUNT = 250;
+    private static final int PAGE_SIZE = 10;
+    private static final String ORGANIZATION_ID = "organization-1";
+    private static final String PRACTITIONER_ID = "practitioner-1";
+    private static final String PARTICIPANT_ROLE_CODE = "counselor";
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private FisProperties fisProperties;
+    private LookUpService lookUpService;
+    private IdentifierIndex identifierIndex;
+    private ReferenceResolver referenceResolver;
+    private ConsentAccessEvaluator consentAccessEvaluator;
+    private OrganizationMembershipService organizationMembershipService;
+
+    private PatientServiceImpl patientService;
+
+    private List<Patient> generatedPatients;
+    private Set<String> patientIds;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        generatedPatients = new SyntheticDataGenerator(1).generate(fhirStub.getStore(), PATIENT_COUNT);
+        patientIds = generatedPatients.stream()
+                .map(patient -> patient.getIdElement().getIdPart())
+                .collect(toSet());
+
+        fisProperties = fhirStub.newFisProperties();
+        lookUpService = mock(LookUpService.class);
+        ValueSetDto activeFlagStatus = new ValueSetDto();
+        activeFlagStatus.setCode("active");
+        activeFlagStatus.setDisplay("Active");
+        when(lookUpService.getFlagStatus()).thenReturn(Collections.singletonList(activeFlagStatus));
+        ValueSetDto participantRole = new ValueSetDto();
+        participantRole.setCode(PARTICIPANT_ROLE_CODE);
+        when(lookUpService.getParticipantRoles()).thenReturn(Collections.singletonList(participantRole));
+        identifierIndex = mock(IdentifierIndex.class);
+        referenceResolver = mock(ReferenceResolver.class);
+        when(referenceResolver.resolve(eq(Organization.class), anyString())).thenReturn(Optional.empty());
+        when(referenceResolver.resolve(eq(Practitioner.class), anyString())).thenReturn(Optional.empty());
+        consentAccessEvaluator = mock(ConsentAccessEvaluator.class);
+        organizationMembershipService = mock(OrganizationMembershipService.class);
+
+        patientService = newPatientService(fhirStub.getFhirClient());
+        fhirStub.resetCallCount();
+    }
+
+    @Test
+    public void testGetPatientsByValueReturnsFirstPage() {
+        //Act
+        PageDto<PatientDto> patients = getPatientsPage(Optional.of(1), Optional.empty());
+
+        //Assert
+        assertEquals(PATIENT_COUNT, patients.getTotalElements());
+        assertEquals(PAGE_SIZE, patients.getElements().size());
+        assertTrue(patientIds.containsAll(getIds(patients)));
+        patients.getElements().forEach(patient -> {
+            assertEquals(1, patient.getFlags().get().size());
+            assertEquals(1, patient.getEpisodeOfCares().size());
+            assertEquals(1, patient.getCoverages().get().size());
+        });
+        //The patient search with its included resources and one task search for the activity types
+        assertEquals(2, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testGetPatientsByValueFetchesOnlyTheRequestedPage() {
+        //Arrange
+        List<String> firstPageIds = getIds(getPatientsPage(Optional.of(1), Optional.empty()));
+        fhirStub.resetCallCount();
+
+        //Act
+        PageDto<PatientDto> patients = getPatientsPage(Optional.of(3), Optional.empty());
+
+        //Assert
+        assertEquals(3, patients.getCurrentPage());
+        assertEquals(PAGE_SIZE, patients.getElements().size());
+        assertTrue(Collections.disjoint(firstPageIds, getIds(patients)));
+        //The first page, the third page and the task search, regardless of the number of patients
+        assertEquals(3, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testGetPatientsByValueContinuesFromCursor() {
+        //Arrange
+        PageDto<PatientDto> firstPage = getPatientsPage(Optional.of(1), Optional.empty());
+        assertNotNull(firstPage.getNextCursor());
+        fhirStub.resetCallCount();
+
+        //Act
+        PageDto<PatientDto> secondPage = getPatientsPage(Optional.empty(), Optional.of(firstPage.getNextCursor()));
+
+        //Assert
+        assertEquals(PAGE_SIZE, secondPage.getElements().size());
+        assertTrue(Collections.disjoint(getIds(firstPage), getIds(secondPage)));
+        //The search is not repeated, only the page of the cursor and the task search are requested
+        assertEquals(2, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testGetPatientsByValueLoadsActivityTypesWithOneTaskSearchPerPage() {
+        //Arrange
+        int pageSize = 30;
+        String patientId = getPatientsPage(Optional.of(1), Optional.empty()).getElements().get(0).getId();
+        Task task = new Task();
+        task.setStatus(Task.TaskStatus.INPROGRESS);
+        task.setFor(new Reference("Patient/" + patientId));
+        task.setDefinition(new Reference("ActivityDefinition/1").setDisplay("Intake"));
+        task.setExecutionPeriod(new Period().setEnd(new Date()));
+        fhirStub.getStore().create(task);
+        fhirStub.resetCallCount();
+
+        //Act
+        PageDto<PatientDto> patients = patientService.getPatientsByValue(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(1), Optional.of(pageSize), Optional.empty(), Optional.empty());
+
+        //Assert
+        assertEquals(pageSize, patients.getElements().size());
+        PatientDto patient = patients.getElements().stream().filter(patientDto -> patientDto.getId().equals(patientId)).findAny().get();
+        assertTrue(patient.getActivityTypes().get().stream().anyMatch(activityType -> activityType.startsWith("Intake - Due: ")));
+        //The tasks of all the patients of the page are loaded with a single search
+        assertEquals(2, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testGetPatientsByValueFiltersByName() {
+        //Arrange
+        Patient patient = generatedPatients.get(0);
+        String family = patient.getNameFirstRep().getFamily();
+
+        //Act
+        PageDto<PatientDto> patients = patientService.getPatientsByValue(Optional.of("name"), Optional.of(family), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(1), Optional.of(PAGE_SIZE), Optional.empty(), Optional.empty());
+
+        //Assert
+        assertFalse(patients.getElements().isEmpty());
+        assertTrue(getIds(patients).contains(patient.getIdElement().getIdPart()));
+    }
+
+    @Test
+    public void testGetPatientsByValueFiltersByOrganizationMembership() {
+        //Arrange
+        Set<String> organizationPatientIds = generatedPatients.subList(0, 3).stream()
+                .map(patient -> patient.getIdElement().getIdPart())
+                .collect(toSet());
+        when(organizationMembershipService.getPatientIds(ORGANIZATION_ID)).thenReturn(organizationPatientIds);
+
+        //Act
+        PageDto<PatientDto> patients = patientService.getPatientsByValue(Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(ORGANIZATION_ID), Optional.empty(), Optional.empty(), Optional.of(1), Optional.of(PAGE_SIZE), Optional.empty(), Optional.empty());
+
+        //Assert
+        assertEquals(organizationPatientIds, new HashSet<>(getIds(patients)));
+        //The patient ids of the organization are looked up once for the whole request
+        verify(organizationMembershipService, times(1)).getPatientIds(ORGANIZATION_ID);
+    }
+
+    @Test
+    public void testExportPatientsSearchesTheOrganizationPatientIdsInChunks() {
+        //Arrange
+        Set<String> organizationPatientIds = generatedPatients.subList(0, 120).stream()
+                .map(patient -> patient.getIdElement().getIdPart())
+                .collect(toSet());
+        when(organizationMembershipService.getPatientIds(ORGANIZATION_ID)).thenReturn(organizationPatientIds);
+        //Keeps the 90 tasks of a chunk on one page
+        fisProperties.getFhir().setMaxIdsPerSearch(30);
+
+        //Act
+        List<String> exportedIds;
+        try (Stream<PatientDto> patients = patientService.exportPatients(Optional.of(ORGANIZATION_ID), Optional.of(true))) {
+            exportedIds = patients.map(PatientDto::getId).collect(toList());
+        }
+
+        //Assert
+        assertEquals(organizationPatientIds, new HashSet<>(exportedIds));
+        assertEquals(organizationPatientIds.size(), exportedIds.size());
+        //A patient search and a task search for the activity types for each of the four chunks of ids
+        assertEquals(8, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testGetPatientsByValueFiltersCareTeamPatientsOutsideTheOrganization() {
+        //Arrange
+        List<String> ids = generatedPatients.subList(0, 3).stream()
+                .map(patient -> patient.getIdElement().getIdPart())
+                .collect(toList());
+        when(organizationMembershipService.getOrganizationIds(PRACTITIONER_ID)).thenReturn(Collections.singleton("organization-2"));
+        when(organizationMembershipService.getCareTeamPatientIds(anyCollectionOf(String.class))).thenReturn(new HashSet<>(ids));
+        when(organizationMembershipService.getPatientIds(ORGANIZATION_ID)).thenReturn(Collections.singleton(ids.get(0)));
+
+        //Act
+        PageDto<PatientDto> patients = patientService.getPatientsByValue(Optional.empty(), Optional.empty(), Optional.of("associateCareTeamPatient"), Optional.of(ORGANIZATION_ID), Optional.of(PRACTITIONER_ID), Optional.empty(), Optional.of(1), Optional.of(PAGE_SIZE), Optional.empty(), Optional.empty());
+
+        //Assert
+        assertEquals(new HashSet<>(ids.subList(1, 3)), new HashSet<>(getIds(patients)));
+        verify(organizationMembershipService, times(1)).getPatientIds(ORGANIZATION_ID);
+        verify(organizationMembershipService, times(1)).getCareTeamPatientIds(new HashSet<>(Arrays.asList(PRACTITIONER_ID, "organization-2")));
+    }
+
+    @Test
+    public void testGetPatientsByValueFiltersUnassignedPatients() {
+        //Arrange
+        List<String> unassignedIds = generatedPatients.subList(0, 3).stream()
+                .map(patient -> patient.getIdElement().getIdPart())
+                .collect(toList());
+        generatedPatients.subList(3, PATIENT_COUNT).forEach(this::assignParticipant);
+
+        //Act
+        PageDto<PatientDto> patients = getUnassignedPatientsPage(Optional.of(1));
+
+        //Assert
+        assertEquals(new HashSet<>(unassignedIds), new HashSet<>(getIds(patients)));
+        assertEquals(3, patients.getTotalElements());
+        assertFalse(patients.isHasNextPage());
+        patients.getElements().forEach(patient -> assertEquals(1, patient.getFlags().get().size()));
+    }
+
+    @Test
+    public void testGetPatientsByValueStopsReadingUnassignedPatientsOnceThePageIsFull() {
+        //Act
+        PageDto<PatientDto> patients = getUnassignedPatientsPage(Optional.of(1));
+
+        //Assert
+        assertEquals(PAGE_SIZE, patients.getElements().size());
+        assertTrue(patients.isHasNextPage());
+        //The first two of the 25 search pages, the page requested ahead and the task search
+        assertTrue(fhirStub.getCallCount() <= 4);
+    }
+
+    @Test
+    public void testGetPatientsByValueShowsPatientAgainOnceItsCareTeamIsDeleted() {
+        //Arrange
+        List<String> careTeamIds = generatedPatients.stream().map(this::assignParticipant).collect(toList());
+        assertEquals(0, getUnassignedPatientsPage(Optional.of(1)).getTotalElements());
+        fhirStub.getStore().delete("CareTeam", careTeamIds.get(0));
+
+        //Act
+        PageDto<PatientDto> patients = getUnassignedPatientsPage(Optional.of(1));
+
+        //Assert
+        assertEquals(Collections.singletonList(generatedPatients.get(0).getIdElement().getIdPart()), getIds(patients));
+    }
+
+    @Test
+    public void testCreatePatientRefersToThePatientPlaceholderFromEveryResourceOfTheTransaction() throws IOException {
+        //Arrange
+        List<Bundle> transactions = new ArrayList<>();
+        IGenericClient fhirClient = fhirStub.newFhirClient();
+        fhirClient.registerInterceptor(new IClientInterceptor() {
+            @Override
+            public void interceptRequest(IHttpRequest theRequest) {
+                try {
+                    //Transactions are posted to the base URL of the server
+                    if (theRequest.getHttpVerbName().equals("POST") && theRequest.getUri().replaceAll("/$", "").equals(fhirStub.getServerUrl().replaceAll("/$", ""))) {
+                        transactions.add(FhirStubServerRule.getFhirContext().newJsonParser().parseResource(Bundle.class, theRequest.getRequestBodyFromStream()));
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public void interceptResponse(IHttpResponse theResponse) {
+            }
+        });
+        ValueSetDto eocType = ValueSetDto.builder().code("hacc").display("Home and Community Care").build();
+        when(lookUpService.getEocType()).thenReturn(Collections.singletonList(eocType));
+        ValueSetDto flagCategory = ValueSetDto.builder().code("safety").display("Safety").build();
+        when(lookUpService.getFlagCategory()).thenReturn(Collections.singletonList(flagCategory));
+
+        //Act
+        newPatientService(fhirClient).createPatient(newPatientDto(), Optional.empty());
+
+        //Assert
+        assertEquals(1, transactions.size());
+        Bundle transaction = transactions.get(0);
+        String patientFullUrl = transaction.getEntry().stream()
+                .filter(entry -> entry.getResource() instanceof Patient)
+                .map(Bundle.BundleEntryComponent::getFullUrl)
+                .findAny().get();
+        Set<String> fullUrls = transaction.getEntry().stream().map(Bundle.BundleEntryComponent::getFullUrl).collect(toSet());
+        FhirTerser terser = FhirStubServerRule.getFhirContext().newTerser();
+        transaction.getEntry().forEach(entry -> terser.getAllPopulatedChildElementsOfType(entry.getResource(), Reference.class).stream()
+                .filter(Reference::hasReference)
+                .map(Reference::getReference)
+                //A placeholder is only resolved by the server when it is referred to as is
+                .filter(reference -> reference.contains("urn:uuid:"))
+                .forEach(reference -> assertTrue(reference, fullUrls.contains(reference))));
+
+        List<Resource> resources = transaction.getEntry().stream().map(Bundle.BundleEntryComponent::getResource).collect(toList());
+        resources.stream().filter(resource -> resource instanceof Flag)
+                .forEach(flag -> assertEquals(patientFullUrl, ((Flag) flag).getSubject().getReference()));
+        resources.stream().filter(resource -> resource instanceof Task)
+                .forEach(task -> assertEquals(patientFullUrl, ((Task) task).getFor().getReference()));
+        resources.stream().filter(resource -> resource instanceof EpisodeOfCare)
+                .forEach(episodeOfCare -> assertEquals(patientFullUrl, ((EpisodeOfCare) episodeOfCare).getPatient().getReference()));
+        resources.stream().filter(resource -> resource instanceof CareTeam)
+                .forEach(careTeam -> assertEquals(patientFullUrl, ((CareTeam) careTeam).getSubject().getReference()));
+        assertEquals(Arrays.asList("Patient", "Flag", "Task", "EpisodeOfCare", "CareTeam"),
+                resources.stream().map(resource -> resource.getResourceType().name()).collect(toList()));
+    }
+
+    private PatientServiceImpl newPatientService(IGenericClient fhirClient) {
+        return new PatientServiceImpl(fhirClient, FhirStubServerRule.getFhirContext().newJsonParser(),
+                ModelMapperTestConfig.createModelMapper(), mock(FhirValidator.class), fisProperties, lookUpService,
+                mock(ProvenanceUtil.class), mock(CoverageServiceImpl.class), identifierIndex, referenceResolver,
+                consentAccessEvaluator, organizationMembershipService, new FhirProfileRegistry(fhirClient, fisProperties),
+                new TaskExecutorAdapter(new SyncTaskExecutor()));
+    }
+
+    private static PatientDto newPatientDto() {
+        EpisodeOfCareDto episodeOfCare = EpisodeOfCareDto.builder()
+                .status("active")
+                .type("hacc")
+                .startDate("01/01/2018")
+                .careManager(ReferenceDto.builder().reference("Practitioner/practitioner-1").build())
+                .build();
+        FlagDto flag = FlagDto.builder()
+                .status("active")
+                .category("safety")
+                .code("Fall risk")
+                .period(PeriodDto.builder().start(LocalDate.of(2018, 1, 1)).build())
+                .build();
+        return PatientDto.builder()
+                .identifier(new ArrayList<>(Collections.singletonList(IdentifierDto.builder().system("http://hl7.org/fhir/sid/us-ssn").value("123-45-6789").build())))
+                .name(Collections.singletonList(NameDto.builder().firstName("Jane").lastName("Doe").build()))
+                .genderCode("female")
+                .birthDate(LocalDate.of(1980, 5, 17))
+                .episodeOfCares(Collections.singletonList(episodeOfCare))
+                .flags(Optional.of(Collections.singletonList(flag)))
+                .organizationId(Optional.of("organization-1"))
+                .practitionerId(Optional.of("practitioner-1"))
+                .build();
+    }
+
+    private PageDto<PatientDto> getPatientsPage(Optional<Integer> page, Optional<String> cursor) {
+        return patientService.getPatientsByValue(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), page, Optional.of(PAGE_SIZE), Optional.empty(), cursor);
+    }
+
+    private PageDto<PatientDto> getUnassignedPatientsPage(Optional<Integer> page) {
+        return patientService.getPatientsByValue(Optional.empty(), Optional.empty(), Optional.of("unassignPatient"), Optional.empty(), Optional.empty(), Optional.empty(), page, Optional.of(PAGE_SIZE), Optional.empty(), Optional.empty());
+    }
+
+    private String assignParticipant(Patient patient) {
+        CareTeam careTeam = new CareTeam();
+        careTeam.setSubject(new Reference("Patient/" + patient.getIdElement().getIdPart()));
+        careTeam.addParticipant()
+                .setMember(new Reference("Practitioner/" + PRACTITIONER_ID))
+                .setRole(new CodeableConcept().addCoding(new Coding().setCode(PARTICIPANT_ROLE_CODE)));
+        return fhirStub.getStore().create(careTeam).getIdElement().getIdPart();
+    }
+
+    private static List<String> getIds(PageDto<PatientDto> patients) {
+        return patients.getElements().stream().map(PatientDto::getId).collect(toList());
+    }
+}
@@ -8,7 +8,9 @@
 import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PractitionerDto;
 import gov.samhsa.ocp.ocpfis.service.dto.PractitionerRoleDto;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
 import gov.samhsa.ocp.ocpfis.util.PaginationUtil;
+import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
 import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.dstu3.model.IdType;
 import org.hl7.fhir.dstu3.model.Practitioner;
@@ -55,6 +57,21 @@ public class PractitionerServiceImplTest {
     @Mock
     private FisProperties fisProperties;
 
+    @Mock
+    private LookUpService lookUpService;
+
+    @Mock
+    private ProvenanceUtil provenanceUtil;
+
+    @Mock
+    private IdentifierIndex identifierIndex;
+
+    @Mock
+    private OrganizationMembershipService organizationMembershipService;
+
+    @Mock
+    private FhirProfileRegistry fhirProfileRegistry;
+
     @InjectMocks
     private PractitionerServiceImpl practitionerService;
 
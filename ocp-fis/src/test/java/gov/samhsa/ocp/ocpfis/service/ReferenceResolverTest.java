@@ -0,0 +1,121 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import org.hl7.fhir.dstu3.model.HumanName;
+import org.hl7.fhir.dstu3.model.Organization;
+import org.hl7.fhir.dstu3.model.Practitioner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ReferenceResolverTest {
+
+    private static final int PRACTITIONER_COUNT = 120;
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private ReferenceResolver referenceResolver;
+
+    private List<String> practitionerIds;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        practitionerIds = new ArrayList<>();
+        for (int i = 0; i < PRACTITIONER_COUNT; i++) {
+            Practitioner practitioner = new Practitioner();
+            practitioner.addName(new HumanName().setFamily("Family" + i).addGiven("Given" + i));
+            practitionerIds.add(fhirStub.getStore().create(practitioner).getIdElement().getIdPart());
+        }
+        referenceResolver = new ReferenceResolver(fhirStub.getFhirClient(), fhirStub.newFisProperties());
+        fhirStub.resetCallCount();
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void testResolveSearchesIdsInChunks() {
+        //Act
+        Map<String, Practitioner> practitioners = referenceResolver.resolve(Practitioner.class, practitionerIds);
+
+        //Assert
+        assertEquals(PRACTITIONER_COUNT, practitioners.size());
+        assertEquals("Family7", practitioners.get(practitionerIds.get(7)).getNameFirstRep().getFamily());
+        //One _id search per chunk of ids instead of one read per reference
+        assertEquals(3, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testResolveServesResolvedResourcesFromCache() {
+        //Arrange
+        referenceResolver.resolve(Practitioner.class, practitionerIds);
+        fhirStub.resetCallCount();
+
+        //Act
+        Optional<Practitioner> practitioner = referenceResolver.resolve(Practitioner.class, practitionerIds.get(0));
+
+        //Assert
+        assertTrue(practitioner.isPresent());
+        assertEquals(0, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testResolveSearchesOnlyUnresolvedIds() {
+        //Arrange
+        referenceResolver.resolve(Practitioner.class, practitionerIds.subList(0, 10));
+        fhirStub.resetCallCount();
+
+        //Act
+        Map<String, Practitioner> practitioners = referenceResolver.resolve(Practitioner.class, practitionerIds.subList(0, 20));
+
+        //Assert
+        assertEquals(20, practitioners.size());
+        assertEquals(1, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testResolveLeavesOutMissingAndBlankIds() {
+        //Act
+        Map<String, Practitioner> practitioners = referenceResolver.resolve(Practitioner.class, Arrays.asList(practitionerIds.get(0), "missing", " ", null));
+
+        //Assert
+        assertEquals(1, practitioners.size());
+        assertTrue(practitioners.containsKey(practitionerIds.get(0)));
+        assertFalse(referenceResolver.resolve(Practitioner.class, "missing").isPresent());
+        assertFalse(referenceResolver.resolve(Organization.class, (String) null).isPresent());
+    }
+
+    @Test
+    public void testResolveSharesResourcesWithinRequest() {
+        //Arrange
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        Practitioner first = referenceResolver.resolve(Practitioner.class, practitionerIds.get(0)).get();
+        fhirStub.resetCallCount();
+
+        //Act
+        Practitioner second = referenceResolver.resolve(Practitioner.class, practitionerIds.get(0)).get();
+
+        //Assert
+        assertSame(first, second);
+        assertEquals(0, fhirStub.getCallCount());
+    }
+}
@@ -0,0 +1,175 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.validation.FhirValidator;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import gov.samhsa.ocp.ocpfis.service.dto.PageDto;
+import gov.samhsa.ocp.ocpfis.service.dto.TaskDto;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
+import gov.samhsa.ocp.ocpfis.util.ProvenanceUtil;
+import org.hl7.fhir.dstu3.model.HumanName;
+import org.hl7.fhir.dstu3.model.Identifier;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Period;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Task;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TaskServiceImplTest {
+
+    private static final String PRACTITIONER_ID = "practitioner-1";
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private TaskServiceImpl taskService;
+
+    private String smithPatientId;
+    private String jonesPatientId;
+    private String brownPatientId;
+    private String greenPatientId;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        smithPatientId = createPatient("Smith", "MRN-1");
+        jonesPatientId = createPatient("Jones", "MRN-2");
+        brownPatientId = createPatient("Brown", "MRN-3");
+        greenPatientId = createPatient("Green", "MRN-4");
+
+        FisProperties fisProperties = fhirStub.newFisProperties();
+        LookUpService lookUpService = mock(LookUpService.class);
+        when(lookUpService.getTaskPerformerType()).thenReturn(Collections.emptyList());
+        OrganizationMembershipService organizationMembershipService = mock(OrganizationMembershipService.class);
+        when(organizationMembershipService.getCareTeamPatientIds(anyCollectionOf(String.class)))
+                .thenReturn(new HashSet<>(Arrays.asList(smithPatientId, jonesPatientId, brownPatientId, greenPatientId)));
+
+        taskService = new TaskServiceImpl(fhirStub.getFhirClient(), mock(FhirValidator.class), lookUpService, fisProperties,
+                mock(ActivityDefinitionService.class), mock(ProvenanceUtil.class), mock(TaskTreeLoader.class),
+                organizationMembershipService, mock(FhirProfileRegistry.class), new ReferenceResolver(fhirStub.getFhirClient(), fisProperties),
+                new TaskExecutorAdapter(new SyncTaskExecutor()));
+    }
+
+    @Test
+    public void testGetUpcomingTasksByPractitionerKeepsTasksWithoutPeriodLast() {
+        //Arrange
+        String smithTaskId = createTask(smithPatientId, Optional.of(5));
+        createTask(smithPatientId, Optional.empty());
+        String jonesTaskId = createTask(jonesPatientId, Optional.empty());
+        String brownTaskId = createTask(brownPatientId, Optional.of(2));
+        //Long overdue
+        createTask(greenPatientId, Optional.of(-400));
+        fhirStub.resetCallCount();
+
+        //Act
+        PageDto<TaskDto> tasks = getUpcomingTasks(Optional.empty(), Optional.empty());
+
+        //Assert
+        assertEquals(Arrays.asList(brownTaskId, smithTaskId, jonesTaskId), getIds(tasks));
+        //The period search and the missing period search
+        assertEquals(2, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testGetUpcomingTasksByPractitionerIncludesTasksDueTheSameDay() {
+        //Arrange
+        String firstTaskId = createTask(smithPatientId, Optional.of(3));
+        String secondTaskId = createTask(smithPatientId, Optional.of(3));
+        createTask(smithPatientId, Optional.of(4));
+
+        //Act
+        PageDto<TaskDto> tasks = getUpcomingTasks(Optional.empty(), Optional.empty());
+
+        //Assert
+        assertEquals(new HashSet<>(Arrays.asList(firstTaskId, secondTaskId)), new HashSet<>(getIds(tasks)));
+        assertEquals(2, tasks.getElements().size());
+    }
+
+    @Test
+    public void testGetUpcomingTasksByPractitionerFiltersByPatientName() {
+        //Arrange
+        String smithTaskId = createTask(smithPatientId, Optional.of(5));
+        createTask(jonesPatientId, Optional.of(2));
+
+        //Act
+        PageDto<TaskDto> tasks = getUpcomingTasks(Optional.of("name"), Optional.of("smith"));
+
+        //Assert
+        assertEquals(Collections.singletonList(smithTaskId), getIds(tasks));
+    }
+
+    @Test
+    public void testGetUpcomingTasksByPractitionerFiltersByPatientIdentifier() {
+        //Arrange
+        createTask(smithPatientId, Optional.of(5));
+        String jonesTaskId = createTask(jonesPatientId, Optional.empty());
+
+        //Act
+        PageDto<TaskDto> tasks = getUpcomingTasks(Optional.of("identifier"), Optional.of("MRN-2"));
+
+        //Assert
+        assertEquals(Collections.singletonList(jonesTaskId), getIds(tasks));
+    }
+
+    @Test
+    public void testGetUpcomingTasksByPractitionerWithoutMatchingPatientSearchesNoTasks() {
+        //Arrange
+        createTask(smithPatientId, Optional.of(5));
+        fhirStub.resetCallCount();
+
+        //Act
+        PageDto<TaskDto> tasks = getUpcomingTasks(Optional.of("name"), Optional.of("Nobody"));
+
+        //Assert
+        assertEquals(0, tasks.getElements().size());
+        //Only the patient search
+        assertEquals(1, fhirStub.getCallCount());
+    }
+
+    private PageDto<TaskDto> getUpcomingTasks(Optional<String> searchKey, Optional<String> searchValue) {
+        return taskService.getUpcomingTasksByPractitioner(PRACTITIONER_ID, searchKey, searchValue, Optional.of(1), Optional.of(20));
+    }
+
+    private String createPatient(String family, String identifier) {
+        Patient patient = new Patient();
+        patient.addName(new HumanName().setFamily(family).addGiven("Pat"));
+        patient.addIdentifier(new Identifier().setSystem("urn:oid:1.2.3").setValue(identifier));
+        return fhirStub.getStore().create(patient).getIdElement().getIdPart();
+    }
+
+    /**
+     * @param dueInDays the end of the execution period in days from today, or no execution period when empty
+     */
+    private String createTask(String patientId, Optional<Integer> dueInDays) {
+        Task task = new Task();
+        task.setStatus(Task.TaskStatus.INPROGRESS);
+        task.setIntent(Task.TaskIntent.PLAN);
+        task.setFor(new Reference("Patient/" + patientId));
+        dueInDays.ifPresent(days -> task.setExecutionPeriod(new Period()
+                .setStart(Date.valueOf(LocalDate.now().plusDays(days - 10)))
+                .setEnd(Date.valueOf(LocalDate.now().plusDays(days)))));
+        return fhirStub.getStore().create(task).getIdElement().getIdPart();
+    }
+
+    private static List<String> getIds(PageDto<TaskDto> tasks) {
+        return tasks.getElements().stream().map(TaskDto::getLogicalId).collect(toList());
+    }
+}
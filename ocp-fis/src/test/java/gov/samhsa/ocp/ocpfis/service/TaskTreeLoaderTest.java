@@ -0,0 +1,164 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Task;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskTreeLoaderTest {
+
+    private static final int MAX_IDS_PER_SEARCH = 2;
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private FisProperties fisProperties;
+
+    private TaskTreeLoader taskTreeLoader;
+
+    private String grandParentTaskId;
+    private String parentTaskId;
+    private String taskId;
+    private String subTaskId;
+    private String subSubTaskId;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        grandParentTaskId = createTask(null);
+        parentTaskId = createTask(grandParentTaskId);
+        taskId = createTask(parentTaskId);
+        subTaskId = createTask(taskId);
+        subSubTaskId = createTask(subTaskId);
+
+        fisProperties = fhirStub.newFisProperties();
+        fisProperties.getFhir().setMaxIdsPerSearch(MAX_IDS_PER_SEARCH);
+        taskTreeLoader = new TaskTreeLoader(fhirStub.getFhirClient(), fisProperties, new TaskExecutorAdapter(new SyncTaskExecutor()));
+        fhirStub.resetCallCount();
+    }
+
+    @Test
+    public void testLoadIncludesParentsAndSubTasksWithOneSearch() {
+        //Act
+        TaskTreeLoader.TaskTree taskTree = taskTreeLoader.load(Collections.singletonList(taskQuery(taskId)));
+
+        //Assert
+        assertEquals(Arrays.asList(taskId, subTaskId, parentTaskId), getIds(taskTree.getRootsWithParentsAndSubTasks()));
+        assertEquals(Collections.singletonList(subSubTaskId), getIds(taskTree.getSubTasks(subTaskId)));
+        assertEquals(1, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testLoadFallsBackToPartOfSearchesWhenIncludesAreTruncated() {
+        //Arrange
+        fisProperties.getFhir().setMaxIncludesPerPage(1);
+
+        //Act
+        TaskTreeLoader.TaskTree taskTree = taskTreeLoader.load(Collections.singletonList(taskQuery(taskId)));
+
+        //Assert
+        assertEquals(Arrays.asList(taskId, subTaskId, parentTaskId), getIds(taskTree.getRootsWithParentsAndSubTasks()));
+        assertEquals(Collections.singletonList(subSubTaskId), getIds(taskTree.getSubTasks(subTaskId)));
+        assertEquals(Collections.singletonList(taskId), getIds(taskTree.getSubTasks(parentTaskId)));
+        //The task search, one search for each of the two parents, two for the sub tasks of the first level and one
+        //for each of the two levels below
+        assertEquals(7, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testLoadMergesTheTreesOfAllRootQueries() {
+        //Arrange
+        String otherTaskId = createTask(null);
+        fhirStub.resetCallCount();
+
+        //Act
+        TaskTreeLoader.TaskTree taskTree = taskTreeLoader.load(Arrays.asList(taskQuery(taskId), taskQuery(otherTaskId)));
+
+        //Assert
+        assertEquals(Arrays.asList(taskId, otherTaskId, subTaskId, parentTaskId), getIds(taskTree.getRootsWithParentsAndSubTasks()));
+        assertEquals(2, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testLoadCancelsTheOtherRootQueriesWhenOneFails() {
+        //Arrange
+        List<Future<?>> submitted = new ArrayList<>();
+        AsyncTaskExecutor queuingExecutor = new TaskExecutorAdapter(Runnable::run) {
+            @Override
+            public <T> Future<T> submit(Callable<T> task) {
+                //Queued behind other queries, never started
+                FutureTask<T> future = new FutureTask<>(task);
+                submitted.add(future);
+                return future;
+            }
+        };
+        TaskTreeLoader loader = new TaskTreeLoader(fhirStub.getFhirClient(), fisProperties, queuingExecutor);
+        IQuery failingQuery = fhirStub.getFhirClient().search().byUrl("UnknownResource?_id=1");
+
+        //Act
+        try {
+            loader.load(Arrays.asList(failingQuery, taskQuery(taskId)));
+            fail("The failing root query should fail the load");
+        } catch (RuntimeException e) {
+            //Assert
+            assertEquals(1, submitted.size());
+            assertTrue(submitted.get(0).isCancelled());
+        }
+    }
+
+    @Test
+    public void testGetSubTasksSearchesParentIdsInChunks() {
+        //Arrange
+        List<String> parentTaskIds = Arrays.asList(grandParentTaskId, parentTaskId, taskId, subTaskId, subSubTaskId);
+
+        //Act
+        Map<String, List<Task>> subTasksByParentId = taskTreeLoader.getSubTasks(parentTaskIds);
+
+        //Assert
+        assertEquals(Collections.singletonList(parentTaskId), getIds(subTasksByParentId.get(grandParentTaskId)));
+        assertEquals(Collections.singletonList(subSubTaskId), getIds(subTasksByParentId.get(subTaskId)));
+        assertEquals(4, subTasksByParentId.size());
+        assertEquals(3, fhirStub.getCallCount());
+    }
+
+    private IQuery taskQuery(String id) {
+        return fhirStub.getFhirClient().search().forResource(Task.class)
+                .where(new TokenClientParam("_id").exactly().code(id));
+    }
+
+    private String createTask(String parentTaskId) {
+        Task task = new Task();
+        task.setStatus(Task.TaskStatus.INPROGRESS);
+        task.setIntent(Task.TaskIntent.PLAN);
+        if (parentTaskId != null) {
+            task.addPartOf(new Reference("Task/" + parentTaskId));
+        }
+        return fhirStub.getStore().create(task).getIdElement().getIdPart();
+    }
+
+    private static List<String> getIds(List<Task> tasks) {
+        return tasks.stream().map(task -> task.getIdElement().getIdPart()).collect(toList());
+    }
+}
@@ -0,0 +1,79 @@
+package gov.samhsa.ocp.ocpfis.service;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IQuery;
+import ca.uhn.fhir.rest.gclient.IUntypedQuery;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.domain.LookupPathUrls;
+import org.hl7.fhir.dstu3.model.ValueSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ValueSetLookUpCacheTest {
+
+    private IGenericClient fhirClient;
+
+    private IQuery valueSetQuery;
+
+    private ValueSetLookUpCache valueSetLookUpCache;
+
+    @Before
+    public void setUp() {
+        fhirClient = mock(IGenericClient.class);
+        IUntypedQuery untypedQuery = mock(IUntypedQuery.class);
+        when(fhirClient.search()).thenReturn(untypedQuery);
+        valueSetQuery = mock(IQuery.class);
+        when(untypedQuery.byUrl(anyString())).thenReturn(valueSetQuery);
+        when(valueSetQuery.execute()).thenReturn(new ValueSet(), new ValueSet());
+
+        FisProperties fisProperties = new FisProperties();
+        fisProperties.setFhir(new FisProperties.Fhir());
+        fisProperties.getFhir().setServerUrl("http://localhost/fhir");
+        valueSetLookUpCache = new ValueSetLookUpCache(fhirClient, fisProperties);
+    }
+
+    @Test
+    public void testGetLoadsEachValueSetOnce() {
+        //Act
+        ValueSet first = valueSetLookUpCache.get(LookupPathUrls.US_STATE);
+        ValueSet second = valueSetLookUpCache.get(LookupPathUrls.US_STATE);
+
+        //Assert
+        assertSame(first, second);
+        verify(valueSetQuery, times(1)).execute();
+    }
+
+    @Test
+    public void testEvictReloadsTheValueSet() {
+        //Arrange
+        valueSetLookUpCache.get(LookupPathUrls.US_STATE);
+
+        //Act
+        valueSetLookUpCache.evict(LookupPathUrls.US_STATE);
+        valueSetLookUpCache.get(LookupPathUrls.US_STATE);
+
+        //Assert
+        verify(valueSetQuery, times(2)).execute();
+    }
+
+    @Test
+    public void testEvictAllReloadsEveryValueSet() {
+        //Arrange
+        valueSetLookUpCache.get(LookupPathUrls.US_STATE);
+        valueSetLookUpCache.get(LookupPathUrls.ADDRESS_USE);
+
+        //Act
+        valueSetLookUpCache.evictAll();
+        valueSetLookUpCache.get(LookupPathUrls.US_STATE);
+
+        //Assert
+        verify(valueSetQuery, times(3)).execute();
+    }
+}
@@ -0,0 +1,33 @@
+package gov.samhsa.ocp.ocpfis.service.mapping;
+
+import gov.samhsa.ocp.ocpfis.config.ModelMapperConfig;
+import org.modelmapper.ModelMapper;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+
+/**
+ * The model mapper of the application with all property maps and converters, for service tests that map real
+ * resources.
+ */
+@Configuration
+@Import(ModelMapperConfig.class)
+@ComponentScan(basePackages = "gov.samhsa.ocp.ocpfis.service.mapping",
+        excludeFilters = {
+                @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = AppointmentToAppointmentDtoConverter.class),
+                @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ModelMapperTestConfig.class)})
+public class ModelMapperTestConfig {
+
+    private static ModelMapper modelMapper;
+
+    public static synchronized ModelMapper createModelMapper() {
+        if (modelMapper == null) {
+            try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(ModelMapperTestConfig.class)) {
+                modelMapper = context.getBean(ModelMapper.class);
+            }
+        }
+        return modelMapper;
+    }
+}
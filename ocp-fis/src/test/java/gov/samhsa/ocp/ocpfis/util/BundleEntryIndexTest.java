@@ -0,0 +1,138 @@
+package gov.samhsa.ocp.ocpfis.util;
+
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Coverage;
+import org.hl7.fhir.dstu3.model.EpisodeOfCare;
+import org.hl7.fhir.dstu3.model.Flag;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BundleEntryIndexTest {
+
+    @Test
+    public void testGetGroupsResourcesByTypeAndReference() {
+        //Arrange
+        List<Bundle.BundleEntryComponent> entries = toEntries(
+                newFlag("f1", "Patient/1"),
+                newEpisodeOfCare("e1", "Patient/1"),
+                newFlag("f2", "Patient/2"),
+                newCoverage("c1", "Patient/2"));
+
+        //Act
+        BundleEntryIndex index = BundleEntryIndex.of(entries, newReferenceAccessors());
+
+        //Assert
+        assertEquals(Arrays.asList("f1"), getIds(index.get(ResourceType.Flag, "Patient/1")));
+        assertEquals(Arrays.asList("e1"), getIds(index.get(ResourceType.EpisodeOfCare, "Patient/1")));
+        assertTrue(index.get(ResourceType.Coverage, "Patient/1").isEmpty());
+        assertEquals(Arrays.asList("f2"), getIds(index.get(ResourceType.Flag, "Patient/2")));
+        assertEquals(Arrays.asList("c1"), getIds(index.get(ResourceType.Coverage, "Patient/2")));
+        assertTrue(index.get(ResourceType.Flag, "Patient/3").isEmpty());
+    }
+
+    @Test
+    public void testGetMatchesRelativeAbsoluteAndVersionedReferences() {
+        //Arrange
+        List<Bundle.BundleEntryComponent> entries = toEntries(
+                newFlag("f1", "Patient/1"),
+                newFlag("f2", "http://localhost:8080/fhir/baseDstu3/Patient/1"),
+                newFlag("f3", "Patient/1/_history/2"));
+
+        //Act
+        BundleEntryIndex index = BundleEntryIndex.of(entries, newReferenceAccessors());
+
+        //Assert
+        assertEquals(Arrays.asList("f1", "f2", "f3"), getIds(index.get(ResourceType.Flag, "Patient/1")));
+        assertEquals(Arrays.asList("f1", "f2", "f3"), getIds(index.get(ResourceType.Flag, "http://localhost:8080/fhir/baseDstu3/Patient/1/_history/1")));
+    }
+
+    @Test
+    public void testOfLeavesOutOtherResourceTypesAndResourcesWithoutReference() {
+        //Arrange
+        Patient patient = new Patient();
+        patient.setId("1");
+        List<Bundle.BundleEntryComponent> entries = toEntries(
+                patient,
+                newFlag("f1", "Patient/1"),
+                newFlag("f2", null),
+                newFlag("f3", ""),
+                new Flag().setSubject(null));
+
+        //Act
+        BundleEntryIndex index = BundleEntryIndex.of(entries, newReferenceAccessors());
+
+        //Assert
+        assertEquals(Arrays.asList("f1"), getIds(index.get(ResourceType.Flag, "Patient/1")));
+        assertTrue(index.get(ResourceType.Patient, "Patient/1").isEmpty());
+    }
+
+    @Test
+    public void testGetKeepsResponseOrder() {
+        //Arrange
+        List<Bundle.BundleEntryComponent> entries = toEntries(
+                newFlag("f3", "Patient/1"),
+                newFlag("f1", "Patient/2"),
+                newFlag("f2", "Patient/1"),
+                newFlag("f4", "Patient/1"));
+
+        //Act
+        BundleEntryIndex index = BundleEntryIndex.of(entries, newReferenceAccessors());
+
+        //Assert
+        assertEquals(Arrays.asList("f3", "f2", "f4"), getIds(index.get(ResourceType.Flag, "Patient/1")));
+    }
+
+    private static Map<ResourceType, Function<Resource, Reference>> newReferenceAccessors() {
+        Map<ResourceType, Function<Resource, Reference>> referenceAccessors = new HashMap<>();
+        referenceAccessors.put(ResourceType.Flag, resource -> ((Flag) resource).getSubject());
+        referenceAccessors.put(ResourceType.EpisodeOfCare, resource -> ((EpisodeOfCare) resource).getPatient());
+        referenceAccessors.put(ResourceType.Coverage, resource -> ((Coverage) resource).getBeneficiary());
+        return referenceAccessors;
+    }
+
+    private static Flag newFlag(String id, String subjectReference) {
+        Flag flag = new Flag();
+        flag.setId(id);
+        flag.setSubject(new Reference(subjectReference));
+        return flag;
+    }
+
+    private static EpisodeOfCare newEpisodeOfCare(String id, String patientReference) {
+        EpisodeOfCare episodeOfCare = new EpisodeOfCare();
+        episodeOfCare.setId(id);
+        episodeOfCare.setPatient(new Reference(patientReference));
+        return episodeOfCare;
+    }
+
+    private static Coverage newCoverage(String id, String beneficiaryReference) {
+        Coverage coverage = new Coverage();
+        coverage.setId(id);
+        coverage.setBeneficiary(new Reference(beneficiaryReference));
+        return coverage;
+    }
+
+    private static List<Bundle.BundleEntryComponent> toEntries(Resource... resources) {
+        return Arrays.stream(resources)
+                .map(resource -> new Bundle.BundleEntryComponent().setResource(resource))
+                .collect(toList());
+    }
+
+    private static List<String> getIds(List<Resource> resources) {
+        return resources.stream()
+                .map(resource -> resource.getIdElement().getIdPart())
+                .collect(toList());
+    }
+}
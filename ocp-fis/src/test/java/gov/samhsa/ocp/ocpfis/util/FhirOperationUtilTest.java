@@ -0,0 +1,168 @@
+package gov.samhsa.ocp.ocpfis.util;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServer;
+import gov.samhsa.ocp.ocpfis.fhirstub.SyntheticDataGenerator;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Resource;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FhirOperationUtilTest {
+
+    private static final int PATIENT_COUNT = 250;
+    private static final int PAGE_SIZE = 20;
+
+    private static FhirStubServer fhirStubServer;
+    private static FhirContext fhirContext;
+    private static IGenericClient fhirClient;
+    private static FisProperties fisProperties;
+    private static Set<String> patientIds;
+    private static ThreadPoolTaskExecutor pageFetchExecutor;
+
+    @BeforeClass
+    public static void startFhirStubServer() throws Exception {
+        fhirStubServer = FhirStubServer.builder().build().start();
+        patientIds = new SyntheticDataGenerator(1).generate(fhirStubServer.getStore(), PATIENT_COUNT).stream()
+                .map(patient -> patient.getIdElement().getIdPart())
+                .collect(toSet());
+
+        fhirContext = FhirContext.forDstu3();
+        fhirContext.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+        fhirClient = fhirContext.newRestfulGenericClient(fhirStubServer.getServerUrl());
+
+        fisProperties = new FisProperties();
+        fisProperties.setFhir(new FisProperties.Fhir());
+        fisProperties.getFhir().setServerUrl(fhirStubServer.getServerUrl());
+        fisProperties.getFhir().setDefaultResourceBundlePageSize(PAGE_SIZE);
+
+        pageFetchExecutor = new ThreadPoolTaskExecutor();
+        pageFetchExecutor.setCorePoolSize(4);
+        pageFetchExecutor.setMaxPoolSize(4);
+        pageFetchExecutor.initialize();
+    }
+
+    @AfterClass
+    public static void stopFhirStubServer() throws Exception {
+        pageFetchExecutor.shutdown();
+        fhirStubServer.close();
+    }
+
+    @Test
+    public void testGetAllBundleComponentsAsList() {
+        //Arrange
+        Bundle firstPage = searchPatients();
+
+        //Act
+        List<Bundle.BundleEntryComponent> entries = FhirOperationUtil.getAllBundleComponentsAsList(firstPage, Optional.of(PAGE_SIZE), fhirClient, fisProperties, pageFetchExecutor);
+
+        //Assert
+        assertEquals(PATIENT_COUNT, entries.size());
+        assertEquals(patientIds, entries.stream().map(entry -> entry.getResource().getIdElement().getIdPart()).collect(toSet()));
+    }
+
+    @Test
+    public void testGetAllBundleComponentsAsListFollowsNextLinksWithoutParallelism() {
+        //Arrange
+        Bundle firstPage = searchPatients();
+        fisProperties.getFhir().setPageFetchParallelism(1);
+
+        //Act
+        List<Bundle.BundleEntryComponent> entries;
+        try {
+            entries = FhirOperationUtil.getAllBundleComponentsAsList(firstPage, Optional.of(PAGE_SIZE), fhirClient, fisProperties, pageFetchExecutor);
+        } finally {
+            fisProperties.getFhir().setPageFetchParallelism(new FisProperties.Fhir().getPageFetchParallelism());
+        }
+
+        //Assert
+        assertEquals(PATIENT_COUNT, entries.size());
+    }
+
+    @Test
+    public void testGetAllBundleComponentsAsListWithoutExecutor() {
+        //Arrange
+        Bundle firstPage = searchPatients();
+
+        //Act
+        List<Bundle.BundleEntryComponent> entries = FhirOperationUtil.getAllBundleComponentsAsList(firstPage, Optional.of(PAGE_SIZE), fhirClient, fisProperties);
+
+        //Assert
+        assertEquals(PATIENT_COUNT, entries.size());
+    }
+
+    @Test
+    public void testGetAllBundleComponentsAsListStopsFetchingWhenAPageFails() {
+        //Arrange
+        Bundle firstPage = searchPatients();
+        AtomicInteger pageRequests = new AtomicInteger();
+        IGenericClient failingClient = fhirContext.newRestfulGenericClient(fhirStubServer.getServerUrl());
+        failingClient.registerInterceptor(new IClientInterceptor() {
+            @Override
+            public void interceptRequest(IHttpRequest theRequest) {
+                pageRequests.incrementAndGet();
+                if (theRequest.getUri().contains("_getpagesoffset=" + PAGE_SIZE + "&")) {
+                    throw new IllegalStateException("Second page unavailable");
+                }
+            }
+
+            @Override
+            public void interceptResponse(IHttpResponse theResponse) {
+            }
+        });
+
+        //Act
+        try {
+            FhirOperationUtil.getAllBundleComponentsAsList(firstPage, Optional.of(PAGE_SIZE), failingClient, fisProperties, pageFetchExecutor);
+            fail("The failure of a page must fail the search");
+        } catch (IllegalStateException e) {
+            //Assert
+            assertEquals("Second page unavailable", e.getMessage());
+        }
+        //Only the pages of the fetch window were requested, not the remaining pages of the search
+        assertTrue(pageRequests.get() <= fisProperties.getFhir().getPageFetchParallelism());
+    }
+
+    @Test
+    public void testStreamAllBundlePages() {
+        //Arrange
+        Bundle firstPage = searchPatients();
+
+        //Act
+        List<Resource> resources = FhirOperationUtil.streamAllBundlePages(firstPage, Optional.of(PAGE_SIZE), fhirClient, fisProperties, pageFetchExecutor)
+                .flatMap(page -> page.getEntry().stream())
+                .map(Bundle.BundleEntryComponent::getResource)
+                .collect(toList());
+
+        //Assert
+        assertEquals(PATIENT_COUNT, resources.size());
+        assertEquals(patientIds, resources.stream().map(resource -> resource.getIdElement().getIdPart()).collect(toSet()));
+    }
+
+    private static Bundle searchPatients() {
+        return (Bundle) FhirOperationUtil.setNoCacheControlDirective(fhirClient.search().forResource(Patient.class))
+                .count(PAGE_SIZE)
+                .returnBundle(Bundle.class)
+                .execute();
+    }
+}
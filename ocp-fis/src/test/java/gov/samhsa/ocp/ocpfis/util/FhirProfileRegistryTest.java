@@ -0,0 +1,74 @@
+package gov.samhsa.ocp.ocpfis.util;
+
+import gov.samhsa.ocp.ocpfis.domain.StructureDefinitionEnum;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.StructureDefinition;
+import org.hl7.fhir.dstu3.model.UriType;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FhirProfileRegistryTest {
+
+    private static final String PATIENT_PROFILE_URL = "http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient";
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private FhirProfileRegistry fhirProfileRegistry;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        StructureDefinition structureDefinition = new StructureDefinition();
+        structureDefinition.setUrl(PATIENT_PROFILE_URL);
+        structureDefinition.setType("Patient");
+        fhirStub.getStore().create(structureDefinition);
+
+        fhirProfileRegistry = new FhirProfileRegistry(fhirStub.getFhirClient(), fhirStub.newFisProperties());
+    }
+
+    @Test
+    public void testRefreshLoadsProfileUrls() {
+        //Act
+        fhirProfileRegistry.refresh();
+
+        //Assert
+        assertEquals(Optional.of(Collections.singletonList(PATIENT_PROFILE_URL)), fhirProfileRegistry.getProfileUrls("Patient"));
+        assertFalse(fhirProfileRegistry.getProfileUrls("Task").isPresent());
+    }
+
+    @Test
+    public void testProfilesAreKeptPerRegistry() {
+        //Arrange
+        fhirProfileRegistry.refresh();
+
+        //Act
+        FhirProfileRegistry otherRegistry = new FhirProfileRegistry(fhirStub.getFhirClient(), fhirStub.newFisProperties());
+
+        //Assert
+        assertFalse(otherRegistry.getProfileUrls("Patient").isPresent());
+    }
+
+    @Test
+    public void testSetProfileMetaDataFallsBackToEnumWhenNotLoaded() {
+        //Arrange
+        Patient patient = new Patient();
+
+        //Act
+        FhirProfileUtil.setPatientProfileMetaData(fhirProfileRegistry, patient);
+
+        //Assert
+        List<String> profiles = patient.getMeta().getProfile().stream().map(UriType::getValue).collect(toList());
+        assertEquals(Collections.singletonList(StructureDefinitionEnum.PATIENT.getUrl()), profiles);
+    }
+}
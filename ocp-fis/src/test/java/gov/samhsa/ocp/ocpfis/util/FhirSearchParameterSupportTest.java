@@ -0,0 +1,114 @@
+package gov.samhsa.ocp.ocpfis.util;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.gclient.IFetchConformanceTyped;
+import ca.uhn.fhir.rest.gclient.IFetchConformanceUntyped;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.hl7.fhir.dstu3.model.CapabilityStatement;
+import org.hl7.fhir.dstu3.model.ResourceType;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FhirSearchParameterSupportTest {
+
+    private IGenericClient fhirClient;
+    private IFetchConformanceTyped<CapabilityStatement> fetchCapabilityStatement;
+
+    private FhirSearchParameterSupport fhirSearchParameterSupport;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        fhirClient = mock(IGenericClient.class);
+        IFetchConformanceUntyped fetchConformance = mock(IFetchConformanceUntyped.class);
+        fetchCapabilityStatement = mock(IFetchConformanceTyped.class);
+        when(fhirClient.capabilities()).thenReturn(fetchConformance);
+        when(fetchConformance.ofType(CapabilityStatement.class)).thenReturn(fetchCapabilityStatement);
+
+        fhirSearchParameterSupport = new FhirSearchParameterSupport(fhirClient);
+    }
+
+    @Test
+    public void testIsSupportedWhenCapabilityStatementListsSearchParameter() {
+        //Arrange
+        when(fetchCapabilityStatement.execute()).thenReturn(newCapabilityStatement(FhirSearchParameterSupport.COMMUNICATION_TOPIC));
+
+        //Act
+        boolean supported = fhirSearchParameterSupport.isSupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC);
+
+        //Assert
+        assertTrue(supported);
+    }
+
+    @Test
+    public void testIsNotSupportedWhenCapabilityStatementLacksSearchParameter() {
+        //Arrange
+        when(fetchCapabilityStatement.execute()).thenReturn(newCapabilityStatement("patient"));
+
+        //Act
+        boolean supported = fhirSearchParameterSupport.isSupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC);
+
+        //Assert
+        assertFalse(supported);
+    }
+
+    @Test
+    public void testIsNotSupportedWhenCapabilityStatementCannotBeRead() {
+        //Arrange
+        when(fetchCapabilityStatement.execute()).thenThrow(new InternalErrorException("Server unavailable"));
+
+        //Act
+        boolean supported = fhirSearchParameterSupport.isSupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC);
+
+        //Assert
+        assertFalse(supported);
+        //The failure is remembered until the next refresh instead of reading the capability statement on every call
+        fhirSearchParameterSupport.isSupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC);
+        verify(fetchCapabilityStatement, times(1)).execute();
+    }
+
+    @Test
+    public void testRefreshKeepsTheSearchParametersLastReadWhenCapabilityStatementCannotBeRead() {
+        //Arrange
+        when(fetchCapabilityStatement.execute())
+                .thenReturn(newCapabilityStatement(FhirSearchParameterSupport.COMMUNICATION_TOPIC))
+                .thenThrow(new InternalErrorException("Server unavailable"));
+        fhirSearchParameterSupport.refresh();
+
+        //Act
+        fhirSearchParameterSupport.refresh();
+
+        //Assert
+        assertTrue(fhirSearchParameterSupport.isSupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC));
+    }
+
+    @Test
+    public void testMarkUnsupportedUntilNextRefresh() {
+        //Arrange
+        when(fetchCapabilityStatement.execute()).thenReturn(newCapabilityStatement(FhirSearchParameterSupport.COMMUNICATION_TOPIC));
+        fhirSearchParameterSupport.refresh();
+
+        //Act
+        fhirSearchParameterSupport.markUnsupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC);
+
+        //Assert
+        assertFalse(fhirSearchParameterSupport.isSupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC));
+        fhirSearchParameterSupport.refresh();
+        assertTrue(fhirSearchParameterSupport.isSupported(ResourceType.Communication, FhirSearchParameterSupport.COMMUNICATION_TOPIC));
+    }
+
+    private static CapabilityStatement newCapabilityStatement(String communicationSearchParameter) {
+        CapabilityStatement capabilityStatement = new CapabilityStatement();
+        capabilityStatement.addRest().addResource()
+                .setType(ResourceType.Communication.name())
+                .addSearchParam(new CapabilityStatement.CapabilityStatementRestResourceSearchParamComponent().setName(communicationSearchParameter));
+        return capabilityStatement;
+    }
+}
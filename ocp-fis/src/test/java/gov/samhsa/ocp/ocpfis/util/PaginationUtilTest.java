@@ -0,0 +1,212 @@
+package gov.samhsa.ocp.ocpfis.util;
+
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import gov.samhsa.ocp.ocpfis.service.exception.BadRequestException;
+import org.hl7.fhir.dstu3.model.Bundle;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PaginationUtilTest {
+
+    private static final int PATIENT_COUNT = 25;
+    private static final int PAGE_SIZE = 10;
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private FisProperties fisProperties;
+
+    private String searchParametersHash;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        for (int i = 0; i < PATIENT_COUNT; i++) {
+            fhirStub.getStore().create(new Patient());
+        }
+        fisProperties = fhirStub.newFisProperties();
+        searchParametersHash = PaginationUtil.getSearchParametersHash(Optional.of("name"), Optional.of("Smith"), PAGE_SIZE);
+    }
+
+    @Test
+    public void testNextCursorLoadsTheNextPageWithoutRunningTheSearchAgain() {
+        //Arrange
+        Bundle firstPage = searchPatients(PAGE_SIZE);
+        String cursor = PaginationUtil.getNextCursor(fisProperties, firstPage, searchParametersHash);
+        assertNotNull(cursor);
+        fhirStub.resetCallCount();
+
+        //Act
+        Optional<Bundle> secondPage = PaginationUtil.getSearchBundleByCursor(fhirStub.getFhirClient(), fisProperties, Optional.of(cursor), searchParametersHash, PAGE_SIZE);
+
+        //Assert
+        assertTrue(secondPage.isPresent());
+        assertEquals(PAGE_SIZE, secondPage.get().getEntry().size());
+        assertTrue(Collections.disjoint(getIds(firstPage), getIds(secondPage.get())));
+        assertEquals(Optional.of(2), PaginationUtil.getPageNumber(Optional.of(cursor), searchParametersHash, Optional.empty(), PAGE_SIZE));
+        assertEquals(1, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testNextCursorIsNullOnTheLastPage() {
+        //Act
+        String cursor = PaginationUtil.getNextCursor(fisProperties, searchPatients(PATIENT_COUNT), searchParametersHash);
+
+        //Assert
+        assertNull(cursor);
+    }
+
+    @Test
+    public void testGetPageNumberWithoutCursorReturnsTheGivenPage() {
+        //Act
+        Optional<Integer> pageNumber = PaginationUtil.getPageNumber(Optional.empty(), searchParametersHash, Optional.of(3), PAGE_SIZE);
+
+        //Assert
+        assertEquals(Optional.of(3), pageNumber);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testCursorOfASearchWithOtherParametersIsRejected() {
+        //Arrange
+        String cursor = PaginationUtil.getNextCursor(fisProperties, searchPatients(PAGE_SIZE), searchParametersHash);
+        String otherSearchParametersHash = PaginationUtil.getSearchParametersHash(Optional.of("name"), Optional.of("Jones"), PAGE_SIZE);
+
+        //Act
+        PaginationUtil.getSearchBundleByCursor(fhirStub.getFhirClient(), fisProperties, Optional.of(cursor), otherSearchParametersHash, PAGE_SIZE);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testCursorOfAnotherPageSizeIsRejected() {
+        //Arrange
+        String cursor = PaginationUtil.getNextCursor(fisProperties, searchPatients(PAGE_SIZE), searchParametersHash);
+        String otherSearchParametersHash = PaginationUtil.getSearchParametersHash(Optional.of("name"), Optional.of("Smith"), PAGE_SIZE * 2);
+
+        //Act
+        PaginationUtil.getPageNumber(Optional.of(cursor), otherSearchParametersHash, Optional.empty(), PAGE_SIZE * 2);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testMalformedCursorIsRejected() {
+        //Act
+        PaginationUtil.getPageNumber(Optional.of("not-a-cursor"), searchParametersHash, Optional.empty(), PAGE_SIZE);
+    }
+
+    @Test
+    public void testExpiredCursorRunsTheSearchAgain() {
+        //Arrange
+        String cursor = PaginationUtil.getNextCursor(fisProperties, searchPatients(PAGE_SIZE), searchParametersHash);
+        String expiredCursor = withCursorPart(cursor, 2, String.valueOf(System.currentTimeMillis() - 1));
+        fhirStub.resetCallCount();
+
+        //Act
+        Optional<Bundle> page = PaginationUtil.getSearchBundleByCursor(fhirStub.getFhirClient(), fisProperties, Optional.of(expiredCursor), searchParametersHash, PAGE_SIZE);
+
+        //Assert
+        assertFalse(page.isPresent());
+        assertEquals(0, fhirStub.getCallCount());
+    }
+
+    @Test
+    public void testCursorOfASearchGoneFromTheFhirServerRunsTheSearchAgain() {
+        //Arrange
+        String cursor = PaginationUtil.getNextCursor(fisProperties, searchPatients(PAGE_SIZE), searchParametersHash);
+        String goneCursor = withCursorPart(cursor, 0, "expired-search");
+
+        //Act
+        Optional<Bundle> page = PaginationUtil.getSearchBundleByCursor(fhirStub.getFhirClient(), fisProperties, Optional.of(goneCursor), searchParametersHash, PAGE_SIZE);
+
+        //Assert
+        assertFalse(page.isPresent());
+    }
+
+    @Test
+    public void testSearchParametersHashIsStable() {
+        //Act
+        String sameSearchParametersHash = PaginationUtil.getSearchParametersHash(Optional.of("name"), Optional.of("Smith"), PAGE_SIZE);
+        String otherSearchParametersHash = PaginationUtil.getSearchParametersHash(Optional.of("name"), Optional.empty(), PAGE_SIZE);
+
+        //Assert
+        assertEquals(searchParametersHash, sameSearchParametersHash);
+        assertNotEquals(searchParametersHash, otherSearchParametersHash);
+    }
+
+    @Test
+    public void testGetTotalReturnsTheTotalOfTheSearch() {
+        //Act
+        int total = PaginationUtil.getTotal(searchPatients(PAGE_SIZE), PAGE_SIZE, Optional.of(1));
+
+        //Assert
+        assertEquals(PATIENT_COUNT, total);
+    }
+
+    @Test
+    public void testGetTotalWithoutTotalAnnouncesTheNextPage() {
+        //Arrange
+        Bundle secondPage = PaginationUtil.getSearchBundleAfterFirstPage(fhirStub.getFhirClient(), fisProperties, withoutTotal(searchPatients(PAGE_SIZE)), 2, PAGE_SIZE);
+        secondPage.setTotalElement(null);
+
+        //Act
+        int total = PaginationUtil.getTotal(secondPage, PAGE_SIZE, Optional.of(2));
+
+        //Assert
+        assertEquals(2 * PAGE_SIZE + 1, total);
+        assertTrue(PaginationUtil.applyPaginationForSearchBundle(getIds(secondPage), total, PAGE_SIZE, Optional.of(2)).isHasNextPage());
+    }
+
+    @Test
+    public void testGetTotalWithoutTotalOnTheLastPage() {
+        //Arrange
+        Bundle lastPage = PaginationUtil.getSearchBundleAfterFirstPage(fhirStub.getFhirClient(), fisProperties, withoutTotal(searchPatients(PAGE_SIZE)), 3, PAGE_SIZE);
+        lastPage.setTotalElement(null);
+
+        //Act
+        int total = PaginationUtil.getTotal(lastPage, PAGE_SIZE, Optional.of(3));
+
+        //Assert
+        assertEquals(PATIENT_COUNT, total);
+        assertFalse(PaginationUtil.applyPaginationForSearchBundle(getIds(lastPage), total, PAGE_SIZE, Optional.of(3)).isHasNextPage());
+    }
+
+    private Bundle searchPatients(int count) {
+        return fhirStub.newFhirClient().search().forResource(Patient.class)
+                .count(count)
+                .returnBundle(Bundle.class)
+                .execute();
+    }
+
+    private static Bundle withoutTotal(Bundle bundle) {
+        return bundle.setTotalElement(null);
+    }
+
+    private static List<String> getIds(Bundle bundle) {
+        return bundle.getEntry().stream()
+                .map(entry -> entry.getResource().getIdElement().getIdPart())
+                .collect(toList());
+    }
+
+    /**
+     * Replaces one of the search id, offset, expiry and search parameters hash parts of a cursor.
+     */
+    private static String withCursorPart(String cursor, int index, String value) {
+        String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+        parts[index] = value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.join("|", parts).getBytes(StandardCharsets.UTF_8));
+    }
+}
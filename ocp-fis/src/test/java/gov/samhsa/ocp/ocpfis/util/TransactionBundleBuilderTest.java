@@ -0,0 +1,49 @@
+package gov.samhsa.ocp.ocpfis.util;
+
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import org.hl7.fhir.dstu3.model.DomainResource;
+import org.hl7.fhir.dstu3.model.EpisodeOfCare;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionBundleBuilderTest {
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+    }
+
+    @Test
+    public void testSubmitResolvesTheIdsAndReferencesOfTheResources() {
+        //Arrange
+        TransactionBundleBuilder transaction = new TransactionBundleBuilder();
+        String patientFullUrl = transaction.create(new Patient());
+        EpisodeOfCare episodeOfCare = new EpisodeOfCare();
+        episodeOfCare.setPatient(new Reference(patientFullUrl));
+        episodeOfCare.setManagingOrganization(new Reference("Organization/organization-1"));
+        transaction.create(episodeOfCare);
+
+        //Act
+        Map<String, String> createdIds = transaction.submit(fhirStub.getFhirClient(), "Create Patient");
+
+        //Assert
+        List<DomainResource> resources = transaction.getResources();
+        String patientId = createdIds.get(patientFullUrl);
+        assertEquals(patientId, resources.get(0).getIdElement().getValue());
+        assertTrue(fhirStub.getStore().read("Patient", resources.get(0).getIdElement().getIdPart()).isPresent());
+        assertEquals(patientId, ((EpisodeOfCare) resources.get(1)).getPatient().getReference());
+        assertEquals("Organization/organization-1", ((EpisodeOfCare) resources.get(1)).getManagingOrganization().getReference());
+    }
+}
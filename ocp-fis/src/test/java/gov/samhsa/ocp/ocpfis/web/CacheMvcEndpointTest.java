@@ -0,0 +1,55 @@
+package gov.samhsa.ocp.ocpfis.web;
+
+import gov.samhsa.ocp.ocpfis.domain.LookupPathUrls;
+import gov.samhsa.ocp.ocpfis.service.ValueSetLookUpCache;
+import gov.samhsa.ocp.ocpfis.util.FhirProfileRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CacheMvcEndpointTest {
+
+    @Mock
+    private ValueSetLookUpCache valueSetLookUpCache;
+
+    @Mock
+    private FhirProfileRegistry fhirProfileRegistry;
+
+    @InjectMocks
+    private CacheMvcEndpoint cacheMvcEndpoint;
+
+    @Test
+    public void testEndpointIsSensitiveManagementEndpoint() {
+        //Assert
+        assertEquals("/caches", cacheMvcEndpoint.getPath());
+        assertTrue(cacheMvcEndpoint.isSensitive());
+        assertFalse(CacheMvcEndpoint.class.isAnnotationPresent(RestController.class));
+    }
+
+    @Test
+    public void testEvictLookup() {
+        //Act
+        cacheMvcEndpoint.evictLookup(LookupPathUrls.values()[0]);
+
+        //Assert
+        verify(valueSetLookUpCache).evict(LookupPathUrls.values()[0]);
+    }
+
+    @Test
+    public void testRefreshProfiles() {
+        //Act
+        cacheMvcEndpoint.refreshProfiles();
+
+        //Assert
+        verify(fhirProfileRegistry).refresh();
+    }
+}
@@ -0,0 +1,123 @@
+package gov.samhsa.ocp.ocpfis.web;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import gov.samhsa.ocp.ocpfis.config.FhirServiceConfig;
+import gov.samhsa.ocp.ocpfis.config.FisProperties;
+import gov.samhsa.ocp.ocpfis.fhirstub.FhirStubServerRule;
+import gov.samhsa.ocp.ocpfis.service.exception.FhirCallBudgetExceededException;
+import org.hl7.fhir.dstu3.model.Patient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class FhirCallBudgetInterceptorTest {
+
+    private static final int MAX_CALLS = 2;
+
+    @ClassRule
+    public static FhirStubServerRule fhirStub = new FhirStubServerRule();
+
+    private AnnotationConfigApplicationContext context;
+
+    private FisProperties fisProperties;
+
+    private String patientId;
+
+    @Before
+    public void setUp() {
+        fhirStub.reset();
+        patientId = fhirStub.getStore().create(new Patient()).getIdElement().getIdPart();
+        fisProperties = fhirStub.newFisProperties();
+        fisProperties.getFhir().getCallBudget().setMaxCalls(MAX_CALLS);
+
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().registerSingleton("fisProperties", fisProperties);
+        context.register(FhirServiceConfig.class);
+        context.refresh();
+        context.getBean(FhirContext.class).getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    public void testReportsTheFhirCallsOfARequestWithinTheBudget() throws Exception {
+        //Arrange
+        fisProperties.getFhir().getCallBudget().setFailWhenExceeded(true);
+
+        //Act
+        MvcResult result = newMockMvc().perform(get("/patients/{patientId}/reads", patientId).param("count", String.valueOf(MAX_CALLS)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(FhirCallBudgetInterceptor.FHIR_CALLS_HEADER, String.valueOf(MAX_CALLS)))
+                .andReturn();
+
+        //Assert
+        assertTrue(Long.parseLong(result.getResponse().getHeader(FhirCallBudgetInterceptor.FHIR_BYTES_HEADER)) > 0);
+    }
+
+    @Test
+    public void testFailsTheRequestOverTheBudgetWhenConfiguredTo() throws Exception {
+        //Arrange
+        fisProperties.getFhir().getCallBudget().setFailWhenExceeded(true);
+
+        //Act
+        MvcResult result = newMockMvc().perform(get("/patients/{patientId}/reads", patientId).param("count", String.valueOf(MAX_CALLS + 1)))
+                .andExpect(status().isInternalServerError())
+                .andReturn();
+
+        //Assert
+        assertTrue(result.getResolvedException() instanceof FhirCallBudgetExceededException);
+    }
+
+    @Test
+    public void testOnlyReportsTheRequestOverTheBudgetByDefault() throws Exception {
+        //Act
+        newMockMvc().perform(get("/patients/{patientId}/reads", patientId).param("count", String.valueOf(MAX_CALLS + 1)))
+                //Assert
+                .andExpect(status().isOk())
+                .andExpect(header().string(FhirCallBudgetInterceptor.FHIR_CALLS_HEADER, String.valueOf(MAX_CALLS + 1)));
+    }
+
+    private MockMvc newMockMvc() {
+        FhirCallBudgetInterceptor fhirCallBudgetInterceptor = new FhirCallBudgetInterceptor(fisProperties);
+        return MockMvcBuilders.standaloneSetup(new PatientReadController(context.getBean(IGenericClient.class)))
+                .addInterceptors(fhirCallBudgetInterceptor)
+                .setControllerAdvice(fhirCallBudgetInterceptor)
+                .build();
+    }
+
+    @RestController
+    static class PatientReadController {
+        private final IGenericClient fhirClient;
+
+        PatientReadController(IGenericClient fhirClient) {
+            this.fhirClient = fhirClient;
+        }
+
+        @GetMapping("/patients/{patientId}/reads")
+        public String readPatient(@PathVariable String patientId, @RequestParam int count) {
+            IntStream.range(0, count).forEach(i -> fhirClient.read().resource(Patient.class).withId(patientId).execute());
+            return patientId;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package gov.samhsa.ocp.ocpfis.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.samhsa.ocp.ocpfis.service.PatientService;
+import gov.samhsa.ocp.ocpfis.service.dto.PatientDto;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+public class NdjsonExportTest {
+
+    private static final long EXPORT_REQUEST_TIMEOUT_IN_MS = 3600000;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private PatientService patientService;
+
+    private MockMvc mockMvc;
+
+    private AtomicBoolean closed;
+
+    @Before
+    public void setUp() {
+        patientService = mock(PatientService.class);
+        mockMvc = MockMvcBuilders.standaloneSetup(new PatientController(patientService, objectMapper)).build();
+        closed = new AtomicBoolean();
+    }
+
+    @Test
+    public void testExportPatientsWritesOneLinePerPatient() throws Exception {
+        //Arrange
+        when(patientService.exportPatients(any(Optional.class), any(Optional.class)))
+                .thenReturn(Stream.of(newPatientDto("1"), newPatientDto("2")).onClose(() -> closed.set(true)));
+
+        //Act
+        MvcResult result = export();
+
+        //Assert
+        assertEquals(NdjsonResponse.APPLICATION_NDJSON_VALUE, result.getResponse().getContentType());
+        List<String> lines = getLines(result);
+        assertEquals(2, lines.size());
+        assertEquals("1", objectMapper.readTree(lines.get(0)).get("id").asText());
+        assertEquals("2", objectMapper.readTree(lines.get(1)).get("id").asText());
+        assertEquals(Boolean.TRUE, result.getRequest().getAttribute(NdjsonResponse.EXPORT_REQUEST_ATTRIBUTE));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testExportPatientsEndsWithErrorRecordWhenReadingFails() throws Exception {
+        //Arrange
+        when(patientService.exportPatients(any(Optional.class), any(Optional.class)))
+                .thenReturn(Stream.of("1", "2")
+                        .map(id -> {
+                            if (id.equals("2")) {
+                                throw new IllegalStateException("FHIR server unavailable");
+                            }
+                            return newPatientDto(id);
+                        })
+                        .onClose(() -> closed.set(true)));
+
+        //Act
+        MvcResult result = export();
+
+        //Assert
+        assertTrue(result.getAsyncResult() instanceof IllegalStateException);
+        List<String> lines = getLines(result);
+        assertEquals(2, lines.size());
+        assertEquals("1", objectMapper.readTree(lines.get(0)).get("id").asText());
+        assertEquals(NdjsonResponse.EXPORT_FAILED_MESSAGE, objectMapper.readTree(lines.get(1)).get(NdjsonResponse.ERROR_FIELD).asText());
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testExportClosesTheStreamWhenTheClientDisconnects() throws Exception {
+        //Arrange
+        StreamingResponseBody body = NdjsonResponse.of(Stream.of(newPatientDto("1"), newPatientDto("2")).onClose(() -> closed.set(true)), objectMapper).getBody();
+        OutputStream disconnectedClient = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        //Act
+        try {
+            body.writeTo(disconnectedClient);
+            fail("Writing to a disconnected client should fail");
+        } catch (IOException e) {
+            //Assert
+            assertTrue(closed.get());
+        }
+    }
+
+    @Test
+    public void testExportTimeoutInterceptorOnlyExtendsTheTimeoutOfExports() {
+        //Arrange
+        NdjsonExportTimeoutInterceptor interceptor = new NdjsonExportTimeoutInterceptor(EXPORT_REQUEST_TIMEOUT_IN_MS);
+        AsyncWebRequest exportRequest = mock(AsyncWebRequest.class);
+        when(exportRequest.getAttribute(NdjsonResponse.EXPORT_REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)).thenReturn(Boolean.TRUE);
+        AsyncWebRequest otherRequest = mock(AsyncWebRequest.class);
+
+        //Act
+        interceptor.beforeConcurrentHandling(exportRequest, () -> null);
+        interceptor.beforeConcurrentHandling(otherRequest, () -> null);
+
+        //Assert
+        verify(exportRequest).setTimeout(EXPORT_REQUEST_TIMEOUT_IN_MS);
+        verify(otherRequest, never()).setTimeout(anyLong());
+    }
+
+    private MvcResult export() throws Exception {
+        MvcResult result = mockMvc.perform(get("/patients/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        //Waits for the streamed body to be written
+        result.getAsyncResult();
+        return result;
+    }
+
+    private static List<String> getLines(MvcResult result) throws Exception {
+        return Arrays.asList(result.getResponse().getContentAsString().split("\n"));
+    }
+
+    private static PatientDto newPatientDto(String id) {
+        PatientDto patientDto = new PatientDto();
+        patientDto.setId(id);
+        return patientDto;
+    }
+}